@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Particle.ParticleStore;
+
+/**
+ * removeParticlesOutOfScreen on a store where a quarter of the particles are off screen. The store is
+ * topped up again before every invocation, which is why the smallest size is 10k: below that the
+ * per-invocation setup costs as much as the cull. -p threads=N culls in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.library.path=src/c++" })
+public class CullBench {
+    @Param({ "10000", "100000", "1000000" })
+    int particles;
+
+    @Param("1")
+    int threads;
+
+    private ParticleSystem system;
+    private final Random random = new Random(1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = Scenes.system("java");
+        system.setParallelism(threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void refill() {
+        ParticleStore store = system.getParticleStore();
+        while (store.size() < particles) {
+            float x = random.nextFloat() * Scenes.WIDTH * 4 / 3;
+            store.add(1f, 1f, 1f, 1f, x, random.nextFloat() * Scenes.HEIGHT, 0f, 0f, 5f, 0, "red", false);
+        }
+    }
+
+    @Benchmark
+    public int removeParticlesOutOfScreen() {
+        system.removeParticlesOutOfScreen(Scenes.WIDTH, Scenes.HEIGHT);
+        return system.getParticleStore().size();
+    }
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Emitter.Emitter;
+
+// A step of emitters at the default rate, one burst each per step, through the bulk pass a system step
+// runs and spawning emitter by emitter. The store is cleared after each step so the particle count
+// stays at one step's spawns; the bulk step also moves those spawns once.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.library.path=src/c++" })
+public class EmissionBench {
+    @Param("java")
+    String backend;
+
+    @Param({ "10", "100", "1000", "10000" })
+    int emitters;
+
+    private ParticleSystem system;
+
+    @Setup
+    public void setUp() {
+        system = Scenes.system(backend);
+        system.setSeed(1);
+        system.setParallelism(1);
+        Random random = new Random(1);
+        for (int i = 0; i < emitters; i++) {
+            system.addEmitter(new Vector<>(Arrays.asList(Scenes.WIDTH * random.nextFloat(), Scenes.HEIGHT * random.nextFloat())),
+                3f, 1f, (float) (2 * Math.PI * random.nextFloat()), 1f);
+        }
+    }
+
+    @Benchmark
+    public int bulk() {
+        system.updateAll();
+        int spawned = system.getParticleStore().size();
+        system.getParticleStore().clear();
+        return spawned;
+    }
+
+    @Benchmark
+    public int oneByOne() {
+        for (Emitter emitter : system.getEmitters()) {
+            emitter.emitParticles();
+        }
+        int spawned = system.getParticleStore().size();
+        system.getParticleStore().clear();
+        return spawned;
+    }
+}
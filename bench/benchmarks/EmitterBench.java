@@ -0,0 +1,91 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.Particle.Particle;
+import custom.Pack.Physics.PhysicsBackend;
+
+// Velocities of one emitter burst, as boxed rows and packed into a reused array, and of a burst of
+// every emitter of a StressScene-sized set in one batched call; also one particle moved through the
+// object API, which costs about one backend call
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.library.path=src/c++" })
+public class EmitterBench {
+    @Param("default")
+    String backend;
+
+    private ParticleSystem system;
+    private Emitter emitter;
+    private float[] velocities;
+    private List<Emitter> emitters;
+    private int[] counts;
+    private float[] batchVelocities;
+    private Particle particle;
+
+    @Param("1000")
+    int emitterCount;
+
+    @Setup
+    public void setUp() {
+        system = Scenes.system(backend);
+        system.addEmitter(new Vector<>(Arrays.asList(450f, 400f)), 5f, 1f, 0f, 1f);
+        emitter = system.getEmitters().get(0);
+        velocities = new float[2 * PhysicsBackend.PARTICLES_PER_EMIT];
+
+        ParticleSystem many = Scenes.system(backend);
+        for (int i = 0; i < emitterCount; i++) {
+            many.addEmitter(new Vector<>(Arrays.asList(450f, 400f)), 5f, 1f, i * 0.01f, 1f);
+        }
+        emitters = many.getEmitters();
+        counts = new int[emitterCount];
+        Arrays.fill(counts, PhysicsBackend.PARTICLES_PER_EMIT);
+        batchVelocities = new float[2 * PhysicsBackend.PARTICLES_PER_EMIT * emitterCount];
+
+        Vector<Float> zero = new Vector<>(Arrays.asList(0f, 0f));
+        particle = new Particle(1f, 1f, zero, zero, zero, 5f, 100, "red", false);
+    }
+
+    @Benchmark
+    public float[][] getVelocities() {
+        return emitter.getVelocities();
+    }
+
+    @Benchmark
+    public float[] fillVelocities() {
+        system.getBackend().fillVelocities(emitter, velocities);
+        return velocities;
+    }
+
+    @Benchmark
+    public float[] fillVelocitiesBatch() {
+        system.getBackend().fillVelocities(emitters, counts, emitterCount, batchVelocities);
+        return batchVelocities;
+    }
+
+    @Benchmark
+    public Particle particleUpdate() {
+        particle.update();
+        return particle;
+    }
+}
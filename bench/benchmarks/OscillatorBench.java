@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.Emitter.OscillatingEmitter;
+import custom.Pack.Physics.OscillatorTable;
+
+// A step of oscillating emitters: the table pass a system step runs, and the same emitters advanced
+// one by one. Emitters emit nothing so only the oscillation is timed; half swing along x, with random
+// phases. -prof gc shows the table pass allocates nothing.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.library.path=src/c++" })
+public class OscillatorBench {
+    @Param({ "100", "10000", "1000000" })
+    int oscillators;
+
+    private ParticleSystem system;
+    private OscillatorTable table;
+
+    @Setup
+    public void setUp() {
+        system = Scenes.system("java");
+        system.setParallelism(1);
+        Random random = new Random(1);
+        for (int i = 0; i < oscillators; i++) {
+            OscillatingEmitter emitter = new OscillatingEmitter(new Vector<>(Arrays.asList(Scenes.WIDTH * random.nextFloat(), Scenes.HEIGHT * random.nextFloat())),
+                3f, 1f, 0f, 1f, 50 * random.nextFloat(), 0.02f * random.nextFloat(), system);
+            emitter.setEmissionRate(0);
+            emitter.setPhase((float) (2 * Math.PI * random.nextFloat()));
+            emitter.setAxis(i % 2 == 0 ? OscillatingEmitter.Axis.X : OscillatingEmitter.Axis.Y);
+            system.getEmitters().add(emitter);
+        }
+        // The first step builds the table
+        system.updateAll();
+        table = system.getOscillators();
+    }
+
+    @Benchmark
+    public OscillatorTable table() {
+        table.advance();
+        return table;
+    }
+
+    @Benchmark
+    public ParticleSystem oneByOne() {
+        for (Emitter emitter : system.getEmitters()) {
+            emitter.updateEmitter();
+        }
+        return system;
+    }
+}
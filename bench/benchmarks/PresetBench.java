@@ -0,0 +1,76 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.SystemPreset;
+
+// Saving and loading a preset with many field points and a tenth as many emitters
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.library.path=src/c++" })
+public class PresetBench {
+    @Param({ "1000", "10000", "100000" })
+    int fields;
+
+    private ParticleSystem system;
+    private File loadFile;
+    private File saveFile;
+    private PrintStream out;
+
+    @Setup
+    public void setUp() throws IOException {
+        system = Scenes.system("java");
+        Scenes.addFields(system, fields, 1);
+        for (int i = 0; i < fields / 10; i++) {
+            system.addEmitter(new Vector<>(Arrays.asList((float) (i % Scenes.WIDTH), (float) (i % Scenes.HEIGHT))), 5f, 1f, 0f, 1f);
+        }
+        loadFile = File.createTempFile("preset-load", ".txt");
+        saveFile = File.createTempFile("preset-save", ".txt");
+        new SystemPreset(system).savePreset(loadFile.getPath());
+        // SystemPreset reports every save and load on standard output
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+        loadFile.delete();
+        saveFile.delete();
+    }
+
+    @Benchmark
+    public void savePreset() {
+        new SystemPreset(system).savePreset(saveFile.getPath());
+    }
+
+    @Benchmark
+    public ParticleSystem loadPreset() {
+        ParticleSystem loaded = Scenes.system("java");
+        new SystemPreset(loaded).loadPreset(loadFile.getPath());
+        return loaded;
+    }
+}
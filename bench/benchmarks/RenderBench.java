@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Render.ParticleRasterizer;
+import custom.Pack.Simulation.FrameSnapshot;
+import custom.Pack.Simulation.SimulationLoop;
+
+// One frame rasterized into the offscreen pixel buffer the UI shows, without JavaFX
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.library.path=src/c++" })
+public class RenderBench {
+    @Param({ "10000", "100000", "1000000" })
+    int particles;
+
+    @Param({ "false", "true" })
+    boolean velocityColors;
+
+    @Param("1")
+    int threads;
+
+    private FrameSnapshot snapshot;
+    private ParticleRasterizer rasterizer;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        ParticleSystem system = Scenes.system("java");
+        Scenes.addParticles(system, particles, 1);
+        snapshot = new SimulationLoop(system, Scenes.WIDTH, Scenes.HEIGHT).latestSnapshot();
+        rasterizer = new ParticleRasterizer(Scenes.WIDTH, Scenes.HEIGHT);
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        rasterizer.setPool(pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int[] draw() {
+        rasterizer.draw(snapshot, 0.5f, 3, velocityColors);
+        return rasterizer.getPixels();
+    }
+}
@@ -0,0 +1,106 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Recording.ReplayPlayer;
+import custom.Pack.Recording.TrajectoryFrame;
+import custom.Pack.Recording.TrajectoryReader;
+import custom.Pack.Recording.TrajectoryRecorder;
+import custom.Pack.Simulation.FrameSnapshot;
+
+// Decoding a recorded run: frames read in order, seeks to random frames, and frames shown through the
+// replay player with prefetching, one recorded step per shown frame. 60 fps playback needs well under 16.7 ms.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.library.path=src/c++", "-Xmx4g" })
+public class ReplayBench {
+    @Param("200000")
+    int particles;
+
+    @Param("300")
+    int frames;
+
+    private Path file;
+    private TrajectoryReader reader;
+    private TrajectoryFrame frame;
+    private int next;
+    private SplittableRandom random;
+    private ReplayPlayer player;
+    private FrameSnapshot snapshot;
+    private long now;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Slow particles without forces, so the count stays put for the whole run
+        ParticleSystem system = Scenes.system("java");
+        Scenes.addParticles(system, particles, 1);
+        file = Files.createTempFile("replay", ".traj");
+        TrajectoryRecorder recorder = new TrajectoryRecorder(file, Scenes.WIDTH, Scenes.HEIGHT);
+        recorder.setBackpressure(TrajectoryRecorder.Backpressure.BLOCK);
+        recorder.start();
+        for (int step = 1; step <= frames; step++) {
+            system.step();
+            recorder.record(system.getParticleStore(), step);
+        }
+        recorder.close();
+
+        reader = new TrajectoryReader(file);
+        frame = new TrajectoryFrame();
+        random = new SplittableRandom(1);
+        player = new ReplayPlayer(new TrajectoryReader(file));
+        player.start();
+        snapshot = new FrameSnapshot();
+        now = 1;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        player.close();
+        reader.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public TrajectoryFrame sequentialDecode() throws IOException {
+        reader.readFrame(next, frame);
+        next = next + 1 == reader.getFrameCount() ? 0 : next + 1;
+        return frame;
+    }
+
+    @Benchmark
+    public TrajectoryFrame randomSeek() throws IOException {
+        reader.readFrame(random.nextInt(reader.getFrameCount()), frame);
+        return frame;
+    }
+
+    @Benchmark
+    public FrameSnapshot playerUpdate() throws IOException {
+        // Playing again after the last frame starts over from the first
+        if (player.isPaused()) {
+            player.setPaused(false);
+        }
+        now += (long) (1e9 / ReplayPlayer.DEFAULT_STEP_RATE);
+        return player.update(snapshot, now);
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.PhysicsBackend;
+
+// Seeded scenes shared by the benchmarks, so every run steps the same particles
+final class Scenes {
+    static final int WIDTH = 900;
+    static final int HEIGHT = 800;
+
+    private Scenes() {
+    }
+
+    // "default" picks the backend the simulator would, any other value is a backend name
+    static ParticleSystem system(String backend) {
+        return new ParticleSystem("default".equals(backend) ? PhysicsBackend.getDefault() : PhysicsBackend.forName(backend));
+    }
+
+    // Adds count slow particles spread over the screen
+    static void addParticles(ParticleSystem system, int count, long seed) {
+        Random random = new Random(seed);
+        ParticleStore store = system.getParticleStore();
+        store.ensureCapacity(store.size() + count);
+        for (int i = 0; i < count; i++) {
+            store.add(1f, 1f, random.nextFloat() * 4f - 2f, random.nextFloat() * 4f - 2f,
+                random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT, 0f, 0f, 5f, 0, "red", false);
+        }
+    }
+
+    // Adds count field points, alternating attractors and repulsors
+    static void addFields(ParticleSystem system, int count, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < count; i++) {
+            Vector<Float> position = new Vector<>(Arrays.asList(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT));
+            system.addFieldPoint(position, 5f, i % 2 == 0 ? "A" : "B");
+        }
+    }
+}
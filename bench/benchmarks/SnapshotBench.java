@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import custom.Pack.BinarySnapshot;
+import custom.Pack.ParticleSystem;
+
+// Saving and loading a binary snapshot of a system holding particles
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.library.path=src/c++", "-Xmx4g" })
+public class SnapshotBench {
+    @Param({ "100000", "1000000", "10000000" })
+    int particles;
+
+    private ParticleSystem system;
+    private File loadFile;
+    private File saveFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        system = Scenes.system("java");
+        Scenes.addParticles(system, particles, 1);
+        loadFile = File.createTempFile("snapshot-load", ".snap");
+        saveFile = File.createTempFile("snapshot-save", ".snap");
+        BinarySnapshot.save(system, loadFile.toPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        loadFile.delete();
+        saveFile.delete();
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        BinarySnapshot.save(system, saveFile.toPath());
+    }
+
+    @Benchmark
+    public ParticleSystem load() throws IOException {
+        ParticleSystem loaded = Scenes.system("java");
+        BinarySnapshot.load(loaded, loadFile.toPath());
+        return loaded;
+    }
+}
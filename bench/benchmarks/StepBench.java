@@ -0,0 +1,105 @@
+package benchmarks;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.PairInteraction;
+
+/**
+ * Force and integration passes over a fixed particle population. No emitters run, so the particle
+ * count stays put, and positions and velocities are restored before every iteration so the
+ * particles do not drift away from the fields over a long run.
+ *
+ * The other parameters default to a sequential pass with every field point evaluated and no pair
+ * forces; set them to compare the alternatives, for example -p threads=1,2,4,8 for parallel scaling,
+ * -p cutoff=60 -p farField=false,true for field cutoffs, or -p pairInteraction=GRAVITY -p theta=0,0.5,1
+ * for the Barnes-Hut pass.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.library.path=src/c++" })
+public class StepBench {
+    @Param({ "1000", "10000", "100000", "1000000" })
+    int particles;
+
+    @Param({ "1", "10", "100", "1000" })
+    int fields;
+
+    @Param("default")
+    String backend;
+
+    @Param("1")
+    int threads;
+
+    @Param("0")
+    float cutoff;
+
+    @Param("false")
+    boolean farField;
+
+    @Param("NONE")
+    PairInteraction pairInteraction;
+
+    @Param("0.5")
+    float theta;
+
+    private ParticleSystem system;
+    private float[][] initial;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = Scenes.system(backend);
+        Scenes.addParticles(system, particles, 1);
+        Scenes.addFields(system, fields, 2);
+        system.setParallelism(threads);
+        system.setFieldCutoff(cutoff);
+        system.setFarFieldEnabled(farField);
+        system.setPairInteraction(pairInteraction);
+        system.setOpeningAngle(theta);
+        ParticleStore store = system.getParticleStore();
+        initial = new float[][] { read(store.getX()), read(store.getY()), read(store.getVelocityX()), read(store.getVelocityY()) };
+    }
+
+    @Setup(Level.Iteration)
+    public void restore() {
+        ParticleStore store = system.getParticleStore();
+        store.getX().put(0, initial[0]);
+        store.getY().put(0, initial[1]);
+        store.getVelocityX().put(0, initial[2]);
+        store.getVelocityY().put(0, initial[3]);
+    }
+
+    private float[] read(FloatBuffer column) {
+        float[] values = new float[particles];
+        column.get(0, values);
+        return values;
+    }
+
+    @Benchmark
+    public void setForces() {
+        system.setForces();
+    }
+
+    @Benchmark
+    public void updateAll() {
+        system.updateAll();
+    }
+}
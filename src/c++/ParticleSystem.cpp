@@ -1,140 +1,155 @@
 #include <jni.h>
 #include <iostream>
 #include <cmath>
-#include <vector>
-#include <random>
+#include <cstdint>
 #include <math.h>
-#include "custom_Pack_Particle_Particle.h"
-#include "custom_Pack_ParticleSystem.h"
+#include <algorithm>
+#include "custom_Pack_Physics_NativeBackend.h"
 
 using namespace std;
 
 float K = 200.0f;
 
-const double PI = 3.14159265358979323846;
+// Flags of NativeBackend.step, mirroring PhysicsBackend.STEP_FORCES and STEP_INTEGRATE
+const jint STEP_FORCES = 1;
+const jint STEP_INTEGRATE = 2;
 
-double randomDouble(double a, double b) {
-    // Create a random number generator
-    random_device rd;  // Initialize random device
-    mt19937 generator(rd());  // Use the random device to seed the generator
-    uniform_real_distribution<double> distribution(a, b);  // Define the range
-
-    return distribution(generator);  // Generate a random double in the range [a, b]
+// SplitMix64, the generator of custom.Pack.Emitter.SplitMix: advances the state and returns the next value
+static inline uint64_t nextRandom(uint64_t& state) {
+    uint64_t z = (state += 0x9E3779B97F4A7C15ULL);
+    z = (z ^ (z >> 30)) * 0xBF58476D1CE4E5B9ULL;
+    z = (z ^ (z >> 27)) * 0x94D049BB133111EBULL;
+    return z ^ (z >> 31);
 }
 
-extern "C" {
+// Uniform in [0, 1) from the top 53 bits, as SplitMix.nextDouble
+static inline double nextUnit(uint64_t& state) {
+    return (nextRandom(state) >> 11) * 0x1.0p-53;
+}
 
+// Class references and member IDs resolved once in JNI_OnLoad
+struct JniCache {
+    jclass vectorClass;
+    jmethodID vectorGet;
+    jmethodID vectorSet;
 
-vector<float> getCppVectorFromJavaVector(JNIEnv* env, jobject javaVector) {
-    std::vector<float> cppVector;
+    jclass floatClass;
+    jmethodID floatInit;
+    jmethodID floatValue;
 
-    // Find the Java Vector class and required methods
-    jclass vectorClass = env->FindClass("java/util/Vector");
-    jmethodID sizeMethod = env->GetMethodID(vectorClass, "size", "()I");
-    jmethodID getMethod = env->GetMethodID(vectorClass, "get", "(I)Ljava/lang/Object;");
 
-    // Get the size of the Java Vector
-    jint vectorSize = env->CallIntMethod(javaVector, sizeMethod);
+    jclass particleClass;
+    jmethodID particleGetMass;
+    jmethodID particleGetForce;
+    jmethodID particleGetPosition;
+    jmethodID particleGetVelocity;
+    jmethodID particleSetPosition;
+    jmethodID particleSetVelocity;
 
-    // Iterate through the Java Vector and extract each float element
-    for (int i = 0; i < vectorSize; ++i) {
-        jobject floatObj = env->CallObjectMethod(javaVector, getMethod, i);
+};
 
-        // Cast the Object to Float and get the float value
-        jclass floatClass = env->FindClass("java/lang/Float");
-        jmethodID floatValueMethod = env->GetMethodID(floatClass, "floatValue", "()F");
-        jfloat value = env->CallFloatMethod(floatObj, floatValueMethod);
+static JniCache cache;
 
-        // Add the float value to the C++ vector
-        cppVector.push_back(value);
+// Finds a class and promotes it to a global reference
+static jclass globalClass(JNIEnv* env, const char* name) {
+    jclass local = env->FindClass(name);
+    if (local == nullptr) {
+        cerr << "Could not find class " << name << endl;
+        return nullptr;
+    }
+    jclass global = (jclass) env->NewGlobalRef(local);
+    env->DeleteLocalRef(local);
+    return global;
+}
 
-        // Clean up local references
-        env->DeleteLocalRef(floatObj);
+static bool methodFound(jmethodID method, const char* name) {
+    if (method == nullptr) {
+        cerr << "Could not find " << name << "() method" << endl;
+        return false;
     }
-  
-    // Return the populated C++ vector
-    return cppVector;
+    return true;
 }
 
+extern "C" {
 
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM* vm, void* reserved) {
+    JNIEnv* env;
+    if (vm->GetEnv((void**) &env, JNI_VERSION_1_8) != JNI_OK) {
+        return JNI_ERR;
+    }
 
-jobject getJavaVectorFromCppVector(JNIEnv* env, const std::vector<float>& cppVector) {
-    // Find the Java Vector and Float classes
-    jclass vectorClass = env->FindClass("java/util/Vector");
-    jclass floatClass = env->FindClass("java/lang/Float");
+    cache.vectorClass = globalClass(env, "java/util/Vector");
+    cache.floatClass = globalClass(env, "java/lang/Float");
+    cache.particleClass = globalClass(env, "custom/Pack/Particle/Particle");
+    if (cache.vectorClass == nullptr || cache.floatClass == nullptr || cache.particleClass == nullptr) {
+        return JNI_ERR;
+    }
 
-    // Get the constructors and method IDs
-    jmethodID vectorConstructor = env->GetMethodID(vectorClass, "<init>", "()V");
-    jmethodID addMethod = env->GetMethodID(vectorClass, "add", "(Ljava/lang/Object;)Z");
-    jmethodID floatConstructor = env->GetMethodID(floatClass, "<init>", "(F)V");
+    cache.vectorGet = env->GetMethodID(cache.vectorClass, "get", "(I)Ljava/lang/Object;");
+    cache.vectorSet = env->GetMethodID(cache.vectorClass, "set", "(ILjava/lang/Object;)Ljava/lang/Object;");
 
-    // Create a new Java Vector instance
-    jobject javaVector = env->NewObject(vectorClass, vectorConstructor);
+    cache.floatInit = env->GetMethodID(cache.floatClass, "<init>", "(F)V");
+    cache.floatValue = env->GetMethodID(cache.floatClass, "floatValue", "()F");
 
-    // Populate the Java Vector with Float objects
-    for (float value : cppVector) {
-        // Create a new Float object for each value in the C++ vector
-        jobject floatObj = env->NewObject(floatClass, floatConstructor, value);
-        
-        // Add the Float object to the Java Vector
-        env->CallBooleanMethod(javaVector, addMethod, floatObj);
+    cache.particleGetMass = env->GetMethodID(cache.particleClass, "getMass", "()F");
+    cache.particleGetForce = env->GetMethodID(cache.particleClass, "getForce", "()Ljava/util/Vector;");
+    cache.particleGetPosition = env->GetMethodID(cache.particleClass, "getPosition", "()Ljava/util/Vector;");
+    cache.particleGetVelocity = env->GetMethodID(cache.particleClass, "getVelocity", "()Ljava/util/Vector;");
+    cache.particleSetPosition = env->GetMethodID(cache.particleClass, "setPosition", "([F)V");
+    cache.particleSetVelocity = env->GetMethodID(cache.particleClass, "setVelocity", "([F)V");
 
-        // Clean up the local reference to the Float object
-        env->DeleteLocalRef(floatObj);
-    }
+    bool found = methodFound(cache.vectorGet, "Vector.get") && methodFound(cache.vectorSet, "Vector.set")
+        && methodFound(cache.floatInit, "Float.<init>")
+        && methodFound(cache.floatValue, "Float.floatValue") && methodFound(cache.particleGetMass, "getMass")
+        && methodFound(cache.particleGetForce, "getForce") && methodFound(cache.particleGetPosition, "getPosition")
+        && methodFound(cache.particleGetVelocity, "getVelocity") && methodFound(cache.particleSetPosition, "setPosition")
+        && methodFound(cache.particleSetVelocity, "setVelocity");
 
-    // Return the populated Java Vector
-    return javaVector;
+    return found ? JNI_VERSION_1_8 : JNI_ERR;
+}
+
+JNIEXPORT void JNICALL JNI_OnUnload(JavaVM* vm, void* reserved) {
+    JNIEnv* env;
+    if (vm->GetEnv((void**) &env, JNI_VERSION_1_8) != JNI_OK) {
+        return;
+    }
+    jclass* classes[] = { &cache.vectorClass, &cache.floatClass, &cache.particleClass };
+    for (jclass* cls : classes) {
+        if (*cls != nullptr) {
+            env->DeleteGlobalRef(*cls);
+            *cls = nullptr;
+        }
+    }
 }
 
 
 // Helper function to get a float value from Java Vector<Float>
 float getVectorElement(JNIEnv* env, jobject vectorObj, int index) {
-    jclass vectorClass = env->GetObjectClass(vectorObj);
-    jmethodID getMethod = env->GetMethodID(vectorClass, "get", "(I)Ljava/lang/Object;");
-    jobject floatObj = env->CallObjectMethod(vectorObj, getMethod, index);
-    jclass floatClass = env->FindClass("java/lang/Float");
-    jmethodID floatValueMethod = env->GetMethodID(floatClass, "floatValue", "()F");
-    float value = env->CallFloatMethod(floatObj, floatValueMethod);
+    jobject floatObj = env->CallObjectMethod(vectorObj, cache.vectorGet, index);
+    float value = env->CallFloatMethod(floatObj, cache.floatValue);
     env->DeleteLocalRef(floatObj);
     return value;
 }
 
 // Helper function to set values in Java Vector<Float>
 void setVectorElement(JNIEnv* env, jobject vectorObj, int index, float value) {
-    jclass vectorClass = env->GetObjectClass(vectorObj);
-    jmethodID setMethod = env->GetMethodID(vectorClass, "set", "(ILjava/lang/Object;)Ljava/lang/Object;");
-    jclass floatClass = env->FindClass("java/lang/Float");
-    jobject floatObj = env->NewObject(floatClass, env->GetMethodID(floatClass, "<init>", "(F)V"), value);
-    env->CallObjectMethod(vectorObj, setMethod, index, floatObj);
+    jobject floatObj = env->NewObject(cache.floatClass, cache.floatInit, value);
+    jobject previous = env->CallObjectMethod(vectorObj, cache.vectorSet, index, floatObj);
+    env->DeleteLocalRef(previous);
     env->DeleteLocalRef(floatObj);
 }
 
-// JNI implementation for update method
-JNIEXPORT void JNICALL Java_custom_Pack_Particle_Particle_update(JNIEnv* env, jobject obj) {
+// Integrates a single Particle through its accessors (NativeBackend.update)
+JNIEXPORT void JNICALL Java_custom_Pack_Physics_NativeBackend_updateParticle(JNIEnv* env, jclass cls, jobject obj) {
     float dt = 1.0f;
-    float maxVelocity = 5.0f;
-
-    jclass particleClass = env->GetObjectClass(obj);
 
     // Retrieve mass
-    jmethodID getMassMethod = env->GetMethodID(particleClass, "getMass", "()F");
-    float mass = env->CallFloatMethod(obj, getMassMethod);
-
-    // Retrieve force as Vector<Float>
-    jmethodID getForceMethod = env->GetMethodID(particleClass, "getForce", "()Ljava/util/Vector;");
-    jobject forceVector = env->CallObjectMethod(obj, getForceMethod);
+    float mass = env->CallFloatMethod(obj, cache.particleGetMass);
 
-    // Retrieve position as Vector<Float>
-    jmethodID getPositionMethod = env->GetMethodID(particleClass, "getPosition", "()Ljava/util/Vector;");
-    jobject positionVector = env->CallObjectMethod(obj, getPositionMethod);
-
-    // Retrieve velocity as Vector<Float>
-    jmethodID getVelocityMethod = env->GetMethodID(particleClass, "getVelocity", "()Ljava/util/Vector;");
-    jobject velocityVector = env->CallObjectMethod(obj, getVelocityMethod);
-
-    jmethodID setPositionMethod = env->GetMethodID(particleClass, "setPosition", "([F)V");
-    jmethodID setVelocityMethod = env->GetMethodID(particleClass, "setVelocity", "([F)V");
+    // Retrieve force, position and velocity as Vector<Float>
+    jobject forceVector = env->CallObjectMethod(obj, cache.particleGetForce);
+    jobject positionVector = env->CallObjectMethod(obj, cache.particleGetPosition);
+    jobject velocityVector = env->CallObjectMethod(obj, cache.particleGetVelocity);
 
     // Perform calculations
     float positionX = getVectorElement(env, positionVector, 0);
@@ -152,7 +167,7 @@ JNIEXPORT void JNICALL Java_custom_Pack_Particle_Particle_update(JNIEnv* env, jo
     float finalPos[2] = { positionX, positionY };
     jfloatArray jPositionArray = env->NewFloatArray(2);
     env->SetFloatArrayRegion(jPositionArray, 0, 2, finalPos);
-    env->CallVoidMethod(obj, setPositionMethod, jPositionArray);
+    env->CallVoidMethod(obj, cache.particleSetPosition, jPositionArray);
     env->DeleteLocalRef(jPositionArray);
 
     velocityX += (forceX / mass) * dt;
@@ -162,272 +177,234 @@ JNIEXPORT void JNICALL Java_custom_Pack_Particle_Particle_update(JNIEnv* env, jo
     float finalVel[2] = { velocityX, velocityY };
     jfloatArray jVelocityArray = env->NewFloatArray(2);
     env->SetFloatArrayRegion(jVelocityArray, 0, 2, finalVel);
-    env->CallVoidMethod(obj, setVelocityMethod, jVelocityArray);
+    env->CallVoidMethod(obj, cache.particleSetVelocity, jVelocityArray);
     env->DeleteLocalRef(jVelocityArray);
 
     // Clean up local references
     env->DeleteLocalRef(forceVector);
     env->DeleteLocalRef(positionVector);
     env->DeleteLocalRef(velocityVector);
-
-
-
 }
 
-JNIEXPORT void JNICALL Java_custom_Pack_ParticleSystem_setForces(JNIEnv* env, jobject obj) {
-    jclass particleSystemClass = env->GetObjectClass(obj);
-
-   
-    jmethodID getParticlesMethod = env->GetMethodID(particleSystemClass, "getParticles", "()Ljava/util/Vector;");
-    jmethodID getFieldPointsMethod = env->GetMethodID(particleSystemClass, "getFieldPoints", "()Ljava/util/Vector;");
-    jmethodID isGravityEnabledMethod = env->GetMethodID(particleSystemClass, "isGravityEnabled", "()I");
-
-    if(isGravityEnabledMethod == nullptr) cout<<"isGravityEnabledMethod is null"<<endl;
-  
-    jobject particles = env->CallObjectMethod(obj, getParticlesMethod);
-    jobject fieldPoints = env->CallObjectMethod(obj, getFieldPointsMethod);
-    jint gravityEnabled = env->CallIntMethod(obj, isGravityEnabledMethod);
-
-
-
-    jclass vectorClass = env->FindClass("java/util/Vector");
-    jmethodID vectorSizeMethod = env->GetMethodID(vectorClass, "size", "()I");
-    jmethodID vectorGetMethod = env->GetMethodID(vectorClass, "get", "(I)Ljava/lang/Object;");
-
-    jint numParticles = env->CallIntMethod(particles, vectorSizeMethod);
-    jint numFieldPoints = env->CallIntMethod(fieldPoints, vectorSizeMethod);
-
-    for (int i = 0; i < numParticles; i++) {
-        jobject particle = env->CallObjectMethod(particles, vectorGetMethod, i);
-        jclass particleClass = env->GetObjectClass(particle);
-
-        jmethodID getPositionMethod = env->GetMethodID(particleClass, "getPosition", "()Ljava/util/Vector;");
-        jmethodID getChargeMethod = env->GetMethodID(particleClass, "getCharge", "()F");
-        jmethodID getMassMethod = env->GetMethodID(particleClass, "getMass", "()F");
-        jmethodID setForceMethod = env->GetMethodID(particleClass, "setForce", "([F)V");
-
-        jobject particlePosition = env->CallObjectMethod(particle, getPositionMethod);
-        float charge = env->CallFloatMethod(particle, getChargeMethod);
-        float mass = env->CallFloatMethod(particle, getMassMethod);
-
-        float px = getVectorElement(env, particlePosition, 0);
-        float py = getVectorElement(env, particlePosition, 1);
+// Layout of FieldGrid.java: packed fields (x, y, signed strength, squared cutoff), unbounded ones first,
+// then the gridded ones sorted by cell, with per-cell and per-block aggregates for the far field
+const int FIELD_STRIDE = 4;
+const int AGGREGATE_STRIDE = 6;
+const int BLOCK = 4;
+
+struct FieldGrid {
+    const float* fields;
+    jint unboundedCount;
+    const jint* cellStart;
+    const float* cellAggregates;
+    const float* blockAggregates;
+    float originX;
+    float originY;
+    float cellSize;
+    jint columns;
+    jint rows;
+    bool farField;
+};
+
+// Accumulates gravity and the forces of the unbounded field points for particles [from, to)
+static void computeForces(const float* x, const float* y, const float* mass, const float* charge, float* outFx, float* outFy,
+                          jint from, jint to, const float* fields, jint fieldCount, jint gravityEnabled) {
+    for (jint i = from; i < to; i++) {
+        float px = x[i];
+        float py = y[i];
 
         float forceX = 0.0f;
         float forceY = 0.0f;
         if(gravityEnabled == 1)
-            forceY = mass * 0.1;
-
-        for (int j = 0; j < numFieldPoints; j++) {
-            jobject fieldPoint = env->CallObjectMethod(fieldPoints, vectorGetMethod, j);
-            jclass fieldPointClass = env->GetObjectClass(fieldPoint);
+            forceY = mass[i] * 0.1;
 
-            jmethodID getFieldPointPosition = env->GetMethodID(fieldPointClass, "getPosition", "()Ljava/util/Vector;");
-            jmethodID getFieldStrengthMethod = env->GetMethodID(fieldPointClass, "getFieldStrength", "()F");
-            jmethodID getFieldTypeMethod = env->GetMethodID(fieldPointClass, "getType", "()Ljava/lang/String;");
-
-            jobject fieldPointPosition = env->CallObjectMethod(fieldPoint, getFieldPointPosition);
-            jstring javaString = (jstring) env->CallObjectMethod(fieldPoint, getFieldTypeMethod);
-            const char* charString = env->GetStringUTFChars(javaString, nullptr);
-            std::string fieldType(charString);
-            
-
-            float fieldStrength = env->CallFloatMethod(fieldPoint, getFieldStrengthMethod);
-
-            float fx = getVectorElement(env, fieldPointPosition, 0);
-            float fy = getVectorElement(env, fieldPointPosition, 1);
-
-            float dx = fx - px;
-            float dy = fy - py;
+        // Strength is signed, negative for repulsors
+        for (jint j = 0; j < fieldCount; j++) {
+            float dx = fields[FIELD_STRIDE * j] - px;
+            float dy = fields[FIELD_STRIDE * j + 1] - py;
             float distanceSquared = dx * dx + dy * dy;
             float distance = sqrt(distanceSquared);
 
-            float forceMagnitude;
-            //cout<<fieldType<<endl;
-            if(distance<10.0f) forceMagnitude = 0.0f;
-            else
-            {
-                forceMagnitude = (charge * fieldStrength * K) / distanceSquared;
-                if(fieldType == "B")
-                {
-                    forceMagnitude*=-1;
-                }
-                forceX += forceMagnitude * (dx / distance);
-                forceY += forceMagnitude * (dy / distance);
-            }
-
-            env->ReleaseStringUTFChars(javaString, charString);
-
-         
-            env->DeleteLocalRef(javaString);
+            if(distance<10.0f) continue;
 
-            env->DeleteLocalRef(fieldPointPosition);
-            env->DeleteLocalRef(fieldPoint);
+            float forceMagnitude = (charge[i] * fields[FIELD_STRIDE * j + 2] * K) / distanceSquared;
+            forceX += forceMagnitude * (dx / distance);
+            forceY += forceMagnitude * (dy / distance);
         }
 
-        float force[2] = { forceX, forceY };
-        jfloatArray jForceArray = env->NewFloatArray(2);
-        env->SetFloatArrayRegion(jForceArray, 0, 2, force);
-
-        env->CallVoidMethod(particle, setForceMethod, jForceArray);
-
-        env->DeleteLocalRef(jForceArray);
-        env->DeleteLocalRef(particlePosition);
-        env->DeleteLocalRef(particle);
+        outFx[i] = forceX;
+        outFy[i] = forceY;
     }
-    env->DeleteLocalRef(particles);
-    env->DeleteLocalRef(fieldPoints);
 }
 
+static inline void addPointForce(float& forceX, float& forceY, float dx, float dy, float q, float strength) {
+    float distanceSquared = dx * dx + dy * dy;
+    float distance = sqrt(distanceSquared);
+    if (distance < 10.0f) return;
+    float forceMagnitude = (q * strength * K) / distanceSquared;
+    forceX += forceMagnitude * (dx / distance);
+    forceY += forceMagnitude * (dy / distance);
+}
 
-JNIEXPORT jobjectArray JNICALL Java_custom_Pack_Emitter_Emitter_getVelocities(JNIEnv* env, jobject obj) {
-    jclass emitterClass = env->GetObjectClass(obj);
-    jmethodID getAngleMethod = env->GetMethodID(emitterClass, "getAngle", "()F");
-    if (getAngleMethod == nullptr) {
-        cerr << "Could not find getAngle() method" << endl;
-        return nullptr;
-    }
-
-    float angle = env->CallFloatMethod(obj, getAngleMethod);
-   
-
-    jmethodID getSpeedMethod = env->GetMethodID(emitterClass, "getSpeed", "()F");
-    if (getSpeedMethod == nullptr) {
-        cerr << "Could not find getSpeed() method" << endl;
-        return nullptr;
-    }
-
-    float speed = env->CallFloatMethod(obj, getSpeedMethod);
-    
-
-    jmethodID getSpreadMethod = env->GetMethodID(emitterClass, "getSpread", "()F");
-    if (getSpreadMethod == nullptr) {
-        cerr << "Could not find getSpread() method" << endl;
-        return nullptr;
-    }
-
-    float spread = env->CallFloatMethod(obj, getSpreadMethod);
-
-
-    vector<vector<float>> velocities;
-            for (int i=0 ; i<10; i++) 
-        {
-            float angU = angle + spread/2;
-            float angL = angle - spread/2;
-            float ang = randomDouble(angL, angU);
-            float vx = cos(ang) * speed;
-            float vy = sin(ang) * speed;
-            velocities.push_back({vx, vy});
+// An aggregate acts as one attractor and one repulsor at the centroids of each
+static inline void addAggregate(float& forceX, float& forceY, const float* aggregate, float px, float py, float q) {
+    for (int half = 0; half <= 3; half += 3) {
+        float strength = aggregate[half];
+        if (strength != 0) {
+            addPointForce(forceX, forceY, aggregate[half + 1] - px, aggregate[half + 2] - py, q, strength);
         }
-
-
-
-
-    // Determine the number of coordinates
-    jsize numVelocities = velocities.size();
-
-    // Create a 2D Java array (jobjectArray of jfloatArray)
-    jobjectArray jVelocitiesArray = env->NewObjectArray(numVelocities, env->FindClass("[F"), nullptr);
-
-    // Populate the jobjectArray with jfloatArrays
-    for (jsize i = 0; i < numVelocities; ++i) {
-        // Convert each C++ vector to a jfloatArray
-        jfloatArray jInnerArray = env->NewFloatArray(2);
-        env->SetFloatArrayRegion(jInnerArray, 0, 2, velocities[i].data());
-
-        // Set the jfloatArray in the main jobjectArray
-        env->SetObjectArrayElement(jVelocitiesArray, i, jInnerArray);
-
-        // Delete the local reference to the inner array to prevent memory leaks
-        env->DeleteLocalRef(jInnerArray);
     }
-
-    // Return the 2D Java array
-    return jVelocitiesArray;
 }
 
-
-JNIEXPORT void JNICALL Java_custom_Pack_Emitter_OscillatingEmitter_updateEmitter(JNIEnv* env, jobject obj) {
-    jclass emitterClass = env->GetObjectClass(obj);
-    jmethodID getAmplitudeMethod = env->GetMethodID(emitterClass, "getAmplitude", "()F");
-    if (getAmplitudeMethod == nullptr) {
-        cerr << "Could not find getMass() method" << endl;
-        return;
+// Adds block aggregates for blocks away from the particle and cell aggregates for the other cells of nearby blocks
+static void addFarField(float& forceX, float& forceY, const FieldGrid& grid, float px, float py, float q, jint row, jint column) {
+    jint blockColumns = (grid.columns + BLOCK - 1) / BLOCK;
+    jint blockRows = (grid.rows + BLOCK - 1) / BLOCK;
+    for (jint br = 0; br < blockRows; br++) {
+        for (jint bc = 0; bc < blockColumns; bc++) {
+            jint firstRow = br * BLOCK;
+            jint firstColumn = bc * BLOCK;
+            bool near = firstRow <= row + 1 && row - 1 < firstRow + BLOCK
+                && firstColumn <= column + 1 && column - 1 < firstColumn + BLOCK;
+            if (!near) {
+                addAggregate(forceX, forceY, grid.blockAggregates + (br * blockColumns + bc) * AGGREGATE_STRIDE, px, py, q);
+                continue;
+            }
+            for (jint r = firstRow; r < min(grid.rows, firstRow + BLOCK); r++) {
+                for (jint c = firstColumn; c < min(grid.columns, firstColumn + BLOCK); c++) {
+                    if (abs(r - row) <= 1 && abs(c - column) <= 1) continue; // Already summed exactly
+                    addAggregate(forceX, forceY, grid.cellAggregates + (r * grid.columns + c) * AGGREGATE_STRIDE, px, py, q);
+                }
+            }
+        }
     }
+}
 
-    float A = env->CallFloatMethod(obj, getAmplitudeMethod);
-   
+// Adds the forces of the gridded fields in the 3x3 cells around each particle in [from, to),
+// and with the far field enabled the aggregates of every other cell
+static void addGridForces(const float* x, const float* y, const float* charge, float* outFx, float* outFy,
+                          jint from, jint to, const FieldGrid& grid) {
+    for (jint i = from; i < to; i++) {
+        float px = x[i];
+        float py = y[i];
+        float q = charge[i];
+        float forceX = 0.0f;
+        float forceY = 0.0f;
 
+        // Clamped in float so the neighbourhood bounds cannot overflow for particles far outside the grid
+        jint column = (jint) fmax(-2.0f, fmin((float) grid.columns + 1, floor((px - grid.originX) / grid.cellSize)));
+        jint row = (jint) fmax(-2.0f, fmin((float) grid.rows + 1, floor((py - grid.originY) / grid.cellSize)));
+        for (jint r = max(0, row - 1); r <= min(grid.rows - 1, row + 1); r++) {
+            for (jint c = max(0, column - 1); c <= min(grid.columns - 1, column + 1); c++) {
+                jint cell = r * grid.columns + c;
+                for (jint slot = grid.cellStart[cell]; slot < grid.cellStart[cell + 1]; slot++) {
+                    const float* field = grid.fields + slot * FIELD_STRIDE;
+                    float dx = field[0] - px;
+                    float dy = field[1] - py;
+                    // The far field keeps every near field, otherwise fields past their cutoff are dropped
+                    if (!grid.farField && dx * dx + dy * dy > field[3]) continue;
+                    addPointForce(forceX, forceY, dx, dy, q, field[2]);
+                }
+            }
+        }
+        if (grid.farField) {
+            addFarField(forceX, forceY, grid, px, py, q, row, column);
+        }
 
-    jmethodID getFrequencyMethod = env->GetMethodID(emitterClass, "getFrequency", "()F");
-    if (getFrequencyMethod == nullptr) {
-        cerr << "Could not find getMass() method" << endl;
-        return;
+        outFx[i] += forceX;
+        outFy[i] += forceY;
     }
+}
 
-    float f = env->CallFloatMethod(obj, getFrequencyMethod);
-   
-    jmethodID getThetaMethod = env->GetMethodID(emitterClass, "getTheta", "()F");
-    if (getThetaMethod == nullptr) {
-        cerr << "Could not find getMass() method" << endl;
-        return;
+// Integrates particles [from, to) using the same scheme as updateParticle
+static void integrate(float* x, float* y, float* vx, float* vy, const float* fx, const float* fy, const float* mass, jint from, jint to) {
+    float dt = 1.0f;
+    for (jint i = from; i < to; i++) {
+        x[i] += vx[i] * dt + (fx[i] * dt * dt) / (2.0f * mass[i]);
+        y[i] += vy[i] * dt + (fy[i] * dt * dt) / (2.0f * mass[i]);
+        vx[i] += (fx[i] / mass[i]) * dt;
+        vy[i] += (fy[i] / mass[i]) * dt;
     }
+}
 
-    float theta = env->CallFloatMethod(obj, getThetaMethod);
-
+static float* bufferAddress(JNIEnv* env, jobject buffer) {
+    return buffer == nullptr ? nullptr : (float*) env->GetDirectBufferAddress(buffer);
+}
 
-    // Get the getPosition() method ID
-    jmethodID getPositionMethod = env->GetMethodID(emitterClass, "getPosition", "()Ljava/util/Vector;");
-    if (getPositionMethod == nullptr) {
-        std::cerr << "Could not find getPosition() method" << std::endl;
+// Bulk step over particles [from, to) of the ParticleStore direct buffers: no Java object access.
+// Ranges only write their own particles, so disjoint ranges may run concurrently.
+JNIEXPORT void JNICALL Java_custom_Pack_Physics_NativeBackend_stepNative(JNIEnv* env, jclass cls,
+        jobject xBuffer, jobject yBuffer, jobject vxBuffer, jobject vyBuffer, jobject fxBuffer, jobject fyBuffer,
+        jobject massBuffer, jobject chargeBuffer, jint from, jint to,
+        jobject fieldBuffer, jint unboundedCount, jobject cellStartBuffer, jobject cellAggregateBuffer, jobject blockAggregateBuffer,
+        jfloat originX, jfloat originY, jfloat cellSize, jint columns, jint rows, jint farField, jint gravityEnabled, jint flags) {
+    float* x = bufferAddress(env, xBuffer);
+    float* y = bufferAddress(env, yBuffer);
+    float* vx = bufferAddress(env, vxBuffer);
+    float* vy = bufferAddress(env, vyBuffer);
+    float* fx = bufferAddress(env, fxBuffer);
+    float* fy = bufferAddress(env, fyBuffer);
+    float* mass = bufferAddress(env, massBuffer);
+    float* charge = bufferAddress(env, chargeBuffer);
+
+    if (x == nullptr || y == nullptr || vx == nullptr || vy == nullptr || fx == nullptr || fy == nullptr || mass == nullptr || charge == nullptr) {
+        cerr << "stepNative requires direct buffers" << endl;
         return;
     }
 
-    // Call getPosition() to get the Java Vector<Float>
-    jobject positionVector = env->CallObjectMethod(obj, getPositionMethod);
-
-    // Convert the Java Vector<Float> to a C++ std::vector<float>
-    vector<float> cppPositionVector = getCppVectorFromJavaVector(env, positionVector);
-
-    jmethodID getMeanPositionMethod = env->GetMethodID(emitterClass, "getMeanPosition", "()Ljava/util/Vector;");
-    if (getMeanPositionMethod == nullptr) {
-        std::cerr << "Could not find getMeanPosition() method" << std::endl;
-        return;
+    FieldGrid grid;
+    grid.fields = bufferAddress(env, fieldBuffer);
+    grid.unboundedCount = grid.fields == nullptr ? 0 : unboundedCount;
+    grid.cellStart = cellStartBuffer == nullptr ? nullptr : (const jint*) env->GetDirectBufferAddress(cellStartBuffer);
+    grid.cellAggregates = bufferAddress(env, cellAggregateBuffer);
+    grid.blockAggregates = bufferAddress(env, blockAggregateBuffer);
+    grid.originX = originX;
+    grid.originY = originY;
+    grid.cellSize = cellSize;
+    grid.columns = grid.fields == nullptr || grid.cellStart == nullptr ? 0 : columns;
+    grid.rows = rows;
+    grid.farField = farField == 1 && grid.cellAggregates != nullptr && grid.blockAggregates != nullptr;
+
+    if (flags & STEP_FORCES) {
+        computeForces(x, y, mass, charge, fx, fy, from, to, grid.fields, grid.unboundedCount, gravityEnabled);
+        if (grid.columns > 0) {
+            addGridForces(x, y, charge, fx, fy, from, to, grid);
+        }
     }
-
-    // Call getPosition() to get the Java Vector<Float>
-    jobject meanPositionVector = env->CallObjectMethod(obj, getMeanPositionMethod);
-
-    // Convert the Java Vector<Float> to a C++ std::vector<float>
-    vector<float> cppMeanPositionVector = getCppVectorFromJavaVector(env, meanPositionVector);
-
-
-    float newTheta = theta + 2 * PI * f; // Increment theta by angular frequency
-    float newY = cppMeanPositionVector[1] + A * sin(newTheta); // Update vertical position
-
-    cppPositionVector[1] = newY; // Update the y-component of the position vector
-
-    jmethodID setThetaMethod = env->GetMethodID(emitterClass, "setTheta", "(F)V");
-    if (setThetaMethod == nullptr) {
-        cerr << "Could not find getMass() method" << endl;
-        return;
+    if (flags & STEP_INTEGRATE) {
+        integrate(x, y, vx, vy, fx, fy, mass, from, to);
     }
+}
 
-    env->CallVoidMethod(obj, setThetaMethod, newTheta);
-
-
-    // Convert the C++ vector to a Java Vector<Float>
-    jobject javaPositionVector = getJavaVectorFromCppVector(env, cppPositionVector);
-
- 
-    jmethodID setPositionMethod = env->GetMethodID(emitterClass, "setPosition", "(Ljava/util/Vector;)V");
 
-    if (setPositionMethod != nullptr) {
-        env->CallVoidMethod(obj, setPositionMethod, javaPositionVector);
-    } else {
-        std::cerr << "Could not find setPosition() method" << std::endl;
+// Writes counts[k] vx, vy pairs for each of n emitters, one after the other, into a caller-owned array.
+// Emitter k is given by parameters[3k..3k+2] = angle, spread, speed and its generator by states[k],
+// which is advanced in place; the arithmetic matches JavaBackend.fill.
+JNIEXPORT void JNICALL Java_custom_Pack_Physics_NativeBackend_fillVelocities0(JNIEnv* env, jclass cls, jfloatArray parameterArray, jlongArray stateArray, jintArray countArray, jint n, jfloatArray out) {
+    jsize length = env->GetArrayLength(out);
+    jfloat* parameters = (jfloat*) env->GetPrimitiveArrayCritical(parameterArray, nullptr);
+    jlong* states = (jlong*) env->GetPrimitiveArrayCritical(stateArray, nullptr);
+    jint* counts = (jint*) env->GetPrimitiveArrayCritical(countArray, nullptr);
+    jfloat* velocities = (jfloat*) env->GetPrimitiveArrayCritical(out, nullptr);
+    if (parameters != nullptr && states != nullptr && counts != nullptr && velocities != nullptr) {
+        jsize i = 0;
+        for (jint k = 0; k < n; k++) {
+            float angle = parameters[3 * k];
+            float spread = parameters[3 * k + 1];
+            float speed = parameters[3 * k + 2];
+            float angL = angle - spread / 2;
+            uint64_t state = (uint64_t) states[k];
+            for (jint j = 0; j < counts[k] && i + 1 < length; j++, i += 2) {
+                float ang = (float) (angL + nextUnit(state) * spread);
+                velocities[i] = (float) cos((double) ang) * speed;
+                velocities[i + 1] = (float) sin((double) ang) * speed;
+            }
+            states[k] = (jlong) state;
+        }
     }
-
-    
+    if (velocities != nullptr) env->ReleasePrimitiveArrayCritical(out, velocities, 0);
+    if (counts != nullptr) env->ReleasePrimitiveArrayCritical(countArray, counts, JNI_ABORT);
+    if (states != nullptr) env->ReleasePrimitiveArrayCritical(stateArray, states, 0);
+    if (parameters != nullptr) env->ReleasePrimitiveArrayCritical(parameterArray, parameters, JNI_ABORT);
 }
 }
\ No newline at end of file
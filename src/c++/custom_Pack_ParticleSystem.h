@@ -1,21 +0,0 @@
-/* DO NOT EDIT THIS FILE - it is machine generated */
-#include <jni.h>
-/* Header for class custom_Pack_ParticleSystem */
-
-#ifndef _Included_custom_Pack_ParticleSystem
-#define _Included_custom_Pack_ParticleSystem
-#ifdef __cplusplus
-extern "C" {
-#endif
-/*
- * Class:     custom_Pack_ParticleSystem
- * Method:    setForces
- * Signature: ()V
- */
-JNIEXPORT void JNICALL Java_custom_Pack_ParticleSystem_setForces
-  (JNIEnv *, jobject);
-
-#ifdef __cplusplus
-}
-#endif
-#endif
@@ -1,21 +0,0 @@
-/* DO NOT EDIT THIS FILE - it is machine generated */
-#include <jni.h>
-/* Header for class custom_Pack_Particle_Particle */
-
-#ifndef _Included_custom_Pack_Particle_Particle
-#define _Included_custom_Pack_Particle_Particle
-#ifdef __cplusplus
-extern "C" {
-#endif
-/*
- * Class:     custom_Pack_Particle_Particle
- * Method:    update
- * Signature: ()V
- */
-JNIEXPORT void JNICALL Java_custom_Pack_Particle_Particle_update
-  (JNIEnv *, jobject);
-
-#ifdef __cplusplus
-}
-#endif
-#endif
@@ -0,0 +1,37 @@
+/* DO NOT EDIT THIS FILE - it is machine generated */
+#include <jni.h>
+/* Header for class custom_Pack_Physics_NativeBackend */
+
+#ifndef _Included_custom_Pack_Physics_NativeBackend
+#define _Included_custom_Pack_Physics_NativeBackend
+#ifdef __cplusplus
+extern "C" {
+#endif
+/*
+ * Class:     custom_Pack_Physics_NativeBackend
+ * Method:    stepNative
+ * Signature: (Ljava/nio/FloatBuffer;Ljava/nio/FloatBuffer;Ljava/nio/FloatBuffer;Ljava/nio/FloatBuffer;Ljava/nio/FloatBuffer;Ljava/nio/FloatBuffer;Ljava/nio/FloatBuffer;Ljava/nio/FloatBuffer;IILjava/nio/FloatBuffer;ILjava/nio/IntBuffer;Ljava/nio/FloatBuffer;Ljava/nio/FloatBuffer;FFFIIIII)V
+ */
+JNIEXPORT void JNICALL Java_custom_Pack_Physics_NativeBackend_stepNative
+  (JNIEnv *, jclass, jobject, jobject, jobject, jobject, jobject, jobject, jobject, jobject, jint, jint, jobject, jint, jobject, jobject, jobject, jfloat, jfloat, jfloat, jint, jint, jint, jint, jint);
+
+/*
+ * Class:     custom_Pack_Physics_NativeBackend
+ * Method:    updateParticle
+ * Signature: (Lcustom/Pack/Particle/Particle;)V
+ */
+JNIEXPORT void JNICALL Java_custom_Pack_Physics_NativeBackend_updateParticle
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     custom_Pack_Physics_NativeBackend
+ * Method:    fillVelocities0
+ * Signature: ([F[J[II[F)V
+ */
+JNIEXPORT void JNICALL Java_custom_Pack_Physics_NativeBackend_fillVelocities0
+  (JNIEnv *, jclass, jfloatArray, jlongArray, jintArray, jint, jfloatArray);
+
+#ifdef __cplusplus
+}
+#endif
+#endif
@@ -0,0 +1,424 @@
+package custom.Pack;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.Emitter.OscillatingEmitter;
+import custom.Pack.Emitter.PulseEmitter;
+import custom.Pack.FieldPoint.FieldPoint;
+import custom.Pack.Particle.EvictionPolicy;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.PairInteraction;
+
+/**
+ * Versioned binary snapshot of a whole ParticleSystem: settings, field points, emitters and every
+ * particle. Everything is little-endian.
+ *
+ *   header   "PSNP", int version, int metadata length, int reserved
+ *   metadata settings, field points, emitters, the particle colour palette and the particle count
+ *   columns  from the next multiple of 8: x, y, vx, vy, fx, fy, mass, charge and size as floats,
+ *            lifespan, age and colour index as ints, then one trail flag byte per particle
+ *
+ * The columns are copied between the file and the store's columns through memory-mapped regions of
+ * a FileChannel, so large snapshots move at disk bandwidth instead of being parsed particle by particle.
+ * Trail histories are not stored; particles with a trail start a new one after loading.
+ */
+public final class BinarySnapshot
+{
+    public static final int VERSION = 4; // 2 added the emitter seed, 3 its emission rate, 4 the oscillation axis and phase
+    private static final byte[] MAGIC = { 'P', 'S', 'N', 'P' };
+    private static final int HEADER_BYTES = 16;
+
+    private static final byte EMITTER = 0;
+    private static final byte OSCILLATING_EMITTER = 1;
+    private static final byte PULSE_EMITTER = 2;
+
+    private BinarySnapshot()
+    {
+    }
+
+    //Whether a file starts with the snapshot header, as opposed to a text preset
+    public static boolean isSnapshot(Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            return channel.size() >= MAGIC.length && ByteBuffer.wrap(MAGIC).equals(read(channel, 0, MAGIC.length));
+        }
+    }
+
+    public static void save(ParticleSystem system, Path path) throws IOException
+    {
+        ParticleStore store = system.getParticleStore();
+        int count = store.size();
+        String[] colors = store.getColor();
+        Map<String, Integer> palette = new HashMap<>();
+        List<String> paletteOrder = new ArrayList<>();
+        String last = null;
+        for(int i = 0; i < count; i++)
+        {
+            // Colours are nearly always the same few shared strings
+            if(colors[i] != null && colors[i] != last)
+            {
+                last = colors[i];
+                if(palette.putIfAbsent(last, paletteOrder.size()) == null)
+                    paletteOrder.add(last);
+            }
+        }
+
+        Metadata meta = new Metadata();
+        writeSettings(system, meta);
+        List<FieldPoint> fieldPoints = system.getFieldPoints();
+        meta.putInt(fieldPoints.size());
+        for(FieldPoint fieldPoint : fieldPoints)
+        {
+            meta.putFloat(fieldPoint.getPosition().get(0));
+            meta.putFloat(fieldPoint.getPosition().get(1));
+            meta.putFloat(fieldPoint.getFieldStrength());
+            meta.putFloat(fieldPoint.getCutoff());
+            meta.putString(fieldPoint.getType());
+        }
+        List<Emitter> emitters = system.getEmitters();
+        meta.putInt(emitters.size());
+        for(Emitter emitter : emitters)
+            writeEmitter(emitter, meta);
+        meta.putInt(paletteOrder.size());
+        for(String color : paletteOrder)
+            meta.putString(color);
+        meta.putInt(count);
+
+        ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + meta.size()).order(ByteOrder.LITTLE_ENDIAN);
+        head.put(MAGIC).putInt(VERSION).putInt(meta.size()).putInt(0);
+        head.put(meta.bytes()).flip();
+
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            while(head.hasRemaining())
+                channel.write(head);
+            long position = align(HEADER_BYTES + meta.size());
+            for(int c = ParticleStore.X; c <= ParticleStore.CHARGE; c++)
+            {
+                map(channel, FileChannel.MapMode.READ_WRITE, position, count, Float.BYTES).asFloatBuffer().put(0, store.getColumn(c), 0, count);
+                position += (long) count * Float.BYTES;
+            }
+            map(channel, FileChannel.MapMode.READ_WRITE, position, count, Float.BYTES).asFloatBuffer().put(0, store.getSize(), 0, count);
+            position += (long) count * Float.BYTES;
+            map(channel, FileChannel.MapMode.READ_WRITE, position, count, Integer.BYTES).asIntBuffer().put(0, store.getLifespan(), 0, count);
+            position += (long) count * Integer.BYTES;
+            map(channel, FileChannel.MapMode.READ_WRITE, position, count, Integer.BYTES).asIntBuffer().put(0, store.getAge(), 0, count);
+            position += (long) count * Integer.BYTES;
+
+            IntBuffer colorIndex = map(channel, FileChannel.MapMode.READ_WRITE, position, count, Integer.BYTES).asIntBuffer();
+            last = null;
+            int lastIndex = -1;
+            for(int i = 0; i < count; i++)
+            {
+                if(colors[i] != last)
+                {
+                    last = colors[i];
+                    lastIndex = last == null ? -1 : palette.get(last);
+                }
+                colorIndex.put(i, lastIndex);
+            }
+            position += (long) count * Integer.BYTES;
+
+            MappedByteBuffer trailFlags = map(channel, FileChannel.MapMode.READ_WRITE, position, count, 1);
+            boolean[] trail = store.getTrail();
+            for(int i = 0; i < count; i++)
+                trailFlags.put(i, trail[i] ? (byte) 1 : (byte) 0);
+        }
+    }
+
+    //Adds the snapshot's field points, emitters and particles to the system and applies its settings.
+    //Particles past the loaded maxParticles are dropped, the earliest slots being kept.
+    public static void load(ParticleSystem system, Path path) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer header = read(channel, 0, HEADER_BYTES);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if(!ByteBuffer.wrap(MAGIC).equals(ByteBuffer.wrap(magic)))
+                throw new IOException("Not a particle snapshot: " + path);
+            int version = header.getInt();
+            if(version < 1 || version > VERSION)
+                throw new IOException("Unsupported snapshot version " + version + " in " + path);
+            int metaLength = header.getInt();
+            ByteBuffer meta = read(channel, HEADER_BYTES, metaLength);
+
+            readSettings(system, meta);
+            int fieldCount = meta.getInt();
+            for(int i = 0; i < fieldCount; i++)
+            {
+                Vector<Float> position = vector(meta.getFloat(), meta.getFloat());
+                float strength = meta.getFloat();
+                float cutoff = meta.getFloat();
+                FieldPoint fieldPoint = new FieldPoint(position, strength, getString(meta));
+                fieldPoint.setCutoff(cutoff);
+                system.getFieldPoints().add(fieldPoint);
+            }
+            system.invalidateFieldIndex();
+            int emitterCount = meta.getInt();
+            for(int i = 0; i < emitterCount; i++)
+                system.getEmitters().add(readEmitter(system, meta, version));
+            system.invalidateEmitters();
+            String[] palette = new String[meta.getInt()];
+            for(int i = 0; i < palette.length; i++)
+                palette[i] = getString(meta);
+            //Columns hold count particles; only the first loaded of them fit under the loaded cap
+            int count = meta.getInt();
+            int loaded = system.admit(count);
+
+            ParticleStore store = system.getParticleStore();
+            int base = store.allocate(loaded);
+            long position = align(HEADER_BYTES + metaLength);
+            for(int c = ParticleStore.X; c <= ParticleStore.CHARGE; c++)
+            {
+                FloatBuffer column = map(channel, FileChannel.MapMode.READ_ONLY, position, loaded, Float.BYTES).asFloatBuffer();
+                store.getColumn(c).put(base, column, 0, loaded);
+                position += (long) count * Float.BYTES;
+            }
+            map(channel, FileChannel.MapMode.READ_ONLY, position, loaded, Float.BYTES).asFloatBuffer().get(0, store.getSize(), base, loaded);
+            position += (long) count * Float.BYTES;
+            map(channel, FileChannel.MapMode.READ_ONLY, position, loaded, Integer.BYTES).asIntBuffer().get(0, store.getLifespan(), base, loaded);
+            position += (long) count * Integer.BYTES;
+            map(channel, FileChannel.MapMode.READ_ONLY, position, loaded, Integer.BYTES).asIntBuffer().get(0, store.getAge(), base, loaded);
+            position += (long) count * Integer.BYTES;
+
+            IntBuffer colorIndex = map(channel, FileChannel.MapMode.READ_ONLY, position, loaded, Integer.BYTES).asIntBuffer();
+            String[] colors = store.getColor();
+            for(int i = 0; i < loaded; i++)
+            {
+                int index = colorIndex.get(i);
+                colors[base + i] = index < 0 ? null : palette[index];
+            }
+            position += (long) count * Integer.BYTES;
+
+            MappedByteBuffer trailFlags = map(channel, FileChannel.MapMode.READ_ONLY, position, loaded, 1);
+            boolean[] trail = store.getTrail();
+            for(int i = 0; i < loaded; i++)
+                trail[base + i] = trailFlags.get(i) != 0;
+        }
+    }
+
+    private static void writeSettings(ParticleSystem system, Metadata meta)
+    {
+        meta.putInt(system.isGravityEnabled());
+        meta.putDouble(system.getFriction());
+        meta.putInt(system.getMaxParticles());
+        meta.putString(system.getEvictionPolicy().name());
+        meta.putFloat(system.getFieldCutoff());
+        meta.putInt(system.isFarFieldEnabled() ? 1 : 0);
+        meta.putString(system.getPairInteraction().name());
+        meta.putFloat(system.getOpeningAngle());
+        meta.putInt(system.getParticleLifespan());
+        meta.putFloat(system.getMinSpeed());
+        meta.putInt(system.getTrailLength());
+    }
+
+    private static void readSettings(ParticleSystem system, ByteBuffer meta)
+    {
+        system.setGravityEnabled(meta.getInt());
+        system.setFriction(meta.getDouble());
+        system.setMaxParticles(meta.getInt());
+        system.setEvictionPolicy(EvictionPolicy.valueOf(getString(meta)));
+        system.setFieldCutoff(meta.getFloat());
+        system.setFarFieldEnabled(meta.getInt() != 0);
+        system.setPairInteraction(PairInteraction.valueOf(getString(meta)));
+        system.setOpeningAngle(meta.getFloat());
+        system.setParticleLifespan(meta.getInt());
+        system.setMinSpeed(meta.getFloat());
+        system.setTrailLength(meta.getInt());
+    }
+
+    private static void writeEmitter(Emitter emitter, Metadata meta)
+    {
+        byte kind = emitter instanceof OscillatingEmitter ? OSCILLATING_EMITTER : emitter instanceof PulseEmitter ? PULSE_EMITTER : EMITTER;
+        meta.putByte(kind);
+        meta.putFloat(emitter.getPosition().get(0));
+        meta.putFloat(emitter.getPosition().get(1));
+        meta.putFloat(emitter.getSpeed());
+        meta.putFloat(emitter.getSpread());
+        meta.putFloat(emitter.getAngle());
+        meta.putFloat(emitter.getParticlesMass());
+        meta.putByte(emitter.isEmitting() ? (byte) 1 : (byte) 0);
+        meta.putLong(emitter.getSeed());
+        meta.putFloat(emitter.getEmissionRate());
+        if(kind == OSCILLATING_EMITTER)
+        {
+            OscillatingEmitter oscillating = (OscillatingEmitter) emitter;
+            meta.putFloat(oscillating.getAmplitude());
+            meta.putFloat(oscillating.getFrequency());
+            meta.putFloat(oscillating.getTheta());
+            meta.putFloat(oscillating.getMeanX());
+            meta.putFloat(oscillating.getMeanY());
+            meta.putByte((byte) oscillating.getAxis().ordinal());
+            meta.putFloat(oscillating.getPhase());
+        }
+        else if(kind == PULSE_EMITTER)
+            meta.putFloat(((PulseEmitter) emitter).getPulseFrequency());
+    }
+
+    private static Emitter readEmitter(ParticleSystem system, ByteBuffer meta, int version) throws IOException
+    {
+        byte kind = meta.get();
+        Vector<Float> position = vector(meta.getFloat(), meta.getFloat());
+        float speed = meta.getFloat();
+        float spread = meta.getFloat();
+        float angle = meta.getFloat();
+        float mass = meta.getFloat();
+        boolean emitting = meta.get() != 0;
+        // Version 1 emitters keep the seed the system gives new emitters
+        boolean seeded = version >= 2;
+        long seed = seeded ? meta.getLong() : 0;
+        float rate = version >= 3 ? meta.getFloat() : Emitter.DEFAULT_EMISSION_RATE;
+        Emitter emitter;
+        switch(kind)
+        {
+            case EMITTER:
+                emitter = new Emitter(position, speed, spread, angle, mass, system);
+                break;
+            case OSCILLATING_EMITTER:
+                OscillatingEmitter oscillating = new OscillatingEmitter(position, speed, spread, angle, mass, meta.getFloat(), meta.getFloat(), system);
+                oscillating.setTheta(meta.getFloat());
+                oscillating.moveTo(meta.getFloat(), meta.getFloat());
+                if(version >= 4)
+                {
+                    byte axis = meta.get();
+                    if(axis < 0 || axis >= OscillatingEmitter.Axis.values().length)
+                        throw new IOException("Unknown oscillation axis " + axis);
+                    oscillating.setAxis(OscillatingEmitter.Axis.values()[axis]);
+                    oscillating.setPhase(meta.getFloat());
+                }
+                emitter = oscillating;
+                break;
+            case PULSE_EMITTER:
+                emitter = new PulseEmitter(position, speed, spread, angle, mass, meta.getFloat(), system);
+                break;
+            default:
+                throw new IOException("Unknown emitter kind " + kind);
+        }
+        emitter.setIsEmitting(emitting);
+        emitter.setEmissionRate(rate);
+        if(seeded)
+            emitter.setSeed(seed);
+        return emitter;
+    }
+
+    private static Vector<Float> vector(float x, float y)
+    {
+        Vector<Float> vector = new Vector<>(2);
+        vector.add(x);
+        vector.add(y);
+        return vector;
+    }
+
+    private static String getString(ByteBuffer meta)
+    {
+        byte[] bytes = new byte[meta.getInt()];
+        meta.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long align(long position)
+    {
+        return (position + 7) & ~7L;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, int count, int bytesPerElement) throws IOException
+    {
+        MappedByteBuffer buffer = channel.map(mode, position, (long) count * bytesPerElement);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while(buffer.hasRemaining())
+        {
+            if(channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("Snapshot ends early");
+        }
+        return buffer.flip();
+    }
+
+    // Growable little-endian buffer for the metadata block
+    private static final class Metadata
+    {
+        private ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        private void ensure(int bytes)
+        {
+            if(buffer.remaining() < bytes)
+            {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+                grown.put(buffer.flip());
+                buffer = grown;
+            }
+        }
+
+        void putByte(byte value)
+        {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void putInt(int value)
+        {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putFloat(float value)
+        {
+            ensure(Float.BYTES);
+            buffer.putFloat(value);
+        }
+
+        void putLong(long value)
+        {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value)
+        {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void putString(String value)
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        int size()
+        {
+            return buffer.position();
+        }
+
+        ByteBuffer bytes()
+        {
+            return buffer.duplicate().flip();
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package custom.Pack.Emitter;
 import java.util.Vector;
 import custom.Pack.ParticleSystem;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
+import custom.Pack.Physics.PhysicsBackend;
 
 // Represents a particle emitter in the system
 public class Emitter
 {
+    // Particles per simulated second, one burst of PARTICLES_PER_EMIT every step by default
+    public static final float DEFAULT_EMISSION_RATE = PhysicsBackend.PARTICLES_PER_EMIT * ParticleSystem.STEPS_PER_SECOND;
+
     protected Vector<Float> position; 
     private float spread;             
     private float angle;              
@@ -14,7 +16,10 @@ public class Emitter
     protected float particlesMass;    
     protected boolean isEmitting;     
     protected ParticleSystem system;  
-    private Circle visualRepresentation; 
+    private final SplitMix random;    // Draws the emission angles; its state is saved as the seed
+    private float emissionRate = DEFAULT_EMISSION_RATE;
+    private double emissionCarry;     // Fraction of a particle owed from earlier steps
+    private float[] burstVelocities = new float[2 * PhysicsBackend.PARTICLES_PER_EMIT]; // Reused by every burst
 
     // Constructor to initialize the emitter
     public Emitter(Vector<Float> position, float speed, float spread, float angle, float particlesMass, ParticleSystem ps)
@@ -26,27 +31,34 @@ public class Emitter
         this.isEmitting = false;
         this.particlesMass = particlesMass;
         this.system = ps;
-        this.visualRepresentation = new Circle(position.get(0), position.get(1), 10, Color.RED); // Red circle
-    }
-
-    // Get the visual representation (for JavaFX display)
-    public Circle getVisualRepresentation() {
-        return visualRepresentation;
+        this.random = new SplitMix(ps != null ? ps.nextEmitterSeed() : System.nanoTime());
     }
     
     public Vector<Float> getPosition() {
         return position;
     }
 
+    // Coordinates of the position, read without boxing
+    public float getX() {
+        return position.get(0);
+    }
+
+    public float getY() {
+        return position.get(1);
+    }
+
+    // Moves the emitter in place
+    public void moveTo(float x, float y) {
+        position.set(0, x);
+        position.set(1, y);
+    }
+
     public float getParticlesMass() {
         return particlesMass;
     }
     
-    // Update position and visual representation
     public void setPosition(Vector<Float> position) {
         this.position = position;
-        visualRepresentation.setCenterX(position.get(0));
-        visualRepresentation.setCenterY(position.get(1));
     }
     
     public float getSpread() {
@@ -85,29 +97,81 @@ public class Emitter
         this.particlesMass = particlesMass;
     }
 
-    // Native method to calculate particle velocities (implemented in C++)
-    public native float[][] getVelocities();
+    public float getEmissionRate() {
+        return emissionRate;
+    }
+
+    // Particles per simulated second; rates that are not a multiple of STEPS_PER_SECOND are spread over steps
+    public void setEmissionRate(float emissionRate) {
+        if (!(emissionRate >= 0) || Float.isInfinite(emissionRate)) {
+            throw new IllegalArgumentException("Emission rate must be finite and not negative: " + emissionRate);
+        }
+        this.emissionRate = emissionRate;
+    }
+
+    public SplitMix getRandom() {
+        return random;
+    }
+
+    // Seed that reproduces the emitter's velocities from here on
+    public long getSeed() {
+        return random.getState();
+    }
+
+    public void setSeed(long seed) {
+        random.setState(seed);
+    }
+
+    // Calculates particle velocities in the system's physics backend
+    public float[][] getVelocities() {
+        return system.getBackend().getVelocities(this);
+    }
 
-    // Starts emitting particles
+    // Advances the emitter by one step and returns how many particles it emits in it, carrying the
+    // fraction over to the next step. ParticleSystem spawns these for all emitters in one pass.
+    public int particlesDue() {
+        this.isEmitting = true;
+        emissionCarry += (double) emissionRate / ParticleSystem.STEPS_PER_SECOND;
+        int due = (int) emissionCarry;
+        emissionCarry -= due;
+        return due;
+    }
+
+    // Spawns the particles this emitter is due this step on its own, into pooled store slots
     public void emitParticles() 
     {
-        this.isEmitting = true;
-        float[][] velocities = getVelocities(); // Calculate velocities
-        system.addParticles(particlesMass, position, velocities); // Add particles to the system
+        emitBurst(particlesDue());
+    }
+
+    // Spawns count particles at once, apart from the emission rate; for scheduled bursts
+    public void emitBurst(int count)
+    {
+        if (count <= 0) {
+            return;
+        }
+        if (burstVelocities.length < 2 * count) {
+            burstVelocities = new float[2 * count];
+        }
+        system.getBackend().fillVelocities(this, burstVelocities, count);
+        system.addParticles(particlesMass, getX(), getY(), burstVelocities, count);
     }
     
     // Provides a string representation of the emitter
     @Override
     public String toString() {
-        return String.format("Emitter{position=%s/ spread=%f/ angle=%f/ speed=%f/ particlesMass=%f/ isEmitting=%b}",
-            position.toString(), spread, angle, speed, particlesMass, isEmitting);
+        return "Emitter{" + formatFields(position) + "}";
+    }
+
+    // Fields every emitter writes to a preset line, with the position given
+    protected String formatFields(Vector<Float> position) {
+        return String.format("position=%s/ spread=%f/ angle=%f/ speed=%f/ particlesMass=%f/ isEmitting=%b/ seed=%d/ emissionRate=%f",
+            position.toString(), spread, angle, speed, particlesMass, isEmitting, getSeed(), emissionRate);
     }
 
     // Parses a string to create an Emitter object
     public static Emitter parse(String line, ParticleSystem ps) {
         try {
-            line = line.replace("Emitter{", "").replace("}", ""); // Remove enclosing braces
-            String[] parts = line.split("/\\s*");
+            String[] parts = splitFields(line);
             
             Vector<Float> position = parseVector(parts[0].split("=")[1]);
             float spread = Float.parseFloat(parts[1].split("=")[1]);
@@ -118,6 +182,7 @@ public class Emitter
 
             Emitter emitter = new Emitter(position, speed, spread, angle, particlesMass, ps);
             emitter.setIsEmitting(isEmitting);
+            emitter.parseOptionalFields(parts);
             return emitter;
         } catch (Exception e) {
             System.err.println("Error parsing Emitter: " + line);
@@ -126,8 +191,36 @@ public class Emitter
         }
     }
 
+    // Splits a "Type{name=value/ ...}" line into its name=value parts
+    protected static String[] splitFields(String line) {
+        line = line.substring(line.indexOf('{') + 1).replace("}", ""); // Remove the type and enclosing braces
+        return line.split("/\\s*");
+    }
+
+    // Reads the fields after the six every preset has; fields added later are optional, so older presets keep the defaults
+    protected void parseOptionalFields(String[] parts) {
+        for (int i = 6; i < parts.length; i++) {
+            String[] field = parts[i].split("=");
+            parseField(field[0].trim(), field[1]);
+        }
+    }
+
+    // Applies one optional field, ignoring names it does not know
+    protected void parseField(String name, String value) {
+        switch (name) {
+            case "seed":
+                setSeed(Long.parseLong(value));
+                break;
+            case "emissionRate":
+                setEmissionRate(Float.parseFloat(value));
+                break;
+            default:
+                break;
+        }
+    }
+
     // Parses a vector from a string representation
-    private static Vector<Float> parseVector(String vectorString) {
+    protected static Vector<Float> parseVector(String vectorString) {
         vectorString = vectorString.replaceAll("[\\[\\]]", ""); // Remove square brackets
         String[] values = vectorString.split(",\\s*");
         Vector<Float> vector = new Vector<>();
@@ -137,6 +230,7 @@ public class Emitter
         return vector;
     }
 
-    // Native method to update the emitter properties for oscillating emitter (implemented in C++)
-    public native void updateEmitter();
+    // Updates the emitter properties each frame; only oscillating emitters move
+    public void updateEmitter() {
+    }
 }
\ No newline at end of file
@@ -2,21 +2,33 @@ package custom.Pack.Emitter;
 import java.util.*;
 import custom.Pack.Emitter.Emitter;
 import custom.Pack.ParticleSystem;
+import custom.Pack.Physics.OscillatorTable;
+
+// Swings along one axis around its mean position, by amplitude * sin(theta + phase), theta advancing by
+// 2pi * frequency every step. Once its system has stepped, theta and the position live in the system's
+// OscillatorTable, which moves all oscillating emitters in one pass.
 public class OscillatingEmitter extends Emitter
 {
+    public enum Axis { X, Y }
+
     private float amplitude;
-    private float frequency;
-    private Vector<Float> position;
-    private Vector<Float> meanPosition;
-    private float theta;
+    private float frequency; // Cycles per step
+    private float meanX;
+    private float meanY;
+    private float theta;     // Only used while not attached to a table
+    private float phase;
+    private Axis axis = Axis.Y;
+    private OscillatorTable table; // Holds theta and the position while attached
+    private int row;
 
     public OscillatingEmitter(Vector<Float> position, float speed, float spread, float angle, float particlesMass, float amplitude, float frequency, ParticleSystem ps)
     {
-        super(position, speed, spread, angle, particlesMass, ps);
+        super(new Vector<>(position), speed, spread, angle, particlesMass, ps);
         this.amplitude = amplitude;
         this.frequency = frequency;
         this.theta = 0;
-        this.meanPosition = position;
+        this.meanX = position.get(0);
+        this.meanY = position.get(1);
     }
 
     public float getAmplitude()
@@ -27,6 +39,7 @@ public class OscillatingEmitter extends Emitter
     public void setAmplitude(float amplitude)
     {
         this.amplitude = amplitude;
+        reload();
     }
 
     public float getFrequency()
@@ -37,28 +50,185 @@ public class OscillatingEmitter extends Emitter
     public void setFrequency(float frequency)
     {
         this.frequency = frequency;
+        reload();
     }
 
-
     public float getTheta()
     {
-        return this.theta;
+        return table != null ? table.getTheta(row) : theta;
     }
 
     public void setTheta(float theta)
     {
-        this.theta = theta;
+        if (table != null)
+            table.setTheta(row, theta);
+        else
+            this.theta = theta;
+    }
+
+    // Offset added to theta, so emitters sharing a frequency can swing out of step
+    public float getPhase()
+    {
+        return phase;
+    }
+
+    public void setPhase(float phase)
+    {
+        this.phase = phase;
+        reload();
+    }
+
+    public Axis getAxis()
+    {
+        return axis;
+    }
+
+    public void setAxis(Axis axis)
+    {
+        this.axis = axis;
+        reload();
     }
 
+    public float getMeanX()
+    {
+        return meanX;
+    }
+
+    public float getMeanY()
+    {
+        return meanY;
+    }
+
+    // Copy of the mean position
     public Vector<Float> getMeanPosition()
     {
-        return meanPosition;
+        return new Vector<>(Arrays.asList(meanX, meanY));
     }
+
     public void setMeanPosition(Vector<Float> meanPosition)
     {
-        this.meanPosition = meanPosition;
+        moveTo(meanPosition.get(0), meanPosition.get(1));
+    }
+
+    // Moves the mean position; the emitter keeps swinging around the new one
+    @Override
+    public void moveTo(float x, float y)
+    {
+        this.meanX = x;
+        this.meanY = y;
+        reload();
+    }
+
+    @Override
+    public void setPosition(Vector<Float> position)
+    {
+        moveTo(position.get(0), position.get(1));
+    }
+
+    @Override
+    public float getX()
+    {
+        return table != null ? table.getX(row) : meanX + (axis == Axis.X ? offset() : 0);
+    }
+
+    @Override
+    public float getY()
+    {
+        return table != null ? table.getY(row) : meanY + (axis == Axis.Y ? offset() : 0);
+    }
+
+    // Current position, copied into the emitter's vector
+    @Override
+    public Vector<Float> getPosition()
+    {
+        position.set(0, getX());
+        position.set(1, getY());
+        return position;
+    }
+
+    private float offset()
+    {
+        return amplitude * OscillatorTable.sin(OscillatorTable.wrap(theta) + OscillatorTable.wrap(phase));
+    }
+
+    // Called by OscillatorTable when it gives the emitter a row
+    public void attach(OscillatorTable table, int row)
+    {
+        this.table = table;
+        this.row = row;
+    }
+
+    // Called by OscillatorTable before it drops its rows; theta is copied back from the row
+    public void detach(OscillatorTable table)
+    {
+        if (this.table == table) {
+            this.theta = table.getTheta(row);
+            this.table = null;
+        }
+    }
+
+    private void reload()
+    {
+        if (table != null)
+            table.load(row, this);
+    }
+
+    // Advances this emitter alone by one step; a system advances all of its oscillating emitters in its table instead
+    @Override
+    public void updateEmitter() {
+        setTheta(getTheta() + OscillatorTable.TWO_PI * frequency);
+    }
+
+    @Override
+    public String toString() {
+        return "OscillatingEmitter{" + formatFields(getMeanPosition())
+            + String.format("/ amplitude=%f/ frequency=%f/ theta=%f/ phase=%f/ axis=%s}", amplitude, frequency, getTheta(), phase, axis);
+    }
+
+    // Parses a line written by toString
+    public static OscillatingEmitter parse(String line, ParticleSystem ps) {
+        try {
+            String[] parts = splitFields(line);
+
+            Vector<Float> position = parseVector(parts[0].split("=")[1]);
+            float spread = Float.parseFloat(parts[1].split("=")[1]);
+            float angle = Float.parseFloat(parts[2].split("=")[1]);
+            float speed = Float.parseFloat(parts[3].split("=")[1]);
+            float particlesMass = Float.parseFloat(parts[4].split("=")[1]);
+            boolean isEmitting = Boolean.parseBoolean(parts[5].split("=")[1]);
+
+            OscillatingEmitter emitter = new OscillatingEmitter(position, speed, spread, angle, particlesMass, 0f, 0f, ps);
+            emitter.setIsEmitting(isEmitting);
+            emitter.parseOptionalFields(parts);
+            return emitter;
+        } catch (Exception e) {
+            System.err.println("Error parsing OscillatingEmitter: " + line);
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    protected void parseField(String name, String value) {
+        switch (name) {
+            case "amplitude":
+                setAmplitude(Float.parseFloat(value));
+                break;
+            case "frequency":
+                setFrequency(Float.parseFloat(value));
+                break;
+            case "theta":
+                setTheta(Float.parseFloat(value));
+                break;
+            case "phase":
+                setPhase(Float.parseFloat(value));
+                break;
+            case "axis":
+                setAxis(Axis.valueOf(value.trim()));
+                break;
+            default:
+                super.parseField(name, value);
+                break;
+        }
     }
-    
-    // Native method to update the emitter properties for each frame for oscillation (implemented in C++)
-    public native void updateEmitter();
-}
\ No newline at end of file
+}
@@ -3,16 +3,14 @@ package custom.Pack.Emitter;
 import java.util.*;
 import custom.Pack.Emitter.Emitter;
 import custom.Pack.ParticleSystem;
+import custom.Pack.Simulation.StepScheduler;
 
+// Switches its emission on and off every 1 / frequency simulated milliseconds, on the system's step scheduler
 public class PulseEmitter extends Emitter {
 
-    static {
-        System.loadLibrary("ParticleSystem"); // Load native library
-    }
-
-    private long lastUpdateTime = 0; // Instance-specific timer for toggling emission
     private boolean shouldEmit = true; // Tracks whether this instance should emit particles
-    private float frequency;
+    private float frequency;           // Switches per simulated millisecond
+    private StepScheduler.ScheduledEvent nextSwitch; // Null until the emitter first runs
 
     public PulseEmitter(Vector<Float> position, float speed, float spread, float angle, float particlesMass, float frequency, ParticleSystem ps) {
         super(position, speed, spread, angle, particlesMass, ps);
@@ -24,24 +22,32 @@ public class PulseEmitter extends Emitter {
         return frequency;
     }
 
+    // Takes effect from the next step, which starts a new pulse
     public void setPulseFrequency(float frequency)
     {
         this.frequency = frequency;
+        if (nextSwitch != null) {
+            nextSwitch.cancel();
+            nextSwitch = null;
+        }
     }
 
-    @Override
-    public void emitParticles() {
-        long currentTime = System.currentTimeMillis();
+    // Steps between switches, at least one; 0.002 switches every 500 ms, 30 steps
+    public long getPulseSteps() {
+        return Math.max(1L, Math.round(ParticleSystem.STEPS_PER_SECOND / (1000.0 * frequency)));
+    }
 
-        // Toggle emitting state every 0.5 seconds (500 milliseconds)
-        if (currentTime - lastUpdateTime >= 1/frequency) {
-            shouldEmit = !shouldEmit; // Switch between emitting and not emitting
-            lastUpdateTime = currentTime;
-        }
+    public boolean isPulseOn() {
+        return shouldEmit;
+    }
 
-        if (shouldEmit) {
-            float[][] velocities = getVelocities(); // Fetch new velocities
-            system.addParticles(particlesMass, position, velocities); // Add the particles to the system
+    // Emits at the emission rate while switched on and owes nothing while off
+    @Override
+    public int particlesDue() {
+        // Only the next switch is scheduled, so a removed emitter leaves at most one event behind
+        if ((nextSwitch == null || nextSwitch.isDone()) && frequency > 0) {
+            nextSwitch = system.getScheduler().scheduleIn(getPulseSteps(), step -> shouldEmit = !shouldEmit);
         }
+        return shouldEmit ? super.particlesDue() : 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package custom.Pack.Emitter;
+
+/**
+ * SplitMix64 random number generator. Its whole state is one long, so an emitter's generator can be
+ * saved in a preset as its seed and resumed exactly, and split() derives an independent generator
+ * for every new emitter. NativeBackend runs the same sequence in C++, so both backends draw the same numbers.
+ */
+public final class SplitMix {
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public SplitMix(long seed) {
+        state = seed;
+    }
+
+    // Seed that resumes the sequence from here
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    public long nextLong() {
+        state += GAMMA;
+        return mix(state);
+    }
+
+    // Uniform in [0, 1) from the top 53 bits
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    // New generator seeded from this one
+    public SplitMix split() {
+        return new SplitMix(nextLong());
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
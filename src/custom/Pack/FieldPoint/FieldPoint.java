@@ -1,38 +1,24 @@
 package custom.Pack.FieldPoint;
 
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
 import java.util.Vector;
 
 /**
  * Represents a FieldPoint in the simulation.
  * A FieldPoint has a position, a field strength, and can affect particles nearby.
+ * It holds no visuals; the UI draws field points from frame snapshots.
  */
 public class FieldPoint {
     // Attributes
     private Vector<Float> position; // Position vector, assumed to be 2D or 3D
     private float fieldStrength; // Strength of the field (could be positive or negative for attraction/repulsion)
     private String type; // Type of field, e.g., "attraction" or "repulsion"
-
-    private Circle visualRepresentation; // JavaFX graphical representation
+    private float cutoff; // Distance beyond which the field is ignored, 0 uses the system cutoff
 
     // Constructor
     public FieldPoint(Vector<Float> position, float fieldStrength, String type) {
         this.position = position;
         this.fieldStrength = fieldStrength;
         this.type = type;
-
-        // Initialize the graphical representation
-        this.visualRepresentation = new Circle(position.get(0), position.get(1), 10);
-
-        // Set the color of the Circle based on the type of field
-        if (type.equalsIgnoreCase("attraction")) {
-            visualRepresentation.setFill(Color.BLUE); // Blue for attraction
-        } else if (type.equalsIgnoreCase("repulsion")) {
-            visualRepresentation.setFill(Color.RED);  // Red for repulsion
-        } else {
-            visualRepresentation.setFill(Color.GRAY); // Default for unknown types
-        }
     }
 
     // Getter and Setter methods
@@ -42,10 +28,6 @@ public class FieldPoint {
 
     public void setPosition(Vector<Float> position) {
         this.position = position;
-
-        // Update the graphical representation's position in JavaFX
-        visualRepresentation.setCenterX(position.get(0));
-        visualRepresentation.setCenterY(position.get(1));
     }
 
     public float getFieldStrength() {
@@ -62,15 +44,15 @@ public class FieldPoint {
 
     public void setType(String type) {
         this.type = type;
+    }
 
-        // Update the color of the graphical representation based on the new type
-        if (type.equalsIgnoreCase("attraction")) {
-            visualRepresentation.setFill(Color.BLUE);
-        } else if (type.equalsIgnoreCase("repulsion")) {
-            visualRepresentation.setFill(Color.RED);
-        } else {
-            visualRepresentation.setFill(Color.GRAY);
-        }
+    public float getCutoff() {
+        return cutoff;
+    }
+
+    // Changing the cutoff needs ParticleSystem.invalidateFieldIndex() to take effect
+    public void setCutoff(float cutoff) {
+        this.cutoff = cutoff;
     }
 
     /**
@@ -81,13 +63,14 @@ public class FieldPoint {
 
      @Override
      public String toString() {
-         return String.format("%s/%f/%s", position, fieldStrength, type);
+         String line = String.format("%s/%f/%s", position, fieldStrength, type);
+         return cutoff > 0 ? line + "/" + cutoff : line;
      }
 
      public static FieldPoint parse(String line) {
         try {
-            // Split the line into parts: position, field strength, and type
-            String[] parts = line.split("/", 3); // Split into 3 parts max
+            // Split the line into parts: position, field strength, type and an optional cutoff
+            String[] parts = line.split("/", 4); // Split into 4 parts max
             if (parts.length < 3) {
                 throw new IllegalArgumentException("Invalid FieldPoint format: " + line);
             }
@@ -102,7 +85,11 @@ public class FieldPoint {
             String type = parts[2].trim();
     
             // Return the constructed FieldPoint
-            return new FieldPoint(position, fieldStrength, type);
+            FieldPoint fieldPoint = new FieldPoint(position, fieldStrength, type);
+            if (parts.length > 3) {
+                fieldPoint.setCutoff(Float.parseFloat(parts[3].trim()));
+            }
+            return fieldPoint;
         } catch (Exception e) {
             System.err.println("Error parsing FieldPoint: " + line);
             e.printStackTrace();
@@ -0,0 +1,403 @@
+package custom.Pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import custom.Pack.PhaseTimer.Phase;
+import custom.Pack.Physics.PhysicsBackend;
+import custom.Pack.Recording.TrajectoryRecorder;
+
+/**
+ * Steps a preset, or a generated StressScene, without a display, for throughput runs on CI and batch machines.
+ * Every step culls against the world bounds and then advances the system, as the UI's simulation
+ * loop does, but nothing is captured for rendering. Steps run for a step count, a wall-clock
+ * budget or whichever of the two ends first.
+ *
+ * Run with: mvn compile exec:java -Dexec.mainClass=custom.Pack.HeadlessRunner
+ *           -Dexec.args="preset.txt [--steps N] [--seconds S] [--warmup N] [--width W] [--height H]
+ *                        [--backend java|native] [--threads T] [--format text|json|csv] [--out file]
+ *                        [--record file] [--record-every N] [--record-backpressure drop|block]"
+ * The report goes to --out when given, otherwise to standard output. With --record every Nth measured
+ * step is also written to a trajectory file.
+ */
+public class HeadlessRunner
+{
+    // The UI's simulation area
+    public static final int DEFAULT_WIDTH = 900;
+    public static final int DEFAULT_HEIGHT = 800;
+    public static final long DEFAULT_STEPS = 1000;
+
+    private static final String USAGE = "Usage: HeadlessRunner <preset|stress-EMITTERSxFIELDSxPARTICLES> [--steps N] [--seconds S] [--warmup N] [--width W] [--height H]"
+        + " [--backend java|native] [--threads T] [--format text|json|csv] [--out file]"
+        + " [--record file] [--record-every N] [--record-backpressure drop|block]";
+
+    private final ParticleSystem system;
+    private String name = "";
+    private int width = DEFAULT_WIDTH;
+    private int height = DEFAULT_HEIGHT;
+    private long steps = DEFAULT_STEPS; // 0 runs until the wall-clock budget is spent
+    private double seconds; // 0 for no wall-clock budget
+    private long warmupSteps;
+    private TrajectoryRecorder recorder;
+
+    private final PhaseTimer timer = new PhaseTimer();
+    private final LatencyHistogram latency = new LatencyHistogram(); // Wall time of every measured step
+    private long stepsRun;
+    private long elapsedNanos;
+    private long particleSteps; // Particles stepped, summed over every step
+    private int peakParticles;
+
+    public HeadlessRunner(ParticleSystem system)
+    {
+        this.system = system;
+    }
+
+    public ParticleSystem getSystem()
+    {
+        return system;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    //Name of the run in reports, usually the preset file
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    //Particles leaving [0, width] x [0, height] are culled
+    public void setWorldSize(int width, int height)
+    {
+        if(width <= 0 || height <= 0)
+            throw new IllegalArgumentException("World size must be positive: " + width + "x" + height);
+        this.width = width;
+        this.height = height;
+    }
+
+    public void setSteps(long steps)
+    {
+        if(steps < 0)
+            throw new IllegalArgumentException("Steps must not be negative: " + steps);
+        this.steps = steps;
+    }
+
+    public void setSeconds(double seconds)
+    {
+        if(!(seconds >= 0))
+            throw new IllegalArgumentException("Seconds must not be negative: " + seconds);
+        this.seconds = seconds;
+    }
+
+    //Steps run before measuring, so the JIT and the particle pool settle
+    public void setWarmupSteps(long warmupSteps)
+    {
+        if(warmupSteps < 0)
+            throw new IllegalArgumentException("Warmup steps must not be negative: " + warmupSteps);
+        this.warmupSteps = warmupSteps;
+    }
+
+    public TrajectoryRecorder getRecorder()
+    {
+        return recorder;
+    }
+
+    //Measured steps are passed to a started recorder, counting from 1
+    public void setRecorder(TrajectoryRecorder recorder)
+    {
+        this.recorder = recorder;
+    }
+
+    public void run()
+    {
+        if(steps == 0 && seconds == 0)
+            throw new IllegalStateException("Neither a step count nor a wall-clock budget is set");
+        for(long i = 0; i < warmupSteps; i++)
+            stepOnce();
+
+        timer.reset();
+        latency.reset();
+        stepsRun = 0;
+        particleSteps = 0;
+        peakParticles = 0;
+        system.setPhaseTimer(timer);
+        long start = System.nanoTime();
+        long deadline = seconds > 0 ? start + (long) (seconds * 1e9) : Long.MAX_VALUE;
+        long now = start;
+        while((steps == 0 || stepsRun < steps) && now < deadline)
+        {
+            stepOnce();
+            if(recorder != null)
+                recorder.record(system.getParticleStore(), stepsRun + 1);
+            int count = system.getParticleStore().size();
+            particleSteps += count;
+            peakParticles = Math.max(peakParticles, count);
+            stepsRun++;
+            long end = System.nanoTime();
+            latency.record(end - now);
+            now = end;
+        }
+        elapsedNanos = now - start;
+        system.setPhaseTimer(null);
+    }
+
+    private void stepOnce()
+    {
+        system.cull(width, height);
+        system.step();
+    }
+
+    public long getStepsRun()
+    {
+        return stepsRun;
+    }
+
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    public PhaseTimer getPhaseTimer()
+    {
+        return timer;
+    }
+
+    public LatencyHistogram getLatency()
+    {
+        return latency;
+    }
+
+    public int getPeakParticles()
+    {
+        return peakParticles;
+    }
+
+    public double getStepsPerSecond()
+    {
+        return elapsedNanos == 0 ? 0 : stepsRun * 1e9 / elapsedNanos;
+    }
+
+    //Particles stepped per second, the throughput independent of the particle count
+    public double getParticlesPerSecond()
+    {
+        return elapsedNanos == 0 ? 0 : particleSteps * 1e9 / elapsedNanos;
+    }
+
+    public double getMeanParticles()
+    {
+        return stepsRun == 0 ? 0 : (double) particleSteps / stepsRun;
+    }
+
+    //Milliseconds per step spent in a phase
+    public double getPhaseMillis(Phase phase)
+    {
+        return stepsRun == 0 ? 0 : timer.getNanos(phase) / 1e6 / stepsRun;
+    }
+
+    //Milliseconds per step outside the timed phases
+    public double getOtherMillis()
+    {
+        return stepsRun == 0 ? 0 : Math.max(0, elapsedNanos - timer.getTotalNanos()) / 1e6 / stepsRun;
+    }
+
+    public String toText()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "%s: %d steps in %.3f s on the %s backend, %d thread(s), %dx%d world%n",
+            name, stepsRun, elapsedNanos / 1e9, system.getBackend().getName(), system.getParallelism(), width, height));
+        text.append(String.format(Locale.ROOT, "%12.1f steps/s%n", getStepsPerSecond()));
+        text.append(String.format(Locale.ROOT, "%12.0f particles/s%n", getParticlesPerSecond()));
+        text.append(String.format(Locale.ROOT, "%12.4f ms step latency p50, %.4f p99, %.4f max%n",
+            latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.99) / 1e6, latency.getMax() / 1e6));
+        text.append(String.format(Locale.ROOT, "%12.0f particles on average, %d at peak, %d at the end%n",
+            getMeanParticles(), peakParticles, system.getParticleStore().size()));
+        for(Phase phase : Phase.values())
+            text.append(String.format(Locale.ROOT, "%12.4f ms/step %s%n", getPhaseMillis(phase), phase.name().toLowerCase(Locale.ROOT)));
+        text.append(String.format(Locale.ROOT, "%12.4f ms/step other%n", getOtherMillis()));
+        return text.toString();
+    }
+
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"preset\": \"").append(name.replace("\\", "\\\\").replace("\"", "\\\"")).append("\",\n");
+        json.append("  \"backend\": \"").append(system.getBackend().getName()).append("\",\n");
+        json.append(String.format(Locale.ROOT,
+            "  \"threads\": %d,\n  \"width\": %d,\n  \"height\": %d,\n  \"steps\": %d,\n  \"seconds\": %.6f,\n"
+            + "  \"steps_per_second\": %.3f,\n  \"particles_per_second\": %.1f,\n"
+            + "  \"step_ms_p50\": %.6f,\n  \"step_ms_p99\": %.6f,\n  \"step_ms_max\": %.6f,\n"
+            + "  \"mean_particles\": %.1f,\n  \"peak_particles\": %d,\n  \"final_particles\": %d,\n",
+            system.getParallelism(), width, height, stepsRun, elapsedNanos / 1e9, getStepsPerSecond(), getParticlesPerSecond(),
+            latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.99) / 1e6, latency.getMax() / 1e6,
+            getMeanParticles(), peakParticles, system.getParticleStore().size()));
+        json.append("  \"phase_ms_per_step\": {\n");
+        for(Phase phase : Phase.values())
+            json.append(String.format(Locale.ROOT, "    \"%s\": %.6f,\n", phase.name().toLowerCase(Locale.ROOT), getPhaseMillis(phase)));
+        json.append(String.format(Locale.ROOT, "    \"other\": %.6f\n  }\n}\n", getOtherMillis()));
+        return json.toString();
+    }
+
+    //A header line and one row, so reports of several runs can be concatenated without their headers
+    public String toCsv()
+    {
+        StringBuilder header = new StringBuilder("preset,backend,threads,width,height,steps,seconds,steps_per_second,particles_per_second,step_ms_p50,step_ms_p99,step_ms_max,mean_particles,peak_particles,final_particles");
+        StringBuilder row = new StringBuilder();
+        row.append(name.contains(",") || name.contains("\"") ? "\"" + name.replace("\"", "\"\"") + "\"" : name);
+        row.append(String.format(Locale.ROOT, ",%s,%d,%d,%d,%d,%.6f,%.3f,%.1f,%.6f,%.6f,%.6f,%.1f,%d,%d",
+            system.getBackend().getName(), system.getParallelism(), width, height, stepsRun, elapsedNanos / 1e9,
+            getStepsPerSecond(), getParticlesPerSecond(), latency.getPercentile(0.5) / 1e6, latency.getPercentile(0.99) / 1e6,
+            latency.getMax() / 1e6, getMeanParticles(), peakParticles, system.getParticleStore().size()));
+        for(Phase phase : Phase.values())
+        {
+            header.append(',').append(phase.name().toLowerCase(Locale.ROOT)).append("_ms");
+            row.append(String.format(Locale.ROOT, ",%.6f", getPhaseMillis(phase)));
+        }
+        header.append(",other_ms");
+        row.append(String.format(Locale.ROOT, ",%.6f", getOtherMillis()));
+        return header + "\n" + row + "\n";
+    }
+
+    //Loads a preset file, or builds a StressScene when given a name like "stress-16x64x50000"
+    public static ParticleSystem loadScene(String scene, PhysicsBackend backend, int width, int height)
+    {
+        if(StressScene.isStressScene(scene))
+            return StressScene.build(scene, backend, width, height);
+        File preset = new File(scene);
+        if(!preset.isFile())
+            throw new IllegalArgumentException("Preset not found: " + scene);
+        ParticleSystem system = new ParticleSystem(backend);
+        new SystemPreset(system).loadPreset(preset.getPath());
+        return system;
+    }
+
+    //Builds a runner for a preset or stress scene from command line arguments; the report options are left to main
+    public static HeadlessRunner fromArgs(String[] args)
+    {
+        if(args.length == 0 || args[0].startsWith("--"))
+            throw new IllegalArgumentException("No preset given");
+
+        String backend = null;
+        Integer threads = null;
+        long steps = -1;
+        double seconds = 0;
+        long warmup = 0;
+        int width = DEFAULT_WIDTH;
+        int height = DEFAULT_HEIGHT;
+        String record = null;
+        int recordEvery = TrajectoryRecorder.DEFAULT_FRAME_INTERVAL;
+        TrajectoryRecorder.Backpressure backpressure = TrajectoryRecorder.Backpressure.DROP;
+        for(int i = 1; i < args.length; i += 2)
+        {
+            String value = optionValue(args, i);
+            switch(args[i])
+            {
+                case "--steps": steps = Long.parseLong(value); break;
+                case "--seconds": seconds = Double.parseDouble(value); break;
+                case "--warmup": warmup = Long.parseLong(value); break;
+                case "--width": width = Integer.parseInt(value); break;
+                case "--height": height = Integer.parseInt(value); break;
+                case "--backend": backend = value; break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--record": record = value; break;
+                case "--record-every": recordEvery = Integer.parseInt(value); break;
+                case "--record-backpressure": backpressure = TrajectoryRecorder.Backpressure.valueOf(value.toUpperCase(Locale.ROOT)); break;
+                case "--format": case "--out": break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        ParticleSystem system = loadScene(args[0], backend == null ? PhysicsBackend.getDefault() : PhysicsBackend.forName(backend), width, height);
+        if(threads != null)
+            system.setParallelism(threads);
+
+        HeadlessRunner runner = new HeadlessRunner(system);
+        runner.setName(new File(args[0]).getName());
+        runner.setWorldSize(width, height);
+        runner.setSeconds(seconds);
+        // A wall-clock budget on its own runs until it is spent
+        runner.setSteps(steps >= 0 ? steps : seconds > 0 ? 0 : DEFAULT_STEPS);
+        runner.setWarmupSteps(warmup);
+        if(record != null)
+        {
+            TrajectoryRecorder recorder = new TrajectoryRecorder(new File(record).toPath(), width, height);
+            recorder.setFrameInterval(recordEvery);
+            recorder.setBackpressure(backpressure);
+            runner.setRecorder(recorder);
+        }
+        return runner;
+    }
+
+    private static String optionValue(String[] args, int i)
+    {
+        if(i + 1 >= args.length)
+            throw new IllegalArgumentException("Missing value for " + args[i]);
+        return args[i + 1];
+    }
+
+    private static String option(String[] args, String option, String fallback)
+    {
+        for(int i = 1; i + 1 < args.length; i += 2)
+            if(args[i].equals(option))
+                return args[i + 1];
+        return fallback;
+    }
+
+    public static void main(String[] args)
+    {
+        HeadlessRunner runner;
+        String format = option(args, "--format", "text");
+        try
+        {
+            if(!format.equals("text") && !format.equals("json") && !format.equals("csv"))
+                throw new IllegalArgumentException("Unknown format: " + format);
+            runner = fromArgs(args);
+        }
+        catch(IllegalArgumentException | IllegalStateException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        TrajectoryRecorder recorder = runner.getRecorder();
+        try
+        {
+            if(recorder != null)
+                recorder.start();
+            runner.run();
+            if(recorder != null)
+                recorder.close();
+        }
+        catch(IOException e)
+        {
+            System.err.println("Could not write the recording to " + recorder.getPath() + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if(recorder != null)
+            System.err.print(recorder.toText());
+        String report = format.equals("json") ? runner.toJson() : format.equals("csv") ? runner.toCsv() : runner.toText();
+        String out = option(args, "--out", null);
+        if(out == null)
+        {
+            System.out.print(report);
+            return;
+        }
+        try
+        {
+            Files.write(new File(out).toPath(), report.getBytes(StandardCharsets.UTF_8));
+        }
+        catch(IOException e)
+        {
+            System.err.println("Could not write the report to " + out + ": " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.print(runner.toText());
+    }
+}
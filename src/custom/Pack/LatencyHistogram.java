@@ -0,0 +1,95 @@
+package custom.Pack;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets: every power of two is split into
+ * SUB_BUCKETS equal buckets, so a percentile is within about 1 / SUB_BUCKETS of the true value at any
+ * scale. Recording is a few bit operations and never allocates.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    // Values below SUB_BUCKETS get a bucket each, then SUB_BUCKETS buckets per power of two
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_BUCKETS];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long nanos)
+    {
+        long value = Math.max(0L, nanos);
+        counts[bucket(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void reset()
+    {
+        Arrays.fill(counts, 0L);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getMin()
+    {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public double getMean()
+    {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    //Smallest recorded bucket bound at or above the given fraction of the values, 0.99 for p99
+    public long getPercentile(double fraction)
+    {
+        if(count == 0)
+            return 0;
+        long rank = Math.max(1L, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for(int b = 0; b < counts.length; b++)
+        {
+            seen += counts[b];
+            if(seen >= rank)
+                return Math.min(max, Math.max(min, upperBound(b)));
+        }
+        return max;
+    }
+
+    private static int bucket(long value)
+    {
+        if(value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS; // 0 for [16, 32)
+        int sub = (int) (value >>> exponent) & (SUB_BUCKETS - 1);
+        return (exponent + 1) * SUB_BUCKETS + sub;
+    }
+
+    //Largest value that falls into bucket b
+    private static long upperBound(int b)
+    {
+        if(b < SUB_BUCKETS)
+            return b;
+        int exponent = b / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + b % SUB_BUCKETS) << exponent;
+        return lower + (1L << exponent) - 1;
+    }
+}
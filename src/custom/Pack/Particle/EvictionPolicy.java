@@ -0,0 +1,20 @@
+package custom.Pack.Particle;
+
+/**
+ * What a ParticleSystem does with a spawn once it holds maxParticles particles.
+ */
+public enum EvictionPolicy {
+    // Replace the particle that has lived the most frames, like a ring buffer
+    OLDEST_FIRST,
+    // Replace the particle with the least kinetic energy
+    LOWEST_ENERGY,
+    // Replace a uniformly random particle
+    RANDOM,
+    // Drop the new particle
+    REJECT_NEW;
+
+    // Next policy, for cycling through them from the UI
+    public EvictionPolicy next() {
+        return values()[(ordinal() + 1) % values().length];
+    }
+}
@@ -3,136 +3,240 @@ package custom.Pack.Particle;
 import java.util.Arrays;
 import java.util.Vector;
 
+import custom.Pack.Physics.PhysicsBackend;
+
 /**
  * Represents a Particle in the simulation with properties such as mass, charge, velocity, etc.
- * This class is part of the simulation package and is intended to interact with the C++ backend via JNI.
+ * This class is part of the simulation package; its physics runs in the selected PhysicsBackend.
  */
 public class Particle {
-    // Attributes
+    // A Particle is either a view of one slot in a ParticleStore, or standalone with its state in the
+    // fields below; a standalone particle only goes into a store when it is added to a system
+    private final ParticleStore store;
+    private final int index;
+
     private float mass;
     private float charge;
-    private Vector<Float> velocity; // Assuming 2D or 3D velocity vector
-    private Vector<Float> position; // Position vector in space
-    private Vector<Float> force;
+    private float vx;
+    private float vy;
+    private float x;
+    private float y;
+    private float fx;
+    private float fy;
     private float size;
     private int lifespan;
-    private float lifetime;
-
-    // JavaFX-specific attributes
-    private String color; // Color is managed on the Java side
+    private int age;
+    private String color;
     private boolean hasTrail;
 
-    // Static block to load the native library
-    static {
-        try {
-            System.loadLibrary("ParticleSystem"); // Loads libParticleSystem.so on Unix or ParticleSystem.dll on Windows
-        } catch (UnsatisfiedLinkError e) {
-            System.err.println("Native library failed to load: " + e);
-            System.exit(1);
-        }
-    }
-
     // Constructor
     public Particle(float mass, float charge, Vector<Float> velocity, Vector<Float> position, Vector<Float> force, float size, int lifespan, String color, boolean hasTrail) {
+        this.store = null;
+        this.index = -1;
         this.mass = mass;
         this.charge = charge;
-        this.velocity = velocity;
-        this.position = position;
-        this.force = force;
+        this.vx = velocity.get(0);
+        this.vy = velocity.get(1);
+        this.x = position.get(0);
+        this.y = position.get(1);
+        this.fx = force.get(0);
+        this.fy = force.get(1);
         this.size = size;
         this.lifespan = lifespan;
         this.color = color;
         this.hasTrail = hasTrail;
     }
 
+    // Creates a view of an existing slot; the view is only valid until the store is modified
+    public Particle(ParticleStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    // Copies this particle into a standalone particle that no longer follows the store
+    public Particle detach() {
+        Particle copy = new Particle(getMass(), getCharge(), getVelocity(), getPosition(), getForce(), getSize(), getLifespan(), getColor(), hasTrail());
+        copy.age = (int) getLifetime();
+        return copy;
+    }
+
+    // Adds a copy of this particle to the end of target, keeping its age; returns the new slot
+    public int copyTo(ParticleStore target) {
+        if (store != null) {
+            return target.copyFrom(store, index);
+        }
+        int slot = target.add(mass, charge, vx, vy, x, y, fx, fy, size, lifespan, color, hasTrail);
+        target.getAge()[slot] = age;
+        return slot;
+    }
+
+    // Overwrites a live slot of target with a copy of this particle, as a new particle that keeps the age
+    public void copyTo(ParticleStore target, int slot) {
+        if (store != null) {
+            target.copyFrom(store, index, slot);
+            return;
+        }
+        target.set(slot, mass, charge, vx, vy, x, y, fx, fy, size, lifespan, color, hasTrail);
+        target.getAge()[slot] = age;
+    }
+
+    // The store this particle is a view of, or null for a standalone particle
+    public ParticleStore getStore() {
+        return store;
+    }
+
+    // Slot in getStore(), -1 for a standalone particle
+    public int getIndex() {
+        return index;
+    }
+
     // Getter and Setter methods
     public float getMass() {
-        return mass;
+        return store == null ? mass : store.getMass().get(index);
     }
 
     public void setMass(float mass) {
-        this.mass = mass;
+        if (store == null) {
+            this.mass = mass;
+        } else {
+            store.getMass().put(index, mass);
+        }
     }
 
     public float getCharge() {
-        return charge;
+        return store == null ? charge : store.getCharge().get(index);
     }
 
     public void setCharge(float charge) {
-        this.charge = charge;
+        if (store == null) {
+            this.charge = charge;
+        } else {
+            store.getCharge().put(index, charge);
+        }
     }
 
+    // Vector getters return a copy of the stored components
     public Vector<Float> getVelocity() {
-        return velocity;
+        if (store == null) {
+            return new Vector<>(Arrays.asList(vx, vy));
+        }
+        return new Vector<>(Arrays.asList(store.getVelocityX().get(index), store.getVelocityY().get(index)));
     }
 
     public void setVelocity(float[] velocity) {
-        this.velocity = new Vector<>(Arrays.asList(velocity[0], velocity[1]));
+        if (store == null) {
+            vx = velocity[0];
+            vy = velocity[1];
+        } else {
+            store.getVelocityX().put(index, velocity[0]);
+            store.getVelocityY().put(index, velocity[1]);
+        }
     }
 
     public Vector<Float> getPosition() {
-        return position;
+        if (store == null) {
+            return new Vector<>(Arrays.asList(x, y));
+        }
+        return new Vector<>(Arrays.asList(store.getX().get(index), store.getY().get(index)));
     }
 
     public void setPosition(float[] position) {
-        this.position = new Vector<>(Arrays.asList(position[0], position[1]));
+        if (store == null) {
+            x = position[0];
+            y = position[1];
+        } else {
+            store.getX().put(index, position[0]);
+            store.getY().put(index, position[1]);
+        }
     }
 
     public Vector<Float> getForce() {
-        return force;
+        if (store == null) {
+            return new Vector<>(Arrays.asList(fx, fy));
+        }
+        return new Vector<>(Arrays.asList(store.getForceX().get(index), store.getForceY().get(index)));
     }
 
     public void setForce(float[] forceArray) {
-        this.force = new Vector<>(Arrays.asList(forceArray[0], forceArray[1]));
+        if (store == null) {
+            fx = forceArray[0];
+            fy = forceArray[1];
+        } else {
+            store.getForceX().put(index, forceArray[0]);
+            store.getForceY().put(index, forceArray[1]);
+        }
     }
 
 
     public float getSize() {
-        return size;
+        return store == null ? size : store.getSize()[index];
     }
 
     public void setSize(float size) {
-        this.size = size;
+        if (store == null) {
+            this.size = size;
+        } else {
+            store.getSize()[index] = size;
+        }
     }
 
     public int getLifespan() {
-        return lifespan;
+        return store == null ? lifespan : store.getLifespan()[index];
     }
 
     public void setLifespan(int lifespan) {
-        this.lifespan = lifespan;
+        if (store == null) {
+            this.lifespan = lifespan;
+        } else {
+            store.getLifespan()[index] = lifespan;
+        }
     }
 
     public String getColor() {
-        return color;
+        return store == null ? color : store.getColor()[index];
     }
 
     public void setColor(String color) {
-        this.color = color;
+        if (store == null) {
+            this.color = color;
+        } else {
+            store.getColor()[index] = color;
+        }
     }
 
     public boolean hasTrail() {
-        return hasTrail;
+        return store == null ? hasTrail : store.getTrail()[index];
     }
 
     public void setTrail(boolean hasTrail) {
-        this.hasTrail = hasTrail;
+        if (store == null) {
+            this.hasTrail = hasTrail;
+        } else {
+            store.getTrail()[index] = hasTrail;
+        }
     }
     public float getLifetime() {
-    return lifetime;
+    return store == null ? age : store.getAge()[index];
     }
 
     public void setLifetime(float lifetime) {
-    this.lifetime = lifetime;
+    if (store == null) {
+        age = (int) lifetime;
+    } else {
+        store.getAge()[index] = (int) lifetime;
+    }
     }
     
-    public native void update(); // Implemented in C++ using JNI
+    // Integrates this particle with the default physics backend
+    public void update() {
+        PhysicsBackend.getDefault().update(this);
+    }
 
 
     @Override
     public String toString() {
         return String.format("%f,%f,%s,%s,%s,%f,%d,%s,%b",
-            mass, charge, velocity, position, force, size, lifespan, color, hasTrail);
+            getMass(), getCharge(), getVelocity(), getPosition(), getForce(), getSize(), getLifespan(), getColor(), hasTrail());
     }
     
 
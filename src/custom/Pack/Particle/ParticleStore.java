@@ -0,0 +1,423 @@
+package custom.Pack.Particle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for the particles of a ParticleSystem.
+ * Slot i of every column belongs to the same particle and slots [0, size()) are live.
+ * The physics columns (position, velocity, force, mass, charge) are direct FloatBuffers
+ * so the native step can read and write them in place; the remaining columns are plain
+ * arrays. Columns are reallocated when the store grows, so callers should re-read a
+ * column after adding particles.
+ *
+ * Slots past size() form the free pool: removing a particle hands its slot back and adding
+ * reuses one, so once the store has grown to its high-water mark spawning and culling
+ * allocate nothing. The pool counters are kept for monitoring.
+ *
+ * Particles with a trail also get their recent positions kept in a TrailBuffer, which moves along
+ * with them when slots are compacted.
+ *
+ * Every particle also gets an id when it is added, unique within the store and kept while slots
+ * move, so a particle can be followed from frame to frame.
+ */
+public class ParticleStore {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    // Indices of the physics columns, in the order the backends expect them
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int VX = 2;
+    public static final int VY = 3;
+    public static final int FX = 4;
+    public static final int FY = 5;
+    public static final int MASS = 6;
+    public static final int CHARGE = 7;
+    private static final int PHYSICS_COLUMNS = 8;
+
+    // Physics columns, direct buffers in native byte order with a float view of each
+    private final ByteBuffer[] physicsBytes = new ByteBuffer[PHYSICS_COLUMNS];
+    private final FloatBuffer[] physics = new FloatBuffer[PHYSICS_COLUMNS];
+    private FloatBuffer x;
+    private FloatBuffer y;
+    private FloatBuffer vx;
+    private FloatBuffer vy;
+    private FloatBuffer fx;
+    private FloatBuffer fy;
+    private FloatBuffer mass;
+    private FloatBuffer charge;
+    private float[] size;
+    private int[] lifespan;
+    private int[] age;
+    private String[] color;
+    private boolean[] trail;
+    private int[] id;
+    private int nextId;
+    private final TrailBuffer trails = new TrailBuffer();
+
+    private int count;
+
+    // Pool statistics
+    private int highWaterMark;
+    private long recycledCount;
+    private long releasedCount;
+
+    public ParticleStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ParticleStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        for (int c = 0; c < PHYSICS_COLUMNS; c++) {
+            setColumn(c, ByteBuffer.allocateDirect(capacity * Float.BYTES).order(ByteOrder.nativeOrder()));
+        }
+        size = new float[capacity];
+        lifespan = new int[capacity];
+        age = new int[capacity];
+        color = new String[capacity];
+        trail = new boolean[capacity];
+        id = new int[capacity];
+    }
+
+    private void setColumn(int column, ByteBuffer bytes) {
+        physicsBytes[column] = bytes;
+        physics[column] = bytes.asFloatBuffer();
+        x = physics[X];
+        y = physics[Y];
+        vx = physics[VX];
+        vy = physics[VY];
+        fx = physics[FX];
+        fy = physics[FY];
+        mass = physics[MASS];
+        charge = physics[CHARGE];
+    }
+
+    // Grows every column so that at least minCapacity slots are available
+    public void ensureCapacity(int minCapacity) {
+        int capacity = size.length;
+        if (minCapacity <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+        for (int c = 0; c < PHYSICS_COLUMNS; c++) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(newCapacity * Float.BYTES).order(ByteOrder.nativeOrder());
+            grown.put(0, physicsBytes[c], 0, count * Float.BYTES);
+            setColumn(c, grown);
+        }
+        size = Arrays.copyOf(size, newCapacity);
+        lifespan = Arrays.copyOf(lifespan, newCapacity);
+        age = Arrays.copyOf(age, newCapacity);
+        color = Arrays.copyOf(color, newCapacity);
+        trail = Arrays.copyOf(trail, newCapacity);
+        id = Arrays.copyOf(id, newCapacity);
+        trails.ensureSlots(newCapacity);
+    }
+
+    public int getTrailLength() {
+        return trails.getLength();
+    }
+
+    // Keeps the last length positions of every particle with a trail, within budgetBytes of off-heap
+    // memory; 0 turns trails off. Existing history is dropped.
+    public void setTrailLength(int length, long budgetBytes) {
+        trails.configure(length, budgetBytes, size.length);
+    }
+
+    public TrailBuffer getTrails() {
+        return trails;
+    }
+
+    // Appends the current position of the trailed particles in [from, to) to their history
+    public void recordTrails(int from, int to) {
+        if (trails.getLength() > 0) {
+            trails.record(x, y, trail, from, to);
+        }
+    }
+
+    // Appends a particle and returns its slot
+    public int add(float mass, float charge, float vx, float vy, float x, float y, float fx, float fy,
+                   float size, int lifespan, String color, boolean hasTrail) {
+        ensureCapacity(count + 1);
+        int i = count++;
+        if (i < highWaterMark) {
+            recycledCount++;
+        } else {
+            highWaterMark = count;
+        }
+        set(i, mass, charge, vx, vy, x, y, fx, fy, size, lifespan, color, hasTrail);
+        return i;
+    }
+
+    // Makes n more slots live without writing them and returns the first one; for bulk loads that
+    // fill every column of the new slots directly
+    public int allocate(int n) {
+        ensureCapacity(count + n);
+        int first = count;
+        count += n;
+        recycledCount += Math.max(0, Math.min(count, highWaterMark) - first);
+        highWaterMark = Math.max(highWaterMark, count);
+        for (int i = first; i < count; i++) {
+            id[i] = nextId++;
+            trails.reset(i);
+        }
+        return first;
+    }
+
+    // Overwrites a live slot with a new particle of age 0
+    public void set(int i, float mass, float charge, float vx, float vy, float x, float y, float fx, float fy,
+                    float size, int lifespan, String color, boolean hasTrail) {
+        this.mass.put(i, mass);
+        this.charge.put(i, charge);
+        this.vx.put(i, vx);
+        this.vy.put(i, vy);
+        this.x.put(i, x);
+        this.y.put(i, y);
+        this.fx.put(i, fx);
+        this.fy.put(i, fy);
+        this.size[i] = size;
+        this.lifespan[i] = lifespan;
+        this.age[i] = 0;
+        this.color[i] = color;
+        this.trail[i] = hasTrail;
+        this.id[i] = nextId++;
+        trails.reset(i);
+    }
+
+    // Fills n slots just made live by allocate, which gave them their ids, with particles of age 0
+    // that differ only in their velocity, read as vx, vy pairs from velocities[offset]
+    public void setRange(int first, int n, float mass, float charge, float[] velocities, int offset, float x, float y,
+                         float size, int lifespan, String color, boolean hasTrail) {
+        int end = first + n;
+        for (int i = first, v = offset; i < end; i++, v += 2) {
+            this.mass.put(i, mass);
+            this.charge.put(i, charge);
+            this.vx.put(i, velocities[v]);
+            this.vy.put(i, velocities[v + 1]);
+            this.x.put(i, x);
+            this.y.put(i, y);
+            this.fx.put(i, 0f);
+            this.fy.put(i, 0f);
+        }
+        Arrays.fill(this.size, first, end, size);
+        Arrays.fill(this.lifespan, first, end, lifespan);
+        Arrays.fill(this.age, first, end, 0);
+        Arrays.fill(this.color, first, end, color);
+        Arrays.fill(this.trail, first, end, hasTrail);
+    }
+
+    // Appends a copy of a slot from another store and returns its new slot
+    public int copyFrom(ParticleStore source, int index) {
+        int i = add(source.mass.get(index), source.charge.get(index), source.vx.get(index), source.vy.get(index),
+                source.x.get(index), source.y.get(index), source.fx.get(index), source.fy.get(index), source.size[index], source.lifespan[index], source.color[index], source.trail[index]);
+        age[i] = source.age[index];
+        return i;
+    }
+
+    // Overwrites a live slot with a copy of a slot from another store, as a new particle that keeps the copied age
+    public void copyFrom(ParticleStore source, int index, int slot) {
+        int copiedAge = source.age[index];
+        set(slot, source.mass.get(index), source.charge.get(index), source.vx.get(index), source.vy.get(index),
+                source.x.get(index), source.y.get(index), source.fx.get(index), source.fy.get(index), source.size[index], source.lifespan[index], source.color[index], source.trail[index]);
+        age[slot] = copiedAge;
+    }
+
+    // Removes the particle in the given slot, shifting the later slots down by one
+    public void remove(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        int moved = count - index - 1;
+        if (moved > 0) {
+            for (FloatBuffer column : physics) {
+                column.put(index, column, index + 1, moved);
+            }
+            System.arraycopy(size, index + 1, size, index, moved);
+            System.arraycopy(lifespan, index + 1, lifespan, index, moved);
+            System.arraycopy(age, index + 1, age, index, moved);
+            System.arraycopy(color, index + 1, color, index, moved);
+            System.arraycopy(trail, index + 1, trail, index, moved);
+            System.arraycopy(id, index + 1, id, index, moved);
+            trails.moveRun(index + 1, trails, index, moved);
+        }
+        count--;
+        releasedCount++;
+        color[count] = null;
+    }
+
+    // Removes every slot whose keep flag is false in one order-preserving pass and returns how many went
+    public int compact(boolean[] keep) {
+        int kept = copyKept(keep, 0, count, this, 0);
+        int removed = count - kept;
+        Arrays.fill(color, kept, count, null);
+        count = kept;
+        releasedCount += removed;
+        return removed;
+    }
+
+    // Copies the kept slots of [from, to) to target slots [dest, ...) in runs and returns how many were copied.
+    // The target may be this store as long as dest <= from; disjoint ranges of another store may be filled concurrently.
+    public int copyKept(boolean[] keep, int from, int to, ParticleStore target, int dest) {
+        int start = dest;
+        int i = from;
+        while (i < to) {
+            while (i < to && !keep[i]) {
+                i++;
+            }
+            int runStart = i;
+            while (i < to && keep[i]) {
+                i++;
+            }
+            int run = i - runStart;
+            if (run > 0 && (target != this || dest != runStart)) {
+                for (int c = 0; c < PHYSICS_COLUMNS; c++) {
+                    target.physics[c].put(dest, physics[c], runStart, run);
+                }
+                System.arraycopy(size, runStart, target.size, dest, run);
+                System.arraycopy(lifespan, runStart, target.lifespan, dest, run);
+                System.arraycopy(age, runStart, target.age, dest, run);
+                System.arraycopy(color, runStart, target.color, dest, run);
+                System.arraycopy(trail, runStart, target.trail, dest, run);
+                System.arraycopy(id, runStart, target.id, dest, run);
+                trails.moveRun(runStart, target.trails, dest, run);
+            }
+            dest += run;
+        }
+        return dest - start;
+    }
+
+    // Exchanges columns with another store after it was filled by copyKept; this store keeps newSize slots
+    // and the other one is left empty for reuse
+    public void swapColumns(ParticleStore other, int newSize) {
+        for (int c = 0; c < PHYSICS_COLUMNS; c++) {
+            ByteBuffer bytes = physicsBytes[c];
+            setColumn(c, other.physicsBytes[c]);
+            other.setColumn(c, bytes);
+        }
+        float[] swapSize = size;
+        size = other.size;
+        other.size = swapSize;
+        int[] swapLifespan = lifespan;
+        lifespan = other.lifespan;
+        other.lifespan = swapLifespan;
+        int[] swapAge = age;
+        age = other.age;
+        other.age = swapAge;
+        String[] swapColor = color;
+        color = other.color;
+        other.color = swapColor;
+        boolean[] swapTrail = trail;
+        trail = other.trail;
+        other.trail = swapTrail;
+        int[] swapId = id;
+        id = other.id;
+        other.id = swapId;
+        trails.swap(other.trails);
+
+        Arrays.fill(other.color, 0, count, null);
+        releasedCount += count - newSize;
+        count = newSize;
+        other.count = 0;
+    }
+
+    public void clear() {
+        Arrays.fill(color, 0, count, null);
+        releasedCount += count;
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return size.length;
+    }
+
+    // Fraction of the allocated slots that are live
+    public double getOccupancy() {
+        return (double) count / size.length;
+    }
+
+    // Most particles ever live at once
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    // Particles added into a slot that had been used before
+    public long getRecycledCount() {
+        return recycledCount;
+    }
+
+    // Particles removed, returning their slot to the pool
+    public long getReleasedCount() {
+        return releasedCount;
+    }
+
+    // Column accessors
+    public FloatBuffer getColumn(int column) {
+        return physics[column];
+    }
+
+    // Byte view of a physics column, for vectorized access
+    public ByteBuffer getColumnBytes(int column) {
+        return physicsBytes[column];
+    }
+
+    public FloatBuffer getX() {
+        return x;
+    }
+
+    public FloatBuffer getY() {
+        return y;
+    }
+
+    public FloatBuffer getVelocityX() {
+        return vx;
+    }
+
+    public FloatBuffer getVelocityY() {
+        return vy;
+    }
+
+    public FloatBuffer getForceX() {
+        return fx;
+    }
+
+    public FloatBuffer getForceY() {
+        return fy;
+    }
+
+    public FloatBuffer getMass() {
+        return mass;
+    }
+
+    public FloatBuffer getCharge() {
+        return charge;
+    }
+
+    public float[] getSize() {
+        return size;
+    }
+
+    public int[] getLifespan() {
+        return lifespan;
+    }
+
+    public int[] getAge() {
+        return age;
+    }
+
+    public String[] getColor() {
+        return color;
+    }
+
+    public boolean[] getTrail() {
+        return trail;
+    }
+
+    public int[] getId() {
+        return id;
+    }
+}
@@ -0,0 +1,174 @@
+package custom.Pack.Particle;
+
+import java.nio.FloatBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * Picks the slot a spawn overwrites when the store is at its cap, and counts evictions and drops.
+ *
+ * Oldest-first and lowest-energy need the extreme of a whole column. Instead of scanning for every
+ * spawn, one scan selects the worst size() / 16 particles at once (a quickselect, O(n)) and later
+ * spawns take them one by one, so a spawn costs O(1) amortized. A cull moves the survivors down over
+ * the removed slots, so retain() remaps the batch after it instead of selecting again; any other
+ * release of a slot discards the batch.
+ *
+ * The generator behind RANDOM and the quickselect pivots is seeded, so capped runs are reproducible.
+ */
+public class SpawnLimiter {
+    // A victim batch holds this fraction of the live particles
+    private static final int BATCH_SHIFT = 4;
+
+    private EvictionPolicy policy = EvictionPolicy.OLDEST_FIRST;
+    private SplittableRandom random;
+    private long evictedCount;
+    private long droppedCount;
+    private long selectionCount;
+
+    // Current victim batch and the store state it was selected from
+    private long[] keys = new long[0];
+    private int batchSize;
+    private int nextVictim;
+    private long batchReleasedCount = -1;
+    private int[] newSlot = new int[0]; // Slot of every particle after a cull, -1 if removed
+
+    public SpawnLimiter(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    // Restarts the generator and drops the current batch, whose order came from the old one
+    public void setSeed(long seed) {
+        random = new SplittableRandom(seed);
+        batchSize = nextVictim = 0;
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(EvictionPolicy policy) {
+        this.policy = policy;
+        batchSize = nextVictim = 0;
+    }
+
+    // Particles overwritten by a spawn
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    // Spawns discarded by REJECT_NEW
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    // Victim batches selected so far; each costs a scan of the store
+    public long getSelectionCount() {
+        return selectionCount;
+    }
+
+    // Keeps the remaining victims valid after a cull compacted the store from oldCount slots with the
+    // given keep flags: each slot moves down by the removed slots before it and culled victims are dropped
+    public void retain(ParticleStore store, boolean[] keep, int oldCount) {
+        long removed = oldCount - store.size();
+        if (nextVictim == batchSize || batchReleasedCount + removed != store.getReleasedCount()) {
+            return;
+        }
+        if (newSlot.length < oldCount) {
+            newSlot = new int[keep.length];
+        }
+        int kept = 0;
+        for (int i = 0; i < oldCount; i++) {
+            newSlot[i] = keep[i] ? kept++ : -1;
+        }
+        int last = nextVictim;
+        for (int v = nextVictim; v < batchSize; v++) {
+            int slot = newSlot[(int) keys[v]];
+            if (slot >= 0) {
+                keys[last++] = (keys[v] & 0xFFFFFFFF00000000L) | slot;
+            }
+        }
+        batchSize = last;
+        batchReleasedCount = store.getReleasedCount();
+    }
+
+    // Returns the live slot a new particle should overwrite, or -1 if the spawn is dropped
+    public int evict(ParticleStore store) {
+        int count = store.size();
+        if (policy == EvictionPolicy.REJECT_NEW || count == 0) {
+            droppedCount++;
+            return -1;
+        }
+        int slot;
+        if (policy == EvictionPolicy.RANDOM) {
+            slot = random.nextInt(count);
+        } else {
+            if (nextVictim == batchSize || batchReleasedCount != store.getReleasedCount()) {
+                selectBatch(store);
+            }
+            slot = (int) keys[nextVictim++];
+        }
+        evictedCount++;
+        return slot;
+    }
+
+    // Selects the batchSize particles with the smallest keys; a key holds the ranking in its high
+    // half and the slot in its low half, so equal rankings go to the lower, earlier spawned, slot
+    private void selectBatch(ParticleStore store) {
+        int count = store.size();
+        if (keys.length < count) {
+            keys = new long[store.capacity()];
+        }
+        if (policy == EvictionPolicy.OLDEST_FIRST) {
+            int[] age = store.getAge();
+            for (int i = 0; i < count; i++) {
+                keys[i] = (long) (Integer.MAX_VALUE - Math.max(0, age[i])) << 32 | i;
+            }
+        } else {
+            FloatBuffer vx = store.getVelocityX();
+            FloatBuffer vy = store.getVelocityY();
+            FloatBuffer mass = store.getMass();
+            for (int i = 0; i < count; i++) {
+                float speedX = vx.get(i);
+                float speedY = vy.get(i);
+                // Bits of a non-negative float sort like the float itself
+                float energy = Math.abs(0.5f * mass.get(i) * (speedX * speedX + speedY * speedY));
+                keys[i] = (long) Float.floatToIntBits(energy) << 32 | i;
+            }
+        }
+        batchSize = Math.max(1, count >> BATCH_SHIFT);
+        nextVictim = 0;
+        batchReleasedCount = store.getReleasedCount();
+        selectionCount++;
+        select(keys, count, batchSize);
+    }
+
+    // Moves the k smallest of keys[0, n) to keys[0, k) in expected O(n)
+    private void select(long[] keys, int n, int k) {
+        int left = 0;
+        int right = n - 1;
+        while (left < right) {
+            long pivot = keys[left + random.nextInt(right - left + 1)];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long swap = keys[i];
+                    keys[i++] = keys[j];
+                    keys[j--] = swap;
+                }
+            }
+            if (k - 1 <= j) {
+                right = j;
+            } else if (k - 1 >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package custom.Pack.Particle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Recent positions of the particles of a ParticleStore, for drawing trails.
+ *
+ * Slot i owns a ring of getLength() x, y pairs in one direct slab, so the history of every particle
+ * lives off-heap and recording a position allocates nothing. The slab follows the store's capacity
+ * but never grows past getBudgetBytes(), nor past MAX_BUDGET_BYTES; particles in slots beyond that
+ * simply have no trail. The store moves histories along with particles when it compacts or shifts slots.
+ */
+public class TrailBuffer {
+    public static final long DEFAULT_BUDGET_BYTES = 64L << 20;
+    // Largest slab one direct buffer holds; ring offsets in floats then stay well inside an int
+    public static final long MAX_BUDGET_BYTES = Integer.MAX_VALUE;
+
+    private int length; // Positions kept per particle, 0 records none
+    private long budgetBytes = DEFAULT_BUDGET_BYTES;
+    private int slots; // Slots [0, slots) have history storage
+    private FloatBuffer points;
+    private int[] head = new int[0]; // Ring index the next position is written to
+    private int[] count = new int[0]; // Positions recorded, at most length
+
+    public int getLength() {
+        return length;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    // Bytes held by the slab and the ring indices
+    public long getMemoryBytes() {
+        return (points == null ? 0L : (long) points.capacity() * Float.BYTES) + (long) (head.length + count.length) * Integer.BYTES;
+    }
+
+    // Positions recorded for a slot, oldest first from ringStart(slot)
+    public int getCount(int slot) {
+        return slot < slots ? count[slot] : 0;
+    }
+
+    // Ring index of the oldest recorded position of a slot
+    public int ringStart(int slot) {
+        return Math.floorMod(head[slot] - count[slot], length);
+    }
+
+    // Slab holding, for slot s and ring index k, x at (s * length + k) * 2 and y right after it
+    public FloatBuffer getPoints() {
+        return points;
+    }
+
+    // Drops all history and keeps length positions per particle from now on, for at most capacity slots
+    void configure(int length, long budgetBytes, int capacity) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Trail length must not be negative: " + length);
+        }
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("Trail budget must not be negative: " + budgetBytes);
+        }
+        this.length = length;
+        this.budgetBytes = budgetBytes;
+        slots = 0;
+        points = null;
+        head = new int[0];
+        count = new int[0];
+        ensureSlots(capacity);
+    }
+
+    // Grows the slab towards capacity slots, within the budget
+    void ensureSlots(int capacity) {
+        if (length == 0) {
+            return;
+        }
+        long perSlot = (long) length * 2 * Float.BYTES;
+        int limit = (int) Math.min(capacity, Math.min(budgetBytes, MAX_BUDGET_BYTES) / perSlot);
+        if (limit <= slots) {
+            return;
+        }
+        FloatBuffer grown = ByteBuffer.allocateDirect((int) (limit * perSlot)).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        if (points != null) {
+            grown.put(0, points, 0, slots * length * 2);
+        }
+        points = grown;
+        head = Arrays.copyOf(head, limit);
+        count = Arrays.copyOf(count, limit);
+        slots = limit;
+    }
+
+    // Forgets the history of a slot that now holds a new particle
+    void reset(int slot) {
+        if (slot < slots) {
+            head[slot] = 0;
+            count[slot] = 0;
+        }
+    }
+
+    // Moves the histories of run slots from source slot from to target slot dest. Target slots that
+    // get no history, because either side has no storage for them, are reset.
+    void moveRun(int from, TrailBuffer target, int dest, int run) {
+        int copied = target.length == length ? Math.max(0, Math.min(run, Math.min(slots - from, target.slots - dest))) : 0;
+        if (copied > 0) {
+            int stride = length * 2;
+            target.points.put(dest * stride, points, from * stride, copied * stride);
+            System.arraycopy(head, from, target.head, dest, copied);
+            System.arraycopy(count, from, target.count, dest, copied);
+        }
+        for (int s = dest + copied; s < Math.min(dest + run, target.slots); s++) {
+            target.count[s] = 0;
+            target.head[s] = 0;
+        }
+    }
+
+    // Exchanges storage with another buffer of the same layout
+    void swap(TrailBuffer other) {
+        int swapLength = length;
+        length = other.length;
+        other.length = swapLength;
+        long swapBudget = budgetBytes;
+        budgetBytes = other.budgetBytes;
+        other.budgetBytes = swapBudget;
+        int swapSlots = slots;
+        slots = other.slots;
+        other.slots = swapSlots;
+        FloatBuffer swapPoints = points;
+        points = other.points;
+        other.points = swapPoints;
+        int[] swapHead = head;
+        head = other.head;
+        other.head = swapHead;
+        int[] swapCount = count;
+        count = other.count;
+        other.count = swapCount;
+    }
+
+    // Appends the current position of every trailed particle in [from, to)
+    void record(FloatBuffer x, FloatBuffer y, boolean[] trail, int from, int to) {
+        int end = Math.min(to, slots);
+        for (int i = from; i < end; i++) {
+            if (!trail[i]) {
+                continue;
+            }
+            int k = head[i];
+            int base = (i * length + k) * 2;
+            points.put(base, x.get(i));
+            points.put(base + 1, y.get(i));
+            head[i] = k + 1 == length ? 0 : k + 1;
+            if (count[i] < length) {
+                count[i]++;
+            }
+        }
+    }
+}
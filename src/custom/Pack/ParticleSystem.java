@@ -1,54 +1,141 @@
 package custom.Pack;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
 import custom.Pack.Emitter.Emitter;
 import custom.Pack.Emitter.OscillatingEmitter;
 import custom.Pack.Emitter.PulseEmitter;
+import custom.Pack.Emitter.SplitMix;
 import custom.Pack.FieldPoint.FieldPoint;
+import custom.Pack.Particle.EvictionPolicy;
 import custom.Pack.Particle.Particle;
-import javafx.scene.paint.Color;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Particle.SpawnLimiter;
+import custom.Pack.Particle.TrailBuffer;
+import custom.Pack.Physics.BarnesHutTree;
+import custom.Pack.Physics.CullPass;
+import custom.Pack.Physics.FieldGrid;
+import custom.Pack.Physics.OscillatorTable;
+import custom.Pack.Physics.PairInteraction;
+import custom.Pack.Physics.ParallelStep;
+import custom.Pack.Physics.PhysicsBackend;
+import custom.Pack.Simulation.StepScheduler;
 
 public class ParticleSystem
 {
-    static {
-        try {
-            System.loadLibrary("ParticleSystem"); // Loads libParticleSystem.so on Unix or ParticleSystem.dll on Windows
-        } catch (UnsatisfiedLinkError e) {
-            System.err.println("Native library failed to load: " + e);
-            System.exit(1);
-        }
-    }
+    //Simulated seconds are this many steps, the rate SimulationLoop runs at by default; rates given
+    //per second, like emission rates, are converted with it, so they do not depend on wall time
+    public static final int STEPS_PER_SECOND = 60;
+    //Below this many particles a step runs on the calling thread
+    public static final int PARALLEL_THRESHOLD = 2 * ParallelStep.CHUNK_SIZE;
 
-    private Vector<Particle> particles;
-    private Vector<FieldPoint> fieldPoints;
-    private Vector<Emitter> emitters;
+    private final PhysicsBackend backend;
+    private ParticleStore particleStore;
+    private List<Particle> particles;
+    //Only touched by the thread stepping the system, so plain lists; other threads post commands
+    private ArrayList<FieldPoint> fieldPoints;
+    private ArrayList<Emitter> emitters;
+    private final SplitMix emitterSeeds; // Seeds every new emitter's generator
+    private int[] emitCounts = new int[0]; // Particles each emitter spawns this step
+    private float[] emitVelocities = new float[0]; // Their velocities, emitter after emitter
+    private final StepScheduler scheduler; // Timed events, advanced once per step
+    private final OscillatorTable oscillators; // Oscillating emitters as primitive rows, moved in one pass
+    private boolean oscillatorsDirty;
+    private final FieldGrid fieldGrid; // Packed field points, gridded by cutoff
+    private boolean fieldIndexDirty;
+    private float fieldCutoff; // Default influence radius of field points, 0 for unlimited
+    private boolean farFieldEnabled;
+    private PairInteraction pairInteraction; // Particle-particle forces, NONE by default
+    private float openingAngle;
+    private BarnesHutTree pairTree; //Rebuilt every step while pair forces are on
     private int gravityEnabled;
     private double friction;
-    private int maxParticles;
+    private int maxParticles; // Cap enforced on every spawn, 0 for no limit
+    private final SpawnLimiter spawnLimiter;
+    private int particleLifespan; // Frames emitted particles live, 0 until they leave the screen
+    private final CullPass cullPass;
+    private int parallelism;
+    private ForkJoinPool stepPool; //Dedicated pool for parallel steps, created on first use
+    private PhaseTimer phaseTimer; //Null unless phases are being timed
 
     public ParticleSystem()
     {
-        particles = new Vector<>();
-        fieldPoints = new Vector<>();
-        emitters= new Vector<>();
+        this(PhysicsBackend.getDefault());
+    }
+
+    public ParticleSystem(PhysicsBackend backend)
+    {
+        this.backend = backend;
+        particleStore = new ParticleStore();
+        particles = new ParticleList();
+        fieldPoints = new ArrayList<>();
+        emitters= new ArrayList<>();
+        emitterSeeds = new SplitMix(System.nanoTime());
+        scheduler = new StepScheduler();
+        oscillators = new OscillatorTable();
+        fieldGrid = new FieldGrid();
+        cullPass = new CullPass();
+        spawnLimiter = new SpawnLimiter(emitterSeeds.nextLong());
+        fieldIndexDirty = true;
+        pairInteraction = PairInteraction.NONE;
+        openingAngle = BarnesHutTree.DEFAULT_THETA;
         gravityEnabled = 0;
+        parallelism = Runtime.getRuntime().availableProcessors();
     }
 
     //Getters and Setters
-    public Vector<Particle> getParticles()
+    public PhysicsBackend getBackend()
+    {
+        return backend;
+    }
+    public ParticleStore getParticleStore()
+    {
+        return particleStore;
+    }
+    //List view of the store, elements are Particle views created on access
+    public List<Particle> getParticles()
     {
         return particles;
     }
-    public Vector<FieldPoint>getFieldPoints()
+    public List<FieldPoint> getFieldPoints()
     {
         return fieldPoints;
     }
-    public Vector<Emitter> getEmitters()
+    public List<Emitter> getEmitters()
     {
         return emitters;
     }
+    //Makes the seeds of emitters added from now on, and the choices of the spawn limiter, depend only on this seed
+    public void setSeed(long seed)
+    {
+        emitterSeeds.setState(seed);
+        spawnLimiter.setSeed(emitterSeeds.nextLong());
+    }
+    //Seed for the generator of a new emitter, independent of every other emitter's
+    public long nextEmitterSeed()
+    {
+        return emitterSeeds.nextLong();
+    }
+    //Events scheduled here run at the start of the step they are due, before emitters spawn
+    public StepScheduler getScheduler()
+    {
+        return scheduler;
+    }
+    //Rows of the oscillating emitters, rebuilt at the next step after the emitter list changes
+    public OscillatorTable getOscillators()
+    {
+        return oscillators;
+    }
+    //Must be called after an emitter in getEmitters() is replaced, so the oscillator table is rebuilt.
+    //Additions and removals are picked up from the size as well.
+    public void invalidateEmitters()
+    {
+        oscillatorsDirty = true;
+    }
     public double getFriction()
     {
         return friction;
@@ -69,16 +156,238 @@ public class ParticleSystem
         this.maxParticles = maxParticles;
     }
 
+    public EvictionPolicy getEvictionPolicy()
+    {
+        return spawnLimiter.getPolicy();
+    }
+
+    //Sets what happens to spawns once maxParticles particles are alive
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy)
+    {
+        spawnLimiter.setPolicy(evictionPolicy);
+    }
+
+    //Particles replaced by a spawn because the cap was reached
+    public long getEvictedCount()
+    {
+        return spawnLimiter.getEvictedCount();
+    }
+
+    //Spawns discarded because the cap was reached under REJECT_NEW
+    public long getDroppedCount()
+    {
+        return spawnLimiter.getDroppedCount();
+    }
+
+    //Scans of the store for a batch of eviction victims, each O(n); a batch serves size() / 16 evictions
+    public long getVictimSelectionCount()
+    {
+        return spawnLimiter.getSelectionCount();
+    }
+
+    public int getTrailLength()
+    {
+        return particleStore.getTrailLength();
+    }
+
+    //Keeps the last trailLength positions of every particle with a trail, 0 turns trails off.
+    //Setting the current length again keeps the recorded history.
+    public void setTrailLength(int trailLength)
+    {
+        if(trailLength == particleStore.getTrailLength())
+            return;
+        particleStore.setTrailLength(trailLength, particleStore.getTrails().getBudgetBytes());
+    }
+
+    //Caps the off-heap memory of the trails; particles past the cap are drawn without one.
+    //At most TrailBuffer.MAX_BUDGET_BYTES, the size of one direct buffer.
+    public void setTrailBudget(long budgetBytes)
+    {
+        if(budgetBytes < 0 || budgetBytes > TrailBuffer.MAX_BUDGET_BYTES)
+            throw new IllegalArgumentException("Trail budget must be in [0, " + TrailBuffer.MAX_BUDGET_BYTES + "]: " + budgetBytes);
+        particleStore.setTrailLength(particleStore.getTrailLength(), budgetBytes);
+    }
+
+    //Off-heap bytes currently held for trails
+    public long getTrailMemoryBytes()
+    {
+        return particleStore.getTrails().getMemoryBytes();
+    }
+
+    public int getParticleLifespan()
+    {
+        return particleLifespan;
+    }
+
+    //Sets how many frames emitted particles live before the cull pass removes them, 0 for no limit
+    public void setParticleLifespan(int particleLifespan)
+    {
+        this.particleLifespan = particleLifespan;
+    }
+
+    public float getMinSpeed()
+    {
+        return cullPass.getMinSpeed();
+    }
+
+    //Particles slower than this are removed by the cull pass, 0 disables the floor
+    public void setMinSpeed(float minSpeed)
+    {
+        cullPass.setMinSpeed(minSpeed);
+    }
+
+    public PhaseTimer getPhaseTimer()
+    {
+        return phaseTimer;
+    }
+
+    //Times every phase of cull and step into the given timer, null stops timing
+    public void setPhaseTimer(PhaseTimer phaseTimer)
+    {
+        this.phaseTimer = phaseTimer;
+    }
+
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    //Sets the number of threads used for force and integration passes, 1 runs every step sequentially
+    public void setParallelism(int parallelism)
+    {
+        if(parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        if(parallelism != this.parallelism && stepPool != null)
+        {
+            stepPool.shutdown();
+            stepPool = null;
+        }
+        this.parallelism = parallelism;
+    }
+
+    public float getFieldCutoff()
+    {
+        return fieldCutoff;
+    }
+
+    //Sets the distance beyond which field points are ignored unless they have their own cutoff, 0 disables it
+    public void setFieldCutoff(float fieldCutoff)
+    {
+        this.fieldCutoff = fieldCutoff;
+        fieldIndexDirty = true;
+    }
+
+    public boolean isFarFieldEnabled()
+    {
+        return farFieldEnabled;
+    }
+
+    //Approximates fields beyond the cutoff by per-cell aggregates instead of dropping them
+    public void setFarFieldEnabled(boolean farFieldEnabled)
+    {
+        this.farFieldEnabled = farFieldEnabled;
+        fieldIndexDirty = true;
+    }
+
+    public PairInteraction getPairInteraction()
+    {
+        return pairInteraction;
+    }
+
+    //Selects the particle-particle force law, computed with a Barnes-Hut tree
+    public void setPairInteraction(PairInteraction pairInteraction)
+    {
+        this.pairInteraction = pairInteraction;
+    }
+
+    public float getOpeningAngle()
+    {
+        return openingAngle;
+    }
+
+    //Barnes-Hut opening angle theta: 0 is exact, larger values are faster and less accurate
+    public void setOpeningAngle(float openingAngle)
+    {
+        if(openingAngle < 0)
+            throw new IllegalArgumentException("Opening angle must not be negative: " + openingAngle);
+        this.openingAngle = openingAngle;
+    }
+
+    //Must be called after a field point is moved, or its cutoff changed, so the field grid is rebuilt.
+    //Additions and removals through getFieldPoints() are picked up from the size as well.
+    public void invalidateFieldIndex()
+    {
+        fieldIndexDirty = true;
+    }
+
     //Adds a particle
     public void addParticle(float mass, float charge, Vector<Float> velocity, Vector<Float> position, Vector<Float> force, float size, int lifespan, String color, boolean hasTrai)
     {
-        particles.add(new Particle(mass,charge,velocity,position,force,size,lifespan,color,hasTrai));
+        spawn(mass, charge, velocity.get(0), velocity.get(1), position.get(0), position.get(1), force.get(0), force.get(1), size, lifespan, color, hasTrai);
     }   
+    //Appends a particle, or evicts one for it when the store is at maxParticles
+    private void spawn(float mass, float charge, float vx, float vy, float x, float y, float fx, float fy, float size, int lifespan, String color, boolean hasTrail)
+    {
+        if(maxParticles <= 0 || particleStore.size() < maxParticles)
+        {
+            particleStore.add(mass, charge, vx, vy, x, y, fx, fy, size, lifespan, color, hasTrail);
+            return;
+        }
+        int slot = spawnLimiter.evict(particleStore);
+        if(slot >= 0)
+        {
+            particleStore.set(slot, mass, charge, vx, vy, x, y, fx, fy, size, lifespan, color, hasTrail);
+        }
+    }
+    //How many of count particles loaded in bulk fit under the cap; loads keep that many and drop the rest
+    public int admit(int count)
+    {
+        if(maxParticles <= 0)
+            return count;
+        return Math.max(0, Math.min(count, maxParticles - particleStore.size()));
+    }
+    //Grows the store once for count spawns, never past the cap
+    private void reserve(int count)
+    {
+        int needed = particleStore.size() + count;
+        if(maxParticles > 0)
+            needed = Math.min(needed, Math.max(particleStore.size(), maxParticles));
+        particleStore.ensureCapacity(needed);
+    }
     public void addParticles(float particlesMass, Vector<Float> position, float[][] velocities)
     {
+        float x = position.get(0);
+        float y = position.get(1);
+        reserve(velocities.length);
         for(float[] v : velocities)
         {
-            particles.add(new Particle(particlesMass, 1.0f, new Vector<>(List.of(v[0], v[1])), position, new Vector<>(List.of(0.0f, 0.0f)),5.0f, 100, "red", true));
+            spawn(particlesMass, 1.0f, v[0], v[1], x, y, 0.0f, 0.0f, 5.0f, particleLifespan, "red", true);
+        }
+    }
+
+    //Spawns count particles at (x, y) with velocities packed as vx, vy pairs, reusing free store slots
+    public void addParticles(float particlesMass, float x, float y, float[] velocities, int count)
+    {
+        reserve(count);
+        spawnRange(particlesMass, x, y, velocities, 0, count);
+    }
+
+    //Spawns count emitted particles with velocities from velocities[offset]: those under the cap are
+    //written as one contiguous range, the rest evict one particle each
+    private void spawnRange(float particlesMass, float x, float y, float[] velocities, int offset, int count)
+    {
+        int appended = count;
+        if(maxParticles > 0)
+            appended = Math.max(0, Math.min(count, maxParticles - particleStore.size()));
+        if(appended > 0)
+        {
+            int first = particleStore.allocate(appended);
+            particleStore.setRange(first, appended, particlesMass, 1.0f, velocities, offset, x, y, 5.0f, particleLifespan, "red", true);
+        }
+        for(int i=appended; i<count; i++)
+        {
+            int v = offset + 2 * i;
+            spawn(particlesMass, 1.0f, velocities[v], velocities[v + 1], x, y, 0.0f, 0.0f, 5.0f, particleLifespan, "red", true);
         }
     }
     
@@ -86,6 +395,7 @@ public class ParticleSystem
     public void addFieldPoint(Vector<Float> position, float fieldStrength, String type)
     {
         fieldPoints.add(new FieldPoint(position, fieldStrength, type));
+        fieldIndexDirty = true;
     }
     //Adds an emitter
     public void addEmitter(Vector<Float> position, float speed, float spread, float angle, float particlesMass)
@@ -105,16 +415,23 @@ public class ParticleSystem
         emitters.add(new PulseEmitter(position, speed, spread, angle, particlesMass, frequency, this));
     }
     
-    //Removes all particles that are out of the screen
+    //Ages every particle by one frame and removes, in a single pass, those out of the screen,
+    //past their lifespan or below the speed floor. Returns how many were removed.
+    public int cull(int width, int height)
+    {
+        long start = phaseStart();
+        int count = particleStore.size();
+        int removed = cullPass.run(particleStore, width, height, pool(count));
+        if(removed > 0)
+            spawnLimiter.retain(particleStore, cullPass.getKeep(), count);
+        phaseEnd(PhaseTimer.Phase.CULL, start);
+        return removed;
+    }
+
+    //Removes all particles that are out of the screen, expired or too slow
     public void removeParticlesOutOfScreen(int width, int height)
     {
-        for(int i=0 ; i<particles.size() ; i++)
-        {        
-            if(particles.get(i).getPosition().get(0)<0 || particles.get(i).getPosition().get(0)>width || particles.get(i).getPosition().get(1)<0 || particles.get(i).getPosition().get(1)>height)
-            {
-                particles.remove(i);
-            }
-        }
+        cull(width, height);
     }
     
     //Displays all the particles in the system
@@ -138,22 +455,186 @@ public class ParticleSystem
         this.gravityEnabled = gravityEnabled;
     }    
 
-    public native void setForces(); //Native method to calculate forces efficiently 
+    //Brings the field grid up to date, sorting the fields into cells again only when they changed
+    private FieldGrid prepareFieldGrid()
+    {
+        if(fieldIndexDirty || fieldGrid.getFieldCount() != fieldPoints.size())
+        {
+            fieldGrid.rebuild(fieldPoints, fieldCutoff, farFieldEnabled);
+            fieldIndexDirty = false;
+        }
+        else
+            fieldGrid.refresh(fieldPoints);
+        return fieldGrid;
+    }
+
+    private long phaseStart()
+    {
+        return phaseTimer == null ? 0L : System.nanoTime();
+    }
+
+    private void phaseEnd(PhaseTimer.Phase phase, long start)
+    {
+        if(phaseTimer != null)
+            phaseTimer.stop(phase, start);
+    }
+
+    private ForkJoinPool pool(int count)
+    {
+        if(parallelism == 1 || count < PARALLEL_THRESHOLD)
+            return null;
+        if(stepPool == null)
+            stepPool = new ForkJoinPool(parallelism);
+        return stepPool;
+    }
+
+    private void runBackend(int flags)
+    {
+        long start = phaseStart();
+        FieldGrid fields = (flags & PhysicsBackend.STEP_FORCES) != 0 ? prepareFieldGrid() : null;
+        int count = particleStore.size();
+        ForkJoinPool pool = pool(count);
+        if(pool == null)
+        {
+            backend.step(particleStore, fields, gravityEnabled, flags, 0, count);
+            if((flags & PhysicsBackend.STEP_INTEGRATE) != 0)
+                particleStore.recordTrails(0, count);
+        }
+        else
+            pool.invoke(new ParallelStep(backend, particleStore, fields, gravityEnabled, flags, 0, count));
+        phaseEnd(PhaseTimer.Phase.PHYSICS, start);
+    }
 
+    //Pair forces are added between the force and integration passes
+    private void runStep(int flags)
+    {
+        if((flags & PhysicsBackend.STEP_FORCES) == 0 || pairInteraction == PairInteraction.NONE)
+        {
+            runBackend(flags);
+            return;
+        }
+        runBackend(PhysicsBackend.STEP_FORCES);
+        if(pairTree == null)
+            pairTree = new BarnesHutTree();
+        long start = phaseStart();
+        pairTree.build(particleStore, pairInteraction);
+        phaseEnd(PhaseTimer.Phase.PAIR_TREE, start);
+        start = phaseStart();
+        pairTree.accumulate(particleStore, openingAngle, pool(particleStore.size()));
+        phaseEnd(PhaseTimer.Phase.PAIR_FORCES, start);
+        if((flags & PhysicsBackend.STEP_INTEGRATE) != 0)
+            runBackend(PhysicsBackend.STEP_INTEGRATE);
+    }
+
+    //Calculates the force on every particle
+    public void setForces()
+    {
+        runStep(PhysicsBackend.STEP_FORCES);
+    }
+
+    //Runs the events due this step, lets every emitter spawn and moves oscillating emitters. The spawns of all emitters are one pass:
+    //their counts are collected, their velocities drawn in one batched backend call and the particles
+    //written as one contiguous range per emitter, so the cost follows the emitter count.
+    private void updateEmitters()
+    {
+        long start = phaseStart();
+        scheduler.advance();
+        int n = emitters.size();
+        if(emitCounts.length < n)
+            emitCounts = new int[Math.max(n, emitCounts.length * 2)];
+        int total = 0;
+        for(int k=0; k<n; k++)
+        {
+            emitCounts[k] = emitters.get(k).particlesDue();
+            total += emitCounts[k];
+        }
+        if(total > 0)
+        {
+            if(emitVelocities.length < 2 * total)
+                emitVelocities = new float[Math.max(2 * total, emitVelocities.length * 2)];
+            backend.fillVelocities(emitters, emitCounts, n, emitVelocities);
+            reserve(total);
+            int offset = 0;
+            for(int k=0; k<n; k++)
+            {
+                int count = emitCounts[k];
+                if(count == 0)
+                    continue;
+                Emitter emitter = emitters.get(k);
+                spawnRange(emitter.getParticlesMass(), emitter.getX(), emitter.getY(), emitVelocities, offset, count);
+                offset += 2 * count;
+            }
+        }
+        //Moves every oscillating emitter in one pass over the table's rows
+        if(oscillatorsDirty || oscillators.getEmitterCount() != n)
+        {
+            oscillators.rebuild(emitters);
+            oscillatorsDirty = false;
+        }
+        oscillators.advance();
+        phaseEnd(PhaseTimer.Phase.EMIT, start);
+    }
 
     //Updates the particle positions and emitter positions
     public void updateAll()
     {
-        for(int i=0; i<emitters.size(); i++)
+        updateEmitters();
+        runStep(PhysicsBackend.STEP_INTEGRATE);
+    }
+
+    //Advances the whole system by one frame, computing forces and integrating in a single backend call
+    public void step()
+    {
+        updateEmitters();
+        runStep(PhysicsBackend.STEP_FORCES | PhysicsBackend.STEP_INTEGRATE);
+    }
+
+    //Exposes the particle store through the List API used by presets and tests
+    private class ParticleList extends AbstractList<Particle>
+    {
+        @Override
+        public Particle get(int index)
         {
-            emitters.get(i).emitParticles();
-            //Updates the emitter position if it is an oscillating emitter
-            if(emitters.get(i) instanceof OscillatingEmitter)
-                emitters.get(i).updateEmitter();
-        }        
-        for(int i=0;i<particles.size();i++)
+            if(index < 0 || index >= particleStore.size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + particleStore.size());
+            return new Particle(particleStore, index);
+        }
+
+        @Override
+        public int size()
+        {
+            return particleStore.size();
+        }
+
+        //Held to maxParticles like a spawn: at the cap the copy evicts a particle.
+        //Under REJECT_NEW there is nothing to evict, so a full list refuses the particle with IllegalStateException.
+        @Override
+        public boolean add(Particle p)
+        {
+            if(maxParticles <= 0 || particleStore.size() < maxParticles)
+            {
+                p.copyTo(particleStore);
+                return true;
+            }
+            int slot = spawnLimiter.evict(particleStore);
+            if(slot < 0)
+                throw new IllegalStateException("Particle cap of " + maxParticles + " reached");
+            p.copyTo(particleStore, slot);
+            return true;
+        }
+
+        @Override
+        public Particle remove(int index)
+        {
+            Particle removed = get(index).detach();
+            particleStore.remove(index);
+            return removed;
+        }
+
+        @Override
+        public void clear()
         {
-            particles.get(i).update();
+            particleStore.clear();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package custom.Pack;
+
+import java.util.Arrays;
+
+/**
+ * Wall time a ParticleSystem spends in each phase of a step, summed over every step since the last
+ * reset. Systems only time their phases while a timer is set, so nothing is measured by default.
+ */
+public class PhaseTimer
+{
+    public enum Phase
+    {
+        CULL,        // Ageing and removing particles
+        EMIT,        // Scheduled events, emitter bursts and oscillating emitter moves
+        PHYSICS,     // Backend force and integration passes
+        PAIR_TREE,   // Building the Barnes-Hut tree for pair forces
+        PAIR_FORCES  // Accumulating pair forces from the tree
+    }
+
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] calls = new long[Phase.values().length];
+
+    //Adds the time since start, a System.nanoTime() value, to a phase
+    public void stop(Phase phase, long start)
+    {
+        nanos[phase.ordinal()] += System.nanoTime() - start;
+        calls[phase.ordinal()]++;
+    }
+
+    public long getNanos(Phase phase)
+    {
+        return nanos[phase.ordinal()];
+    }
+
+    //Number of times a phase ran
+    public long getCalls(Phase phase)
+    {
+        return calls[phase.ordinal()];
+    }
+
+    public long getTotalNanos()
+    {
+        long total = 0;
+        for (long phaseNanos : nanos)
+            total += phaseNanos;
+        return total;
+    }
+
+    public void reset()
+    {
+        Arrays.fill(nanos, 0L);
+        Arrays.fill(calls, 0L);
+    }
+}
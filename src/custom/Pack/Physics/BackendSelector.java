@@ -0,0 +1,34 @@
+package custom.Pack.Physics;
+
+// Resolves the default backend once, on first use
+final class BackendSelector {
+    static final PhysicsBackend DEFAULT = select(System.getProperty(PhysicsBackend.PROPERTY));
+
+    private BackendSelector() {
+    }
+
+    static PhysicsBackend forName(String name) {
+        switch (name) {
+            case "native":
+                if (!NativeBackend.isAvailable()) {
+                    throw new IllegalStateException("Native backend requested but the library failed to load: " + NativeBackend.getLoadError());
+                }
+                return new NativeBackend();
+            case "java":
+                return new JavaBackend();
+            default:
+                throw new IllegalArgumentException("Unknown physics backend: " + name);
+        }
+    }
+
+    private static PhysicsBackend select(String requested) {
+        if (requested != null && !requested.isEmpty()) {
+            return forName(requested);
+        }
+        if (NativeBackend.isAvailable()) {
+            return new NativeBackend();
+        }
+        System.err.println("Native library failed to load, using the Java backend: " + NativeBackend.getLoadError());
+        return new JavaBackend();
+    }
+}
@@ -0,0 +1,385 @@
+package custom.Pack.Physics;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import custom.Pack.Particle.ParticleStore;
+
+/**
+ * Barnes-Hut quadtree over the particles of a ParticleStore, rebuilt from the columns every step.
+ * Particles are sorted by Morton key, so every node covers a contiguous range of the sorted arrays
+ * and the four children of a node are consecutive nodes. A node is used as a single body at its
+ * centroid when size < theta * distance, which makes the pass O(N log N) instead of O(N^2);
+ * theta = 0 opens every node and gives the exact all-pairs sum. The walk is done once per leaf,
+ * measuring distance to the leaf's bounding box, and its list is then summed for every body in it.
+ * Nodes containing the leaf are always opened: above theta of about 0.71 an ancestor's centroid can
+ * be far enough from the leaf to pass the test, which would fold the leaf's own bodies into it.
+ *
+ * Particles with a zero source strength (for the chosen interaction) or a non-finite position
+ * neither exert nor feel pair forces and are left out of the tree.
+ */
+public class BarnesHutTree {
+    public static final float DEFAULT_THETA = 0.5f;
+    // Particles per leaf, summed directly
+    static final int LEAF_SIZE = 16;
+    // Morton keys have 16 bits per axis
+    private static final int MAX_DEPTH = 16;
+    // Plummer softening of about one particle radius, so close pairs stay finite
+    private static final float SOFTENING_SQUARED = 25.0f;
+    // Leaves per parallel task
+    private static final int LEAVES_PER_TASK = 64;
+
+    // Particles in Morton order
+    private int count;
+    private int[] keys = new int[0];
+    private int[] slots = new int[0]; // Store slot of each sorted particle
+    private int[] scratchKeys = new int[0];
+    private int[] scratchSlots = new int[0];
+    private float[] sortedX = new float[0];
+    private float[] sortedY = new float[0];
+    private float[] sortedStrength = new float[0];
+
+    // Nodes, node 0 is the root
+    private int nodeCount;
+    private int[] nodeStart = new int[0];
+    private int[] nodeEnd = new int[0];
+    private int[] nodeChild = new int[0]; // First of four children, -1 for a leaf
+    private float[] nodeSize = new float[0];
+    private float[] nodeStrength = new float[0];
+    private float[] nodeAbsStrength = new float[0]; // Sum of |strength|, the centroid weight
+    private float[] nodeX = new float[0];
+    private float[] nodeY = new float[0];
+
+    private int leafCount;
+    private int[] leaves = new int[0]; // Non-empty leaves in Morton order
+
+    private float coupling;
+
+    // Sorts the particles and builds the tree for the given interaction
+    public void build(ParticleStore store, PairInteraction interaction) {
+        int size = store.size();
+        FloatBuffer x = store.getX();
+        FloatBuffer y = store.getY();
+        FloatBuffer strength = interaction.strengths(store);
+        coupling = interaction.getCoupling();
+        ensureParticleCapacity(size);
+
+        // Bounding square of the particles taking part
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        count = 0;
+        for (int i = 0; i < size; i++) {
+            float px = x.get(i);
+            float py = y.get(i);
+            if (strength.get(i) == 0 || !Float.isFinite(px) || !Float.isFinite(py)) {
+                continue;
+            }
+            slots[count++] = i;
+            minX = Math.min(minX, px);
+            minY = Math.min(minY, py);
+            maxX = Math.max(maxX, px);
+            maxY = Math.max(maxY, py);
+        }
+        nodeCount = 0;
+        leafCount = 0;
+        if (count == 0) {
+            return;
+        }
+        float extent = Math.max(Math.max(maxX - minX, maxY - minY), 1e-3f);
+        float scale = 65535.0f / extent;
+
+        for (int k = 0; k < count; k++) {
+            int i = slots[k];
+            int cellX = Math.min(65535, (int) ((x.get(i) - minX) * scale));
+            int cellY = Math.min(65535, (int) ((y.get(i) - minY) * scale));
+            keys[k] = spread(cellX) | (spread(cellY) << 1);
+        }
+        sortByKey();
+        for (int k = 0; k < count; k++) {
+            int i = slots[k];
+            sortedX[k] = x.get(i);
+            sortedY[k] = y.get(i);
+            sortedStrength[k] = strength.get(i);
+        }
+
+        newNodes(1);
+        buildNode(0, 0, count, 0, extent);
+    }
+
+    // Spreads the low 16 bits of v to the even bits of the result
+    private static int spread(int v) {
+        v = (v | (v << 8)) & 0x00FF00FF;
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        return v;
+    }
+
+    // LSD radix sort of the unsigned keys, one byte per pass, carrying the store slots along
+    private void sortByKey() {
+        int[] histogram = new int[256];
+        for (int shift = 0; shift < 32; shift += 8) {
+            Arrays.fill(histogram, 0);
+            for (int k = 0; k < count; k++) {
+                histogram[(keys[k] >>> shift) & 0xFF]++;
+            }
+            for (int b = 0, sum = 0; b < 256; b++) {
+                int bucket = histogram[b];
+                histogram[b] = sum;
+                sum += bucket;
+            }
+            for (int k = 0; k < count; k++) {
+                int target = histogram[(keys[k] >>> shift) & 0xFF]++;
+                scratchKeys[target] = keys[k];
+                scratchSlots[target] = slots[k];
+            }
+            int[] swap = keys;
+            keys = scratchKeys;
+            scratchKeys = swap;
+            swap = slots;
+            slots = scratchSlots;
+            scratchSlots = swap;
+        }
+    }
+
+    private void buildNode(int node, int start, int end, int depth, float size) {
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeSize[node] = size;
+        nodeChild[node] = -1;
+
+        if (end - start > LEAF_SIZE && depth < MAX_DEPTH) {
+            int child = newNodes(4);
+            nodeChild[node] = child;
+            // The two key bits below the node's prefix pick the quadrant
+            int shift = 2 * (MAX_DEPTH - 1 - depth);
+            int first = start;
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                int last = quadrant == 3 ? end : firstAbove(first, end, shift, quadrant);
+                buildNode(child + quadrant, first, last, depth + 1, size / 2);
+                first = last;
+            }
+        } else if (end > start) {
+            if (leafCount == leaves.length) {
+                leaves = Arrays.copyOf(leaves, Math.max(64, leafCount * 2));
+            }
+            leaves[leafCount++] = node;
+        }
+
+        // Total strength at the centroid weighted by |strength|, so mixed charges keep a sensible position
+        float strength = 0, weight = 0, weightedX = 0, weightedY = 0;
+        if (nodeChild[node] < 0) {
+            for (int k = start; k < end; k++) {
+                float w = Math.abs(sortedStrength[k]);
+                strength += sortedStrength[k];
+                weight += w;
+                weightedX += w * sortedX[k];
+                weightedY += w * sortedY[k];
+            }
+        } else {
+            for (int c = nodeChild[node]; c < nodeChild[node] + 4; c++) {
+                float w = nodeAbsStrength[c];
+                strength += nodeStrength[c];
+                weight += w;
+                weightedX += w * nodeX[c];
+                weightedY += w * nodeY[c];
+            }
+        }
+        nodeStrength[node] = strength;
+        nodeX[node] = weight > 0 ? weightedX / weight : 0;
+        nodeY[node] = weight > 0 ? weightedY / weight : 0;
+        nodeAbsStrength[node] = weight;
+    }
+
+    // First sorted index in [from, to) whose quadrant at this shift is above the given one
+    private int firstAbove(int from, int to, int shift, int quadrant) {
+        int low = from, high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (((keys[middle] >>> shift) & 3) <= quadrant) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Adds the pair force on every particle in the tree, in parallel on the pool when one is given
+    public void accumulate(ParticleStore store, float theta, ForkJoinPool pool) {
+        if (pool == null || leafCount <= LEAVES_PER_TASK) {
+            accumulate(store, theta, 0, leafCount);
+        } else {
+            pool.invoke(new PairForceTask(store, theta, 0, leafCount));
+        }
+    }
+
+    // Adds the pair force on the particles of leaves [fromLeaf, toLeaf); each particle writes only its own slot.
+    // The bodies of a leaf share one interaction list, opened against the leaf's bounding box.
+    void accumulate(ParticleStore store, float theta, int fromLeaf, int toLeaf) {
+        FloatBuffer outFx = store.getForceX();
+        FloatBuffer outFy = store.getForceY();
+        float thetaSquared = theta * theta;
+        int[] stack = new int[3 * MAX_DEPTH + 4];
+        Interactions list = new Interactions();
+        float[] force = new float[2];
+
+        for (int l = fromLeaf; l < toLeaf; l++) {
+            int leaf = leaves[l];
+            int start = nodeStart[leaf];
+            int end = nodeEnd[leaf];
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            for (int k = start; k < end; k++) {
+                minX = Math.min(minX, sortedX[k]);
+                minY = Math.min(minY, sortedY[k]);
+                maxX = Math.max(maxX, sortedX[k]);
+                maxY = Math.max(maxY, sortedY[k]);
+            }
+
+            list.size = 0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                if (nodeStart[node] == nodeEnd[node]) {
+                    continue;
+                }
+                if (nodeChild[node] < 0) {
+                    for (int j = nodeStart[node]; j < nodeEnd[node]; j++) {
+                        list.add(sortedX[j], sortedY[j], sortedStrength[j]);
+                    }
+                    continue;
+                }
+                // Distance from the centroid to the nearest point of the leaf, so the test holds for every body in it
+                float dx = Math.max(0, Math.max(minX - nodeX[node], nodeX[node] - maxX));
+                float dy = Math.max(0, Math.max(minY - nodeY[node], nodeY[node] - maxY));
+                boolean ancestor = nodeStart[node] <= start && end <= nodeEnd[node];
+                if (!ancestor && nodeSize[node] * nodeSize[node] < thetaSquared * (dx * dx + dy * dy)) {
+                    list.add(nodeX[node], nodeY[node], nodeStrength[node]);
+                } else {
+                    int child = nodeChild[node];
+                    stack[top++] = child;
+                    stack[top++] = child + 1;
+                    stack[top++] = child + 2;
+                    stack[top++] = child + 3;
+                }
+            }
+
+            for (int k = start; k < end; k++) {
+                float px = sortedX[k];
+                float py = sortedY[k];
+                force[0] = 0.0f;
+                force[1] = 0.0f;
+                // The body's own entry has dx = dy = 0 and adds nothing, thanks to the softening
+                int e = JavaBackend.isVectorized()
+                    ? VectorKernels.sumInverseSquare(list.x, list.y, list.strength, list.size, px, py, SOFTENING_SQUARED, force) : 0;
+                for (; e < list.size; e++) {
+                    float dx = list.x[e] - px;
+                    float dy = list.y[e] - py;
+                    float scale = list.strength[e] * inverseCube(dx * dx + dy * dy);
+                    force[0] += scale * dx;
+                    force[1] += scale * dy;
+                }
+                int slot = slots[k];
+                float factor = coupling * sortedStrength[k];
+                outFx.put(slot, outFx.get(slot) + factor * force[0]);
+                outFy.put(slot, outFy.get(slot) + factor * force[1]);
+            }
+        }
+    }
+
+    // 1 / r^3 with softening
+    private static float inverseCube(float distanceSquared) {
+        float r2 = distanceSquared + SOFTENING_SQUARED;
+        return 1.0f / (r2 * (float) Math.sqrt(r2));
+    }
+
+    // Number of particles in the tree
+    public int size() {
+        return count;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private void ensureParticleCapacity(int capacity) {
+        if (keys.length >= capacity) {
+            return;
+        }
+        int grown = Math.max(capacity, keys.length + (keys.length >> 1));
+        keys = new int[grown];
+        slots = new int[grown];
+        scratchKeys = new int[grown];
+        scratchSlots = new int[grown];
+        sortedX = new float[grown];
+        sortedY = new float[grown];
+        sortedStrength = new float[grown];
+    }
+
+    // Reserves n consecutive nodes and returns the first
+    private int newNodes(int n) {
+        int first = nodeCount;
+        nodeCount += n;
+        if (nodeCount > nodeStart.length) {
+            int grown = Math.max(nodeCount, nodeStart.length * 2);
+            nodeStart = Arrays.copyOf(nodeStart, grown);
+            nodeEnd = Arrays.copyOf(nodeEnd, grown);
+            nodeChild = Arrays.copyOf(nodeChild, grown);
+            nodeSize = Arrays.copyOf(nodeSize, grown);
+            nodeStrength = Arrays.copyOf(nodeStrength, grown);
+            nodeAbsStrength = Arrays.copyOf(nodeAbsStrength, grown);
+            nodeX = Arrays.copyOf(nodeX, grown);
+            nodeY = Arrays.copyOf(nodeY, grown);
+        }
+        return first;
+    }
+
+    // Interaction list of one leaf: nearby bodies and the aggregates of distant nodes
+    private static final class Interactions {
+        float[] x = new float[256];
+        float[] y = new float[256];
+        float[] strength = new float[256];
+        int size;
+
+        void add(float bodyX, float bodyY, float bodyStrength) {
+            if (size == x.length) {
+                x = Arrays.copyOf(x, size * 2);
+                y = Arrays.copyOf(y, size * 2);
+                strength = Arrays.copyOf(strength, size * 2);
+            }
+            x[size] = bodyX;
+            y[size] = bodyY;
+            strength[size] = bodyStrength;
+            size++;
+        }
+    }
+
+    // Splits the leaves into tasks; leaves are in Morton order so a task covers one region of space
+    private class PairForceTask extends RecursiveAction {
+        private final ParticleStore store;
+        private final float theta;
+        private final int from;
+        private final int to;
+
+        PairForceTask(ParticleStore store, float theta, int from, int to) {
+            this.store = store;
+            this.theta = theta;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAVES_PER_TASK) {
+                accumulate(store, theta, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PairForceTask(store, theta, from, middle), new PairForceTask(store, theta, middle, to));
+        }
+    }
+}
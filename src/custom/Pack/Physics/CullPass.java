@@ -0,0 +1,135 @@
+package custom.Pack.Physics;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import custom.Pack.Particle.ParticleStore;
+
+/**
+ * Single sweep that ages every particle by one frame and removes the ones that left the bounds,
+ * reached a positive lifespan or are slower than the speed floor. Survivors keep their order.
+ *
+ * Small stores are compacted in place. Large ones are marked in parallel chunks, an exclusive
+ * prefix sum over the per-chunk survivor counts gives every chunk its destination, and the chunks
+ * are then copied in parallel into a spare set of columns that is swapped in. Both paths are O(n).
+ */
+public class CullPass {
+    private float minSpeed;
+    private boolean[] keep = new boolean[0];
+    private int[] chunkDest = new int[0];
+    private ParticleStore spare; // Target of the parallel scatter, created on first use
+
+    public float getMinSpeed() {
+        return minSpeed;
+    }
+
+    // Particles slower than this are removed, 0 disables the floor
+    public void setMinSpeed(float minSpeed) {
+        this.minSpeed = minSpeed;
+    }
+
+    // Keep flags the last run set for the slots the store had before it
+    public boolean[] getKeep() {
+        return keep;
+    }
+
+    // Culls against [0, width] x [0, height] and returns how many particles were removed;
+    // with a pool the store is processed in ParallelStep.CHUNK_SIZE chunks
+    public int run(ParticleStore store, float width, float height, ForkJoinPool pool) {
+        int count = store.size();
+        if (keep.length < store.capacity()) {
+            keep = new boolean[store.capacity()];
+        }
+        if (pool == null || count <= ParallelStep.CHUNK_SIZE) {
+            mark(store, width, height, 0, count);
+            return store.compact(keep);
+        }
+
+        int chunks = (count + ParallelStep.CHUNK_SIZE - 1) / ParallelStep.CHUNK_SIZE;
+        if (chunkDest.length < chunks + 1) {
+            chunkDest = new int[chunks + 1];
+        }
+        pool.invoke(new ChunkTask(0, chunks, chunk -> {
+            int from = chunk * ParallelStep.CHUNK_SIZE;
+            chunkDest[chunk + 1] = mark(store, width, height, from, Math.min(count, from + ParallelStep.CHUNK_SIZE));
+        }));
+        // Exclusive prefix sum of the survivors per chunk
+        chunkDest[0] = 0;
+        for (int c = 0; c < chunks; c++) {
+            chunkDest[c + 1] += chunkDest[c];
+        }
+        int kept = chunkDest[chunks];
+        if (kept == count) {
+            return 0;
+        }
+
+        if (spare == null) {
+            spare = new ParticleStore(store.capacity());
+        }
+        if (spare.getTrailLength() != store.getTrailLength() || spare.getTrails().getBudgetBytes() != store.getTrails().getBudgetBytes()) {
+            spare.setTrailLength(store.getTrailLength(), store.getTrails().getBudgetBytes());
+        }
+        spare.ensureCapacity(store.capacity());
+        ParticleStore target = spare;
+        pool.invoke(new ChunkTask(0, chunks, chunk -> {
+            int from = chunk * ParallelStep.CHUNK_SIZE;
+            store.copyKept(keep, from, Math.min(count, from + ParallelStep.CHUNK_SIZE), target, chunkDest[chunk]);
+        }));
+        store.swapColumns(spare, kept);
+        return count - kept;
+    }
+
+    // Ages particles [from, to), sets their keep flags and returns how many survive
+    private int mark(ParticleStore store, float width, float height, int from, int to) {
+        FloatBuffer x = store.getX();
+        FloatBuffer y = store.getY();
+        FloatBuffer vx = store.getVelocityX();
+        FloatBuffer vy = store.getVelocityY();
+        int[] age = store.getAge();
+        int[] lifespan = store.getLifespan();
+        float minSpeedSquared = minSpeed * minSpeed;
+
+        int kept = 0;
+        for (int i = from; i < to; i++) {
+            int newAge = ++age[i];
+            float px = x.get(i);
+            float py = y.get(i);
+            float speedX = vx.get(i);
+            float speedY = vy.get(i);
+            // Written so that NaN positions fail the bounds test
+            boolean alive = px >= 0 && px <= width && py >= 0 && py <= height
+                && (lifespan[i] <= 0 || newAge < lifespan[i])
+                && speedX * speedX + speedY * speedY >= minSpeedSquared;
+            keep[i] = alive;
+            if (alive) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    // Runs body for every chunk index in [from, to), splitting in halves
+    private static final class ChunkTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer body;
+
+        ChunkTask(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(from, middle, body), new ChunkTask(middle, to, body));
+        }
+    }
+}
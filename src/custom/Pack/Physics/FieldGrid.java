@@ -0,0 +1,284 @@
+package custom.Pack.Physics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.Vector;
+
+import custom.Pack.FieldPoint.FieldPoint;
+
+/**
+ * Packed field points plus a uniform grid over the ones that have an influence cutoff.
+ * Fields without a cutoff come first in the field buffer and act on every particle. Fields with a
+ * cutoff are sorted by grid cell, and since a cell is at least as wide as the largest cutoff a
+ * particle only has to visit the 3x3 cells around it. Dropping a field beyond its cutoff r changes
+ * the force by at most |charge * strength| * K / r^2.
+ *
+ * With the far field enabled, cells outside that neighbourhood are not dropped but approximated:
+ * every cell, and every BLOCK x BLOCK group of cells, keeps the total strength and centroid of its
+ * attractors and of its repulsors, and those act on the particle as two point fields.
+ *
+ * Sorting the fields into cells only happens in rebuild(), which has to be called after a field is
+ * added, removed or moved. refresh() copies positions and strengths into the packed slots and is
+ * cheap enough to run every step.
+ */
+public class FieldGrid {
+    // Floats per packed field: x, y, signed strength, squared cutoff
+    public static final int FIELD_STRIDE = 4;
+    // Floats per aggregate: attractor strength, x, y, then repulsor strength, x, y
+    public static final int AGGREGATE_STRIDE = 6;
+    // Cells per side of a far-field block
+    public static final int BLOCK = 4;
+    // The cell size is doubled until the grid has at most this many cells
+    static final int MAX_CELLS = 4096;
+
+    private FloatBuffer fields = floats(16 * FIELD_STRIDE);
+    private IntBuffer cellStart = ints(1);
+    private FloatBuffer cellAggregates = floats(AGGREGATE_STRIDE);
+    private FloatBuffer blockAggregates = floats(AGGREGATE_STRIDE);
+    private int[] order = new int[0]; // Index in the field list of every packed slot
+
+    private int fieldCount;
+    private int unboundedCount;
+    private float originX;
+    private float originY;
+    private float cellSize;
+    private int columns;
+    private int rows;
+    private int blockColumns;
+    private int blockRows;
+    private float defaultCutoff;
+    private boolean farField;
+
+    private static FloatBuffer floats(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    private static IntBuffer ints(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    // Cutoff a field is evaluated with, 0 means unlimited
+    private static float cutoffOf(FieldPoint fieldPoint, float defaultCutoff) {
+        return fieldPoint.getCutoff() > 0 ? fieldPoint.getCutoff() : Math.max(0, defaultCutoff);
+    }
+
+    // Re-sorts the fields into grid cells; defaultCutoff applies to fields without their own, 0 for none
+    public void rebuild(List<FieldPoint> fieldPoints, float defaultCutoff, boolean farField) {
+        int count = fieldPoints.size();
+        this.defaultCutoff = defaultCutoff;
+        this.farField = farField;
+        fieldCount = count;
+        if (order.length < count) {
+            order = new int[Math.max(16, count * 2)];
+        }
+        if (fields.capacity() < count * FIELD_STRIDE) {
+            fields = floats(Math.max(16, count * 2) * FIELD_STRIDE);
+        }
+
+        // Unbounded fields first, and the extent of the bounded ones
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float maxCutoff = 0;
+        unboundedCount = 0;
+        for (int i = 0; i < count; i++) {
+            FieldPoint fieldPoint = fieldPoints.get(i);
+            float cutoff = cutoffOf(fieldPoint, defaultCutoff);
+            if (cutoff == 0) {
+                order[unboundedCount++] = i;
+                continue;
+            }
+            Vector<Float> position = fieldPoint.getPosition();
+            minX = Math.min(minX, position.get(0));
+            minY = Math.min(minY, position.get(1));
+            maxX = Math.max(maxX, position.get(0));
+            maxY = Math.max(maxY, position.get(1));
+            maxCutoff = Math.max(maxCutoff, cutoff);
+        }
+
+        if (unboundedCount == count) {
+            columns = rows = blockColumns = blockRows = 0;
+            cellStart.put(0, count);
+            refresh(fieldPoints);
+            return;
+        }
+
+        originX = minX;
+        originY = minY;
+        cellSize = maxCutoff;
+        while (true) {
+            columns = (int) ((maxX - minX) / cellSize) + 1;
+            rows = (int) ((maxY - minY) / cellSize) + 1;
+            if ((long) columns * rows <= MAX_CELLS) {
+                break;
+            }
+            cellSize *= 2;
+        }
+        blockColumns = (columns + BLOCK - 1) / BLOCK;
+        blockRows = (rows + BLOCK - 1) / BLOCK;
+        int cells = columns * rows;
+        if (cellStart.capacity() < cells + 1) {
+            cellStart = ints(MAX_CELLS + 1);
+            cellAggregates = floats(MAX_CELLS * AGGREGATE_STRIDE);
+            blockAggregates = floats(MAX_CELLS * AGGREGATE_STRIDE);
+        }
+
+        // Counting sort of the bounded fields by cell, keeping list order within a cell
+        int[] cellOfField = new int[count];
+        int[] start = new int[cells + 1];
+        start[0] = unboundedCount;
+        for (int i = 0; i < count; i++) {
+            FieldPoint fieldPoint = fieldPoints.get(i);
+            cellOfField[i] = cutoffOf(fieldPoint, defaultCutoff) > 0 ? cellOf(fieldPoint.getPosition()) : -1;
+            if (cellOfField[i] >= 0) {
+                start[cellOfField[i] + 1]++;
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            start[c + 1] += start[c];
+        }
+        for (int c = 0; c <= cells; c++) {
+            cellStart.put(c, start[c]);
+        }
+        for (int i = 0; i < count; i++) {
+            if (cellOfField[i] >= 0) {
+                order[start[cellOfField[i]]++] = i;
+            }
+        }
+        refresh(fieldPoints);
+    }
+
+    private int cellOf(Vector<Float> position) {
+        return cellOf(position.get(0), position.get(1));
+    }
+
+    private int cellOf(float x, float y) {
+        int column = Math.min(columns - 1, Math.max(0, (int) ((x - originX) / cellSize)));
+        int row = Math.min(rows - 1, Math.max(0, (int) ((y - originY) / cellSize)));
+        return row * columns + column;
+    }
+
+    // Copies positions, strengths and cutoffs into the packed slots and updates the far-field aggregates.
+    // Fields must still be in the cells they were sorted into, so call rebuild after moving one.
+    public void refresh(List<FieldPoint> fieldPoints) {
+        for (int slot = 0; slot < fieldCount; slot++) {
+            FieldPoint fieldPoint = fieldPoints.get(order[slot]);
+            Vector<Float> position = fieldPoint.getPosition();
+            // Repulsors are packed with a negative strength
+            float sign = "B".equals(fieldPoint.getType()) ? -1.0f : 1.0f;
+            float cutoff = cutoffOf(fieldPoint, defaultCutoff);
+            int base = slot * FIELD_STRIDE;
+            fields.put(base, position.get(0));
+            fields.put(base + 1, position.get(1));
+            fields.put(base + 2, sign * fieldPoint.getFieldStrength());
+            fields.put(base + 3, cutoff * cutoff);
+        }
+        if (farField && columns > 0) {
+            aggregate();
+        }
+    }
+
+    // Sums the attractors and repulsors of every cell and block into strength-weighted centroids
+    private void aggregate() {
+        int cells = columns * rows;
+        for (int i = 0; i < cells * AGGREGATE_STRIDE; i++) {
+            cellAggregates.put(i, 0);
+        }
+        for (int i = 0; i < blockColumns * blockRows * AGGREGATE_STRIDE; i++) {
+            blockAggregates.put(i, 0);
+        }
+        for (int c = 0; c < cells; c++) {
+            int block = (c / columns / BLOCK) * blockColumns + (c % columns) / BLOCK;
+            for (int slot = cellStart.get(c); slot < cellStart.get(c + 1); slot++) {
+                int base = slot * FIELD_STRIDE;
+                float strength = fields.get(base + 2);
+                int half = strength >= 0 ? 0 : 3;
+                accumulate(cellAggregates, c * AGGREGATE_STRIDE + half, fields.get(base), fields.get(base + 1), strength);
+                accumulate(blockAggregates, block * AGGREGATE_STRIDE + half, fields.get(base), fields.get(base + 1), strength);
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            centroid(cellAggregates, c * AGGREGATE_STRIDE);
+            centroid(cellAggregates, c * AGGREGATE_STRIDE + 3);
+        }
+        for (int b = 0; b < blockColumns * blockRows; b++) {
+            centroid(blockAggregates, b * AGGREGATE_STRIDE);
+            centroid(blockAggregates, b * AGGREGATE_STRIDE + 3);
+        }
+    }
+
+    private static void accumulate(FloatBuffer aggregates, int base, float x, float y, float strength) {
+        aggregates.put(base, aggregates.get(base) + strength);
+        aggregates.put(base + 1, aggregates.get(base + 1) + strength * x);
+        aggregates.put(base + 2, aggregates.get(base + 2) + strength * y);
+    }
+
+    private static void centroid(FloatBuffer aggregates, int base) {
+        float strength = aggregates.get(base);
+        if (strength != 0) {
+            aggregates.put(base + 1, aggregates.get(base + 1) / strength);
+            aggregates.put(base + 2, aggregates.get(base + 2) / strength);
+        }
+    }
+
+    public FloatBuffer getFields() {
+        return fields;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    // Fields [0, getUnboundedCount()) have no cutoff and act on every particle
+    public int getUnboundedCount() {
+        return unboundedCount;
+    }
+
+    // Slots [cellStart(c), cellStart(c + 1)) are the fields of cell c = row * columns + column
+    public IntBuffer getCellStart() {
+        return cellStart;
+    }
+
+    public FloatBuffer getCellAggregates() {
+        return cellAggregates;
+    }
+
+    public FloatBuffer getBlockAggregates() {
+        return blockAggregates;
+    }
+
+    public float getOriginX() {
+        return originX;
+    }
+
+    public float getOriginY() {
+        return originY;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    // 0 when every field is unbounded
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getBlockColumns() {
+        return blockColumns;
+    }
+
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    public boolean isFarField() {
+        return farField;
+    }
+}
@@ -0,0 +1,255 @@
+package custom.Pack.Physics;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.Vector;
+
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.Emitter.SplitMix;
+import custom.Pack.Particle.Particle;
+import custom.Pack.Particle.ParticleStore;
+
+/**
+ * Pure-Java implementation of the native force model and integrator.
+ * Particles are processed in SIMD lanes through jdk.incubator.vector when the module is present
+ * (--add-modules jdk.incubator.vector) and by a scalar loop otherwise.
+ */
+public class JavaBackend implements PhysicsBackend {
+    // Constants shared with ParticleSystem.cpp
+    static final float K = 200.0f;
+    static final float DEAD_ZONE = 10.0f;
+    static final float GRAVITY = 0.1f;
+    static final float DT = 1.0f;
+
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    @Override
+    public String getName() {
+        return "java";
+    }
+
+    @Override
+    public void step(ParticleStore store, FieldGrid grid, int gravityEnabled, int flags, int from, int to) {
+        if ((flags & STEP_FORCES) != 0) {
+            // Fields without a cutoff act on every particle and vectorize; the gridded ones are added per particle
+            FloatBuffer fields = grid == null ? null : grid.getFields();
+            int fieldCount = grid == null ? 0 : grid.getUnboundedCount();
+            int done = VECTORIZED ? VectorKernels.computeForces(store, fields, fieldCount, gravityEnabled == 1, from, to) : from;
+            computeForces(store, fields, fieldCount, gravityEnabled == 1, done, to);
+            if (grid != null && grid.getColumns() > 0) {
+                addGridForces(store, grid, from, to);
+            }
+        }
+        if ((flags & STEP_INTEGRATE) != 0) {
+            int done = VECTORIZED ? VectorKernels.integrate(store, from, to) : from;
+            integrate(store, done, to);
+        }
+    }
+
+    // Scalar force pass over particles [from, to)
+    static void computeForces(ParticleStore store, FloatBuffer fields, int fieldCount, boolean gravity, int from, int to) {
+        FloatBuffer x = store.getX();
+        FloatBuffer y = store.getY();
+        FloatBuffer mass = store.getMass();
+        FloatBuffer charge = store.getCharge();
+        FloatBuffer outFx = store.getForceX();
+        FloatBuffer outFy = store.getForceY();
+
+        for (int i = from; i < to; i++) {
+            float px = x.get(i);
+            float py = y.get(i);
+            float q = charge.get(i);
+
+            float forceX = 0.0f;
+            float forceY = gravity ? (float) (mass.get(i) * 0.1) : 0.0f;
+
+            for (int j = 0; j < fieldCount; j++) {
+                float dx = fields.get(FieldGrid.FIELD_STRIDE * j) - px;
+                float dy = fields.get(FieldGrid.FIELD_STRIDE * j + 1) - py;
+                float distanceSquared = dx * dx + dy * dy;
+                float distance = (float) Math.sqrt(distanceSquared);
+
+                if (distance < DEAD_ZONE) {
+                    continue;
+                }
+
+                float forceMagnitude = (q * fields.get(FieldGrid.FIELD_STRIDE * j + 2) * K) / distanceSquared;
+                forceX += forceMagnitude * (dx / distance);
+                forceY += forceMagnitude * (dy / distance);
+            }
+
+            outFx.put(i, forceX);
+            outFy.put(i, forceY);
+        }
+    }
+
+    // Adds the forces of the gridded fields in the 3x3 cells around each particle in [from, to),
+    // and with the far field enabled the aggregates of every other cell
+    static void addGridForces(ParticleStore store, FieldGrid grid, int from, int to) {
+        FloatBuffer x = store.getX();
+        FloatBuffer y = store.getY();
+        FloatBuffer charge = store.getCharge();
+        FloatBuffer outFx = store.getForceX();
+        FloatBuffer outFy = store.getForceY();
+        FloatBuffer fields = grid.getFields();
+        IntBuffer cellStart = grid.getCellStart();
+        int columns = grid.getColumns();
+        int rows = grid.getRows();
+        boolean farField = grid.isFarField();
+        float[] force = new float[2];
+
+        for (int i = from; i < to; i++) {
+            float px = x.get(i);
+            float py = y.get(i);
+            float q = charge.get(i);
+            force[0] = 0.0f;
+            force[1] = 0.0f;
+
+            // Clamped so the neighbourhood bounds cannot overflow for particles far outside the grid
+            int column = Math.max(-2, Math.min(columns + 1, (int) Math.floor((px - grid.getOriginX()) / grid.getCellSize())));
+            int row = Math.max(-2, Math.min(rows + 1, (int) Math.floor((py - grid.getOriginY()) / grid.getCellSize())));
+            for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+                for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                    int cell = r * columns + c;
+                    for (int slot = cellStart.get(cell); slot < cellStart.get(cell + 1); slot++) {
+                        int base = slot * FieldGrid.FIELD_STRIDE;
+                        float dx = fields.get(base) - px;
+                        float dy = fields.get(base + 1) - py;
+                        // The far field keeps every near field, otherwise fields past their cutoff are dropped
+                        if (!farField && dx * dx + dy * dy > fields.get(base + 3)) {
+                            continue;
+                        }
+                        addPointForce(force, dx, dy, q, fields.get(base + 2));
+                    }
+                }
+            }
+            if (farField) {
+                addFarField(force, grid, px, py, q, row, column);
+            }
+
+            outFx.put(i, outFx.get(i) + force[0]);
+            outFy.put(i, outFy.get(i) + force[1]);
+        }
+    }
+
+    // Adds block aggregates for blocks away from the particle and cell aggregates for the other cells of nearby blocks
+    private static void addFarField(float[] force, FieldGrid grid, float px, float py, float q, int row, int column) {
+        int columns = grid.getColumns();
+        int rows = grid.getRows();
+        for (int br = 0; br < grid.getBlockRows(); br++) {
+            for (int bc = 0; bc < grid.getBlockColumns(); bc++) {
+                int firstRow = br * FieldGrid.BLOCK;
+                int firstColumn = bc * FieldGrid.BLOCK;
+                boolean near = firstRow <= row + 1 && row - 1 < firstRow + FieldGrid.BLOCK
+                    && firstColumn <= column + 1 && column - 1 < firstColumn + FieldGrid.BLOCK;
+                if (!near) {
+                    addAggregate(force, grid.getBlockAggregates(), (br * grid.getBlockColumns() + bc) * FieldGrid.AGGREGATE_STRIDE, px, py, q);
+                    continue;
+                }
+                for (int r = firstRow; r < Math.min(rows, firstRow + FieldGrid.BLOCK); r++) {
+                    for (int c = firstColumn; c < Math.min(columns, firstColumn + FieldGrid.BLOCK); c++) {
+                        if (Math.abs(r - row) <= 1 && Math.abs(c - column) <= 1) {
+                            continue; // Already summed exactly
+                        }
+                        addAggregate(force, grid.getCellAggregates(), (r * columns + c) * FieldGrid.AGGREGATE_STRIDE, px, py, q);
+                    }
+                }
+            }
+        }
+    }
+
+    // An aggregate acts as one attractor and one repulsor at the centroids of each
+    private static void addAggregate(float[] force, FloatBuffer aggregates, int base, float px, float py, float q) {
+        for (int half = base; half <= base + 3; half += 3) {
+            float strength = aggregates.get(half);
+            if (strength != 0) {
+                addPointForce(force, aggregates.get(half + 1) - px, aggregates.get(half + 2) - py, q, strength);
+            }
+        }
+    }
+
+    private static void addPointForce(float[] force, float dx, float dy, float q, float strength) {
+        float distanceSquared = dx * dx + dy * dy;
+        float distance = (float) Math.sqrt(distanceSquared);
+        if (distance < DEAD_ZONE) {
+            return;
+        }
+        float forceMagnitude = (q * strength * K) / distanceSquared;
+        force[0] += forceMagnitude * (dx / distance);
+        force[1] += forceMagnitude * (dy / distance);
+    }
+
+    // Scalar semi-implicit update over particles [from, to)
+    static void integrate(ParticleStore store, int from, int to) {
+        FloatBuffer x = store.getX();
+        FloatBuffer y = store.getY();
+        FloatBuffer vx = store.getVelocityX();
+        FloatBuffer vy = store.getVelocityY();
+        FloatBuffer fx = store.getForceX();
+        FloatBuffer fy = store.getForceY();
+        FloatBuffer mass = store.getMass();
+
+        for (int i = from; i < to; i++) {
+            float m = mass.get(i);
+            float forceX = fx.get(i);
+            float forceY = fy.get(i);
+            x.put(i, x.get(i) + (vx.get(i) * DT + (forceX * DT * DT) / (2.0f * m)));
+            y.put(i, y.get(i) + (vy.get(i) * DT + (forceY * DT * DT) / (2.0f * m)));
+            vx.put(i, vx.get(i) + (forceX / m) * DT);
+            vy.put(i, vy.get(i) + (forceY / m) * DT);
+        }
+    }
+
+    @Override
+    public void update(Particle particle) {
+        if (particle.getStore() != null) {
+            integrate(particle.getStore(), particle.getIndex(), particle.getIndex() + 1);
+            return;
+        }
+        // A standalone particle keeps its state in its own fields
+        float m = particle.getMass();
+        Vector<Float> position = particle.getPosition();
+        Vector<Float> velocity = particle.getVelocity();
+        Vector<Float> force = particle.getForce();
+        float forceX = force.get(0);
+        float forceY = force.get(1);
+        particle.setPosition(new float[] {
+            position.get(0) + (velocity.get(0) * DT + (forceX * DT * DT) / (2.0f * m)),
+            position.get(1) + (velocity.get(1) * DT + (forceY * DT * DT) / (2.0f * m)) });
+        particle.setVelocity(new float[] { velocity.get(0) + (forceX / m) * DT, velocity.get(1) + (forceY / m) * DT });
+    }
+
+    @Override
+    public void fillVelocities(Emitter emitter, float[] velocities, int count) {
+        fill(emitter, velocities, 0, count);
+    }
+
+    @Override
+    public void fillVelocities(List<Emitter> emitters, int[] counts, int n, float[] velocities) {
+        int offset = 0;
+        for (int k = 0; k < n; k++) {
+            fill(emitters.get(k), velocities, offset, counts[k]);
+            offset += 2 * counts[k];
+        }
+    }
+
+    // Same arithmetic as fillVelocities0 in ParticleSystem.cpp, so both backends use the same angles
+    private static void fill(Emitter emitter, float[] velocities, int offset, int count) {
+        float angle = emitter.getAngle();
+        float spread = emitter.getSpread();
+        float speed = emitter.getSpeed();
+        float angL = angle - spread / 2;
+        SplitMix random = emitter.getRandom();
+
+        for (int i = offset, end = offset + 2 * count; i < end; i += 2) {
+            float ang = (float) (angL + random.nextDouble() * spread);
+            velocities[i] = (float) Math.cos(ang) * speed;
+            velocities[i + 1] = (float) Math.sin(ang) * speed;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package custom.Pack.Physics;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.Particle.Particle;
+import custom.Pack.Particle.ParticleStore;
+
+/**
+ * Backend that runs the physics in the C++ library (ParticleSystem.cpp).
+ */
+public class NativeBackend implements PhysicsBackend {
+    private static final UnsatisfiedLinkError LOAD_ERROR;
+
+    // Per-thread arrays the emitter parameters and generator states are packed into for fillVelocities0
+    private static final ThreadLocal<EmitterBatch> BATCH = ThreadLocal.withInitial(EmitterBatch::new);
+
+    // Loads libParticleSystem.so on Unix or ParticleSystem.dll on Windows, remembering a failure instead of exiting
+    static {
+        UnsatisfiedLinkError error = null;
+        try {
+            System.loadLibrary("ParticleSystem");
+        } catch (UnsatisfiedLinkError e) {
+            error = e;
+        }
+        LOAD_ERROR = error;
+    }
+
+    public static boolean isAvailable() {
+        return LOAD_ERROR == null;
+    }
+
+    public static UnsatisfiedLinkError getLoadError() {
+        return LOAD_ERROR;
+    }
+
+    @Override
+    public String getName() {
+        return "native";
+    }
+
+    @Override
+    public void step(ParticleStore s, FieldGrid g, int gravityEnabled, int flags, int from, int to) {
+        if (g == null) {
+            stepNative(s.getX(), s.getY(), s.getVelocityX(), s.getVelocityY(), s.getForceX(), s.getForceY(),
+                       s.getMass(), s.getCharge(), from, to, null, 0, null, null, null, 0, 0, 0, 0, 0, 0, gravityEnabled, flags);
+            return;
+        }
+        stepNative(s.getX(), s.getY(), s.getVelocityX(), s.getVelocityY(), s.getForceX(), s.getForceY(),
+                   s.getMass(), s.getCharge(), from, to, g.getFields(), g.getUnboundedCount(), g.getCellStart(),
+                   g.getCellAggregates(), g.getBlockAggregates(), g.getOriginX(), g.getOriginY(), g.getCellSize(),
+                   g.getColumns(), g.getRows(), g.isFarField() ? 1 : 0, gravityEnabled, flags);
+    }
+
+    @Override
+    public void update(Particle particle) {
+        updateParticle(particle);
+    }
+
+    @Override
+    public void fillVelocities(Emitter emitter, float[] velocities, int count) {
+        EmitterBatch batch = BATCH.get();
+        batch.pack(emitter, 0);
+        batch.counts[0] = count;
+        fillVelocities0(batch.parameters, batch.states, batch.counts, 1, velocities);
+        emitter.setSeed(batch.states[0]);
+    }
+
+    @Override
+    public void fillVelocities(List<Emitter> emitters, int[] counts, int n, float[] velocities) {
+        EmitterBatch batch = BATCH.get();
+        batch.ensureCapacity(n);
+        for (int k = 0; k < n; k++) {
+            batch.pack(emitters.get(k), k);
+        }
+        fillVelocities0(batch.parameters, batch.states, counts, n, velocities);
+        for (int k = 0; k < n; k++) {
+            emitters.get(k).setSeed(batch.states[k]);
+        }
+    }
+
+    // Bulk step: computes forces and/or integrates particles [from, to) directly in the direct buffers.
+    // The field arguments are the buffers and layout of a FieldGrid; columns is 0 when no field has a cutoff.
+    private static native void stepNative(FloatBuffer x, FloatBuffer y, FloatBuffer vx, FloatBuffer vy, FloatBuffer fx, FloatBuffer fy,
+                                          FloatBuffer mass, FloatBuffer charge, int from, int to,
+                                          FloatBuffer fields, int unboundedCount, IntBuffer cellStart, FloatBuffer cellAggregates,
+                                          FloatBuffer blockAggregates, float originX, float originY, float cellSize,
+                                          int columns, int rows, int farField, int gravityEnabled, int flags);
+
+    private static native void updateParticle(Particle particle);
+
+    // Draws counts[k] velocities for each of n emitters given as angle, spread, speed triples, advancing
+    // their generator states in place
+    private static native void fillVelocities0(float[] parameters, long[] states, int[] counts, int n, float[] velocities);
+
+    private static final class EmitterBatch {
+        float[] parameters = new float[3];
+        long[] states = new long[1];
+        int[] counts = new int[1];
+
+        void ensureCapacity(int n) {
+            if (states.length < n) {
+                parameters = new float[3 * n];
+                states = new long[n];
+            }
+        }
+
+        void pack(Emitter emitter, int k) {
+            parameters[3 * k] = emitter.getAngle();
+            parameters[3 * k + 1] = emitter.getSpread();
+            parameters[3 * k + 2] = emitter.getSpeed();
+            states[k] = emitter.getSeed();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package custom.Pack.Physics;
+
+import java.util.Arrays;
+import java.util.List;
+
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.Emitter.OscillatingEmitter;
+
+/**
+ * The oscillating emitters of a system as primitive columns, so that one pass over arrays moves them
+ * all without allocating or calling into the emitters. A row holds the mean position, the amplitude
+ * along x and y (one of them 0, by the emitter's axis), the angle theta advances by each step, theta,
+ * the phase offset and the position mean + amplitude * sin(theta + phase) derived from them.
+ *
+ * Theta and the phase are kept in [0, 2pi), so sin stays accurate however long the system runs.
+ * Every position, in a vector of rows, in the scalar tail or on a single row, comes from sin() below,
+ * so a row's position does not depend on where the vector boundary falls or on whether the vector
+ * module is present.
+ * Attached emitters read their theta and position from their row and write their parameters to it.
+ * ParticleSystem rebuilds the rows when its emitter list changes and advances them once per step.
+ */
+public class OscillatorTable {
+    public static final float TWO_PI = (float) (2 * Math.PI);
+    static final float PI = (float) Math.PI;
+    static final float HALF_PI = (float) (Math.PI / 2);
+    // Odd polynomial for sin on [-pi/2, pi/2]: x + x^3 * (S3 + x^2 * (S5 + x^2 * (S7 + x^2 * (S9 + x^2 * S11))))
+    static final float S3 = -1.6666667e-1f;
+    static final float S5 = 8.3333310e-3f;
+    static final float S7 = -1.9840874e-4f;
+    static final float S9 = 2.7525562e-6f;
+    static final float S11 = -2.3889859e-8f;
+
+    private OscillatingEmitter[] emitters = new OscillatingEmitter[0];
+    private float[] meanX = new float[0];
+    private float[] meanY = new float[0];
+    private float[] amplitudeX = new float[0];
+    private float[] amplitudeY = new float[0];
+    private float[] step = new float[0];
+    private float[] theta = new float[0];
+    private float[] phase = new float[0];
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private int size;
+    private int emitterCount = -1; // Size of the emitter list at the last rebuild
+
+    public int size() {
+        return size;
+    }
+
+    // Size of the emitter list the rows were built from, -1 before the first rebuild
+    public int getEmitterCount() {
+        return emitterCount;
+    }
+
+    public float getX(int row) {
+        return x[row];
+    }
+
+    public float getY(int row) {
+        return y[row];
+    }
+
+    public float getTheta(int row) {
+        return theta[row];
+    }
+
+    public void setTheta(int row, float theta) {
+        this.theta[row] = wrap(theta);
+        position(row);
+    }
+
+    // Packs the oscillating emitters of the list into rows in list order, detaching the previous ones first
+    public void rebuild(List<Emitter> list) {
+        for (int row = 0; row < size; row++) {
+            emitters[row].detach(this);
+            emitters[row] = null;
+        }
+        size = 0;
+        for (int k = 0, n = list.size(); k < n; k++) {
+            if (list.get(k) instanceof OscillatingEmitter) {
+                ensureCapacity(size + 1);
+                OscillatingEmitter emitter = (OscillatingEmitter) list.get(k);
+                emitters[size] = emitter;
+                theta[size] = wrap(emitter.getTheta());
+                load(size, emitter);
+                emitter.attach(this, size);
+                size++;
+            }
+        }
+        emitterCount = list.size();
+    }
+
+    // Copies the parameters of the emitter on a row, after one of them changed
+    public void load(int row, OscillatingEmitter emitter) {
+        float amplitude = emitter.getAmplitude();
+        boolean alongX = emitter.getAxis() == OscillatingEmitter.Axis.X;
+        meanX[row] = emitter.getMeanX();
+        meanY[row] = emitter.getMeanY();
+        amplitudeX[row] = alongX ? amplitude : 0;
+        amplitudeY[row] = alongX ? 0 : amplitude;
+        step[row] = wrap(TWO_PI * emitter.getFrequency());
+        phase[row] = wrap(emitter.getPhase());
+        position(row);
+    }
+
+    // Advances every row by one step
+    public void advance() {
+        int done = JavaBackend.isVectorized()
+            ? VectorKernels.advanceOscillators(meanX, meanY, amplitudeX, amplitudeY, step, theta, phase, x, y, size) : 0;
+        for (int row = done; row < size; row++) {
+            float t = theta[row] + step[row];
+            theta[row] = t >= TWO_PI ? t - TWO_PI : t;
+            position(row);
+        }
+    }
+
+    private void position(int row) {
+        float s = sin(theta[row] + phase[row]);
+        x[row] = meanX[row] + amplitudeX[row] * s;
+        y[row] = meanY[row] + amplitudeY[row] * s;
+    }
+
+    // sin of an angle in [0, 4pi), within 1e-6 of Math.sin. Built only from compares, adds, multiplies
+    // and fused multiply-adds, which VectorKernels.advanceOscillators repeats lane by lane, so both give
+    // the same bits for the same angle.
+    public static float sin(float angle) {
+        float a = angle >= TWO_PI ? angle - TWO_PI : angle;
+        // sin(a) = -sin(a - pi), then fold a - pi in [-pi, pi) to [-pi/2, pi/2]
+        float r = a - PI;
+        if (r > HALF_PI) {
+            r = PI - r;
+        } else if (r < -HALF_PI) {
+            r = -PI - r;
+        }
+        float r2 = r * r;
+        float p = Math.fma(S11, r2, S9);
+        p = Math.fma(p, r2, S7);
+        p = Math.fma(p, r2, S5);
+        p = Math.fma(p, r2, S3);
+        return -Math.fma(r * r2, p, r);
+    }
+
+    // Angle in [0, 2pi)
+    public static float wrap(float angle) {
+        float wrapped = (float) (angle - 2 * Math.PI * Math.floor(angle / (2 * Math.PI)));
+        return wrapped >= TWO_PI ? 0 : wrapped;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= emitters.length) {
+            return;
+        }
+        int grown = Math.max(capacity, Math.max(16, 2 * emitters.length));
+        emitters = Arrays.copyOf(emitters, grown);
+        meanX = Arrays.copyOf(meanX, grown);
+        meanY = Arrays.copyOf(meanY, grown);
+        amplitudeX = Arrays.copyOf(amplitudeX, grown);
+        amplitudeY = Arrays.copyOf(amplitudeY, grown);
+        step = Arrays.copyOf(step, grown);
+        theta = Arrays.copyOf(theta, grown);
+        phase = Arrays.copyOf(phase, grown);
+        x = Arrays.copyOf(x, grown);
+        y = Arrays.copyOf(y, grown);
+    }
+}
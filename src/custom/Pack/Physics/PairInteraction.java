@@ -0,0 +1,36 @@
+package custom.Pack.Physics;
+
+import java.nio.FloatBuffer;
+
+import custom.Pack.Particle.ParticleStore;
+
+/**
+ * Particle-particle force law evaluated by the Barnes-Hut pass. A body's source strength is its mass
+ * for gravity and its charge for electrostatics, and the force between two bodies is
+ * coupling * s_i * s_j / r^2 towards each other, so a negative coupling makes like charges repel.
+ */
+public enum PairInteraction {
+    NONE(0.0f),
+    GRAVITY(1.0f),
+    ELECTROSTATIC(-1.0f);
+
+    private final float coupling;
+
+    PairInteraction(float coupling) {
+        this.coupling = coupling;
+    }
+
+    public float getCoupling() {
+        return coupling;
+    }
+
+    // Column holding the source strength of each particle
+    FloatBuffer strengths(ParticleStore store) {
+        return this == GRAVITY ? store.getMass() : store.getCharge();
+    }
+
+    // Next mode, for cycling through them from the UI
+    public PairInteraction next() {
+        return values()[(ordinal() + 1) % values().length];
+    }
+}
@@ -0,0 +1,72 @@
+package custom.Pack.Physics;
+
+import java.util.List;
+
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.Particle.Particle;
+import custom.Pack.Particle.ParticleStore;
+
+/**
+ * Computes forces and integrates particles for a ParticleSystem.
+ * The native backend is used when libParticleSystem can be loaded and the pure-Java backend otherwise;
+ * run with -Dparticle.backend=native or -Dparticle.backend=java to choose explicitly.
+ */
+public interface PhysicsBackend {
+    // System property that selects the backend
+    String PROPERTY = "particle.backend";
+
+    // Flags for step
+    int STEP_FORCES = 1;
+    int STEP_INTEGRATE = 2;
+
+    // Particles spawned by one emitter burst
+    int PARTICLES_PER_EMIT = 10;
+
+    String getName();
+
+    // Computes forces and/or integrates particles [from, to); fields may be null when there are none.
+    // Only particles in the range are written, so disjoint ranges may be stepped concurrently.
+    void step(ParticleStore store, FieldGrid fields, int gravityEnabled, int flags, int from, int to);
+
+    // Steps every particle in the store
+    default void step(ParticleStore store, FieldGrid fields, int gravityEnabled, int flags) {
+        step(store, fields, gravityEnabled, flags, 0, store.size());
+    }
+
+    // Integrates a single particle
+    void update(Particle particle);
+
+    // Writes vx, vy pairs for count particles of an emitter burst, without allocating.
+    // Angles are drawn from the emitter's generator, so the same seed gives the same velocities.
+    void fillVelocities(Emitter emitter, float[] velocities, int count);
+
+    // Fills the whole array, velocities.length / 2 particles
+    default void fillVelocities(Emitter emitter, float[] velocities) {
+        fillVelocities(emitter, velocities, velocities.length / 2);
+    }
+
+    // Writes counts[k] vx, vy pairs for each of the first n emitters into velocities, one emitter
+    // after the other, in a single call
+    void fillVelocities(List<Emitter> emitters, int[] counts, int n, float[] velocities);
+
+    // Generates the velocities of one burst of particles for an emitter
+    default float[][] getVelocities(Emitter emitter) {
+        float[] packed = new float[2 * PARTICLES_PER_EMIT];
+        fillVelocities(emitter, packed);
+        float[][] velocities = new float[PARTICLES_PER_EMIT][];
+        for (int i = 0; i < PARTICLES_PER_EMIT; i++) {
+            velocities[i] = new float[] { packed[2 * i], packed[2 * i + 1] };
+        }
+        return velocities;
+    }
+
+    // Backend chosen from the system property, or by library availability
+    static PhysicsBackend getDefault() {
+        return BackendSelector.DEFAULT;
+    }
+
+    // Returns the backend with the given name ("native" or "java")
+    static PhysicsBackend forName(String name) {
+        return BackendSelector.forName(name);
+    }
+}
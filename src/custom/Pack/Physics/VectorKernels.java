@@ -0,0 +1,146 @@
+package custom.Pack.Physics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import custom.Pack.Particle.ParticleStore;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD kernels for JavaBackend; only loaded when jdk.incubator.vector is in the boot layer
+final class VectorKernels {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    private VectorKernels() {
+    }
+
+    // Computes forces for whole vectors of particles in [from, to) and returns the first index left for the scalar tail
+    static int computeForces(ParticleStore store, FloatBuffer fields, int fieldCount, boolean gravity, int from, int to) {
+        ByteBuffer x = store.getColumnBytes(ParticleStore.X);
+        ByteBuffer y = store.getColumnBytes(ParticleStore.Y);
+        ByteBuffer mass = store.getColumnBytes(ParticleStore.MASS);
+        ByteBuffer charge = store.getColumnBytes(ParticleStore.CHARGE);
+        ByteBuffer outFx = store.getColumnBytes(ParticleStore.FX);
+        ByteBuffer outFy = store.getColumnBytes(ParticleStore.FY);
+
+        FloatVector zero = FloatVector.zero(SPECIES);
+        int upper = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < upper; i += SPECIES.length()) {
+            int offset = i * Float.BYTES;
+            FloatVector px = FloatVector.fromByteBuffer(SPECIES, x, offset, ORDER);
+            FloatVector py = FloatVector.fromByteBuffer(SPECIES, y, offset, ORDER);
+            FloatVector q = FloatVector.fromByteBuffer(SPECIES, charge, offset, ORDER);
+
+            FloatVector forceX = zero;
+            FloatVector forceY = gravity ? FloatVector.fromByteBuffer(SPECIES, mass, offset, ORDER).mul(JavaBackend.GRAVITY) : zero;
+
+            for (int j = 0; j < fieldCount; j++) {
+                FloatVector dx = FloatVector.broadcast(SPECIES, fields.get(FieldGrid.FIELD_STRIDE * j)).sub(px);
+                FloatVector dy = FloatVector.broadcast(SPECIES, fields.get(FieldGrid.FIELD_STRIDE * j + 1)).sub(py);
+                FloatVector distanceSquared = dx.mul(dx).add(dy.mul(dy));
+                FloatVector distance = distanceSquared.sqrt();
+                VectorMask<Float> outside = distance.compare(VectorOperators.GE, JavaBackend.DEAD_ZONE);
+
+                FloatVector forceMagnitude = q.mul(fields.get(FieldGrid.FIELD_STRIDE * j + 2)).mul(JavaBackend.K).div(distanceSquared);
+                forceX = forceX.add(forceMagnitude.mul(dx.div(distance)), outside);
+                forceY = forceY.add(forceMagnitude.mul(dy.div(distance)), outside);
+            }
+
+            forceX.intoByteBuffer(outFx, offset, ORDER);
+            forceY.intoByteBuffer(outFy, offset, ORDER);
+        }
+        return i;
+    }
+
+    // Integrates whole vectors of particles in [from, to) and returns the first index left for the scalar tail
+    static int integrate(ParticleStore store, int from, int to) {
+        ByteBuffer x = store.getColumnBytes(ParticleStore.X);
+        ByteBuffer y = store.getColumnBytes(ParticleStore.Y);
+        ByteBuffer vx = store.getColumnBytes(ParticleStore.VX);
+        ByteBuffer vy = store.getColumnBytes(ParticleStore.VY);
+        ByteBuffer fx = store.getColumnBytes(ParticleStore.FX);
+        ByteBuffer fy = store.getColumnBytes(ParticleStore.FY);
+        ByteBuffer mass = store.getColumnBytes(ParticleStore.MASS);
+
+        float dt = JavaBackend.DT;
+        int upper = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < upper; i += SPECIES.length()) {
+            int offset = i * Float.BYTES;
+            FloatVector m = FloatVector.fromByteBuffer(SPECIES, mass, offset, ORDER);
+            FloatVector forceX = FloatVector.fromByteBuffer(SPECIES, fx, offset, ORDER);
+            FloatVector forceY = FloatVector.fromByteBuffer(SPECIES, fy, offset, ORDER);
+            FloatVector velocityX = FloatVector.fromByteBuffer(SPECIES, vx, offset, ORDER);
+            FloatVector velocityY = FloatVector.fromByteBuffer(SPECIES, vy, offset, ORDER);
+            FloatVector twoMass = m.mul(2.0f);
+
+            FloatVector.fromByteBuffer(SPECIES, x, offset, ORDER)
+                .add(velocityX.mul(dt).add(forceX.mul(dt * dt).div(twoMass)))
+                .intoByteBuffer(x, offset, ORDER);
+            FloatVector.fromByteBuffer(SPECIES, y, offset, ORDER)
+                .add(velocityY.mul(dt).add(forceY.mul(dt * dt).div(twoMass)))
+                .intoByteBuffer(y, offset, ORDER);
+            velocityX.add(forceX.div(m).mul(dt)).intoByteBuffer(vx, offset, ORDER);
+            velocityY.add(forceY.div(m).mul(dt)).intoByteBuffer(vy, offset, ORDER);
+        }
+        return i;
+    }
+
+    // Adds coupling-free inverse-square forces of bodies [0, size) on a point at (px, py) into force[0..1],
+    // softened by softeningSquared; returns the first body left for the scalar tail
+    static int sumInverseSquare(float[] x, float[] y, float[] strength, int size, float px, float py, float softeningSquared, float[] force) {
+        FloatVector pointX = FloatVector.broadcast(SPECIES, px);
+        FloatVector pointY = FloatVector.broadcast(SPECIES, py);
+        FloatVector forceX = FloatVector.zero(SPECIES);
+        FloatVector forceY = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(size);
+        int e = 0;
+        for (; e < upper; e += SPECIES.length()) {
+            FloatVector dx = FloatVector.fromArray(SPECIES, x, e).sub(pointX);
+            FloatVector dy = FloatVector.fromArray(SPECIES, y, e).sub(pointY);
+            FloatVector r2 = dx.mul(dx).add(dy.mul(dy)).add(softeningSquared);
+            FloatVector scale = FloatVector.fromArray(SPECIES, strength, e).div(r2.mul(r2.sqrt()));
+            forceX = forceX.add(scale.mul(dx));
+            forceY = forceY.add(scale.mul(dy));
+        }
+        force[0] += forceX.reduceLanes(VectorOperators.ADD);
+        force[1] += forceY.reduceLanes(VectorOperators.ADD);
+        return e;
+    }
+
+    // Advances whole vectors of oscillator rows [0, size) by one step and returns the first row left for the scalar tail
+    static int advanceOscillators(float[] meanX, float[] meanY, float[] amplitudeX, float[] amplitudeY, float[] step,
+                                  float[] theta, float[] phase, float[] x, float[] y, int size) {
+        int upper = SPECIES.loopBound(size);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector t = FloatVector.fromArray(SPECIES, theta, i).add(FloatVector.fromArray(SPECIES, step, i));
+            t = t.sub(OscillatorTable.TWO_PI, t.compare(VectorOperators.GE, OscillatorTable.TWO_PI));
+            t.intoArray(theta, i);
+            FloatVector s = sin(t.add(FloatVector.fromArray(SPECIES, phase, i)));
+            FloatVector.fromArray(SPECIES, amplitudeX, i).mul(s).add(FloatVector.fromArray(SPECIES, meanX, i)).intoArray(x, i);
+            FloatVector.fromArray(SPECIES, amplitudeY, i).mul(s).add(FloatVector.fromArray(SPECIES, meanY, i)).intoArray(y, i);
+        }
+        return i;
+    }
+
+    // OscillatorTable.sin in every lane, step for step, rather than the SIN operator, whose result
+    // may differ from the scalar one in the last bit
+    private static FloatVector sin(FloatVector angle) {
+        FloatVector a = angle.sub(OscillatorTable.TWO_PI, angle.compare(VectorOperators.GE, OscillatorTable.TWO_PI));
+        FloatVector r = a.sub(OscillatorTable.PI);
+        r = r.blend(FloatVector.broadcast(SPECIES, OscillatorTable.PI).sub(r), r.compare(VectorOperators.GT, OscillatorTable.HALF_PI));
+        r = r.blend(FloatVector.broadcast(SPECIES, -OscillatorTable.PI).sub(r), r.compare(VectorOperators.LT, -OscillatorTable.HALF_PI));
+        FloatVector r2 = r.mul(r);
+        FloatVector p = FloatVector.broadcast(SPECIES, OscillatorTable.S11).fma(r2, FloatVector.broadcast(SPECIES, OscillatorTable.S9));
+        p = p.fma(r2, FloatVector.broadcast(SPECIES, OscillatorTable.S7));
+        p = p.fma(r2, FloatVector.broadcast(SPECIES, OscillatorTable.S5));
+        p = p.fma(r2, FloatVector.broadcast(SPECIES, OscillatorTable.S3));
+        return r.mul(r2).fma(p, r).neg();
+    }
+}
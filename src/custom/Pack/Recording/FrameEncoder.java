@@ -0,0 +1,203 @@
+package custom.Pack.Recording;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes frames into chunks, every keyframeInterval-th one as a keyframe and the rest as deltas
+ * against the latest keyframe. Keeps a copy of that keyframe and an index from particle id to its
+ * keyframe slot.
+ */
+final class FrameEncoder {
+    private final int keyframeInterval;
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+    private final float velocityRange;
+    private final TrajectoryFrame keyframe = new TrajectoryFrame();
+    private final IdIndex keyframeSlots = new IdIndex();
+    private int[] slots = new int[0]; // Keyframe slot of every particle of the frame being encoded, -1 for births
+    private boolean hasKeyframe;
+    private int sinceKeyframe;
+
+    // Of the last frame encoded
+    private int births;
+    private int deaths;
+
+    FrameEncoder(int keyframeInterval, float minX, float minY, float maxX, float maxY, float velocityRange) {
+        this.keyframeInterval = keyframeInterval;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.velocityRange = velocityRange;
+    }
+
+    // Bytes a chunk for this frame may take at most
+    static int maxChunkBytes(TrajectoryFrame frame) {
+        return TrajectoryFormat.CHUNK_HEADER_BYTES + 8 + frame.count * TrajectoryFormat.MAX_BYTES_PER_PARTICLE;
+    }
+
+    // Appends the chunk for a frame to out, which must have maxChunkBytes(frame) remaining, and returns its type
+    int encode(TrajectoryFrame frame, ByteBuffer out) {
+        boolean key = !hasKeyframe || frame.forceKeyframe || sinceKeyframe >= keyframeInterval;
+        int start = out.position();
+        out.position(start + TrajectoryFormat.CHUNK_HEADER_BYTES);
+        if (key) {
+            writeKeyframe(frame, out);
+        } else {
+            writeDelta(frame, out);
+        }
+        int type = key ? TrajectoryFormat.KEYFRAME : TrajectoryFormat.DELTA;
+        out.putInt(start, type);
+        out.putInt(start + 4, out.position() - start - TrajectoryFormat.CHUNK_HEADER_BYTES);
+        out.putLong(start + 8, frame.step);
+        out.putInt(start + 16, frame.count);
+        return type;
+    }
+
+    private void writeKeyframe(TrajectoryFrame frame, ByteBuffer out) {
+        int n = frame.count;
+        int previous = 0;
+        for (int i = 0; i < n; i++) {
+            TrajectoryFormat.putVarint(out, TrajectoryFormat.zigzag(frame.ids[i] - previous));
+            previous = frame.ids[i];
+        }
+        putColumn(out, frame.x, n);
+        putColumn(out, frame.y, n);
+        putColumn(out, frame.vx, n);
+        putColumn(out, frame.vy, n);
+
+        keyframe.step = frame.step;
+        keyframe.resize(n);
+        System.arraycopy(frame.ids, 0, keyframe.ids, 0, n);
+        System.arraycopy(frame.x, 0, keyframe.x, 0, n);
+        System.arraycopy(frame.y, 0, keyframe.y, 0, n);
+        System.arraycopy(frame.vx, 0, keyframe.vx, 0, n);
+        System.arraycopy(frame.vy, 0, keyframe.vy, 0, n);
+        keyframeSlots.build(keyframe.ids, n);
+        hasKeyframe = true;
+        sinceKeyframe = 1;
+        births = 0;
+        deaths = 0;
+    }
+
+    private void writeDelta(TrajectoryFrame frame, ByteBuffer out) {
+        int n = frame.count;
+        if (slots.length < n) {
+            slots = new int[Math.max(n, slots.length + (slots.length >> 1))];
+        }
+        for (int i = 0; i < n; i++) {
+            slots[i] = keyframeSlots.get(frame.ids[i]);
+        }
+
+        int countsAt = out.position();
+        out.position(countsAt + 8);
+        int born = 0;
+        int survivors = 0;
+        int previous = -1;
+        long steps = frame.step - keyframe.step;
+        float scaleX = TrajectoryFormat.predictionScale(steps, minX, maxX, velocityRange);
+        float scaleY = TrajectoryFormat.predictionScale(steps, minY, maxY, velocityRange);
+        int i = 0;
+        while (i < n) {
+            int slot = slots[i];
+            if (slot < 0) {
+                out.put((byte) 0);
+                TrajectoryFormat.putVarint(out, frame.ids[i]);
+                out.putShort(frame.x[i]);
+                out.putShort(frame.y[i]);
+                out.putShort(frame.vx[i]);
+                out.putShort(frame.vy[i]);
+                born++;
+                i++;
+                continue;
+            }
+            // Survivors keep their order, so runs of consecutive keyframe slots are long
+            int run = 1;
+            while (i + run < n && slots[i + run] == slot + run) {
+                run++;
+            }
+            TrajectoryFormat.putVarint(out, TrajectoryFormat.zigzag(slot - previous));
+            TrajectoryFormat.putVarint(out, run);
+            for (int end = i + run; i < end; i++, slot++) {
+                putDifference(out, frame.x[i], TrajectoryFormat.predict(keyframe.x[slot], keyframe.vx[slot], scaleX));
+                putDifference(out, frame.y[i], TrajectoryFormat.predict(keyframe.y[slot], keyframe.vy[slot], scaleY));
+                putDifference(out, frame.vx[i], keyframe.vx[slot]);
+                putDifference(out, frame.vy[i], keyframe.vy[slot]);
+            }
+            previous = slot - 1;
+            survivors += run;
+        }
+        births = born;
+        deaths = keyframe.count - survivors;
+        out.putInt(countsAt, births);
+        out.putInt(countsAt + 4, deaths);
+        sinceKeyframe++;
+    }
+
+    private static void putColumn(ByteBuffer out, short[] column, int n) {
+        out.asShortBuffer().put(column, 0, n);
+        out.position(out.position() + n * Short.BYTES);
+    }
+
+    private static void putDifference(ByteBuffer out, short value, short reference) {
+        TrajectoryFormat.putVarint(out, TrajectoryFormat.zigzag((value & 0xFFFF) - (reference & 0xFFFF)));
+    }
+
+    // Births of the last frame, 0 for a keyframe
+    int getBirths() {
+        return births;
+    }
+
+    // Keyframe particles missing from the last frame, 0 for a keyframe
+    int getDeaths() {
+        return deaths;
+    }
+
+    // Open-addressing map from particle id to keyframe slot, rebuilt with every keyframe
+    private static final class IdIndex {
+        private int[] keys = new int[0];
+        private int[] slots = new int[0];
+        private int mask;
+
+        void build(int[] ids, int n) {
+            int capacity = Integer.highestOneBit(Math.max(2, n) * 2 - 1) << 1;
+            if (keys.length < capacity) {
+                keys = new int[capacity];
+                slots = new int[capacity];
+            }
+            mask = keys.length - 1;
+            Arrays.fill(slots, -1);
+            for (int i = 0; i < n; i++) {
+                int h = hash(ids[i]) & mask;
+                while (slots[h] >= 0) {
+                    h = (h + 1) & mask;
+                }
+                keys[h] = ids[i];
+                slots[h] = i;
+            }
+        }
+
+        // Keyframe slot of an id, or -1 when it was not in the keyframe
+        int get(int id) {
+            if (keys.length == 0) {
+                return -1;
+            }
+            int h = hash(id) & mask;
+            while (slots[h] >= 0) {
+                if (keys[h] == id) {
+                    return slots[h];
+                }
+                h = (h + 1) & mask;
+            }
+            return -1;
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
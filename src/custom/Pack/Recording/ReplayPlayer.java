@@ -0,0 +1,289 @@
+package custom.Pack.Recording;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import custom.Pack.Simulation.FrameSnapshot;
+
+/**
+ * Plays a recorded run back into FrameSnapshots, so it can be drawn like a live simulation.
+ *
+ * Playback follows the wall clock: at speed 1 the recording advances stepRate recorded steps per
+ * second, a negative speed plays it backwards, and it pauses at either end. A prefetch thread decodes
+ * the next frames in the direction of play into a small cache while the current one is shown, so
+ * drawing a frame only copies it. A frame missing from the cache, after seeking, is decoded on the
+ * calling thread; that reads at most a keyframe and one delta chunk, whatever the file's size.
+ */
+public class ReplayPlayer implements AutoCloseable {
+    public static final double DEFAULT_STEP_RATE = 60.0;
+    public static final int DEFAULT_CACHED_FRAMES = 8;
+
+    private final TrajectoryReader reader;
+    private final int cachedFrames;
+    private final double stepRate;
+
+    // Guarded by this
+    private final Map<Integer, TrajectoryFrame> cache = new HashMap<>();
+    private final ArrayDeque<TrajectoryFrame> free = new ArrayDeque<>();
+    private int frame; // Frame being shown
+    private double position; // Playback position in recorded steps
+    private double speed = 1.0;
+    private boolean playing;
+    private long lastUpdate;
+    private long sequence;
+    private int captured = -1; // Frame last copied into capturedInto
+    private FrameSnapshot capturedInto;
+    private boolean running;
+    private IOException failure;
+
+    private Thread prefetcher;
+
+    public ReplayPlayer(TrajectoryReader reader) {
+        this(reader, DEFAULT_STEP_RATE, DEFAULT_CACHED_FRAMES);
+    }
+
+    // stepRate is the number of recorded steps shown per second at speed 1
+    public ReplayPlayer(TrajectoryReader reader, double stepRate, int cachedFrames) {
+        if (!(stepRate > 0)) {
+            throw new IllegalArgumentException("Step rate must be positive: " + stepRate);
+        }
+        if (cachedFrames < 1) {
+            throw new IllegalArgumentException("Cached frames must be at least 1: " + cachedFrames);
+        }
+        if (reader.getFrameCount() == 0) {
+            throw new IllegalArgumentException("Recording has no frames: " + reader.getPath());
+        }
+        this.reader = reader;
+        this.stepRate = stepRate;
+        this.cachedFrames = cachedFrames;
+        position = reader.getStep(0);
+    }
+
+    public TrajectoryReader getReader() {
+        return reader;
+    }
+
+    // Starts the prefetch thread; without it every frame is decoded when it is shown
+    public synchronized void start() {
+        if (prefetcher != null) {
+            return;
+        }
+        running = true;
+        prefetcher = new Thread(this::prefetch, "replay-prefetch");
+        prefetcher.setDaemon(true);
+        prefetcher.start();
+    }
+
+    public synchronized boolean isPaused() {
+        return !playing;
+    }
+
+    public synchronized void setPaused(boolean paused) {
+        if (playing == !paused) {
+            return;
+        }
+        // Playing from either end starts over from the other one
+        if (!paused && atEnd()) {
+            position = reader.getStep(speed > 0 ? 0 : reader.getFrameCount() - 1);
+            frame = reader.frameAtStep((long) position);
+        }
+        playing = !paused;
+        lastUpdate = 0;
+        notifyAll();
+    }
+
+    public synchronized double getSpeed() {
+        return speed;
+    }
+
+    // Multiple of the step rate; negative plays backwards
+    public synchronized void setSpeed(double speed) {
+        if (!Double.isFinite(speed) || speed == 0) {
+            throw new IllegalArgumentException("Speed must be finite and not 0: " + speed);
+        }
+        this.speed = speed;
+        notifyAll();
+    }
+
+    public int getFrameCount() {
+        return reader.getFrameCount();
+    }
+
+    public synchronized int getFrame() {
+        return frame;
+    }
+
+    // Shows a frame; the position stays where it is if paused, or continues from there if playing
+    public synchronized void seek(int frame) {
+        this.frame = Math.max(0, Math.min(reader.getFrameCount() - 1, frame));
+        position = reader.getStep(this.frame);
+        lastUpdate = 0;
+        notifyAll();
+    }
+
+    // Moves by a number of frames, backwards when negative
+    public synchronized void step(int frames) {
+        seek(frame + frames);
+    }
+
+    // Advances playback to the given time and fills the snapshot with the frame to show; returns the
+    // snapshot. Call from the thread that owns the snapshot.
+    public FrameSnapshot update(FrameSnapshot snapshot, long now) throws IOException {
+        int shown;
+        synchronized (this) {
+            if (failure != null) {
+                IOException e = failure;
+                failure = null;
+                throw e;
+            }
+            advance(now);
+            shown = frame;
+            if (shown == captured && snapshot == capturedInto) {
+                return snapshot;
+            }
+            // Cached frames are never written, so one can be copied while the lock is held
+            TrajectoryFrame cached = cache.get(shown);
+            if (cached != null) {
+                show(snapshot, shown, cached);
+                return snapshot;
+            }
+        }
+        TrajectoryFrame decoded = take();
+        reader.readFrame(shown, decoded);
+        synchronized (this) {
+            show(snapshot, shown, decoded);
+            keep(shown, decoded);
+        }
+        return snapshot;
+    }
+
+    private void show(FrameSnapshot snapshot, int number, TrajectoryFrame decoded) {
+        snapshot.capture(decoded, ++sequence);
+        captured = number;
+        capturedInto = snapshot;
+    }
+
+    // Moves the position by the time since the last update while playing
+    private void advance(long now) {
+        if (!playing) {
+            return;
+        }
+        if (lastUpdate != 0) {
+            position += (now - lastUpdate) / 1e9 * stepRate * speed;
+        }
+        lastUpdate = now;
+        long first = reader.getStep(0);
+        long last = reader.getStep(reader.getFrameCount() - 1);
+        if (speed > 0 ? position >= last : position <= first) {
+            playing = false;
+        }
+        position = Math.max(first, Math.min(last, position));
+        int next = reader.frameAtStep((long) Math.floor(position));
+        if (next != frame) {
+            frame = next;
+            notifyAll();
+        }
+    }
+
+    private boolean atEnd() {
+        return speed > 0 ? frame == reader.getFrameCount() - 1 : frame == 0;
+    }
+
+    // Frames worth having decoded: the shown one and the next cachedFrames - 1 in the direction of play
+    private boolean inWindow(int candidate) {
+        int ahead = (candidate - frame) * (speed > 0 ? 1 : -1);
+        return ahead >= 0 && ahead < cachedFrames;
+    }
+
+    private synchronized TrajectoryFrame take() {
+        return free.isEmpty() ? new TrajectoryFrame() : free.poll();
+    }
+
+    // Caches a decoded frame and recycles the ones that fell out of the window
+    private void keep(int number, TrajectoryFrame decoded) {
+        for (Iterator<Map.Entry<Integer, TrajectoryFrame>> it = cache.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, TrajectoryFrame> entry = it.next();
+            if (!inWindow(entry.getKey())) {
+                free.add(entry.getValue());
+                it.remove();
+            }
+        }
+        if (inWindow(number) && !cache.containsKey(number)) {
+            cache.put(number, decoded);
+        } else {
+            free.add(decoded);
+        }
+    }
+
+    // Next frame of the window that is not decoded yet, or -1
+    private int nextMissing() {
+        int direction = speed > 0 ? 1 : -1;
+        for (int k = 1; k < cachedFrames; k++) {
+            int candidate = frame + k * direction;
+            if (candidate < 0 || candidate >= reader.getFrameCount()) {
+                return -1;
+            }
+            if (!cache.containsKey(candidate)) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    private void prefetch() {
+        while (true) {
+            int target;
+            TrajectoryFrame decoded;
+            synchronized (this) {
+                target = nextMissing();
+                while (running && target < 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    target = nextMissing();
+                }
+                if (!running) {
+                    return;
+                }
+                decoded = free.isEmpty() ? new TrajectoryFrame() : free.poll();
+            }
+            try {
+                reader.readFrame(target, decoded);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    running = false;
+                }
+                return;
+            }
+            synchronized (this) {
+                keep(target, decoded);
+            }
+        }
+    }
+
+    // Stops prefetching and closes the recording
+    @Override
+    public void close() throws IOException {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            notifyAll();
+            thread = prefetcher;
+            prefetcher = null;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        reader.close();
+    }
+}
@@ -0,0 +1,107 @@
+package custom.Pack.Recording;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of a trajectory recording. Everything is little-endian.
+ *
+ *   header   "PTRJ", int version, float minX, minY, maxX, maxY, float velocity range,
+ *            int frame interval, int keyframe interval, 28 reserved bytes
+ *   chunks   int type, int payload length, long step, int particle count, payload
+ *   trailer  long offset of the index chunk, "PTRJ"
+ *
+ * Positions are quantized to 16 bits across the world bounds and velocities across
+ * [-velocity range, velocity range]. A keyframe holds the ids as zigzag varint differences
+ * followed by the x, y, vx and vy columns as 16-bit values. A delta frame holds the birth and death
+ * counts as ints and then the particles in slot order, as births and runs of survivors. A birth is
+ * a 0 tag, its id and its four values. A run of survivors that sat in consecutive keyframe slots is
+ * the zigzag varint distance from the last slot of the previous run to its first slot, the run
+ * length, and then the four values of each particle as zigzag varint differences from the keyframe.
+ * Keyframe particles a delta frame does not mention have died. The index chunk lists the step, file offset
+ * and keyframe frame number of every frame.
+ *
+ * Positions in a delta frame are differences from where the keyframe's velocity would have carried
+ * the particle by then rather than from the keyframe position, which keeps them small for particles
+ * that are only slowly accelerated.
+ */
+final class TrajectoryFormat {
+    static final int VERSION = 2;
+    static final int MAGIC = 'P' | 'T' << 8 | 'R' << 16 | 'J' << 24;
+    static final int HEADER_BYTES = 64;
+    static final int CHUNK_HEADER_BYTES = 20;
+    static final int TRAILER_BYTES = 12;
+
+    static final int KEYFRAME = 1;
+    static final int DELTA = 2;
+    static final int INDEX = 3;
+
+    // Bytes of one index entry: step, chunk offset and the frame number of its keyframe
+    static final int INDEX_ENTRY_BYTES = 20;
+    // An id and four floats: what a frame costs before quantization and delta encoding
+    static final int RAW_BYTES_PER_PARTICLE = 20;
+    // Worst case encoded size of a particle in either frame type
+    static final int MAX_BYTES_PER_PARTICLE = 20;
+
+    private static final int LEVELS = 0xFFFF;
+
+    private TrajectoryFormat() {
+    }
+
+    // Levels per unit for quantize, and units per level for dequantize
+    static float levelsPerUnit(float min, float max) {
+        return LEVELS / (max - min);
+    }
+
+    static float unitsPerLevel(float min, float max) {
+        return (max - min) / LEVELS;
+    }
+
+    // Maps [min, max] onto 0..65535, clamping values outside
+    static short quantize(float value, float min, float levelsPerUnit) {
+        int q = Math.round((value - min) * levelsPerUnit);
+        return (short) Math.max(0, Math.min(LEVELS, q));
+    }
+
+    static float dequantize(short q, float min, float unitsPerLevel) {
+        return min + (q & LEVELS) * unitsPerLevel;
+    }
+
+    // Position levels a quantized velocity of one level covers in the given steps, for predict
+    static float predictionScale(long steps, float min, float max, float velocityRange) {
+        return 2 * velocityRange * steps / (max - min);
+    }
+
+    // Quantized position a particle reaches from a keyframe position at the keyframe velocity, with
+    // scale from predictionScale; integer arithmetic apart from one rounding, so it decodes exactly
+    static short predict(short position, short velocity, float scale) {
+        int q = (position & LEVELS) + Math.round(((velocity & LEVELS) - LEVELS / 2f) * scale);
+        return (short) Math.max(0, Math.min(LEVELS, q));
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
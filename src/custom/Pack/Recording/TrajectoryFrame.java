@@ -0,0 +1,117 @@
+package custom.Pack.Recording;
+
+import java.nio.FloatBuffer;
+
+import custom.Pack.Particle.ParticleStore;
+
+/**
+ * One recorded frame: the step it was taken after and the id, position and velocity of every
+ * particle, quantized to 16 bits across the recording's bounds. Arrays only grow, so a frame can be
+ * refilled without allocating once it is large enough.
+ */
+public class TrajectoryFrame {
+    long step;
+    int count;
+    // Set when the frame must not be encoded against an earlier keyframe
+    boolean forceKeyframe;
+    int[] ids = new int[0];
+    short[] x = new short[0];
+    short[] y = new short[0];
+    short[] vx = new short[0];
+    short[] vy = new short[0];
+    // Quantization bounds of the recording
+    float minX;
+    float minY;
+    float maxX = 1f;
+    float maxY = 1f;
+    float velocityRange = 1f;
+
+    // Quantizes the live particles of a store
+    void capture(ParticleStore store, long step, float minX, float minY, float maxX, float maxY, float velocityRange) {
+        this.step = step;
+        setBounds(minX, minY, maxX, maxY, velocityRange);
+        resize(store.size());
+        System.arraycopy(store.getId(), 0, ids, 0, count);
+        FloatBuffer px = store.getX();
+        FloatBuffer py = store.getY();
+        FloatBuffer pvx = store.getVelocityX();
+        FloatBuffer pvy = store.getVelocityY();
+        float scaleX = TrajectoryFormat.levelsPerUnit(minX, maxX);
+        float scaleY = TrajectoryFormat.levelsPerUnit(minY, maxY);
+        float scaleV = TrajectoryFormat.levelsPerUnit(-velocityRange, velocityRange);
+        for (int i = 0; i < count; i++) {
+            x[i] = TrajectoryFormat.quantize(px.get(i), minX, scaleX);
+            y[i] = TrajectoryFormat.quantize(py.get(i), minY, scaleY);
+            vx[i] = TrajectoryFormat.quantize(pvx.get(i), -velocityRange, scaleV);
+            vy[i] = TrajectoryFormat.quantize(pvy.get(i), -velocityRange, scaleV);
+        }
+    }
+
+    void setBounds(float minX, float minY, float maxX, float maxY, float velocityRange) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.velocityRange = velocityRange;
+    }
+
+    // Makes room for count particles; the contents of the first count slots are undefined
+    void resize(int count) {
+        this.count = count;
+        if (ids.length < count) {
+            int capacity = Math.max(count, ids.length + (ids.length >> 1));
+            ids = new int[capacity];
+            x = new short[capacity];
+            y = new short[capacity];
+            vx = new short[capacity];
+            vy = new short[capacity];
+        }
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Id of the particle in slot i, stable for as long as the particle lives
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    public float getX(int i) {
+        return TrajectoryFormat.dequantize(x[i], minX, TrajectoryFormat.unitsPerLevel(minX, maxX));
+    }
+
+    public float getY(int i) {
+        return TrajectoryFormat.dequantize(y[i], minY, TrajectoryFormat.unitsPerLevel(minY, maxY));
+    }
+
+    public float getVelocityX(int i) {
+        return TrajectoryFormat.dequantize(vx[i], -velocityRange, TrajectoryFormat.unitsPerLevel(-velocityRange, velocityRange));
+    }
+
+    public float getVelocityY(int i) {
+        return TrajectoryFormat.dequantize(vy[i], -velocityRange, TrajectoryFormat.unitsPerLevel(-velocityRange, velocityRange));
+    }
+
+    // Dequantizes every position into the first size() elements of x and y
+    public void getPositions(float[] x, float[] y) {
+        dequantize(this.x, x, minX, maxX);
+        dequantize(this.y, y, minY, maxY);
+    }
+
+    public void getVelocities(float[] vx, float[] vy) {
+        dequantize(this.vx, vx, -velocityRange, velocityRange);
+        dequantize(this.vy, vy, -velocityRange, velocityRange);
+    }
+
+    private void dequantize(short[] from, float[] to, float min, float max) {
+        float scale = TrajectoryFormat.unitsPerLevel(min, max);
+        for (int i = 0; i < count; i++) {
+            to[i] = TrajectoryFormat.dequantize(from[i], min, scale);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package custom.Pack.Recording;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Random access to the frames of a trajectory file written by TrajectoryRecorder.
+ *
+ * The index at the end of the file gives the offset and keyframe of every frame, so reading any
+ * frame reads at most its keyframe and itself, however long the recording. A file whose recorder
+ * never closed has no index; its chunks are scanned once on opening instead, up to the last complete one.
+ * The latest keyframe is kept decoded, so reading frames in order decodes every keyframe only once.
+ *
+ * Reading is synchronized, so one reader can serve several threads.
+ */
+public class TrajectoryReader implements AutoCloseable {
+    private final Path path;
+    private final FileChannel channel;
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+    private final float velocityRange;
+    private final int frameInterval;
+
+    private int frames;
+    private long[] frameSteps;
+    private long[] frameOffsets;
+    private int[] frameKeyframes;
+
+    private final TrajectoryFrame keyframe = new TrajectoryFrame();
+    private int keyframeNumber = -1; // Frame decoded into keyframe, -1 for none
+    private ByteBuffer chunk = ByteBuffer.allocateDirect(0);
+    private int chunkCount; // Particle count of the chunk last read
+
+    public TrajectoryReader(Path path) throws IOException {
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, TrajectoryFormat.HEADER_BYTES);
+            if (header.getInt() != TrajectoryFormat.MAGIC) {
+                throw new IOException("Not a trajectory recording: " + path);
+            }
+            int version = header.getInt();
+            if (version != TrajectoryFormat.VERSION) {
+                throw new IOException("Unsupported trajectory version " + version + " in " + path);
+            }
+            minX = header.getFloat();
+            minY = header.getFloat();
+            maxX = header.getFloat();
+            maxY = header.getFloat();
+            velocityRange = header.getFloat();
+            frameInterval = header.getInt();
+            keyframe.setBounds(minX, minY, maxX, maxY, velocityRange);
+            if (!readIndex()) {
+                scanChunks();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Reads the index the recorder wrote on closing; false when the file has none
+    private boolean readIndex() throws IOException {
+        long size = channel.size();
+        if (size < TrajectoryFormat.HEADER_BYTES + TrajectoryFormat.CHUNK_HEADER_BYTES + TrajectoryFormat.TRAILER_BYTES) {
+            return false;
+        }
+        ByteBuffer trailer = read(size - TrajectoryFormat.TRAILER_BYTES, TrajectoryFormat.TRAILER_BYTES);
+        long offset = trailer.getLong();
+        if (trailer.getInt() != TrajectoryFormat.MAGIC || offset < TrajectoryFormat.HEADER_BYTES
+                || offset > size - TrajectoryFormat.TRAILER_BYTES - TrajectoryFormat.CHUNK_HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = read(offset, TrajectoryFormat.CHUNK_HEADER_BYTES);
+        int type = header.getInt();
+        int length = header.getInt();
+        header.getLong();
+        int count = header.getInt();
+        if (type != TrajectoryFormat.INDEX || length != count * TrajectoryFormat.INDEX_ENTRY_BYTES
+                || offset + TrajectoryFormat.CHUNK_HEADER_BYTES + length + TrajectoryFormat.TRAILER_BYTES != size) {
+            return false;
+        }
+        ByteBuffer entries = read(offset + TrajectoryFormat.CHUNK_HEADER_BYTES, length);
+        allocateIndex(count);
+        for (int i = 0; i < count; i++) {
+            frameSteps[i] = entries.getLong();
+            frameOffsets[i] = entries.getLong();
+            frameKeyframes[i] = entries.getInt();
+        }
+        frames = count;
+        return true;
+    }
+
+    // Builds the index from the chunk headers, ignoring a chunk cut short at the end
+    private void scanChunks() throws IOException {
+        long size = channel.size();
+        long offset = TrajectoryFormat.HEADER_BYTES;
+        allocateIndex(256);
+        int lastKeyframe = -1;
+        while (offset + TrajectoryFormat.CHUNK_HEADER_BYTES <= size) {
+            ByteBuffer header = read(offset, TrajectoryFormat.CHUNK_HEADER_BYTES);
+            int type = header.getInt();
+            int length = header.getInt();
+            long step = header.getLong();
+            long end = offset + TrajectoryFormat.CHUNK_HEADER_BYTES + length;
+            if (length < 0 || end > size || (type != TrajectoryFormat.KEYFRAME && type != TrajectoryFormat.DELTA)) {
+                break;
+            }
+            if (type == TrajectoryFormat.KEYFRAME) {
+                lastKeyframe = frames;
+            } else if (lastKeyframe < 0) {
+                throw new IOException("Delta frame before the first keyframe in " + path);
+            }
+            if (frames == frameSteps.length) {
+                frameSteps = Arrays.copyOf(frameSteps, frames * 2);
+                frameOffsets = Arrays.copyOf(frameOffsets, frames * 2);
+                frameKeyframes = Arrays.copyOf(frameKeyframes, frames * 2);
+            }
+            frameSteps[frames] = step;
+            frameOffsets[frames] = offset;
+            frameKeyframes[frames] = lastKeyframe;
+            frames++;
+            offset = end;
+        }
+    }
+
+    private void allocateIndex(int capacity) {
+        frameSteps = new long[capacity];
+        frameOffsets = new long[capacity];
+        frameKeyframes = new int[capacity];
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getFrameCount() {
+        return frames;
+    }
+
+    // Steps between recorded frames, as the recorder was set up
+    public int getFrameInterval() {
+        return frameInterval;
+    }
+
+    // Step a frame was recorded after
+    public long getStep(int frame) {
+        checkFrame(frame);
+        return frameSteps[frame];
+    }
+
+    // Last frame recorded at or before a step, 0 for steps before the first frame
+    public int frameAtStep(long step) {
+        int found = Arrays.binarySearch(frameSteps, 0, frames, step);
+        return found >= 0 ? found : Math.max(0, -found - 2);
+    }
+
+    // Keyframe a frame is decoded against, itself for a keyframe
+    public int getKeyframe(int frame) {
+        checkFrame(frame);
+        return frameKeyframes[frame];
+    }
+
+    public float getWidth() {
+        return maxX - minX;
+    }
+
+    public float getHeight() {
+        return maxY - minY;
+    }
+
+    // Decodes a frame into the given one, which is resized as needed
+    public synchronized void readFrame(int frame, TrajectoryFrame into) throws IOException {
+        checkFrame(frame);
+        int key = frameKeyframes[frame];
+        if (keyframeNumber != key) {
+            keyframeNumber = -1;
+            decodeKeyframe(readChunk(key, TrajectoryFormat.KEYFRAME), keyframe);
+            keyframe.step = frameSteps[key];
+            keyframeNumber = key;
+        }
+        into.setBounds(minX, minY, maxX, maxY, velocityRange);
+        into.step = frameSteps[frame];
+        if (frame == key) {
+            copy(keyframe, into);
+        } else {
+            decodeDelta(readChunk(frame, TrajectoryFormat.DELTA), into);
+        }
+    }
+
+    // Payload of a frame's chunk, positioned after the chunk header and checked against its type
+    private ByteBuffer readChunk(int frame, int expectedType) throws IOException {
+        long offset = frameOffsets[frame];
+        ByteBuffer header = read(offset, TrajectoryFormat.CHUNK_HEADER_BYTES);
+        int type = header.getInt();
+        int length = header.getInt();
+        header.getLong();
+        int count = header.getInt();
+        if (type != expectedType || length < 0) {
+            throw new IOException("Corrupt chunk at offset " + offset + " of " + path);
+        }
+        if (chunk.capacity() < length) {
+            chunk = ByteBuffer.allocateDirect(length + (length >> 1)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        chunk.clear().limit(length);
+        readFully(chunk, offset + TrajectoryFormat.CHUNK_HEADER_BYTES);
+        chunk.flip();
+        chunkCount = count;
+        return chunk;
+    }
+
+    private void decodeKeyframe(ByteBuffer in, TrajectoryFrame frame) {
+        int n = chunkCount;
+        frame.resize(n);
+        int id = 0;
+        for (int i = 0; i < n; i++) {
+            id += TrajectoryFormat.unzigzag(TrajectoryFormat.getVarint(in));
+            frame.ids[i] = id;
+        }
+        getColumn(in, frame.x, n);
+        getColumn(in, frame.y, n);
+        getColumn(in, frame.vx, n);
+        getColumn(in, frame.vy, n);
+    }
+
+    private void decodeDelta(ByteBuffer in, TrajectoryFrame frame) throws IOException {
+        int n = chunkCount;
+        frame.resize(n);
+        in.getInt(); // Births
+        in.getInt(); // Deaths
+        long steps = frame.step - keyframe.step;
+        float scaleX = TrajectoryFormat.predictionScale(steps, minX, maxX, velocityRange);
+        float scaleY = TrajectoryFormat.predictionScale(steps, minY, maxY, velocityRange);
+        int previous = -1;
+        int i = 0;
+        while (i < n) {
+            int tag = TrajectoryFormat.getVarint(in);
+            if (tag == 0) {
+                frame.ids[i] = TrajectoryFormat.getVarint(in);
+                frame.x[i] = in.getShort();
+                frame.y[i] = in.getShort();
+                frame.vx[i] = in.getShort();
+                frame.vy[i] = in.getShort();
+                i++;
+                continue;
+            }
+            int slot = previous + TrajectoryFormat.unzigzag(tag);
+            int run = TrajectoryFormat.getVarint(in);
+            if (slot < 0 || run <= 0 || slot + run > keyframe.count || i + run > n) {
+                throw new IOException("Corrupt delta frame at step " + frame.step + " of " + path);
+            }
+            for (int end = i + run; i < end; i++, slot++) {
+                frame.ids[i] = keyframe.ids[slot];
+                frame.x[i] = (short) (TrajectoryFormat.predict(keyframe.x[slot], keyframe.vx[slot], scaleX) + getDifference(in));
+                frame.y[i] = (short) (TrajectoryFormat.predict(keyframe.y[slot], keyframe.vy[slot], scaleY) + getDifference(in));
+                frame.vx[i] = (short) (keyframe.vx[slot] + getDifference(in));
+                frame.vy[i] = (short) (keyframe.vy[slot] + getDifference(in));
+            }
+            previous = slot - 1;
+        }
+    }
+
+    private static int getDifference(ByteBuffer in) {
+        return TrajectoryFormat.unzigzag(TrajectoryFormat.getVarint(in));
+    }
+
+    private static void getColumn(ByteBuffer in, short[] column, int n) {
+        in.asShortBuffer().get(column, 0, n);
+        in.position(in.position() + n * Short.BYTES);
+    }
+
+    private static void copy(TrajectoryFrame from, TrajectoryFrame to) {
+        int n = from.count;
+        to.resize(n);
+        System.arraycopy(from.ids, 0, to.ids, 0, n);
+        System.arraycopy(from.x, 0, to.x, 0, n);
+        System.arraycopy(from.y, 0, to.y, 0, n);
+        System.arraycopy(from.vx, 0, to.vx, 0, n);
+        System.arraycopy(from.vy, 0, to.vy, 0, n);
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= frames) {
+            throw new IndexOutOfBoundsException("Frame: " + frame + ", Frames: " + frames);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(buffer, position);
+        return buffer.flip();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + path);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
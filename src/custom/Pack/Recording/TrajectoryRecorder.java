@@ -0,0 +1,337 @@
+package custom.Pack.Recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import custom.Pack.Particle.ParticleStore;
+
+/**
+ * Appends every Nth step of a simulation to a trajectory file, laid out as TrajectoryFormat describes.
+ *
+ * The stepping thread only quantizes the particles into one of a fixed pool of frames and queues it;
+ * a writer thread encodes the frames and writes them to disk. When every frame of the pool is waiting
+ * to be written the recorder either drops the new frame, so the stepping thread never waits for the
+ * disk, or waits for the writer to free one, so no frame is lost. The file ends with an index of every
+ * frame once the recorder is closed.
+ */
+public class TrajectoryRecorder implements AutoCloseable {
+    public static final int DEFAULT_FRAME_INTERVAL = 1;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 8;
+    public static final int DEFAULT_BUFFERED_FRAMES = 8;
+    public static final float DEFAULT_VELOCITY_RANGE = 32f;
+
+    // What record does when every buffered frame is waiting for the writer
+    public enum Backpressure {
+        DROP,
+        BLOCK
+    }
+
+    private final Path path;
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+    private int frameInterval = DEFAULT_FRAME_INTERVAL;
+    private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+    private int bufferedFrames = DEFAULT_BUFFERED_FRAMES;
+    private float velocityRange = DEFAULT_VELOCITY_RANGE;
+    private Backpressure backpressure = Backpressure.DROP;
+
+    // Queued by close to end the writer
+    private static final TrajectoryFrame END = new TrajectoryFrame();
+
+    private FileChannel channel;
+    private BlockingQueue<TrajectoryFrame> free;
+    private BlockingQueue<TrajectoryFrame> queued;
+    private Thread writer;
+    private volatile IOException failure;
+    private ParticleStore lastStore; // Only touched by the recording thread
+
+    // Index of the written frames, only touched by the writer thread until it has finished
+    private long[] frameSteps = new long[256];
+    private long[] frameOffsets = new long[256];
+    private int[] frameKeyframes = new int[256];
+    private int lastKeyframe;
+
+    // Statistics, written by the writer thread except for framesDropped
+    private volatile long framesWritten;
+    private volatile long keyframesWritten;
+    private volatile long rawBytes;
+    private volatile long bytesWritten;
+    private volatile long writerNanos;
+    private volatile long framesDropped;
+    private long startedAt;
+    private long closedAt;
+
+    // Positions are quantized across [0, width] x [0, height], the area particles are culled to, and clamped to it
+    public TrajectoryRecorder(Path path, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("World size must be positive: " + width + "x" + height);
+        }
+        this.path = path;
+        this.minX = 0f;
+        this.minY = 0f;
+        this.maxX = width;
+        this.maxY = height;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getFrameInterval() {
+        return frameInterval;
+    }
+
+    // Records every frameInterval-th step
+    public void setFrameInterval(int frameInterval) {
+        if (frameInterval < 1) {
+            throw new IllegalArgumentException("Frame interval must be at least 1: " + frameInterval);
+        }
+        this.frameInterval = frameInterval;
+    }
+
+    // Recorded frames from one keyframe to the next; a longer interval writes less and seeks slower
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1: " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    // Frames that can wait for the writer before backpressure applies
+    public void setBufferedFrames(int bufferedFrames) {
+        if (bufferedFrames < 1) {
+            throw new IllegalArgumentException("Buffered frames must be at least 1: " + bufferedFrames);
+        }
+        this.bufferedFrames = bufferedFrames;
+    }
+
+    // Velocity components are quantized across [-range, range] and clamped to it
+    public void setVelocityRange(float velocityRange) {
+        if (!(velocityRange > 0)) {
+            throw new IllegalArgumentException("Velocity range must be positive: " + velocityRange);
+        }
+        this.velocityRange = velocityRange;
+    }
+
+    public void setBackpressure(Backpressure backpressure) {
+        this.backpressure = backpressure;
+    }
+
+    // Creates the file, writes its header and starts the writer thread; settings are fixed from here on
+    public void start() throws IOException {
+        if (channel != null) {
+            throw new IllegalStateException("Recorder already started");
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(TrajectoryFormat.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(TrajectoryFormat.MAGIC).putInt(TrajectoryFormat.VERSION);
+        header.putFloat(minX).putFloat(minY).putFloat(maxX).putFloat(maxY).putFloat(velocityRange);
+        header.putInt(frameInterval).putInt(keyframeInterval);
+        header.clear();
+        writeFully(header);
+
+        free = new ArrayBlockingQueue<>(bufferedFrames);
+        queued = new ArrayBlockingQueue<>(bufferedFrames + 1);
+        for (int i = 0; i < bufferedFrames; i++) {
+            free.add(new TrajectoryFrame());
+        }
+        startedAt = System.nanoTime();
+        writer = new Thread(this::write, "trajectory-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Records the store if the step is one of the recorded ones; returns whether a frame was queued.
+    // Call from the thread that steps the system, after the step.
+    public synchronized boolean record(ParticleStore store, long step) {
+        if (writer == null || failure != null || step % frameInterval != 0) {
+            return false;
+        }
+        TrajectoryFrame frame = free.poll();
+        if (frame == null) {
+            if (backpressure == Backpressure.DROP) {
+                framesDropped++;
+                return false;
+            }
+            try {
+                // The writer may fail while we wait, and then never frees a frame
+                while (frame == null) {
+                    if (failure != null) {
+                        return false;
+                    }
+                    frame = free.poll(10, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        frame.capture(store, step, minX, minY, maxX, maxY, velocityRange);
+        // Ids restart with every store, so a replaced system starts over from a keyframe
+        frame.forceKeyframe = store != lastStore;
+        lastStore = store;
+        queued.add(frame);
+        return true;
+    }
+
+    // Writes the queued frames and the index and closes the file; rethrows a write error of the writer thread
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        queued.add(END);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        writer = null;
+        closedAt = System.nanoTime();
+        try {
+            if (failure == null) {
+                writeIndex();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            channel.close();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void write() {
+        FrameEncoder encoder = new FrameEncoder(keyframeInterval, minX, minY, maxX, maxY, velocityRange);
+        ByteBuffer chunk = ByteBuffer.allocateDirect(0);
+        try {
+            while (true) {
+                TrajectoryFrame frame = queued.take();
+                if (frame == END) {
+                    return;
+                }
+                long start = System.nanoTime();
+                int needed = FrameEncoder.maxChunkBytes(frame);
+                if (chunk.capacity() < needed) {
+                    chunk = ByteBuffer.allocateDirect(needed + (needed >> 1)).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                chunk.clear();
+                long offset = channel.position();
+                int type = encoder.encode(frame, chunk);
+                long step = frame.step;
+                int count = frame.count;
+                free.add(frame);
+
+                chunk.flip();
+                writeFully(chunk);
+                if (type == TrajectoryFormat.KEYFRAME) {
+                    lastKeyframe = (int) framesWritten;
+                    keyframesWritten++;
+                }
+                addIndexEntry(step, offset);
+                rawBytes += (long) count * TrajectoryFormat.RAW_BYTES_PER_PARTICLE;
+                bytesWritten += chunk.limit();
+                writerNanos += System.nanoTime() - start;
+                framesWritten++;
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new IOException("Trajectory writer interrupted", e);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void addIndexEntry(long step, long offset) {
+        int frame = (int) framesWritten;
+        if (frame == frameSteps.length) {
+            frameSteps = Arrays.copyOf(frameSteps, frame * 2);
+            frameOffsets = Arrays.copyOf(frameOffsets, frame * 2);
+            frameKeyframes = Arrays.copyOf(frameKeyframes, frame * 2);
+        }
+        frameSteps[frame] = step;
+        frameOffsets[frame] = offset;
+        frameKeyframes[frame] = lastKeyframe;
+    }
+
+    // The index chunk, then the trailer pointing at it
+    private void writeIndex() throws IOException {
+        int frames = (int) framesWritten;
+        long offset = channel.position();
+        ByteBuffer index = ByteBuffer.allocate(TrajectoryFormat.CHUNK_HEADER_BYTES + frames * TrajectoryFormat.INDEX_ENTRY_BYTES
+                + TrajectoryFormat.TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        index.putInt(TrajectoryFormat.INDEX).putInt(frames * TrajectoryFormat.INDEX_ENTRY_BYTES).putLong(-1L).putInt(frames);
+        for (int i = 0; i < frames; i++) {
+            index.putLong(frameSteps[i]).putLong(frameOffsets[i]).putInt(frameKeyframes[i]);
+        }
+        index.putLong(offset).putInt(TrajectoryFormat.MAGIC);
+        index.flip();
+        writeFully(index);
+        bytesWritten += index.limit();
+    }
+
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    public long getKeyframesWritten() {
+        return keyframesWritten;
+    }
+
+    // Frames not recorded because the writer was behind
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    // Bytes of chunks and index written so far, excluding the header
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // Size of the written frames as an id and four floats per particle, over their size in the file
+    public double getCompressionRatio() {
+        long written = bytesWritten;
+        return written == 0 ? 0 : (double) rawBytes / written;
+    }
+
+    // Bytes encoded and written per second of writer time
+    public double getWriteBytesPerSecond() {
+        long nanos = writerNanos;
+        return nanos == 0 ? 0 : bytesWritten * 1e9 / nanos;
+    }
+
+    // Fraction of the recording's wall time the writer was busy; near 1 means it is the bottleneck
+    public double getWriterUtilization() {
+        long wall = (closedAt != 0 ? closedAt : System.nanoTime()) - startedAt;
+        return startedAt == 0 || wall <= 0 ? 0 : Math.min(1.0, (double) writerNanos / wall);
+    }
+
+    public String toText() {
+        return String.format(Locale.ROOT, "%s: %d frames (%d keyframes, %d dropped), %.1f MB, compression %.2fx, %.1f MB/s written, writer busy %.0f%%%n",
+                path, framesWritten, keyframesWritten, framesDropped, bytesWritten / 1e6, getCompressionRatio(),
+                getWriteBytesPerSecond() / 1e6, getWriterUtilization() * 100);
+    }
+}
@@ -0,0 +1,271 @@
+package custom.Pack.Render;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import custom.Pack.Simulation.FrameSnapshot;
+
+/**
+ * Draws the particles of a FrameSnapshot straight into an ARGB pixel array, for showing as one image.
+ *
+ * Every particle is a precomputed disc stamp of the requested diameter. In velocity mode the colour
+ * comes from a 256-entry table indexed by squared speed, so a particle costs no square root and no
+ * Color object. Large frames are split into horizontal bands of BAND_ROWS rows that are drawn in
+ * parallel: particles are bucketed by the band of their top row, and a band draws its own bucket and
+ * the previous one, whose stamps may reach into it, clipped to its rows. No two tasks write the same
+ * pixel, and the frame is identical to one drawn sequentially.
+ *
+ * Trails are drawn first, one pixel per recorded position, fading towards the oldest one.
+ */
+public class ParticleRasterizer {
+    public static final int BACKGROUND = 0xFF000000;
+    public static final int DEFAULT_COLOR = 0xFF808080; // Grey
+    public static final int MAX_DIAMETER = 16;
+    // Particles at or above this speed get the last colour of the velocity table
+    public static final float MAX_SPEED = 20.0f;
+    static final int BAND_ROWS = 64;
+    // Below this many particles a frame is drawn on the calling thread
+    static final int PARALLEL_THRESHOLD = 16_384;
+
+    private static final int SPEED_LEVELS = 256;
+    private static final int SLOW_COLOR = 0xFFADD8E6; // Light blue
+    private static final int FAST_COLOR = 0xFF00008B; // Dark blue
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final int[] speedColors = new int[SPEED_LEVELS];
+    private final float speedIndexScale = (SPEED_LEVELS - 1) / (MAX_SPEED * MAX_SPEED);
+    // Offsets of the pixels of a disc of each diameter, as row * width + column from its top left corner
+    private final int[][] stamps = new int[MAX_DIAMETER + 1][];
+    private final int[][] stampRows = new int[MAX_DIAMETER + 1][];
+
+    private ForkJoinPool pool; // null draws on the calling thread
+    private int[] bandStart = new int[0];
+    private int[] bandOrder = new int[0];
+
+    public ParticleRasterizer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        pixels = new int[width * height];
+        for (int level = 0; level < SPEED_LEVELS; level++) {
+            // Level k holds squared speed k / scale, so the factor is the square root of its share
+            float factor = (float) Math.sqrt(level / (double) (SPEED_LEVELS - 1));
+            speedColors[level] = blend(SLOW_COLOR, FAST_COLOR, factor);
+        }
+        for (int d = 1; d <= MAX_DIAMETER; d++) {
+            buildStamp(d);
+        }
+        bandStart = new int[(height + BAND_ROWS - 1) / BAND_ROWS + 1];
+    }
+
+    private void buildStamp(int diameter) {
+        float radius = diameter / 2.0f;
+        int[] offsets = new int[diameter * diameter];
+        int[] rows = new int[diameter * diameter];
+        int count = 0;
+        for (int row = 0; row < diameter; row++) {
+            for (int column = 0; column < diameter; column++) {
+                float dx = column + 0.5f - radius;
+                float dy = row + 0.5f - radius;
+                if (dx * dx + dy * dy <= radius * radius) {
+                    offsets[count] = row * width + column;
+                    rows[count++] = row;
+                }
+            }
+        }
+        stamps[diameter] = Arrays.copyOf(offsets, count);
+        stampRows[diameter] = Arrays.copyOf(rows, count);
+    }
+
+    private static int blend(int from, int to, float factor) {
+        int color = 0xFF000000;
+        for (int shift = 0; shift < 24; shift += 8) {
+            int a = (from >> shift) & 0xFF;
+            int b = (to >> shift) & 0xFF;
+            color |= Math.round(a + (b - a) * factor) << shift;
+        }
+        return color;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Row-major ARGB pixels of the last frame, width() per row
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    // Pool for drawing bands in parallel, or null to draw on the calling thread
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Colour of a particle moving with the given velocity in velocity mode
+    public int speedColor(float vx, float vy) {
+        return speedColors[(int) Math.min(SPEED_LEVELS - 1, (vx * vx + vy * vy) * speedIndexScale)];
+    }
+
+    // Clears the frame and draws every particle of the snapshot at the given interpolation
+    public void draw(FrameSnapshot snapshot, float alpha, int diameter, boolean velocityColors) {
+        int d = Math.max(1, Math.min(MAX_DIAMETER, diameter));
+        int count = snapshot.getParticleCount();
+        Arrays.fill(pixels, BACKGROUND);
+        drawTrails(snapshot, velocityColors);
+        if (pool == null || count < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                plot(snapshot, i, alpha, d, velocityColors, 0, height);
+            }
+            return;
+        }
+
+        // Bucket particles by the band holding the top row of their stamp; off-screen ones are dropped
+        int bands = bandStart.length - 1;
+        if (bandOrder.length < count) {
+            bandOrder = new int[Math.max(count, bandOrder.length + (bandOrder.length >> 1))];
+        }
+        Arrays.fill(bandStart, 0);
+        for (int i = 0; i < count; i++) {
+            int band = bandOf(snapshot.getY(i, alpha), bands);
+            if (band >= 0) {
+                bandStart[band + 1]++;
+            }
+        }
+        for (int b = 0; b < bands; b++) {
+            bandStart[b + 1] += bandStart[b];
+        }
+        for (int i = 0; i < count; i++) {
+            int band = bandOf(snapshot.getY(i, alpha), bands);
+            if (band >= 0) {
+                bandOrder[bandStart[band]++] = i;
+            }
+        }
+        // The fill pass moved every start to the end of its band; shift them back
+        for (int b = bands; b > 0; b--) {
+            bandStart[b] = bandStart[b - 1];
+        }
+        bandStart[0] = 0;
+        pool.invoke(new BandTask(snapshot, alpha, d, velocityColors, 0, bands));
+    }
+
+    // Band of the top row of a stamp drawn at y; stamps starting above the frame go to band 0
+    private int bandOf(float y, int bands) {
+        int top = (int) Math.floor(y);
+        if (!(y < height) || top <= -MAX_DIAMETER) {
+            return -1;
+        }
+        return Math.min(bands - 1, Math.max(0, top) / BAND_ROWS);
+    }
+
+    private void drawBand(FrameSnapshot snapshot, float alpha, int d, boolean velocityColors, int band) {
+        int rowFrom = band * BAND_ROWS;
+        int rowTo = Math.min(height, rowFrom + BAND_ROWS);
+        // Both buckets are in index order; merging them keeps the overlap order of a sequential frame
+        int previous = band > 0 ? bandStart[band - 1] : bandStart[band];
+        int previousEnd = bandStart[band];
+        int own = bandStart[band];
+        int ownEnd = bandStart[band + 1];
+        while (previous < previousEnd || own < ownEnd) {
+            int i;
+            if (own == ownEnd || (previous < previousEnd && bandOrder[previous] < bandOrder[own])) {
+                i = bandOrder[previous++];
+            } else {
+                i = bandOrder[own++];
+            }
+            plot(snapshot, i, alpha, d, velocityColors, rowFrom, rowTo);
+        }
+    }
+
+    // One pixel per trail position, brightest at the newest
+    private void drawTrails(FrameSnapshot snapshot, boolean velocityColors) {
+        int count = snapshot.getParticleCount();
+        for (int i = 0; i < count; i++) {
+            int points = snapshot.getTrailCount(i);
+            if (points == 0) {
+                continue;
+            }
+            int color = velocityColors ? speedColor(snapshot.getVelocityX(i), snapshot.getVelocityY(i)) : DEFAULT_COLOR;
+            for (int k = 0; k < points; k++) {
+                float x = snapshot.getTrailX(i, k);
+                float y = snapshot.getTrailY(i, k);
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    pixels[(int) y * width + (int) x] = fade(color, (k + 1) * 256 / (points + 1));
+                }
+            }
+        }
+    }
+
+    // Scales the colour channels by level / 256
+    private static int fade(int color, int level) {
+        int red = ((color >> 16) & 0xFF) * level >> 8;
+        int green = ((color >> 8) & 0xFF) * level >> 8;
+        int blue = (color & 0xFF) * level >> 8;
+        return 0xFF000000 | red << 16 | green << 8 | blue;
+    }
+
+    // Stamps particle i, writing only rows [rowFrom, rowTo)
+    private void plot(FrameSnapshot snapshot, int i, float alpha, int d, boolean velocityColors, int rowFrom, int rowTo) {
+        float x = snapshot.getX(i, alpha);
+        float y = snapshot.getY(i, alpha);
+        // Written so that NaN positions are skipped
+        if (!(x > -d && x < width && y > -d && y < height)) {
+            return;
+        }
+        int left = (int) Math.floor(x);
+        int top = (int) Math.floor(y);
+        int color = velocityColors ? speedColor(snapshot.getVelocityX(i), snapshot.getVelocityY(i)) : DEFAULT_COLOR;
+        int[] offsets = stamps[d];
+        int[] rows = stampRows[d];
+        int origin = top * width + left;
+        boolean clipped = left < 0 || left + d > width || top < rowFrom || top + d > rowTo;
+        if (!clipped) {
+            for (int k = 0; k < offsets.length; k++) {
+                pixels[origin + offsets[k]] = color;
+            }
+            return;
+        }
+        for (int k = 0; k < offsets.length; k++) {
+            int row = top + rows[k];
+            int column = left + (offsets[k] - rows[k] * width);
+            if (row >= rowFrom && row < rowTo && column >= 0 && column < width) {
+                pixels[row * width + column] = color;
+            }
+        }
+    }
+
+    // Draws bands [from, to), splitting in halves
+    private final class BandTask extends RecursiveAction {
+        private final FrameSnapshot snapshot;
+        private final float alpha;
+        private final int diameter;
+        private final boolean velocityColors;
+        private final int from;
+        private final int to;
+
+        BandTask(FrameSnapshot snapshot, float alpha, int diameter, boolean velocityColors, int from, int to) {
+            this.snapshot = snapshot;
+            this.alpha = alpha;
+            this.diameter = diameter;
+            this.velocityColors = velocityColors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                drawBand(snapshot, alpha, diameter, velocityColors, from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BandTask(snapshot, alpha, diameter, velocityColors, from, middle),
+                new BandTask(snapshot, alpha, diameter, velocityColors, middle, to));
+        }
+    }
+}
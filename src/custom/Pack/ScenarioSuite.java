@@ -0,0 +1,250 @@
+package custom.Pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import custom.Pack.Physics.PhysicsBackend;
+
+/**
+ * End-to-end scenario numbers: runs the shipped presets and a few generated stress scenes headless for
+ * a fixed number of steps each, reports steps/s and the per-step latency distribution, and, given
+ * --baseline, compares steps/s against a baseline report. A scene slower than its baseline by more than
+ * the tolerance fails the run with exit code 1, so CI can gate on it.
+ *
+ * Run with: mvn compile exec:java -Dexec.mainClass=custom.Pack.ScenarioSuite
+ *           -Dexec.args="[--steps N] [--warmup N] [--backend java|native] [--threads T] [--scenes a,b,...]
+ *                        [--baseline file] [--tolerance percent] [--write-baseline file] [--out file]"
+ * Baselines are machine specific: write one with --write-baseline on the machine that compares against it.
+ * Every report records the machine and JVM it ran on, so a baseline shows where it came from.
+ */
+public class ScenarioSuite
+{
+    public static final List<String> DEFAULT_SCENES = Arrays.asList(
+        "jog.txt", "doublebeam.txt", "infinity.txt", "rotating.txt", "solar.txt",
+        StressScene.name(4, 16, 10_000), StressScene.name(16, 64, 50_000), StressScene.name(32, 256, 100_000));
+    public static final double DEFAULT_TOLERANCE = 10.0;
+
+    private static final String USAGE = "Usage: ScenarioSuite [--steps N] [--warmup N] [--backend java|native] [--threads T] [--scenes a,b,...]"
+        + " [--baseline file] [--tolerance percent] [--write-baseline file] [--out file]";
+    private static final Pattern SCENE_RESULT = Pattern.compile("\"preset\": \"([^\"]*)\",\\s*\"backend\": \"([^\"]*)\"[^}]*?\"steps_per_second\": ([-0-9.eE+]+)");
+
+    private final PhysicsBackend backend;
+    private List<String> scenes = DEFAULT_SCENES;
+    private long steps = 500;
+    private long warmupSteps = 100;
+    private Integer threads;
+    private final Map<String, HeadlessRunner> results = new LinkedHashMap<>();
+
+    public ScenarioSuite(PhysicsBackend backend)
+    {
+        this.backend = backend;
+    }
+
+    public void setScenes(List<String> scenes)
+    {
+        this.scenes = scenes;
+    }
+
+    public void setSteps(long steps)
+    {
+        this.steps = steps;
+    }
+
+    public void setWarmupSteps(long warmupSteps)
+    {
+        this.warmupSteps = warmupSteps;
+    }
+
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    //Runs every scene in turn, each on a freshly loaded system
+    public void run()
+    {
+        results.clear();
+        for(String scene : scenes)
+        {
+            ParticleSystem system = HeadlessRunner.loadScene(scene, backend, HeadlessRunner.DEFAULT_WIDTH, HeadlessRunner.DEFAULT_HEIGHT);
+            if(threads != null)
+                system.setParallelism(threads);
+            HeadlessRunner runner = new HeadlessRunner(system);
+            runner.setName(new File(scene).getName());
+            runner.setSteps(steps);
+            runner.setWarmupSteps(warmupSteps);
+            runner.run();
+            results.put(runner.getName(), runner);
+        }
+    }
+
+    public Map<String, HeadlessRunner> getResults()
+    {
+        return results;
+    }
+
+    //Every scene's report in one JSON document, which is also the baseline format
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder("{\n\"machine\": ").append(machineJson()).append(",\n\"scenes\": [\n");
+        int i = 0;
+        for(HeadlessRunner runner : results.values())
+        {
+            json.append(runner.toJson().trim());
+            json.append(++i < results.size() ? ",\n" : "\n");
+        }
+        return json.append("]\n}\n").toString();
+    }
+
+    //The operating system, processor count and JVM the suite runs on
+    public static String machineJson()
+    {
+        return String.format(Locale.ROOT,
+            "{ \"os\": \"%s %s\", \"arch\": \"%s\", \"processors\": %d, \"jvm\": \"%s %s\", \"java\": \"%s\" }",
+            escape(System.getProperty("os.name")), escape(System.getProperty("os.version")), escape(System.getProperty("os.arch")),
+            Runtime.getRuntime().availableProcessors(), escape(System.getProperty("java.vm.name")),
+            escape(System.getProperty("java.vm.version")), escape(System.getProperty("java.version")));
+    }
+
+    private static String escape(String value)
+    {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    public String toText()
+    {
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "%-24s %10s %14s %10s %10s %10s%n",
+            "scene", "steps/s", "particles/s", "p50 ms", "p99 ms", "max ms"));
+        for(HeadlessRunner runner : results.values())
+        {
+            LatencyHistogram latency = runner.getLatency();
+            text.append(String.format(Locale.ROOT, "%-24s %10.1f %14.0f %10.4f %10.4f %10.4f%n", runner.getName(),
+                runner.getStepsPerSecond(), runner.getParticlesPerSecond(), latency.getPercentile(0.5) / 1e6,
+                latency.getPercentile(0.99) / 1e6, latency.getMax() / 1e6));
+        }
+        return text.toString();
+    }
+
+    //Scene name to steps/s for the scenes run on the given backend, from a report written by toJson
+    public static Map<String, Double> parseStepsPerSecond(String json, String backend)
+    {
+        Map<String, Double> stepsPerSecond = new LinkedHashMap<>();
+        Matcher matcher = SCENE_RESULT.matcher(json);
+        while(matcher.find())
+            if(matcher.group(2).equals(backend))
+                stepsPerSecond.put(matcher.group(1), Double.parseDouble(matcher.group(3)));
+        return stepsPerSecond;
+    }
+
+    //Describes every scene whose steps/s fell more than tolerancePercent below its baseline;
+    //scenes missing on either side, or baselined on another backend, are not compared
+    public List<String> regressions(Map<String, Double> baseline, double tolerancePercent)
+    {
+        List<String> regressions = new ArrayList<>();
+        for(HeadlessRunner runner : results.values())
+        {
+            Double expected = baseline.get(runner.getName());
+            if(expected == null || expected <= 0)
+                continue;
+            double change = (runner.getStepsPerSecond() / expected - 1) * 100;
+            if(change < -tolerancePercent)
+                regressions.add(String.format(Locale.ROOT, "%s: %.1f steps/s against a baseline of %.1f (%.1f%%, tolerance %.1f%%)",
+                    runner.getName(), runner.getStepsPerSecond(), expected, change, tolerancePercent));
+        }
+        return regressions;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String backend = null;
+        String baseline = null;
+        String writeBaseline = null;
+        String out = null;
+        double tolerance = DEFAULT_TOLERANCE;
+        ScenarioSuite suite;
+        try
+        {
+            Long steps = null;
+            Long warmup = null;
+            Integer threads = null;
+            List<String> scenes = null;
+            for(int i = 0; i < args.length; i += 2)
+            {
+                if(i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                String value = args[i + 1];
+                switch(args[i])
+                {
+                    case "--steps": steps = Long.parseLong(value); break;
+                    case "--warmup": warmup = Long.parseLong(value); break;
+                    case "--backend": backend = value; break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    case "--scenes": scenes = Arrays.asList(value.split(",")); break;
+                    case "--baseline": baseline = value; break;
+                    case "--tolerance": tolerance = Double.parseDouble(value); break;
+                    case "--write-baseline": writeBaseline = value; break;
+                    case "--out": out = value; break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            suite = new ScenarioSuite(backend == null ? PhysicsBackend.getDefault() : PhysicsBackend.forName(backend));
+            if(steps != null)
+                suite.setSteps(steps);
+            if(warmup != null)
+                suite.setWarmupSteps(warmup);
+            if(threads != null)
+                suite.setThreads(threads);
+            if(scenes != null)
+                suite.setScenes(scenes);
+        }
+        catch(IllegalArgumentException | IllegalStateException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        suite.run();
+        System.out.print(suite.toText());
+        String json = suite.toJson();
+        if(out != null)
+            Files.write(new File(out).toPath(), json.getBytes(StandardCharsets.UTF_8));
+        if(writeBaseline != null)
+        {
+            Files.write(new File(writeBaseline).toPath(), json.getBytes(StandardCharsets.UTF_8));
+            System.out.println("Baseline written to " + writeBaseline);
+            return;
+        }
+
+        //Only an explicit baseline is compared against, as one from another machine or build means nothing
+        if(baseline == null)
+            return;
+        File baselineFile = new File(baseline);
+        if(!baselineFile.isFile())
+        {
+            System.err.println("No baseline at " + baseline);
+            System.exit(2);
+            return;
+        }
+        List<String> regressions = suite.regressions(parseStepsPerSecond(Files.readString(baselineFile.toPath()), suite.backend.getName()), tolerance);
+        if(regressions.isEmpty())
+        {
+            System.out.println("No scene regressed by more than " + tolerance + "% against " + baseline);
+            return;
+        }
+        for(String regression : regressions)
+            System.err.println("Regression: " + regression);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,12 @@
+package custom.Pack.Simulation;
+
+import custom.Pack.ParticleSystem;
+
+/**
+ * A change to a ParticleSystem, posted from any thread and applied by the simulation thread
+ * between two steps. Commands for the usual edits are created by the factories in Commands.
+ */
+@FunctionalInterface
+public interface Command {
+    void apply(ParticleSystem system);
+}
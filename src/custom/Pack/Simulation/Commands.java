@@ -0,0 +1,148 @@
+package custom.Pack.Simulation;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.SystemPreset;
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.FieldPoint.FieldPoint;
+
+/**
+ * Factories for the edits the UI and other producers make to a running simulation.
+ * Emitters and field points are referred to by identity, as read from a FrameSnapshot.
+ */
+public final class Commands {
+    private Commands() {
+    }
+
+    private static Vector<Float> position(float x, float y) {
+        return new Vector<>(Arrays.asList(x, y));
+    }
+
+    public static Command addEmitter(float x, float y, float speed, float spread, float angle, float particlesMass) {
+        return system -> system.addEmitter(position(x, y), speed, spread, angle, particlesMass);
+    }
+
+    public static Command addOscillatingEmitter(float x, float y, float speed, float spread, float angle, float particlesMass, float amplitude, float frequency) {
+        return system -> system.addOscillatingEmitter(position(x, y), speed, spread, angle, particlesMass, amplitude, frequency);
+    }
+
+    public static Command addPulseEmitter(float x, float y, float speed, float spread, float angle, float particlesMass, float frequency) {
+        return system -> system.addPulseEmitter(position(x, y), speed, spread, angle, particlesMass, frequency);
+    }
+
+    public static Command removeEmitter(Emitter emitter) {
+        return system -> {
+            system.getEmitters().remove(emitter);
+            system.invalidateEmitters();
+        };
+    }
+
+    public static Command moveEmitter(Emitter emitter, float x, float y) {
+        return system -> emitter.moveTo(x, y);
+    }
+
+    public static Command setEmitterSpeed(Emitter emitter, float speed) {
+        return system -> emitter.setSpeed(speed);
+    }
+
+    public static Command setEmitterSpread(Emitter emitter, float spread) {
+        return system -> emitter.setSpread(spread);
+    }
+
+    public static Command setEmitterAngle(Emitter emitter, float angle) {
+        return system -> emitter.setAngle(angle);
+    }
+
+    public static Command setEmissionRate(Emitter emitter, float particlesPerSecond) {
+        return system -> emitter.setEmissionRate(particlesPerSecond);
+    }
+
+    // Spawns a burst of particles from an emitter the given number of steps from now
+    public static Command scheduleBurst(Emitter emitter, long steps, int count) {
+        return system -> system.getScheduler().scheduleIn(steps, step -> emitter.emitBurst(count));
+    }
+
+    public static Command addFieldPoint(float x, float y, float fieldStrength, String type) {
+        return system -> system.addFieldPoint(position(x, y), fieldStrength, type);
+    }
+
+    public static Command removeFieldPoint(FieldPoint fieldPoint) {
+        return system -> {
+            system.getFieldPoints().remove(fieldPoint);
+            system.invalidateFieldIndex();
+        };
+    }
+
+    // Moved fields must be re-sorted into the field grid
+    public static Command moveFieldPoint(FieldPoint fieldPoint, float x, float y) {
+        return system -> {
+            fieldPoint.getPosition().set(0, x);
+            fieldPoint.getPosition().set(1, y);
+            system.invalidateFieldIndex();
+        };
+    }
+
+    public static Command setFieldStrength(FieldPoint fieldPoint, float fieldStrength) {
+        return system -> fieldPoint.setFieldStrength(fieldStrength);
+    }
+
+    public static Command toggleGravity() {
+        return system -> system.setGravityEnabled(system.isGravityEnabled() ^ 1);
+    }
+
+    public static Command cyclePairInteraction() {
+        return system -> system.setPairInteraction(system.getPairInteraction().next());
+    }
+
+    public static Command cycleEvictionPolicy() {
+        return system -> system.setEvictionPolicy(system.getEvictionPolicy().next());
+    }
+
+    public static Command setMaxParticles(int maxParticles) {
+        return system -> system.setMaxParticles(maxParticles);
+    }
+
+    public static Command setTrailLength(int trailLength) {
+        return system -> system.setTrailLength(trailLength);
+    }
+
+    // Changes a field point's strength the given number of steps from now
+    public static Command scheduleFieldStrength(FieldPoint fieldPoint, long steps, float fieldStrength) {
+        return system -> system.getScheduler().scheduleIn(steps, step -> fieldPoint.setFieldStrength(fieldStrength));
+    }
+
+    public static Command clearParticles() {
+        return system -> system.getParticles().clear();
+    }
+
+    // Removes all particles, emitters and field points
+    public static Command clearAll() {
+        return system -> {
+            system.getParticles().clear();
+            system.getEmitters().clear();
+            system.getFieldPoints().clear();
+            system.getScheduler().clear();
+            system.invalidateFieldIndex();
+            system.invalidateEmitters();
+        };
+    }
+
+    public static Command savePreset(String filename) {
+        return system -> new SystemPreset(system).savePreset(filename);
+    }
+
+    public static Command saveSnapshot(String filename) {
+        return system -> new SystemPreset(system).saveSnapshot(filename);
+    }
+
+    // Replaces the simulated system with a new one, on the same backend, loaded from a preset or snapshot file
+    public static Command loadPreset(SimulationLoop loop, String filename) {
+        return system -> {
+            ParticleSystem loaded = new ParticleSystem(system.getBackend());
+            new SystemPreset(loaded).loadPreset(filename);
+            loop.setSystem(loaded);
+        };
+    }
+}
@@ -0,0 +1,358 @@
+package custom.Pack.Simulation;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.FieldPoint.FieldPoint;
+import custom.Pack.Particle.EvictionPolicy;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Particle.TrailBuffer;
+import custom.Pack.Physics.PairInteraction;
+import custom.Pack.Recording.TrajectoryFrame;
+
+/**
+ * Copy of everything the renderer draws, taken by the simulation thread after a step.
+ * Particle positions are kept from before and after the step so a frame drawn between two steps
+ * can interpolate them. Arrays only grow, so capturing allocates nothing once they are large enough.
+ *
+ * A snapshot belongs to one thread at a time: SimulationLoop hands them between the simulation and
+ * render threads, and a snapshot is never written while the renderer holds it.
+ */
+public class FrameSnapshot {
+    private volatile long sequence; // Increases with every publish, 0 before the first one
+    private long publishedAt;
+    private long stepInterval;
+    private long stepCount;
+    private long stepNanos;
+
+    private int particleCount;
+    private int previousCount;
+    private float[] previousX = new float[0];
+    private float[] previousY = new float[0];
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] vx = new float[0];
+    private float[] vy = new float[0];
+
+    // Most trail positions a snapshot copies, so the copies stay small however large the trail budget is
+    public static final int MAX_TRAIL_POINTS = 1 << 20;
+
+    // Trail of particle i: trailCount[i] positions from trailOffset[i] in trailPoints, oldest first
+    private int trailParticles;
+    private int[] trailOffset = new int[0];
+    private int[] trailCount = new int[0];
+    private float[] trailPoints = new float[0];
+    private long trailMemoryBytes;
+
+    private int emitterCount;
+    private Emitter[] emitters = new Emitter[0];
+    private float[] emitterPositions = new float[0];
+    private float[] emitterSettings = new float[0]; // Speed, spread, angle and emission rate of each emitter
+    private int fieldPointCount;
+    private FieldPoint[] fieldPoints = new FieldPoint[0];
+    private float[] fieldPositions = new float[0];
+    private boolean[] attractor = new boolean[0];
+    private float[] fieldStrength = new float[0];
+
+    private int gravityEnabled;
+    private PairInteraction pairInteraction = PairInteraction.NONE;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.OLDEST_FIRST;
+    private int maxParticles;
+
+    // Records positions before a step; particles [0, size()) keep their slot through the step
+    void capturePrevious(ParticleStore store) {
+        previousCount = store.size();
+        previousX = grow(previousX, previousCount);
+        previousY = grow(previousY, previousCount);
+        store.getX().get(0, previousX, 0, previousCount);
+        store.getY().get(0, previousY, 0, previousCount);
+    }
+
+    // Records the state after a step
+    void capture(ParticleSystem system) {
+        ParticleStore store = system.getParticleStore();
+        int count = store.size();
+        particleCount = count;
+        x = grow(x, count);
+        y = grow(y, count);
+        vx = grow(vx, count);
+        vy = grow(vy, count);
+        store.getX().get(0, x, 0, count);
+        store.getY().get(0, y, 0, count);
+        store.getVelocityX().get(0, vx, 0, count);
+        store.getVelocityY().get(0, vy, 0, count);
+
+        // Spawned during the step, or written over an evicted particle: nothing to interpolate from
+        previousX = grow(previousX, count);
+        previousY = grow(previousY, count);
+        int[] age = store.getAge();
+        for (int i = 0; i < count; i++) {
+            if (i >= previousCount || age[i] == 0) {
+                previousX[i] = x[i];
+                previousY[i] = y[i];
+            }
+        }
+
+        captureTrails(store.getTrails(), count);
+
+        List<Emitter> emitterList = system.getEmitters();
+        emitterCount = emitterList.size();
+        if (emitters.length < emitterCount) {
+            emitters = new Emitter[emitterCount * 2];
+            emitterPositions = new float[emitterCount * 4];
+            emitterSettings = new float[emitterCount * 8];
+        }
+        for (int i = 0; i < emitterCount; i++) {
+            Emitter emitter = emitterList.get(i);
+            emitters[i] = emitter;
+            emitterPositions[2 * i] = emitter.getX();
+            emitterPositions[2 * i + 1] = emitter.getY();
+            emitterSettings[4 * i] = emitter.getSpeed();
+            emitterSettings[4 * i + 1] = emitter.getSpread();
+            emitterSettings[4 * i + 2] = emitter.getAngle();
+            emitterSettings[4 * i + 3] = emitter.getEmissionRate();
+        }
+        for (int i = emitterCount; i < emitters.length && emitters[i] != null; i++) {
+            emitters[i] = null;
+        }
+
+        List<FieldPoint> fieldList = system.getFieldPoints();
+        fieldPointCount = fieldList.size();
+        if (fieldPoints.length < fieldPointCount) {
+            fieldPoints = new FieldPoint[fieldPointCount * 2];
+            fieldPositions = new float[fieldPointCount * 4];
+            attractor = new boolean[fieldPointCount * 2];
+            fieldStrength = new float[fieldPointCount * 2];
+        }
+        for (int i = 0; i < fieldPointCount; i++) {
+            FieldPoint fieldPoint = fieldList.get(i);
+            fieldPoints[i] = fieldPoint;
+            fieldPositions[2 * i] = fieldPoint.getPosition().get(0);
+            fieldPositions[2 * i + 1] = fieldPoint.getPosition().get(1);
+            attractor[i] = "A".equals(fieldPoint.getType());
+            fieldStrength[i] = fieldPoint.getFieldStrength();
+        }
+        for (int i = fieldPointCount; i < fieldPoints.length && fieldPoints[i] != null; i++) {
+            fieldPoints[i] = null;
+        }
+
+        gravityEnabled = system.isGravityEnabled();
+        pairInteraction = system.getPairInteraction();
+        evictionPolicy = system.getEvictionPolicy();
+        maxParticles = system.getMaxParticles();
+    }
+
+    // Fills the snapshot with a recorded frame, for replaying a run. Recordings hold particles only, so
+    // there are no trails, emitters or field points, and nothing is interpolated.
+    public void capture(TrajectoryFrame frame, long sequence) {
+        int count = frame.size();
+        particleCount = count;
+        previousCount = count;
+        x = grow(x, count);
+        y = grow(y, count);
+        vx = grow(vx, count);
+        vy = grow(vy, count);
+        frame.getPositions(x, y);
+        frame.getVelocities(vx, vy);
+        previousX = grow(previousX, count);
+        previousY = grow(previousY, count);
+        System.arraycopy(x, 0, previousX, 0, count);
+        System.arraycopy(y, 0, previousY, 0, count);
+
+        trailParticles = 0;
+        trailMemoryBytes = 0;
+        Arrays.fill(emitters, 0, emitterCount, null);
+        emitterCount = 0;
+        Arrays.fill(fieldPoints, 0, fieldPointCount, null);
+        fieldPointCount = 0;
+        publish(sequence, System.nanoTime(), 0, frame.getStep(), 0);
+    }
+
+    // Unrolls the ring of every trailed particle into trailPoints, oldest position first. Particles
+    // whose trail would take the copy past MAX_TRAIL_POINTS are drawn without one, like those past the budget.
+    private void captureTrails(TrailBuffer trails, int count) {
+        int length = trails.getLength();
+        int candidates = length == 0 ? 0 : Math.min(count, trails.getSlots());
+        int total = 0;
+        trailParticles = 0;
+        while (trailParticles < candidates && total + trails.getCount(trailParticles) <= MAX_TRAIL_POINTS) {
+            total += trails.getCount(trailParticles++);
+        }
+        if (trailCount.length < trailParticles) {
+            int grown = Math.max(trailParticles, trailCount.length + (trailCount.length >> 1));
+            trailOffset = new int[grown];
+            trailCount = new int[grown];
+        }
+        if (trailPoints.length < total * 2) {
+            trailPoints = new float[Math.min(MAX_TRAIL_POINTS * 2, Math.max(total * 2, trailPoints.length + (trailPoints.length >> 1)))];
+        }
+        FloatBuffer points = trails.getPoints();
+        int offset = 0;
+        for (int i = 0; i < trailParticles; i++) {
+            int recorded = trails.getCount(i);
+            trailOffset[i] = offset;
+            trailCount[i] = recorded;
+            if (recorded == 0) {
+                continue;
+            }
+            int start = trails.ringStart(i);
+            int first = Math.min(recorded, length - start);
+            points.get((i * length + start) * 2, trailPoints, offset * 2, first * 2);
+            points.get(i * length * 2, trailPoints, (offset + first) * 2, (recorded - first) * 2);
+            offset += recorded;
+        }
+        trailMemoryBytes = trails.getMemoryBytes() + (long) trailPoints.length * Float.BYTES
+            + (long) (trailOffset.length + trailCount.length) * Integer.BYTES;
+    }
+
+    void publish(long sequence, long publishedAt, long stepInterval, long stepCount, long stepNanos) {
+        this.publishedAt = publishedAt;
+        this.stepInterval = stepInterval;
+        this.stepCount = stepCount;
+        this.stepNanos = stepNanos;
+        this.sequence = sequence;
+    }
+
+    private static float[] grow(float[] array, int size) {
+        return array.length >= size ? array : new float[Math.max(size, array.length + (array.length >> 1))];
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    // Fraction of a step that has passed since this snapshot was published, clamped to [0, 1]
+    public float interpolation(long now) {
+        if (stepInterval <= 0) {
+            return 1.0f;
+        }
+        return (float) Math.min(1.0, Math.max(0.0, (double) (now - publishedAt) / stepInterval));
+    }
+
+    // Simulation steps run before this snapshot
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    // Wall time of the step that produced this snapshot
+    public long getStepNanos() {
+        return stepNanos;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    // Position between the state before (alpha 0) and after (alpha 1) the step
+    public float getX(int i, float alpha) {
+        return previousX[i] + (x[i] - previousX[i]) * alpha;
+    }
+
+    public float getY(int i, float alpha) {
+        return previousY[i] + (y[i] - previousY[i]) * alpha;
+    }
+
+    public float getVelocityX(int i) {
+        return vx[i];
+    }
+
+    public float getVelocityY(int i) {
+        return vy[i];
+    }
+
+    // Positions in the trail of particle i, 0 without one
+    public int getTrailCount(int i) {
+        return i < trailParticles ? trailCount[i] : 0;
+    }
+
+    // Point k of the trail of particle i, 0 being the oldest
+    public float getTrailX(int i, int k) {
+        return trailPoints[(trailOffset[i] + k) * 2];
+    }
+
+    public float getTrailY(int i, int k) {
+        return trailPoints[(trailOffset[i] + k) * 2 + 1];
+    }
+
+    // Bytes held for trails: the simulation's off-heap slab and this snapshot's copy of it
+    public long getTrailMemoryBytes() {
+        return trailMemoryBytes;
+    }
+
+    public int getEmitterCount() {
+        return emitterCount;
+    }
+
+    // The live emitter, for selecting it; read its position from the snapshot, not from the emitter
+    public Emitter getEmitter(int i) {
+        return emitters[i];
+    }
+
+    public float getEmitterX(int i) {
+        return emitterPositions[2 * i];
+    }
+
+    public float getEmitterY(int i) {
+        return emitterPositions[2 * i + 1];
+    }
+
+    public float getEmitterSpeed(int i) {
+        return emitterSettings[4 * i];
+    }
+
+    public float getEmitterSpread(int i) {
+        return emitterSettings[4 * i + 1];
+    }
+
+    public float getEmitterAngle(int i) {
+        return emitterSettings[4 * i + 2];
+    }
+
+    public float getEmitterEmissionRate(int i) {
+        return emitterSettings[4 * i + 3];
+    }
+
+    public int getFieldPointCount() {
+        return fieldPointCount;
+    }
+
+    public FieldPoint getFieldPoint(int i) {
+        return fieldPoints[i];
+    }
+
+    public float getFieldPointX(int i) {
+        return fieldPositions[2 * i];
+    }
+
+    public float getFieldPointY(int i) {
+        return fieldPositions[2 * i + 1];
+    }
+
+    public boolean isAttractor(int i) {
+        return attractor[i];
+    }
+
+    public float getFieldStrength(int i) {
+        return fieldStrength[i];
+    }
+
+    public int getGravityEnabled() {
+        return gravityEnabled;
+    }
+
+    public PairInteraction getPairInteraction() {
+        return pairInteraction;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    // Particle cap of the system, 0 for none
+    public int getMaxParticles() {
+        return maxParticles;
+    }
+}
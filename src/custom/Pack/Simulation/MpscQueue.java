@@ -0,0 +1,71 @@
+package custom.Pack.Simulation;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded lock-free queue for many producers and a single consumer.
+ *
+ * Producers swap their node into the tail with one atomic exchange and then link the previous tail
+ * to it, so offer never retries or waits. The consumer owns the head and follows the links. A node
+ * whose link is not written yet looks like the end of the queue; poll returns null then and the
+ * element is seen on the next call.
+ */
+public class MpscQueue<T> {
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            NEXT = MethodHandles.lookup().findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final class Node<T> {
+        T value;
+        @SuppressWarnings("unused") // Accessed through NEXT
+        volatile Node<T> next;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+
+    private Node<T> head; // Consumed sentinel, only touched by the consumer
+    private final AtomicReference<Node<T>> tail;
+
+    public MpscQueue() {
+        head = new Node<>(null);
+        tail = new AtomicReference<>(head);
+    }
+
+    // Adds an element; safe to call from any thread
+    public void offer(T value) {
+        if (value == null) {
+            throw new NullPointerException("MpscQueue does not accept null");
+        }
+        Node<T> node = new Node<>(value);
+        Node<T> previous = tail.getAndSet(node);
+        NEXT.setRelease(previous, node);
+    }
+
+    // Removes the oldest element, or returns null if there is none; consumer thread only
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        Node<T> next = (Node<T>) NEXT.getAcquire(head);
+        if (next == null) {
+            return null;
+        }
+        T value = next.value;
+        next.value = null; // The node becomes the sentinel, do not keep the element alive
+        head = next;
+        return value;
+    }
+
+    // Whether nothing has been offered since the consumer last emptied the queue
+    public boolean isEmpty() {
+        return tail.get() == head;
+    }
+}
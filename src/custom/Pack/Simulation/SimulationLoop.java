@@ -0,0 +1,210 @@
+package custom.Pack.Simulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Recording.TrajectoryRecorder;
+
+/**
+ * Runs a ParticleSystem on its own thread at a fixed timestep, independent of the render rate.
+ *
+ * Wall time is added to an accumulator and a step runs for every full step interval in it, so the
+ * simulation advances at the same rate however often frames are drawn. When steps are slower than
+ * real time at most MAX_CATCH_UP_STEPS run back to back and the rest of the backlog is dropped.
+ *
+ * The simulation thread owns the system. Any number of threads change it by posting Commands to a
+ * lock-free queue that the simulation drains before every step, and read it through FrameSnapshots. Snapshots are
+ * triple buffered: the simulation writes one, the renderer reads another, and the third is the
+ * latest published one, swapped atomically, so neither side ever waits for the other.
+ *
+ * A TrajectoryRecorder set on the loop is handed the particles after every step, numbered from 1.
+ */
+public class SimulationLoop {
+    public static final double DEFAULT_STEP_RATE = 60.0;
+    // Steps run back to back at most this many times before the backlog is dropped
+    static final int MAX_CATCH_UP_STEPS = 5;
+    // How often a paused loop checks for commands and step requests
+    private static final long PAUSED_POLL_NANOS = 5_000_000L;
+
+    private ParticleSystem system; // Only touched by the simulation thread once started
+    private final int width;
+    private final int height;
+    private final MpscQueue<Command> commands = new MpscQueue<>();
+
+    private FrameSnapshot back = new FrameSnapshot(); // Written by the simulation thread
+    private final AtomicReference<FrameSnapshot> latest = new AtomicReference<>(new FrameSnapshot());
+    private FrameSnapshot front = new FrameSnapshot(); // Read by the render thread
+    private long sequence;
+    private long stepCount;
+
+    private volatile long stepInterval;
+    private volatile boolean paused;
+    private final AtomicInteger pendingSteps = new AtomicInteger();
+    private volatile boolean running;
+    private Thread thread;
+    private volatile TrajectoryRecorder recorder;
+
+    // Particles leaving [0, width] x [0, height] are culled before every step
+    public SimulationLoop(ParticleSystem system, int width, int height) {
+        this.system = system;
+        this.width = width;
+        this.height = height;
+        setStepRate(DEFAULT_STEP_RATE);
+        back.capturePrevious(system.getParticleStore());
+        back.capture(system);
+        publish(0);
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Stops the simulation thread and waits for it to finish its current step
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    // Queues a change to the system; it runs on the simulation thread before the next step
+    public void post(Command command) {
+        commands.offer(command);
+    }
+
+    // Replaces the simulated system, from a command or before the loop is started
+    public void setSystem(ParticleSystem system) {
+        this.system = system;
+    }
+
+    public ParticleSystem getSystem() {
+        return system;
+    }
+
+    public TrajectoryRecorder getRecorder() {
+        return recorder;
+    }
+
+    // Starts passing steps to a started recorder, or stops with null; the recorder may be closed once it is replaced
+    public void setRecorder(TrajectoryRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public double getStepRate() {
+        return 1e9 / stepInterval;
+    }
+
+    // Simulation steps per second of wall time
+    public void setStepRate(double stepsPerSecond) {
+        if (!(stepsPerSecond > 0)) {
+            throw new IllegalArgumentException("Step rate must be positive: " + stepsPerSecond);
+        }
+        stepInterval = Math.max(1L, (long) (1e9 / stepsPerSecond));
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    // Runs a single step while paused
+    public void requestStep() {
+        pendingSteps.incrementAndGet();
+        LockSupport.unpark(thread);
+    }
+
+    // Most recent published snapshot; call from one render thread only
+    public FrameSnapshot latestSnapshot() {
+        if (latest.get().getSequence() > front.getSequence()) {
+            front = latest.getAndSet(front);
+        }
+        return front;
+    }
+
+    // Applies pending commands and advances one step on the calling thread; for a loop that is not started
+    public void step() {
+        long start = System.nanoTime();
+        runCommands();
+        system.removeParticlesOutOfScreen(width, height);
+        back.capturePrevious(system.getParticleStore());
+        system.step();
+        stepCount++;
+        TrajectoryRecorder recording = recorder;
+        if (recording != null) {
+            recording.record(system.getParticleStore(), stepCount);
+        }
+        back.capture(system);
+        publish(System.nanoTime() - start);
+    }
+
+    private void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        while (running) {
+            long now = System.nanoTime();
+            long interval = stepInterval;
+            accumulator += now - previous;
+            previous = now;
+
+            if (paused) {
+                accumulator = 0;
+                if (pendingSteps.get() > 0) {
+                    pendingSteps.decrementAndGet();
+                    step();
+                } else if (runCommands()) {
+                    // Show edits made while paused
+                    back.capturePrevious(system.getParticleStore());
+                    back.capture(system);
+                    publish(0);
+                }
+                LockSupport.parkNanos(PAUSED_POLL_NANOS);
+                continue;
+            }
+
+            int steps = 0;
+            while (accumulator >= interval && steps < MAX_CATCH_UP_STEPS) {
+                step();
+                accumulator -= interval;
+                steps++;
+            }
+            if (accumulator >= interval) {
+                accumulator = 0; // Too slow to catch up, drop the backlog instead of falling further behind
+            }
+            LockSupport.parkNanos(interval - accumulator);
+        }
+    }
+
+    // Runs queued commands and returns whether there were any
+    private boolean runCommands() {
+        boolean ran = false;
+        Command command;
+        while ((command = commands.poll()) != null) {
+            ran = true;
+            try {
+                command.apply(system);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return ran;
+    }
+
+    private void publish(long stepNanos) {
+        back.publish(++sequence, System.nanoTime(), stepInterval, stepCount, stepNanos);
+        back = latest.getAndSet(back);
+    }
+}
@@ -0,0 +1,177 @@
+package custom.Pack.Simulation;
+
+/**
+ * Runs events at given simulation steps, for behaviour timed in simulated rather than wall time:
+ * pulse emitters switching, scheduled bursts, timed field changes. The owner calls advance() once
+ * per step, so an event fires at the same step whatever rate the steps run at.
+ *
+ * Events sit in a hierarchical timing wheel: LEVELS wheels of 64 slots, where wheel l holds the
+ * events whose due step first differs from the current one in the l-th group of 6 bits, in the slot
+ * given by that group. A step fires one slot of the lowest wheel, and every 64^l steps empties one slot
+ * of wheel l into the wheels below, so a step costs O(1) plus the events it touches however many
+ * are scheduled. Events further ahead than the wheels reach, 2^24 steps, wait in an overflow list
+ * that is sorted back in whenever the top wheel comes round.
+ *
+ * Not thread-safe; use it from the thread that steps the system.
+ */
+public class StepScheduler {
+    public interface Event {
+        void fire(long step);
+    }
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long REACH_MASK = (1L << (LEVELS * SLOT_BITS)) - 1;
+
+    private final ScheduledEvent[][] heads = new ScheduledEvent[LEVELS][SLOTS];
+    private final ScheduledEvent[][] tails = new ScheduledEvent[LEVELS][SLOTS];
+    private ScheduledEvent overflowHead;
+    private ScheduledEvent overflowTail;
+    private long step; // Last step advanced to
+    private int pending;
+
+    // Step the scheduler last advanced to, 0 before the first
+    public long getStep() {
+        return step;
+    }
+
+    // Events scheduled and neither fired nor cancelled
+    public int getPending() {
+        return pending;
+    }
+
+    // Schedules an event for a step; steps already reached are moved to the next one
+    public ScheduledEvent schedule(long dueStep, Event event) {
+        ScheduledEvent scheduled = new ScheduledEvent(this, Math.max(dueStep, step + 1), event);
+        insert(scheduled);
+        pending++;
+        return scheduled;
+    }
+
+    // Schedules an event a number of steps after the current one, at least one
+    public ScheduledEvent scheduleIn(long steps, Event event) {
+        return schedule(step + Math.max(1, Math.min(steps, Long.MAX_VALUE - step)), event);
+    }
+
+    // Advances one step and fires the events due at it, in the order they were filed into its slot
+    public void advance() {
+        long now = ++step;
+        if ((now & REACH_MASK) == 0) {
+            ScheduledEvent list = overflowHead;
+            overflowHead = overflowTail = null;
+            refile(list);
+        }
+        // Higher wheels first, so their events can still land in the lower slots emptied below
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((now & ((1L << (level * SLOT_BITS)) - 1)) == 0) {
+                int slot = slot(now, level);
+                ScheduledEvent list = heads[level][slot];
+                heads[level][slot] = tails[level][slot] = null;
+                refile(list);
+            }
+        }
+        int slot = slot(now, 0);
+        ScheduledEvent event = heads[0][slot];
+        heads[0][slot] = tails[0][slot] = null;
+        while (event != null) {
+            ScheduledEvent next = event.next;
+            event.next = null;
+            if (!event.cancelled) {
+                event.fired = true;
+                pending--;
+                event.event.fire(now);
+            }
+            event = next;
+        }
+    }
+
+    // Cancels every event
+    public void clear() {
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                cancelAll(heads[level][slot]);
+                heads[level][slot] = tails[level][slot] = null;
+            }
+        }
+        cancelAll(overflowHead);
+        overflowHead = overflowTail = null;
+        pending = 0;
+    }
+
+    private static void cancelAll(ScheduledEvent list) {
+        for (; list != null; list = list.next) {
+            list.cancelled = true;
+        }
+    }
+
+    private void refile(ScheduledEvent list) {
+        while (list != null) {
+            ScheduledEvent next = list.next;
+            list.next = null;
+            if (!list.cancelled) {
+                insert(list);
+            }
+            list = next;
+        }
+    }
+
+    // Files an event by the highest bit its due step differs from the current step in
+    private void insert(ScheduledEvent event) {
+        long differing = event.due ^ step;
+        int level = differing == 0 ? 0 : (63 - Long.numberOfLeadingZeros(differing)) / SLOT_BITS;
+        if (level >= LEVELS) {
+            if (overflowTail == null) {
+                overflowHead = event;
+            } else {
+                overflowTail.next = event;
+            }
+            overflowTail = event;
+            return;
+        }
+        int slot = slot(event.due, level);
+        if (tails[level][slot] == null) {
+            heads[level][slot] = event;
+        } else {
+            tails[level][slot].next = event;
+        }
+        tails[level][slot] = event;
+    }
+
+    private static int slot(long step, int level) {
+        return (int) (step >>> (level * SLOT_BITS)) & (SLOTS - 1);
+    }
+
+    // Handle of a scheduled event, for cancelling it
+    public static final class ScheduledEvent {
+        private final StepScheduler scheduler;
+        private final long due;
+        private final Event event;
+        private ScheduledEvent next;
+        private boolean cancelled;
+        private boolean fired;
+
+        private ScheduledEvent(StepScheduler scheduler, long due, Event event) {
+            this.scheduler = scheduler;
+            this.due = due;
+            this.event = event;
+        }
+
+        public long getDueStep() {
+            return due;
+        }
+
+        // Whether the event fired or was cancelled
+        public boolean isDone() {
+            return fired || cancelled;
+        }
+
+        // Keeps the event from firing; it is dropped when its slot is next visited
+        public void cancel() {
+            if (!isDone()) {
+                cancelled = true;
+                scheduler.pending--;
+            }
+        }
+    }
+}
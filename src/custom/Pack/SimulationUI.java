@@ -4,11 +4,21 @@ import custom.Pack.Emitter.*;
 import custom.Pack.FieldPoint.*;
 import custom.Pack.Particle.*;
 import custom.Pack.ParticleSystem;
+import custom.Pack.Recording.ReplayPlayer;
+import custom.Pack.Recording.TrajectoryReader;
+import custom.Pack.Recording.TrajectoryRecorder;
+import custom.Pack.Render.ParticleRasterizer;
+import custom.Pack.Simulation.Commands;
+import custom.Pack.Simulation.FrameSnapshot;
+import custom.Pack.Simulation.SimulationLoop;
 import java.util.Vector;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
@@ -22,9 +32,11 @@ import javafx.scene.input.MouseEvent;
 import javafx.stage.FileChooser; // Correctly import FileChooser
 import javafx.geometry.Insets;
 import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 
 public class SimulationUI extends Application {
@@ -32,8 +44,14 @@ public class SimulationUI extends Application {
     private static final int HEIGHT = 800; // Total screen height
     private static final int CONTROL_BOX_WIDTH = 300; // Width of the control box
 
-    private ParticleSystem particleSystem; // Backend system
+    private SimulationLoop simulation; // Steps the particle system on its own thread
+    private long renderInterval; // Minimum time between rendered frames, 0 to draw on every pulse
+    private long lastRender;
     private Canvas canvas;
+    // Particles are drawn into these pixels and shown as one image per frame
+    private ParticleRasterizer rasterizer;
+    private PixelBuffer<IntBuffer> particlePixels;
+    private WritableImage particleImage;
     private Map<Button, File> presetMap = new HashMap<>();
 
 
@@ -41,15 +59,31 @@ public class SimulationUI extends Application {
     private Slider velocitySlider;
     private Slider spreadSlider;
     private Slider angleSlider;
+    private Slider emissionRateSlider;
     private Slider fieldForceSlider;
+    private Slider maxParticlesSlider;
+    private Slider trailLengthSlider;
+    private Label trailMemoryLabel;
+    // Buttons whose label shows a setting of the simulated system
+    private Button pairInteractionButton;
+    private Button evictionButton;
+    private Button recordButton;
+    // Replay of a recorded run, shown instead of the live simulation while one is open
+    private ReplayPlayer replay;
+    private final FrameSnapshot replaySnapshot = new FrameSnapshot();
+    private Button replayButton;
+    private VBox replayContainer;
+    private Slider scrubSlider;
+    private Slider replaySpeedSlider;
+    private boolean updatingScrubber; // Set while render moves the scrubber, so the move is not taken as a seek
+    private boolean updatingSliders; // Set while sliders are set to a selection's values, so the change is not posted back
+    private int shownMaxParticles; // Cap last shown on the slider, so only changes made elsewhere move it
 
     private Emitter selectedEmitter; // Currently selected emitter
     private FieldPoint selectedFieldPoint; // Currently selected field point
 
     private boolean draggingEmitter = false; // Is an emitter being dragged?
     private boolean draggingField = false;  // Is a field being dragged?
-    private boolean isPaused = false;
-    private boolean isStepMode = false;
     private AnimationTimer timer;
     private VBox sliderContainer;
     private VBox fieldContainer;
@@ -60,11 +94,21 @@ public class SimulationUI extends Application {
 
     @Override
     public void start(Stage stage) {
-        // Initialize particleSystem and other components
-        particleSystem = new ParticleSystem();
+        // Initialize the simulation and other components; -Dparticle.stepRate and -Dparticle.renderRate set the rates
+        simulation = new SimulationLoop(new ParticleSystem(), WIDTH - CONTROL_BOX_WIDTH, HEIGHT);
+        simulation.setStepRate(Double.parseDouble(System.getProperty("particle.stepRate", String.valueOf(SimulationLoop.DEFAULT_STEP_RATE))));
+        double renderRate = Double.parseDouble(System.getProperty("particle.renderRate", "0"));
+        renderInterval = renderRate > 0 ? (long) (1e9 / renderRate) : 0;
 
         BorderPane root = new BorderPane();
         canvas = new Canvas(WIDTH - CONTROL_BOX_WIDTH, HEIGHT);
+        rasterizer = new ParticleRasterizer(WIDTH - CONTROL_BOX_WIDTH, HEIGHT);
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            rasterizer.setPool(ForkJoinPool.commonPool());
+        }
+        particlePixels = new PixelBuffer<>(rasterizer.getWidth(), rasterizer.getHeight(),
+            IntBuffer.wrap(rasterizer.getPixels()), PixelFormat.getIntArgbPreInstance());
+        particleImage = new WritableImage(particlePixels);
         canvas.setOnMousePressed(this::handleMousePressed);
         canvas.setOnMouseDragged(this::handleMouseDragged);
         canvas.setOnMouseReleased(this::handleMouseReleased);
@@ -74,23 +118,18 @@ public class SimulationUI extends Application {
         controlBox.setPrefWidth(CONTROL_BOX_WIDTH);
         root.setRight(controlBox);
 
-        // Initialize animation timer as before...
+        // Draw the latest simulation state on every pulse, physics runs on the simulation thread
         timer = new AnimationTimer() {
             @Override
             public void handle(long now) {
-                if (!isPaused || isStepMode) {
-                    update();
+                if (now - lastRender >= renderInterval) {
                     render();
-                    isStepMode = false;
-                }
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    lastRender = now;
                 }
             }
         };
         timer.start();
+        simulation.start();
 
         Scene scene = new Scene(root, WIDTH, HEIGHT);
         stage.setScene(scene);
@@ -98,6 +137,62 @@ public class SimulationUI extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        simulation.stop();
+        stopRecording();
+        closeReplay();
+    }
+
+    private void openReplay(File file) {
+        closeReplay();
+        try {
+            replay = new ReplayPlayer(new TrajectoryReader(file.toPath()));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not open the recording " + file + ": " + e.getMessage());
+            return;
+        }
+        replay.start();
+        updatingScrubber = true;
+        scrubSlider.setMax(Math.max(1, replay.getFrameCount() - 1));
+        scrubSlider.setValue(0);
+        updatingScrubber = false;
+        replay.setSpeed(replaySpeedSlider.getValue() == 0 ? 1 : replaySpeedSlider.getValue());
+        replayContainer.setVisible(true);
+        replayButton.setText("Close Recording");
+    }
+
+    private void closeReplay() {
+        if (replay == null) {
+            return;
+        }
+        try {
+            replay.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the recording: " + e.getMessage());
+        }
+        replay = null;
+        if (replayContainer != null) {
+            replayContainer.setVisible(false);
+            replayButton.setText("Open Recording");
+        }
+    }
+
+    // Detaches the recorder from the loop, then writes out what it still buffers
+    private void stopRecording() {
+        TrajectoryRecorder recorder = simulation.getRecorder();
+        if (recorder == null) {
+            return;
+        }
+        simulation.setRecorder(null);
+        try {
+            recorder.close();
+            System.out.print(recorder.toText());
+        } catch (IOException e) {
+            System.err.println("Could not write the recording to " + recorder.getPath() + ": " + e.getMessage());
+        }
+    }
+
     
 private VBox createControls() {
     System.out.println("createControls");
@@ -112,8 +207,12 @@ private VBox createControls() {
     Button addFieldBButton = new Button("Add Repulsor");
     Button resetButton = new Button("Reset");
     Button toggleGravityButton = new Button("Toggle Gravity");
+    pairInteractionButton = new Button("Particle Forces: NONE");
+    evictionButton = new Button("Eviction: " + simulation.getSystem().getEvictionPolicy());
     Button pauseButton = new Button("Pause/Resume");
     Button stepButton = new Button("Step");
+    recordButton = new Button("Record");
+    replayButton = new Button("Open Recording");
     Button savePreset = new Button("Save Preset");
     Button loadPreset = new Button("Load Preset");
     Button deleteEmitter = new Button("Delete Emitter");
@@ -125,7 +224,66 @@ private VBox createControls() {
         velocitySlider = createSlider(1, 10, 3, "Particle Velocity");
         spreadSlider = createSlider(0, 2 * 3.16, 1, "Emitter Spread Angle");
         angleSlider = createSlider(0, 2 * 3.16, 0, "Emission Angle");
+        emissionRateSlider = createSlider(0, 2400, Emitter.DEFAULT_EMISSION_RATE, "Particles emitted per simulated second");
+        emissionRateSlider.setMajorTickUnit(600);
         fieldForceSlider = createSlider(5, 15, 10, "Field Force");
+        shownMaxParticles = simulation.getSystem().getMaxParticles();
+        maxParticlesSlider = createSlider(0, 200000, 0, "Max Particles, 0 for no limit");
+        maxParticlesSlider.setMajorTickUnit(50000);
+        showValue(maxParticlesSlider, shownMaxParticles);
+        maxParticlesSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (!updatingSliders) {
+                simulation.post(Commands.setMaxParticles(newValue.intValue()));
+            }
+        });
+
+        trailLengthSlider = createSlider(0, 64, simulation.getSystem().getTrailLength(), "Positions kept per particle trail, 0 for none");
+        trailLengthSlider.setMajorTickUnit(16);
+        // Resizing the trails drops their history, so a drag only applies the length it ends on
+        trailLengthSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (!trailLengthSlider.isValueChanging()) {
+                simulation.post(Commands.setTrailLength(newValue.intValue()));
+            }
+        });
+        trailLengthSlider.valueChangingProperty().addListener((observable, wasChanging, changing) -> {
+            if (!changing) {
+                simulation.post(Commands.setTrailLength((int) trailLengthSlider.getValue()));
+            }
+        });
+        trailMemoryLabel = new Label("Trail memory: 0 KB");
+        trailMemoryLabel.setTextFill(Color.WHITE);
+
+        // Slider edits go to the selected emitter or field point on the simulation thread
+        velocitySlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            Emitter emitter = selectedEmitter;
+            if (emitter != null && !updatingSliders) {
+                simulation.post(Commands.setEmitterSpeed(emitter, newValue.floatValue()));
+            }
+        });
+        spreadSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            Emitter emitter = selectedEmitter;
+            if (emitter != null && !updatingSliders) {
+                simulation.post(Commands.setEmitterSpread(emitter, newValue.floatValue()));
+            }
+        });
+        angleSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            Emitter emitter = selectedEmitter;
+            if (emitter != null && !updatingSliders) {
+                simulation.post(Commands.setEmitterAngle(emitter, newValue.floatValue()));
+            }
+        });
+        emissionRateSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            Emitter emitter = selectedEmitter;
+            if (emitter != null && !updatingSliders) {
+                simulation.post(Commands.setEmissionRate(emitter, newValue.floatValue()));
+            }
+        });
+        fieldForceSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            FieldPoint fieldPoint = selectedFieldPoint;
+            if (fieldPoint != null && !updatingSliders) {
+                simulation.post(Commands.setFieldStrength(fieldPoint, newValue.floatValue()));
+            }
+        });
 
         // Slider container that will be added when emitter is selected and not being dragged
         sliderContainer = new VBox(10);
@@ -134,6 +292,7 @@ private VBox createControls() {
                 labeledSlider("Velocity:", velocitySlider),
                 labeledSlider("Spread Angle:", spreadSlider),
                 labeledSlider("Emission Angle:", angleSlider),
+                labeledSlider("Emission Rate:", emissionRateSlider),
                 deleteEmitter
         );
         sliderContainer.setVisible(false); // Hide initially
@@ -146,6 +305,30 @@ private VBox createControls() {
         );
         fieldContainer.setVisible(false); // Hide initially
 
+        // Scrubbing and speed of an open recording; the speed is a multiple of 60 recorded steps per second
+        scrubSlider = createSlider(0, 1, 0, "Recorded frame");
+        scrubSlider.setShowTickLabels(false);
+        scrubSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (replay != null && !updatingScrubber) {
+                replay.seek(newValue.intValue());
+            }
+        });
+        replaySpeedSlider = createSlider(-4, 4, 1, "Playback speed, negative plays backwards");
+        replaySpeedSlider.setMajorTickUnit(2);
+        replaySpeedSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            // 0 would stop playback; pausing is what the Pause/Resume button is for
+            if (replay != null && newValue.doubleValue() != 0) {
+                replay.setSpeed(newValue.doubleValue());
+            }
+        });
+        replayContainer = new VBox(10);
+        replayContainer.setStyle("-fx-background-color: #555555; -fx-padding: 10; -fx-border-color: white; -fx-border-width: 1;");
+        replayContainer.getChildren().addAll(
+                labeledSlider("Frame:", scrubSlider),
+                labeledSlider("Speed:", replaySpeedSlider)
+        );
+        replayContainer.setVisible(false); // Shown while a recording is open
+
     // HBox to hold preset buttons
     presetButtonBox = new HBox(5); // Set spacing between buttons
     presetButtonBox.setPadding(new Insets(0, 0, 0, 0)); // Padding at the top
@@ -154,55 +337,114 @@ private VBox createControls() {
     
         addEmitterButton.setOnAction(e -> {
             // Add an emitter at a random position
-            particleSystem.addEmitter(randomPosition(), 3.0f, 1.0f, 0.0f, 1.0f);
+            Vector<Float> position = randomPosition();
+            simulation.post(Commands.addEmitter(position.get(0), position.get(1), 3.0f, 1.0f, 0.0f, 1.0f));
         });
 
         addOscillatingEmitterButton.setOnAction(e -> {
             // Add an emitter at a random position
-            particleSystem.addOscillatingEmitter(randomPosition(), 3.0f, 1.0f, 0.0f, 1.0f, 50f, 0.01f);
+            Vector<Float> position = randomPosition();
+            simulation.post(Commands.addOscillatingEmitter(position.get(0), position.get(1), 3.0f, 1.0f, 0.0f, 1.0f, 50f, 0.01f));
         });
 
         addPulseEmitterButton.setOnAction(e -> {
             // Add an emitter at a random position
-            particleSystem.addPulseEmitter(randomPosition(), 3.0f, 1.0f, 0.0f, 1.0f, 0.002f);
+            Vector<Float> position = randomPosition();
+            simulation.post(Commands.addPulseEmitter(position.get(0), position.get(1), 3.0f, 1.0f, 0.0f, 1.0f, 0.002f));
         });        
         addFieldAButton.setOnAction(e -> {
             // Add a field point at a random position
-            particleSystem.addFieldPoint(randomPosition(), 10.0f, "A");
+            Vector<Float> position = randomPosition();
+            simulation.post(Commands.addFieldPoint(position.get(0), position.get(1), 10.0f, "A"));
         });
 
         addFieldBButton.setOnAction(e -> {
             // Add a field point at a random position
-            particleSystem.addFieldPoint(randomPosition(), 10.0f, "B");
+            Vector<Float> position = randomPosition();
+            simulation.post(Commands.addFieldPoint(position.get(0), position.get(1), 10.0f, "B"));
         });
     
         resetButton.setOnAction(e -> {
             // Clear all particles, emitters, and fields
-            particleSystem.getParticles().clear();
+            simulation.post(Commands.clearParticles());
         });
         clear.setOnAction(e -> {
             // Clear all particles, emitters, and fields
-            particleSystem.getParticles().clear();
-            particleSystem.getEmitters().clear();
-            particleSystem.getFieldPoints().clear();
+            simulation.post(Commands.clearAll());
         });
     
         toggleGravityButton.setOnAction(e -> {
             // Toggle gravity for the particle system
-            particleSystem.setGravityEnabled(particleSystem.isGravityEnabled() ^ 1);
+            simulation.post(Commands.toggleGravity());
         });
     
+        pairInteractionButton.setOnAction(e -> {
+            // Cycle through no, gravitational and electrostatic particle-particle forces
+            simulation.post(Commands.cyclePairInteraction());
+        });
+
+        evictionButton.setOnAction(e -> {
+            // Cycle through what happens to new particles once the cap is reached
+            simulation.post(Commands.cycleEvictionPolicy());
+        });
+
+        // Pause and Step drive the open recording instead of the simulation
         pauseButton.setOnAction(e -> {
-            isPaused = !isPaused;
+            if (replay != null) {
+                replay.setPaused(!replay.isPaused());
+            } else {
+                simulation.setPaused(!simulation.isPaused());
+            }
         });
     
         stepButton.setOnAction(e -> {
-            if (isPaused) {
-                isStepMode = true;
+            if (replay != null) {
+                if (replay.isPaused()) {
+                    replay.step(replay.getSpeed() > 0 ? 1 : -1);
+                }
+            } else if (simulation.isPaused()) {
+                simulation.requestStep();
+            }
+        });
+
+        replayButton.setOnAction(e -> {
+            if (replay != null) {
+                closeReplay();
+                return;
+            }
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Open Recording");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Trajectories", "*.traj"));
+            File file = fileChooser.showOpenDialog(canvas.getScene().getWindow());
+            if (file != null) {
+                openReplay(file);
             }
         });
 
 
+        recordButton.setOnAction(e -> {
+            if (simulation.getRecorder() != null) {
+                stopRecording();
+                recordButton.setText("Record");
+                return;
+            }
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Record Trajectory");
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Trajectories", "*.traj"));
+            File file = fileChooser.showSaveDialog(canvas.getScene().getWindow());
+            if (file != null) {
+                TrajectoryRecorder recorder = new TrajectoryRecorder(file.toPath(), WIDTH - CONTROL_BOX_WIDTH, HEIGHT);
+                try {
+                    recorder.start();
+                } catch (IOException ex) {
+                    System.err.println("Could not record to " + file + ": " + ex.getMessage());
+                    return;
+                }
+                simulation.setRecorder(recorder);
+                recordButton.setText("Stop Recording");
+            }
+        });
+
         showVelocity.setOnAction(e -> {
             // Logic to toggle velocity-based coloring
             showVelocityColors = !showVelocityColors;
@@ -217,42 +459,39 @@ private VBox createControls() {
             FileChooser fileChooser = new FileChooser();
             fileChooser.setTitle("Save Preset");
             fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Preset Files", "*.txt"));
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Snapshots, with particles", "*.snap"));
 
             // Show save dialog
             File file = fileChooser.showSaveDialog(canvas.getScene().getWindow());
             if (file != null) {
-                SystemPreset preset = new SystemPreset(particleSystem);
-                preset.savePreset(file.getAbsolutePath()); // Save to the chosen file
+                // Save to the chosen file between two steps
+                if (file.getName().endsWith(".snap")) {
+                    simulation.post(Commands.saveSnapshot(file.getAbsolutePath()));
+                } else {
+                    simulation.post(Commands.savePreset(file.getAbsolutePath()));
+                }
             }
         });
 
         loadPreset.setOnAction(e -> {
             FileChooser fileChooser = new FileChooser();
             fileChooser.setTitle("Load Preset");
-            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Preset Files", "*.txt"));
+            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Presets and Snapshots", "*.txt", "*.snap"));
             File file = fileChooser.showOpenDialog(canvas.getScene().getWindow());
         
             if (file != null) {
                 // Create a new ParticleSystem and load the preset file
-                particleSystem = new ParticleSystem();
-                SystemPreset preset = new SystemPreset(particleSystem);
-                preset.loadPreset(file.getAbsolutePath());
+                loadPreset(file);
         
                 // Create a new button for this specific preset
                 Button presetButton = new Button(file.getName());
                 presetMap.put(presetButton, file); // Store the button-preset association in the map
                 // Set an action for the preset button using the HashMap
                 presetButton.setOnAction(event -> {
-                    // Clear the current particle system
-                    particleSystem = new ParticleSystem();
-                    
-                    // Retrieve and load the preset associated with this button
-                    SystemPreset preset2=new SystemPreset(particleSystem);
+                    // Retrieve and load the preset associated with this button into a new particle system
                     File currentFile = presetMap.get(presetButton); // Retrieve the preset from the map
                     if (currentFile!=null) {
-                        // Load the preset into the new particle system
-                        preset2.loadPreset(currentFile.getAbsolutePath());
-
+                        loadPreset(currentFile);
                     }
                 });
                 // Add button to presetButtonBox
@@ -264,7 +503,7 @@ private VBox createControls() {
         deleteEmitter.setOnAction(e -> {
             if(selectedEmitter != null)
             {
-                particleSystem.getEmitters().remove(selectedEmitter);
+                simulation.post(Commands.removeEmitter(selectedEmitter));
                 selectedEmitter = null;
                 sliderContainer.setVisible(false);
             }
@@ -273,7 +512,7 @@ private VBox createControls() {
         deleteField.setOnAction(e -> {
             if(selectedFieldPoint != null)
             {
-                particleSystem.getFieldPoints().remove(selectedFieldPoint);
+                simulation.post(Commands.removeFieldPoint(selectedFieldPoint));
                 selectedFieldPoint = null;
                 fieldContainer.setVisible(false);
             }
@@ -283,8 +522,11 @@ private VBox createControls() {
         controls.getChildren().addAll(
             new Label("Controls:"),
             addEmitterButton, addOscillatingEmitterButton, addPulseEmitterButton, addFieldAButton, addFieldBButton, resetButton,
-            toggleGravityButton, pauseButton, stepButton, savePreset, loadPreset, clear
+            toggleGravityButton, pairInteractionButton, evictionButton, labeledSlider("Max Particles:", maxParticlesSlider),
+            labeledSlider("Trail Length:", trailLengthSlider), trailMemoryLabel,
+            pauseButton, stepButton, recordButton, replayButton, savePreset, loadPreset, clear
         );
+        controls.getChildren().add(replayContainer);
         controls.getChildren().add(sliderContainer);
         controls.getChildren().add(fieldContainer);
     
@@ -294,6 +536,11 @@ private VBox createControls() {
     return controls;
     }
 
+    // Replaces the simulated system with a new one loaded from a preset file
+    private void loadPreset(File file) {
+        simulation.post(Commands.loadPreset(simulation, file.getAbsolutePath()));
+    }
+
     private HBox labeledSlider(String labelText, Slider slider) {
         Label label = new Label(labelText);
         label.setTextFill(Color.WHITE);
@@ -310,6 +557,17 @@ private VBox createControls() {
         return slider;
     }
 
+    // Sets a slider without clamping, widening its range when the value lies outside it
+    private void showValue(Slider slider, double value) {
+        if (value > slider.getMax()) {
+            slider.setMax(value);
+        }
+        if (value < slider.getMin()) {
+            slider.setMin(value);
+        }
+        slider.setValue(value);
+    }
+
     private Vector<Float> randomPosition() {
         Vector<Float> position = new Vector<>();
         position.add((float) (Math.random() * (WIDTH - CONTROL_BOX_WIDTH)));  // X-coordinate
@@ -323,29 +581,34 @@ private VBox createControls() {
     
         if (x > WIDTH - CONTROL_BOX_WIDTH) return; // Ignore clicks in the control box
     
-        // Check for emitters near the click
-        for (Emitter emitter : particleSystem.getEmitters()) {
-            Vector<Float> position = emitter.getPosition();
-            if (isNear(x, y, position)) {
+        // Check for emitters near the click, at the positions last drawn
+        FrameSnapshot snapshot = simulation.latestSnapshot();
+        for (int i = 0; i < snapshot.getEmitterCount(); i++) {
+            Emitter emitter = snapshot.getEmitter(i);
+            if (isNear(x, y, snapshot.getEmitterX(i), snapshot.getEmitterY(i))) {
                 selectedEmitter = emitter;
                 draggingEmitter = true;
-                // Update control panel to show sliders
-                //set slider values
-                velocitySlider.setValue(emitter.getSpeed());
-                spreadSlider.setValue(emitter.getSpread());
-                angleSlider.setValue(emitter.getAngle());
+                // Update control panel to show sliders, set to the values the snapshot was taken with
+                updatingSliders = true;
+                showValue(velocitySlider, snapshot.getEmitterSpeed(i));
+                showValue(spreadSlider, snapshot.getEmitterSpread(i));
+                showValue(angleSlider, snapshot.getEmitterAngle(i));
+                showValue(emissionRateSlider, snapshot.getEmitterEmissionRate(i));
+                updatingSliders = false;
                 updateControlBox();
                 return;
             }
         }
     
         // Check for field points near the click
-        for (FieldPoint fieldPoint : particleSystem.getFieldPoints()) {
-            Vector<Float> position = fieldPoint.getPosition();
-            if (isNear(x, y, position)) {
+        for (int i = 0; i < snapshot.getFieldPointCount(); i++) {
+            FieldPoint fieldPoint = snapshot.getFieldPoint(i);
+            if (isNear(x, y, snapshot.getFieldPointX(i), snapshot.getFieldPointY(i))) {
                 selectedFieldPoint = fieldPoint;
                 draggingField = true;
-                fieldForceSlider.setValue(fieldPoint.getFieldStrength());
+                updatingSliders = true;
+                showValue(fieldForceSlider, snapshot.getFieldStrength(i));
+                updatingSliders = false;
                 updateControlBox();
                 return;
             }
@@ -360,16 +623,14 @@ private VBox createControls() {
         if (draggingEmitter && selectedEmitter != null) {
             x = Math.max(0, Math.min(x, WIDTH - CONTROL_BOX_WIDTH)); // X bound check
             y = Math.max(0, Math.min(y, HEIGHT)); // Y bound check
-            selectedEmitter.getPosition().set(0, x);
-            selectedEmitter.getPosition().set(1, y);
+            simulation.post(Commands.moveEmitter(selectedEmitter, x, y));
         }
     
         // Ensure field stays within bounds
         if (draggingField && selectedFieldPoint != null) {
             x = Math.max(0, Math.min(x, WIDTH - CONTROL_BOX_WIDTH)); // X bound check
             y = Math.max(0, Math.min(y, HEIGHT)); // Y bound check
-            selectedFieldPoint.getPosition().set(0, x);
-            selectedFieldPoint.getPosition().set(1, y);
+            simulation.post(Commands.moveFieldPoint(selectedFieldPoint, x, y)); // Also re-sorts the field grid
         }
     }
 
@@ -402,114 +663,88 @@ private VBox createControls() {
     
     
 
-    private boolean isNear(float x, float y, Vector<Float> position) {
-        float dx = x - position.get(0);
-        float dy = y - position.get(1);
+    private boolean isNear(float x, float y, float positionX, float positionY) {
+        float dx = x - positionX;
+        float dy = y - positionY;
         return (dx * dx + dy * dy) <= 100; // Within 10px radius
     }
 
-    private void update() {
-        // Update particle positions in the backend
-        particleSystem.removeParticlesOutOfScreen(WIDTH-CONTROL_BOX_WIDTH, HEIGHT);
-        float angle = (float) angleSlider.getValue();
-        float spread = (float) spreadSlider.getValue();
-        float speed = (float) velocitySlider.getValue();
-        if (selectedEmitter != null) {
-            selectedEmitter.setAngle(angle);
-            selectedEmitter.setSpread(spread);
-            selectedEmitter.setSpeed(speed);
-        }
-        float forceField = (float) fieldForceSlider.getValue();
-        if (selectedFieldPoint != null) {
-            selectedFieldPoint.setFieldStrength(forceField);
-        }
-        particleSystem.setForces();
-        particleSystem.updateAll();
-
-    }
-    
-    
-    private Color interpolateColor(Color startColor, Color endColor, double factor) {
-        double red = startColor.getRed() + factor * (endColor.getRed() - startColor.getRed());
-        double green = startColor.getGreen() + factor * (endColor.getGreen() - startColor.getGreen());
-        double blue = startColor.getBlue() + factor * (endColor.getBlue() - startColor.getBlue());
-        return new Color(red, green, blue, 1.0); // Full opacity
-    }
-    
     private void render() {
         GraphicsContext gc = canvas.getGraphicsContext2D();
-        gc.setFill(Color.BLACK); // Black background-03
-        gc.fillRect(0, 0, WIDTH - CONTROL_BOX_WIDTH, HEIGHT);
-    
-        // Draw particles
-        List<Particle> particles = particleSystem.getParticles();
     
-        for (Particle particle : particles) {
-            // Default color for particles
-            Color particleColor = Color.GREY; 
-    
-            if (showVelocityColors) {
-                double velocity = Math.sqrt(
-                    Math.pow(particle.getVelocity().get(0), 2) +
-                    Math.pow(particle.getVelocity().get(1), 2)
-                );
-                double maxVelocity = 20.0; // Adjust based on simulation's max velocity
-    
-                // Interpolation factor (between 0 and 1)
-                double factor = Math.min(velocity / maxVelocity, 1.0);
-    
-                // Define the color based on the velocity
-                particleColor = interpolateColor(
-                    Color.rgb(173, 216, 230), // Light Blue
-                    Color.rgb(0, 0, 139),    // Dark Blue
-                    factor
-                );
+        // Rasterize the particles from the latest snapshot, between the last two steps, and show them as one image
+        FrameSnapshot snapshot = replay != null ? replaySnapshot : simulation.latestSnapshot();
+        if (replay != null) {
+            try {
+                replay.update(replaySnapshot, System.nanoTime());
+                updatingScrubber = true;
+                scrubSlider.setValue(replay.getFrame());
+                updatingScrubber = false;
+            } catch (IOException e) {
+                System.err.println("Could not read the recording: " + e.getMessage());
+                closeReplay();
             }
-    
-            gc.setFill(particleColor);
-            gc.fillOval(
-                particle.getPosition().get(0),
-                particle.getPosition().get(1),
-                3, 3
-            );
         }
+        float alpha = snapshot.interpolation(System.nanoTime());
+        particlePixels.updateBuffer(pixels -> {
+            rasterizer.draw(snapshot, alpha, 3, showVelocityColors);
+            return null; // The whole image changed
+        });
+        gc.drawImage(particleImage, 0, 0);
     
         // Draw emitters
         gc.setFill(Color.GREEN);
-        for (Emitter emitter : particleSystem.getEmitters()) {
-            Vector<Float> position = emitter.getPosition();
-            if (selectedEmitter != null && selectedEmitter.equals(emitter)) {
-                gc.fillOval(position.get(0), position.get(1), 10, 10);
+        for (int i = 0; i < snapshot.getEmitterCount(); i++) {
+            float x = snapshot.getEmitterX(i);
+            float y = snapshot.getEmitterY(i);
+            if (selectedEmitter != null && selectedEmitter.equals(snapshot.getEmitter(i))) {
+                gc.fillOval(x, y, 10, 10);
                 gc.setStroke(Color.YELLOW); // Highlight selected emitter
                 gc.setLineWidth(2);
-                gc.strokeOval(position.get(0) - 2, position.get(1) - 2, 14, 14);
+                gc.strokeOval(x - 2, y - 2, 14, 14);
             } else {
-                gc.fillOval(position.get(0), position.get(1), 10, 10);
+                gc.fillOval(x, y, 10, 10);
             }
         }
     
         // Draw field points
-        for (FieldPoint fieldPoint : particleSystem.getFieldPoints()) {
-            Vector<Float> position = fieldPoint.getPosition();
-            Color fieldColor = Color.GRAY; // Default color
-    
-            // Assign color based on field point type
-            if ("A".equals(fieldPoint.getType())) {
-                fieldColor = Color.CYAN; // Type A is Blue
-            } else if ("B".equals(fieldPoint.getType())) {
-                fieldColor = Color.RED; // Type B is Red
-            }
+        for (int i = 0; i < snapshot.getFieldPointCount(); i++) {
+            float x = snapshot.getFieldPointX(i);
+            float y = snapshot.getFieldPointY(i);
+            // Type A is Blue, type B is Red
+            Color fieldColor = snapshot.isAttractor(i) ? Color.CYAN : Color.RED;
     
             gc.setFill(fieldColor);
-            if (selectedFieldPoint != null && selectedFieldPoint.equals(fieldPoint)) {
-                gc.fillOval(position.get(0), position.get(1), 10, 10);
+            if (selectedFieldPoint != null && selectedFieldPoint.equals(snapshot.getFieldPoint(i))) {
+                gc.fillOval(x, y, 10, 10);
                 gc.setStroke(Color.YELLOW); // Highlight selected field point
                 gc.setLineWidth(2);
-                gc.strokeOval(position.get(0) - 2, position.get(1) - 2, 14, 14);
+                gc.strokeOval(x - 2, y - 2, 14, 14);
             } else {
-                gc.fillOval(position.get(0), position.get(1), 10, 10);
+                gc.fillOval(x, y, 10, 10);
             }
         }
+
+        // Settings changed through commands or a loaded preset
+        String pairLabel = "Particle Forces: " + snapshot.getPairInteraction();
+        if (!pairLabel.equals(pairInteractionButton.getText())) {
+            pairInteractionButton.setText(pairLabel);
+        }
+        String memoryLabel = "Trail memory: " + (snapshot.getTrailMemoryBytes() >> 10) + " KB";
+        if (!memoryLabel.equals(trailMemoryLabel.getText())) {
+            trailMemoryLabel.setText(memoryLabel);
+        }
+        String evictionLabel = "Eviction: " + snapshot.getEvictionPolicy();
+        if (!evictionLabel.equals(evictionButton.getText())) {
+            evictionButton.setText(evictionLabel);
+        }
+        // Recordings hold no settings, so a replay leaves the cap as it was
+        if (replay == null && snapshot.getMaxParticles() != shownMaxParticles && !maxParticlesSlider.isValueChanging()) {
+            shownMaxParticles = snapshot.getMaxParticles();
+            updatingSliders = true;
+            showValue(maxParticlesSlider, shownMaxParticles);
+            updatingSliders = false;
+        }
     }
     
 
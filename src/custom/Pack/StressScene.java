@@ -0,0 +1,78 @@
+package custom.Pack;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import custom.Pack.Particle.EvictionPolicy;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.PhysicsBackend;
+
+/**
+ * Procedural scenes for load testing: a number of emitters, a number of field points and a particle
+ * count the system starts with. The particle count is the starting population and the cap, not a level
+ * the scene holds: particles leave the screen faster than the emitters replace them, so the count falls
+ * from there and the reports' mean_particles gives the load a run actually had. Scenes are seeded, so a
+ * name always builds the same scene, and are named like "stress-16x64x50000" for emitters x fields x
+ * particles.
+ */
+public final class StressScene
+{
+    private static final Pattern NAME = Pattern.compile("stress-(\\d+)x(\\d+)x(\\d+)");
+    private static final long SEED = 1L;
+
+    private StressScene()
+    {
+    }
+
+    public static boolean isStressScene(String name)
+    {
+        return NAME.matcher(name).matches();
+    }
+
+    public static String name(int emitters, int fields, int particles)
+    {
+        return "stress-" + emitters + "x" + fields + "x" + particles;
+    }
+
+    //Builds the scene a name like "stress-16x64x50000" stands for
+    public static ParticleSystem build(String name, PhysicsBackend backend, int width, int height)
+    {
+        Matcher matcher = NAME.matcher(name);
+        if(!matcher.matches())
+            throw new IllegalArgumentException("Not a stress scene name: " + name);
+        return build(backend, Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+            Integer.parseInt(matcher.group(3)), width, height);
+    }
+
+    public static ParticleSystem build(PhysicsBackend backend, int emitters, int fields, int particles, int width, int height)
+    {
+        Random random = new Random(SEED);
+        ParticleSystem system = new ParticleSystem(backend);
+        system.setSeed(SEED);
+        // Emitters sit in the middle half of the world, aimed anywhere
+        for(int i = 0; i < emitters; i++)
+        {
+            Vector<Float> position = new Vector<>(Arrays.asList(width * (0.25f + 0.5f * random.nextFloat()), height * (0.25f + 0.5f * random.nextFloat())));
+            system.addEmitter(position, 3f + 3f * random.nextFloat(), 1f, (float) (2 * Math.PI * random.nextFloat()), 1f);
+        }
+        for(int i = 0; i < fields; i++)
+        {
+            Vector<Float> position = new Vector<>(Arrays.asList(width * random.nextFloat(), height * random.nextFloat()));
+            system.addFieldPoint(position, 5f, i % 2 == 0 ? "A" : "B");
+        }
+
+        ParticleStore store = system.getParticleStore();
+        store.ensureCapacity(particles);
+        for(int i = 0; i < particles; i++)
+        {
+            store.add(1f, 1f, random.nextFloat() * 4f - 2f, random.nextFloat() * 4f - 2f,
+                width * random.nextFloat(), height * random.nextFloat(), 0f, 0f, 5f, 0, "red", true);
+        }
+        system.setMaxParticles(particles);
+        system.setEvictionPolicy(EvictionPolicy.OLDEST_FIRST);
+        return system;
+    }
+}
@@ -5,12 +5,15 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Vector;
 
 import custom.Pack.FieldPoint.FieldPoint;
+import custom.Pack.Particle.EvictionPolicy;
 import custom.Pack.Particle.Particle;
 import custom.Pack.Emitter.Emitter;
 import custom.Pack.Emitter.OscillatingEmitter;
+import custom.Pack.Physics.PairInteraction;
 
 public class SystemPreset {
 
@@ -39,6 +42,14 @@ public class SystemPreset {
             writer.write("GravityEnabled=" + particleSystem.isGravityEnabled() + "\n");
             writer.write("Friction=" + particleSystem.getFriction() + "\n");
             writer.write("MaxParticles=" + particleSystem.getMaxParticles() + "\n");
+            writer.write("EvictionPolicy=" + particleSystem.getEvictionPolicy() + "\n");
+            writer.write("FieldCutoff=" + particleSystem.getFieldCutoff() + "\n");
+            writer.write("FarField=" + particleSystem.isFarFieldEnabled() + "\n");
+            writer.write("PairInteraction=" + particleSystem.getPairInteraction() + "\n");
+            writer.write("OpeningAngle=" + particleSystem.getOpeningAngle() + "\n");
+            writer.write("ParticleLifespan=" + particleSystem.getParticleLifespan() + "\n");
+            writer.write("MinSpeed=" + particleSystem.getMinSpeed() + "\n");
+            writer.write("TrailLength=" + particleSystem.getTrailLength() + "\n");
 
             System.out.println("Preset saved to " + filename);
         } catch (IOException e) {
@@ -46,10 +57,32 @@ public class SystemPreset {
         }
     }
 
+    // Writes the full state, particles included, in the binary snapshot format
+    public void saveSnapshot(String filename) {
+        try {
+            BinarySnapshot.save(particleSystem, Path.of(filename));
+            System.out.println("Snapshot saved to " + filename);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Reads a text preset or a binary snapshot, told apart by the snapshot header
     public void loadPreset(String filename) {
+        try {
+            if (BinarySnapshot.isSnapshot(Path.of(filename))) {
+                BinarySnapshot.load(particleSystem, Path.of(filename));
+                System.out.println("Snapshot loaded from " + filename);
+                return;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
         try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
     String line;
     String section = null; // Current section being parsed (Particles, FieldPoints, Emitters, Settings)
+    int dropped = 0; // Particles refused by the particle cap
 
     while ((line = reader.readLine()) != null) {
             // Check if the line indicates a new section
@@ -67,7 +100,11 @@ public class SystemPreset {
                     case "Particles":
                         Particle particle = Particle.parse(line);
                         if (particle != null) {
-                            particleSystem.getParticles().add(particle); // Add the parsed particle to the system
+                            try {
+                                particleSystem.getParticles().add(particle); // Add the parsed particle to the system
+                            } catch (IllegalStateException e) {
+                                dropped++; // Full under REJECT_NEW
+                            }
                         }
                         break;
                     case "FieldPoints":
@@ -77,7 +114,7 @@ public class SystemPreset {
                         }
                         break;
                     case "Emitters":
-                        Emitter emitter = OscillatingEmitter.parse(line, particleSystem); // Adjust for other emitter types if needed
+                        Emitter emitter = line.startsWith("OscillatingEmitter{") ? OscillatingEmitter.parse(line, particleSystem) : Emitter.parse(line, particleSystem);
                         if (emitter != null) {
                             particleSystem.getEmitters().add(emitter); // Add the parsed emitter to the system
                         }
@@ -89,11 +126,30 @@ public class SystemPreset {
                             particleSystem.setFriction(Double.parseDouble(line.split("=")[1])); // Set friction coefficient
                         } else if (line.startsWith("MaxParticles=")) {
                             particleSystem.setMaxParticles(Integer.parseInt(line.split("=")[1])); // Set maximum number of particles
+                        } else if (line.startsWith("EvictionPolicy=")) {
+                            particleSystem.setEvictionPolicy(EvictionPolicy.valueOf(line.split("=")[1])); // Set what happens to spawns past the cap
+                        } else if (line.startsWith("FieldCutoff=")) {
+                            particleSystem.setFieldCutoff(Float.parseFloat(line.split("=")[1])); // Set default field point cutoff
+                        } else if (line.startsWith("FarField=")) {
+                            particleSystem.setFarFieldEnabled(Boolean.parseBoolean(line.split("=")[1])); // Set far-field approximation
+                        } else if (line.startsWith("PairInteraction=")) {
+                            particleSystem.setPairInteraction(PairInteraction.valueOf(line.split("=")[1].trim())); // Set particle-particle forces
+                        } else if (line.startsWith("OpeningAngle=")) {
+                            particleSystem.setOpeningAngle(Float.parseFloat(line.split("=")[1])); // Set Barnes-Hut opening angle
+                        } else if (line.startsWith("ParticleLifespan=")) {
+                            particleSystem.setParticleLifespan(Integer.parseInt(line.split("=")[1])); // Set lifespan of emitted particles
+                        } else if (line.startsWith("MinSpeed=")) {
+                            particleSystem.setMinSpeed(Float.parseFloat(line.split("=")[1])); // Set speed floor for culling
+                        } else if (line.startsWith("TrailLength=")) {
+                            particleSystem.setTrailLength(Integer.parseInt(line.split("=")[1])); // Set positions kept per trail
                         }
                         break;
                 }
             }
         }
+        if (dropped > 0) {
+            System.out.println(dropped + " particles past the cap of " + particleSystem.getMaxParticles() + " were dropped");
+        }
         System.out.println("Preset loaded from " + filename);
     } catch (IOException e) {
         e.printStackTrace();
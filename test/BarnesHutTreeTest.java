@@ -0,0 +1,175 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import org.junit.jupiter.api.Test;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.BarnesHutTree;
+import custom.Pack.Physics.PairInteraction;
+
+public class BarnesHutTreeTest {
+
+    @Test
+    public void testTwoBodiesAttractUnderGravity() {
+        ParticleStore store = new ParticleStore();
+        store.add(2f, 1f, 0f, 0f, 0f, 0f, 0f, 0f, 5f, 100, "red", false);
+        store.add(3f, 1f, 0f, 0f, 20f, 0f, 0f, 0f, 5f, 100, "red", false);
+
+        BarnesHutTree tree = new BarnesHutTree();
+        tree.build(store, PairInteraction.GRAVITY);
+        tree.accumulate(store, BarnesHutTree.DEFAULT_THETA, null);
+
+        // m1 * m2 * r / (r^2 + softening)^(3/2) with r = 20 and softening 5^2
+        double expected = 2 * 3 * 20 / Math.pow(400 + 25, 1.5);
+        assertThat((double) store.getForceX().get(0), closeTo(expected, 1e-6));
+        assertThat((double) store.getForceX().get(1), closeTo(-expected, 1e-6));
+    }
+
+    @Test
+    public void testLikeChargesRepel() {
+        ParticleStore store = new ParticleStore();
+        store.add(1f, 1f, 0f, 0f, 0f, 0f, 0f, 0f, 5f, 100, "red", false);
+        store.add(1f, 1f, 0f, 0f, 0f, 20f, 0f, 0f, 5f, 100, "red", false);
+
+        BarnesHutTree tree = new BarnesHutTree();
+        tree.build(store, PairInteraction.ELECTROSTATIC);
+        tree.accumulate(store, BarnesHutTree.DEFAULT_THETA, null);
+
+        assertThat(store.getForceY().get(0), lessThan(0f));
+        assertThat(store.getForceY().get(1), greaterThan(0f));
+    }
+
+    @Test
+    public void testZeroOpeningAngleIsExact() {
+        ParticleStore store = cloud(3000);
+        BarnesHutTree tree = new BarnesHutTree();
+        tree.build(store, PairInteraction.GRAVITY);
+        tree.accumulate(store, 0f, null);
+
+        double[][] exact = allPairs(store);
+        for (int i = 0; i < store.size(); i++) {
+            assertThat((double) store.getForceX().get(i), closeTo(exact[i][0], 1e-4 + 1e-3 * Math.abs(exact[i][0])));
+            assertThat((double) store.getForceY().get(i), closeTo(exact[i][1], 1e-4 + 1e-3 * Math.abs(exact[i][1])));
+        }
+    }
+
+    @Test
+    public void testDefaultOpeningAngleStaysClose() {
+        ParticleStore store = cloud(3000);
+        BarnesHutTree tree = new BarnesHutTree();
+        tree.build(store, PairInteraction.GRAVITY);
+        tree.accumulate(store, BarnesHutTree.DEFAULT_THETA, null);
+
+        double[][] exact = allPairs(store);
+        double error = 0;
+        double magnitude = 0;
+        for (int i = 0; i < store.size(); i++) {
+            error += Math.hypot(store.getForceX().get(i) - exact[i][0], store.getForceY().get(i) - exact[i][1]);
+            magnitude += Math.hypot(exact[i][0], exact[i][1]);
+        }
+        assertThat(error / magnitude, lessThan(0.01));
+    }
+
+    @Test
+    public void testWideOpeningAngleNeverUsesTheLeafsOwnNode() {
+        // A close pair in one corner and a heavy cluster in the other: at theta = 1 the root's centroid,
+        // next to the cluster, is far enough from the pair's leaf to pass the opening test
+        ParticleStore store = new ParticleStore();
+        store.add(1f, 1f, 0f, 0f, 0f, 0f, 0f, 0f, 5f, 100, "red", false);
+        store.add(1f, 1f, 0f, 0f, 3f, 0f, 0f, 0f, 5f, 100, "red", false);
+        Random random = new Random(5);
+        for (int i = 0; i < 30; i++) {
+            store.add(1f, 1f, 0f, 0f, 900f + 5 * random.nextFloat(), 900f + 5 * random.nextFloat(), 0f, 0f, 5f, 100, "red", false);
+        }
+
+        BarnesHutTree tree = new BarnesHutTree();
+        tree.build(store, PairInteraction.GRAVITY);
+        tree.accumulate(store, 1f, null);
+
+        // The pair's mutual pull is summed directly and neither body pulls on itself
+        double[][] exact = allPairs(store);
+        for (int i = 0; i < 2; i++) {
+            assertThat((double) store.getForceX().get(i), closeTo(exact[i][0], 0.01 * Math.abs(exact[i][0])));
+            assertThat((double) store.getForceY().get(i), closeTo(exact[i][1], 1e-4));
+        }
+    }
+
+    @Test
+    public void testWideOpeningAngleStaysBounded() {
+        ParticleStore store = cloud(3000);
+        BarnesHutTree tree = new BarnesHutTree();
+        tree.build(store, PairInteraction.GRAVITY);
+        tree.accumulate(store, 1f, null);
+
+        double[][] exact = allPairs(store);
+        double error = 0;
+        double magnitude = 0;
+        for (int i = 0; i < store.size(); i++) {
+            error += Math.hypot(store.getForceX().get(i) - exact[i][0], store.getForceY().get(i) - exact[i][1]);
+            magnitude += Math.hypot(exact[i][0], exact[i][1]);
+        }
+        assertThat(error / magnitude, lessThan(0.05));
+    }
+
+    @Test
+    public void testParallelPairForcesMatchSequential() {
+        ParticleSystem sequential = new ParticleSystem();
+        ParticleSystem parallel = new ParticleSystem();
+        Random random = new Random(3);
+        Vector<Float> zero = new Vector<>(Arrays.asList(0f, 0f));
+        for (int i = 0; i < 3 * ParticleSystem.PARALLEL_THRESHOLD; i++) {
+            Vector<Float> position = new Vector<>(Arrays.asList(random.nextFloat() * 900f, random.nextFloat() * 800f));
+            sequential.addParticle(1f, 1f, zero, position, zero, 5f, 100, "red", false);
+            parallel.addParticle(1f, 1f, zero, position, zero, 5f, 100, "red", false);
+        }
+        sequential.setParallelism(1);
+        parallel.setParallelism(4);
+        sequential.setPairInteraction(PairInteraction.GRAVITY);
+        parallel.setPairInteraction(PairInteraction.GRAVITY);
+
+        sequential.setForces();
+        parallel.setForces();
+
+        ParticleStore expected = sequential.getParticleStore();
+        ParticleStore actual = parallel.getParticleStore();
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.getForceX().get(i), is(expected.getForceX().get(i)));
+            assertThat(actual.getForceY().get(i), is(expected.getForceY().get(i)));
+        }
+    }
+
+    private static ParticleStore cloud(int particles) {
+        Random random = new Random(7);
+        ParticleStore store = new ParticleStore();
+        for (int i = 0; i < particles; i++) {
+            store.add(0.5f + random.nextFloat(), 1f, 0f, 0f, random.nextFloat() * 900f, random.nextFloat() * 800f, 0f, 0f, 5f, 100, "red", false);
+        }
+        return store;
+    }
+
+    // Direct O(N^2) sum with the same softening as the tree
+    private static double[][] allPairs(ParticleStore store) {
+        double[][] force = new double[store.size()][2];
+        for (int i = 0; i < store.size(); i++) {
+            for (int j = 0; j < store.size(); j++) {
+                if (i == j) {
+                    continue;
+                }
+                double dx = store.getX().get(j) - store.getX().get(i);
+                double dy = store.getY().get(j) - store.getY().get(i);
+                double r2 = dx * dx + dy * dy + 25;
+                double scale = store.getMass().get(i) * store.getMass().get(j) / (r2 * Math.sqrt(r2));
+                force[i][0] += scale * dx;
+                force[i][1] += scale * dy;
+            }
+        }
+        return force;
+    }
+}
@@ -0,0 +1,270 @@
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.SystemPreset;
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.Emitter.PulseEmitter;
+import custom.Pack.Emitter.SplitMix;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.JavaBackend;
+import custom.Pack.Physics.NativeBackend;
+import custom.Pack.Physics.PhysicsBackend;
+import custom.Pack.Simulation.Commands;
+
+public class EmitterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static ParticleSystem system(PhysicsBackend backend, long seed) {
+        ParticleSystem system = new ParticleSystem(backend);
+        system.setSeed(seed);
+        system.addEmitter(new Vector<>(Arrays.asList(100f, 100f)), 5f, 1f, 0f, 1f);
+        system.addEmitter(new Vector<>(Arrays.asList(200f, 100f)), 3f, 0.5f, 2f, 1f);
+        system.addEmitter(new Vector<>(Arrays.asList(300f, 100f)), 4f, 0f, 1f, 1f);
+        return system;
+    }
+
+    private static float[] burst(Emitter emitter, PhysicsBackend backend) {
+        float[] velocities = new float[2 * PhysicsBackend.PARTICLES_PER_EMIT];
+        backend.fillVelocities(emitter, velocities);
+        return velocities;
+    }
+
+    @Test
+    public void testSameSeedGivesSameVelocities() {
+        PhysicsBackend backend = new JavaBackend();
+        Emitter a = system(backend, 42).getEmitters().get(1);
+        Emitter b = system(backend, 42).getEmitters().get(1);
+        assertThat(a.getSeed(), is(b.getSeed()));
+        for (int i = 0; i < 3; i++) {
+            assertThat(burst(a, backend), is(burst(b, backend)));
+        }
+
+        // A different system seed gives different emitters, each with its own stream
+        ParticleSystem other = system(backend, 43);
+        assertThat(other.getEmitters().get(1).getSeed(), not(a.getSeed()));
+        assertThat(other.getEmitters().get(0).getSeed(), not(other.getEmitters().get(1).getSeed()));
+    }
+
+    @Test
+    public void testVelocitiesStayInsideTheSpread() {
+        PhysicsBackend backend = new JavaBackend();
+        Emitter emitter = system(backend, 7).getEmitters().get(1);
+        float[] velocities = burst(emitter, backend);
+        for (int i = 0; i < velocities.length; i += 2) {
+            double angle = Math.atan2(velocities[i + 1], velocities[i]);
+            assertThat(angle, is(both(greaterThanOrEqualTo(1.75 - 1e-5)).and(lessThanOrEqualTo(2.25 + 1e-5))));
+            assertThat(Math.hypot(velocities[i], velocities[i + 1]), is(closeTo(3.0, 1e-5)));
+        }
+    }
+
+    @Test
+    public void testBatchMatchesOneEmitterAtATime() {
+        PhysicsBackend backend = new JavaBackend();
+        List<Emitter> batched = system(backend, 9).getEmitters();
+        List<Emitter> single = system(backend, 9).getEmitters();
+        int[] counts = { 4, 0, 7 };
+        float[] velocities = new float[2 * 11];
+        backend.fillVelocities(batched, counts, 3, velocities);
+
+        float[] first = new float[2 * 4];
+        float[] third = new float[2 * 7];
+        backend.fillVelocities(single.get(0), first);
+        backend.fillVelocities(single.get(2), third);
+        assertThat(Arrays.copyOfRange(velocities, 0, 8), is(first));
+        assertThat(Arrays.copyOfRange(velocities, 8, 22), is(third));
+        for (int k = 0; k < 3; k++) {
+            assertThat(batched.get(k).getSeed(), is(single.get(k).getSeed()));
+        }
+    }
+
+    @Test
+    public void testNativeBackendDrawsTheSameSequence() {
+        assumeTrue(NativeBackend.isAvailable(), "native library not built");
+        PhysicsBackend java = new JavaBackend();
+        PhysicsBackend nativeBackend = new NativeBackend();
+        List<Emitter> javaEmitters = system(java, 5).getEmitters();
+        List<Emitter> nativeEmitters = system(nativeBackend, 5).getEmitters();
+        int[] counts = { 10, 10, 10 };
+        float[] javaVelocities = new float[60];
+        float[] nativeVelocities = new float[60];
+        java.fillVelocities(javaEmitters, counts, 3, javaVelocities);
+        nativeBackend.fillVelocities(nativeEmitters, counts, 3, nativeVelocities);
+
+        for (int i = 0; i < 60; i++) {
+            assertThat((double) nativeVelocities[i], is(closeTo(javaVelocities[i], 1e-5)));
+        }
+        for (int k = 0; k < 3; k++) {
+            assertThat(nativeEmitters.get(k).getSeed(), is(javaEmitters.get(k).getSeed()));
+        }
+    }
+
+    @Test
+    public void testSplitGeneratorsDiffer() {
+        SplitMix parent = new SplitMix(1);
+        SplitMix first = parent.split();
+        SplitMix second = parent.split();
+        assertThat(first.nextLong(), not(second.nextLong()));
+        double unit = first.nextDouble();
+        assertThat(unit, is(both(greaterThanOrEqualTo(0.0)).and(lessThan(1.0))));
+    }
+
+    @Test
+    public void testPresetResumesTheEmitterSequence() {
+        PhysicsBackend backend = new JavaBackend();
+        ParticleSystem original = system(backend, 11);
+        Emitter emitter = original.getEmitters().get(0);
+        burst(emitter, backend);
+        String file = tempDir.resolve("seeded.txt").toString();
+        new SystemPreset(original).savePreset(file);
+
+        ParticleSystem loaded = new ParticleSystem(backend);
+        new SystemPreset(loaded).loadPreset(file);
+        Emitter resumed = loaded.getEmitters().get(0);
+        assertThat(resumed.getSeed(), is(emitter.getSeed()));
+        assertThat(burst(resumed, backend), is(burst(emitter, backend)));
+    }
+
+    @Test
+    public void testPresetWithoutSeedStillLoads() {
+        ParticleSystem system = new ParticleSystem(new JavaBackend());
+        Emitter emitter = Emitter.parse("Emitter{position=[1.0, 2.0]/ spread=0.5/ angle=1.0/ speed=3.0/ particlesMass=1.0/ isEmitting=true}", system);
+        assertThat(emitter, is(notNullValue()));
+        assertThat(emitter.getSpeed(), is(3f));
+    }
+
+    @Test
+    public void testFractionalRateIsCarriedOverSteps() {
+        ParticleSystem system = new ParticleSystem(new JavaBackend());
+        system.addEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f);
+        Emitter emitter = system.getEmitters().get(0);
+        emitter.setEmissionRate(25f);
+
+        int total = 0;
+        for (int step = 0; step < 2 * ParticleSystem.STEPS_PER_SECOND; step++) {
+            int due = emitter.particlesDue();
+            assertThat(due, is(both(greaterThanOrEqualTo(0)).and(lessThanOrEqualTo(1))));
+            total += due;
+        }
+        assertThat(total, is(50));
+
+        emitter.setEmissionRate(0f);
+        assertThat(emitter.particlesDue(), is(0));
+    }
+
+    @Test
+    public void testDefaultRateIsOneBurstPerStep() {
+        ParticleSystem system = new ParticleSystem(new JavaBackend());
+        system.addEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f);
+        for (int step = 0; step < 100; step++) {
+            assertThat(system.getEmitters().get(0).particlesDue(), is(PhysicsBackend.PARTICLES_PER_EMIT));
+        }
+    }
+
+    @Test
+    public void testBulkSpawnWritesEveryEmittersParticles() {
+        PhysicsBackend backend = new JavaBackend();
+        ParticleSystem bulk = system(backend, 3);
+        ParticleSystem single = system(backend, 3);
+        bulk.getEmitters().get(1).setEmissionRate(90f);
+        single.getEmitters().get(1).setEmissionRate(90f);
+        bulk.getEmitters().get(2).setParticlesMass(2f);
+        single.getEmitters().get(2).setParticlesMass(2f);
+
+        // One step of the bulk pass against each emitter spawning on its own, from the same seeds
+        bulk.updateAll();
+        for (Emitter emitter : single.getEmitters()) {
+            emitter.emitParticles();
+        }
+
+        ParticleStore a = bulk.getParticleStore();
+        ParticleStore b = single.getParticleStore();
+        // 10 + 1 + 10 particles, emitter after emitter; 90 per second is 1.5 per step
+        assertThat(a.size(), is(21));
+        assertThat(b.size(), is(21));
+        for (int i = 0; i < a.size(); i++) {
+            // Integrated once since spawning
+            assertThat(a.getX().get(i), is(b.getX().get(i) + b.getVelocityX().get(i)));
+            assertThat(a.getMass().get(i), is(b.getMass().get(i)));
+            assertThat(a.getAge()[i], is(0));
+        }
+        assertThat(a.getMass().get(a.size() - 1), is(2f));
+    }
+
+    @Test
+    public void testBulkSpawnKeepsTheCap() {
+        ParticleSystem system = system(new JavaBackend(), 4);
+        system.setMaxParticles(25);
+        system.updateAll();
+        assertThat(system.getParticleStore().size(), is(25));
+        system.updateAll();
+        assertThat(system.getParticleStore().size(), is(25));
+        assertThat(system.getEvictedCount(), is(35L));
+    }
+
+    @Test
+    public void testPresetKeepsTheEmissionRate() {
+        ParticleSystem original = new ParticleSystem(new JavaBackend());
+        original.addEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f);
+        original.getEmitters().get(0).setEmissionRate(42.5f);
+        String file = tempDir.resolve("rate.txt").toString();
+        new SystemPreset(original).savePreset(file);
+
+        ParticleSystem loaded = new ParticleSystem(new JavaBackend());
+        new SystemPreset(loaded).loadPreset(file);
+        assertThat(loaded.getEmitters().get(0).getEmissionRate(), is(42.5f));
+    }
+
+    // Particles spawned by each of the given number of steps
+    private static int[] spawnsPerStep(ParticleSystem system, int steps) {
+        int[] spawned = new int[steps];
+        for (int step = 0; step < steps; step++) {
+            int before = system.getParticleStore().size();
+            system.updateAll();
+            spawned[step] = system.getParticleStore().size() - before;
+        }
+        return spawned;
+    }
+
+    @Test
+    public void testPulseSwitchesOnSimulationSteps() {
+        ParticleSystem system = new ParticleSystem(new JavaBackend());
+        // 0.002 switches per simulated millisecond: 500 ms, 30 steps on and 30 off
+        system.addPulseEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f, 0.002f);
+        PulseEmitter pulse = (PulseEmitter) system.getEmitters().get(0);
+        assertThat(pulse.getPulseSteps(), is(30L));
+
+        int[] spawned = spawnsPerStep(system, 120);
+        for (int step = 0; step < 120; step++) {
+            boolean on = (step / 30) % 2 == 0;
+            assertThat("step " + (step + 1), spawned[step], is(on ? PhysicsBackend.PARTICLES_PER_EMIT : 0));
+        }
+        // One switch pending, however long it ran
+        assertThat(system.getScheduler().getPending(), is(1));
+    }
+
+    @Test
+    public void testScheduledBurstAndFieldChange() {
+        ParticleSystem system = new ParticleSystem(new JavaBackend());
+        system.addEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f);
+        system.addFieldPoint(new Vector<>(Arrays.asList(500f, 500f)), 5f, "A");
+        Emitter emitter = system.getEmitters().get(0);
+        emitter.setEmissionRate(0f);
+        Commands.scheduleBurst(emitter, 3, 7).apply(system);
+        Commands.scheduleFieldStrength(system.getFieldPoints().get(0), 2, 9f).apply(system);
+
+        int[] spawned = spawnsPerStep(system, 2);
+        assertThat(spawned, is(new int[] { 0, 0 }));
+        assertThat(system.getFieldPoints().get(0).getFieldStrength(), is(9f));
+        assertThat(spawnsPerStep(system, 2), is(new int[] { 7, 0 }));
+    }
+}
@@ -1,9 +1,20 @@
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+
 import org.junit.jupiter.api.Test;
 
+import custom.Pack.ParticleSystem;
+import custom.Pack.SystemPreset;
+import custom.Pack.Emitter.Emitter;
+import custom.Pack.Emitter.OscillatingEmitter;
+import custom.Pack.Emitter.PulseEmitter;
 import custom.Pack.FieldPoint.FieldPoint;
+import custom.Pack.Particle.Particle;
+import custom.Pack.Particle.ParticleStore;
 
 public class FieldPointTest {
     @Test
@@ -15,4 +26,26 @@ public class FieldPointTest {
         assertThat(fp.getFieldStrength(), is(50.0f));
         assertThat(fp.getType(), is("A"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testModelDoesNotReferenceJavaFX() {
+        Class<?>[] model = { ParticleSystem.class, SystemPreset.class, Emitter.class, OscillatingEmitter.class, PulseEmitter.class,
+                             FieldPoint.class, Particle.class, ParticleStore.class };
+        for (Class<?> type : model) {
+            assertThat(type.getName(), isJavaFX(type.getSuperclass()), is(false));
+            for (Field field : type.getDeclaredFields()) {
+                assertThat(type.getName() + "." + field.getName(), isJavaFX(field.getType()), is(false));
+            }
+            for (Method method : type.getDeclaredMethods()) {
+                assertThat(type.getName() + "." + method.getName(), isJavaFX(method.getReturnType()), is(false));
+                for (Parameter parameter : method.getParameters()) {
+                    assertThat(type.getName() + "." + method.getName(), isJavaFX(parameter.getType()), is(false));
+                }
+            }
+        }
+    }
+
+    private static boolean isJavaFX(Class<?> type) {
+        return type != null && type.getName().startsWith("javafx.");
+    }
+}
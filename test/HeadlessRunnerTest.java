@@ -0,0 +1,75 @@
+import java.util.Arrays;
+import java.util.Vector;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import custom.Pack.HeadlessRunner;
+import custom.Pack.ParticleSystem;
+import custom.Pack.PhaseTimer.Phase;
+import custom.Pack.Physics.PhysicsBackend;
+
+public class HeadlessRunnerTest {
+
+    @Test
+    public void testRunsTheRequestedStepsAndTimesEveryPhase() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.addEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f);
+        HeadlessRunner runner = new HeadlessRunner(system);
+        runner.setName("emitter");
+        runner.setSteps(50);
+        runner.setWarmupSteps(5);
+
+        runner.run();
+
+        assertThat(runner.getStepsRun(), is(50L));
+        assertThat(runner.getPeakParticles(), greaterThan(0));
+        assertThat(runner.getPhaseTimer().getCalls(Phase.CULL), is(50L));
+        assertThat(runner.getPhaseTimer().getCalls(Phase.EMIT), is(50L));
+        assertThat(runner.getPhaseTimer().getCalls(Phase.PHYSICS), is(50L));
+        assertThat(runner.getPhaseTimer().getCalls(Phase.PAIR_TREE), is(0L));
+        // Timing stops with the run
+        assertThat(system.getPhaseTimer() == null, is(true));
+
+        assertThat(runner.toJson(), containsString("\"steps\": 50,"));
+        String[] csv = runner.toCsv().split("\n");
+        assertThat(csv.length, is(2));
+        assertThat(csv[1].split(",").length, is(csv[0].split(",").length));
+        assertThat(csv[1], containsString("emitter,java,"));
+    }
+
+    @Test
+    public void testWallClockBudgetEndsTheRun() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.addEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f);
+        HeadlessRunner runner = new HeadlessRunner(system);
+        runner.setSteps(0);
+        runner.setSeconds(0.2);
+
+        runner.run();
+
+        assertThat(runner.getStepsRun(), greaterThan(0L));
+        // Ends only once the budget has passed; the bound above just catches a run that ignores it
+        assertThat(runner.getElapsedNanos(), greaterThanOrEqualTo(200_000_000L));
+        assertThat(runner.getElapsedNanos(), lessThan(5_000_000_000L));
+    }
+
+    @Test
+    public void testLoadsAPresetFromArguments() {
+        HeadlessRunner runner = HeadlessRunner.fromArgs(new String[] { "jog.txt", "--steps", "20", "--backend", "java", "--threads", "1", "--width", "400" });
+
+        assertThat(runner.getSystem().getEmitters().isEmpty(), is(false));
+        assertThat(runner.getSystem().getParallelism(), is(1));
+        runner.run();
+        assertThat(runner.getStepsRun(), is(20L));
+
+        assertThrows(IllegalArgumentException.class, () -> HeadlessRunner.fromArgs(new String[] { "missing.txt" }));
+        assertThrows(IllegalArgumentException.class, () -> HeadlessRunner.fromArgs(new String[] { "jog.txt", "--bogus", "1" }));
+    }
+}
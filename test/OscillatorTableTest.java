@@ -0,0 +1,159 @@
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Emitter.OscillatingEmitter;
+import custom.Pack.Physics.OscillatorTable;
+import custom.Pack.Simulation.Commands;
+
+public class OscillatorTableTest {
+
+    @Test
+    public void testStepsFollowTheClosedForm() {
+        ParticleSystem system = new ParticleSystem();
+        Random random = new Random(5);
+        // Not a multiple of any vector length, so the scalar tail runs too
+        int count = 37;
+        for (int i = 0; i < count; i++) {
+            system.addOscillatingEmitter(new Vector<>(Arrays.asList(900 * random.nextFloat(), 800 * random.nextFloat())),
+                3f, 1f, 0f, 1f, 100 * random.nextFloat(), 0.05f * random.nextFloat());
+            OscillatingEmitter emitter = (OscillatingEmitter) system.getEmitters().get(i);
+            emitter.setPhase((float) (4 * Math.PI * random.nextFloat()));
+            emitter.setAxis(i % 2 == 0 ? OscillatingEmitter.Axis.X : OscillatingEmitter.Axis.Y);
+        }
+        int steps = 500;
+        for (int s = 0; s < steps; s++) {
+            system.updateAll();
+            system.getParticleStore().clear();
+        }
+
+        assertThat(system.getOscillators().size(), is(count));
+        for (int i = 0; i < count; i++) {
+            OscillatingEmitter emitter = (OscillatingEmitter) system.getEmitters().get(i);
+            double offset = emitter.getAmplitude() * Math.sin(2 * Math.PI * emitter.getFrequency() * steps + emitter.getPhase());
+            boolean alongX = emitter.getAxis() == OscillatingEmitter.Axis.X;
+            assertThat((double) emitter.getX(), closeTo(emitter.getMeanX() + (alongX ? offset : 0), 0.05));
+            assertThat((double) emitter.getY(), closeTo(emitter.getMeanY() + (alongX ? 0 : offset), 0.05));
+            assertThat((double) emitter.getTheta(), allOf(greaterThanOrEqualTo(0.0), lessThan(2 * Math.PI)));
+        }
+    }
+
+    @Test
+    public void testTableStepMatchesSingleEmitterUpdate() {
+        ParticleSystem system = new ParticleSystem();
+        system.addOscillatingEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f, 50f, 0.01f);
+        OscillatingEmitter alone = new OscillatingEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f, 50f, 0.01f, system);
+        for (int s = 0; s < 20; s++) {
+            system.updateAll();
+            alone.updateEmitter();
+        }
+        OscillatingEmitter stepped = (OscillatingEmitter) system.getEmitters().get(0);
+        assertThat((double) stepped.getTheta(), closeTo(alone.getTheta(), 1e-5));
+        assertThat((double) stepped.getY(), closeTo(alone.getY(), 1e-3));
+        assertThat(stepped.getPosition(), contains(100f, stepped.getY()));
+    }
+
+    @Test
+    public void testParticlesSpawnAtTheCurrentPosition() {
+        ParticleSystem system = new ParticleSystem();
+        system.addOscillatingEmitter(new Vector<>(Arrays.asList(100f, 100f)), 0f, 0f, 0f, 1f, 50f, 0.1f);
+        system.updateAll();
+        OscillatingEmitter emitter = (OscillatingEmitter) system.getEmitters().get(0);
+        float y = emitter.getY();
+        system.getParticleStore().clear();
+        system.updateAll();
+        assertThat(system.getParticleStore().getY().get(0), is(y));
+    }
+
+    @Test
+    public void testRemovedAndMovedEmittersLeaveTheTable() {
+        ParticleSystem system = new ParticleSystem();
+        system.addOscillatingEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f, 50f, 0.01f);
+        system.addEmitter(new Vector<>(Arrays.asList(0f, 0f)), 3f, 1f, 0f, 1f);
+        system.addOscillatingEmitter(new Vector<>(Arrays.asList(300f, 300f)), 3f, 1f, 0f, 1f, 20f, 0.02f);
+        system.updateAll();
+        assertThat(system.getOscillators().size(), is(2));
+
+        OscillatingEmitter removed = (OscillatingEmitter) system.getEmitters().get(0);
+        Commands.removeEmitter(removed).apply(system);
+        system.updateAll();
+        assertThat(system.getOscillators().size(), is(1));
+        // Detached, the removed emitter keeps its theta and no longer moves
+        float theta = removed.getTheta();
+        system.updateAll();
+        assertThat(removed.getTheta(), is(theta));
+        assertThat((double) theta, closeTo(2 * Math.PI * 0.01, 1e-5));
+
+        OscillatingEmitter kept = (OscillatingEmitter) system.getEmitters().get(1);
+        Commands.moveEmitter(kept, 500f, 400f).apply(system);
+        system.updateAll();
+        assertThat(kept.getMeanX(), is(500f));
+        assertThat(kept.getX(), is(500f));
+        assertThat((double) kept.getY(), closeTo(400 + 20 * Math.sin(kept.getTheta()), 1e-3));
+    }
+
+    @Test
+    public void testEveryRowUsesTheSameSine() {
+        ParticleSystem system = new ParticleSystem();
+        Random random = new Random(9);
+        // Rows in whole vectors and in the scalar tail must give the same bits as the scalar sine
+        int count = 37;
+        for (int i = 0; i < count; i++) {
+            system.addOscillatingEmitter(new Vector<>(Arrays.asList(900 * random.nextFloat(), 800 * random.nextFloat())),
+                3f, 1f, 0f, 1f, 100 * random.nextFloat(), 0.05f * random.nextFloat());
+            OscillatingEmitter emitter = (OscillatingEmitter) system.getEmitters().get(i);
+            emitter.setPhase((float) (4 * Math.PI * random.nextFloat()));
+            emitter.setAxis(i % 2 == 0 ? OscillatingEmitter.Axis.X : OscillatingEmitter.Axis.Y);
+        }
+        for (int s = 0; s < 100; s++) {
+            system.updateAll();
+            system.getParticleStore().clear();
+        }
+
+        OscillatingEmitter[] emitters = new OscillatingEmitter[count];
+        float[] x = new float[count];
+        float[] y = new float[count];
+        for (int i = 0; i < count; i++) {
+            OscillatingEmitter emitter = (OscillatingEmitter) system.getEmitters().get(i);
+            float s = OscillatorTable.sin(emitter.getTheta() + OscillatorTable.wrap(emitter.getPhase()));
+            boolean alongX = emitter.getAxis() == OscillatingEmitter.Axis.X;
+            assertThat(emitter.getX(), is(alongX ? emitter.getMeanX() + emitter.getAmplitude() * s : emitter.getMeanX()));
+            assertThat(emitter.getY(), is(alongX ? emitter.getMeanY() : emitter.getMeanY() + emitter.getAmplitude() * s));
+            emitters[i] = emitter;
+            x[i] = emitter.getX();
+            y[i] = emitter.getY();
+        }
+        // Out of the table, an emitter computes the same position itself
+        Commands.clearAll().apply(system);
+        system.updateAll();
+        for (int i = 0; i < count; i++) {
+            assertThat(emitters[i].getX(), is(x[i]));
+            assertThat(emitters[i].getY(), is(y[i]));
+        }
+    }
+
+    @Test
+    public void testSineStaysCloseToMathSin() {
+        // The whole domain, [0, 4pi): theta and the phase are each below 2pi
+        for (int i = 0; i < 100_000; i++) {
+            float angle = 2 * OscillatorTable.TWO_PI * i / 100_000;
+            assertThat((double) OscillatorTable.sin(angle), closeTo(Math.sin(angle), 1e-6));
+        }
+        float last = Math.nextDown(2 * OscillatorTable.TWO_PI);
+        assertThat((double) OscillatorTable.sin(last), closeTo(Math.sin(last), 1e-6));
+        assertThat((double) OscillatorTable.sin(0f), closeTo(0, 1e-7));
+        assertThat((double) OscillatorTable.sin((float) (Math.PI / 2)), closeTo(1, 1e-7));
+    }
+
+    @Test
+    public void testWrapKeepsAnglesInOneTurn() {
+        assertThat(OscillatorTable.wrap(0f), is(0f));
+        assertThat((double) OscillatorTable.wrap(-1f), closeTo(2 * Math.PI - 1, 1e-6));
+        assertThat((double) OscillatorTable.wrap(1000f), closeTo(1000 - 159 * 2 * Math.PI, 1e-4));
+        assertThat(OscillatorTable.wrap(OscillatorTable.TWO_PI), lessThan(OscillatorTable.TWO_PI));
+    }
+}
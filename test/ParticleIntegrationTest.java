@@ -1,37 +1,63 @@
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.Vector;
+import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
-import org.junit.jupiter.api.BeforeAll;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.sun.management.ThreadMXBean;
 
 import custom.Pack.Emitter.Emitter;
+import custom.Pack.Particle.EvictionPolicy;
 import custom.Pack.Particle.Particle;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.NativeBackend;
+import custom.Pack.Physics.ParallelStep;
+import custom.Pack.Physics.PhysicsBackend;
 import custom.Pack.ParticleSystem;
 
 public class ParticleIntegrationTest {
-    
-    @BeforeAll
-    public static void setupNativeLib() {
-        System.loadLibrary("ParticleSystem"); 
+
+    // Every physics test runs against both backends; native runs are skipped when the library is not built
+    static Stream<String> backends() {
+        return Stream.of("native", "java");
     }
 
-    @Test
-    public void testNativePhysicsUpdate() {
+    private static PhysicsBackend backend(String name) {
+        if (name.equals("native")) {
+            assumeTrue(NativeBackend.isAvailable(), "native library not built");
+        }
+        return PhysicsBackend.forName(name);
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testPhysicsUpdate(String backendName) {
+        PhysicsBackend backend = backend(backendName);
         Vector<Float> pos = new Vector<>(Arrays.asList(0f, 0f));
         Vector<Float> vel = new Vector<>(Arrays.asList(10f, 0f));
         Vector<Float> force = new Vector<>(Arrays.asList(0f, 0f));
         
         Particle p = new Particle(1.0f, 1.0f, vel, pos, force, 5.0f, 100, "red", false);
-        p.update(); 
+        backend.update(p); 
         assertThat((double) p.getPosition().get(0), closeTo(10.0, 0.001)); 
     }
 
-    @Test
-    public void testGravityForce() {
-        ParticleSystem system = new ParticleSystem();
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testGravityForce(String backendName) {
+        ParticleSystem system = new ParticleSystem(backend(backendName));
         system.setGravityEnabled(1); // Enable Gravity
 
         // Add 1 particle
@@ -50,9 +76,10 @@ public class ParticleIntegrationTest {
         assertThat((double) p.getForce().get(1), closeTo(0.1, 0.0001));
     }
 
-    @Test
-    public void testAttractionForce() {
-        ParticleSystem system = new ParticleSystem();
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testAttractionForce(String backendName) {
+        ParticleSystem system = new ParticleSystem(backend(backendName));
         system.setGravityEnabled(0);
 
         // Particle at (0,0)
@@ -75,14 +102,32 @@ public class ParticleIntegrationTest {
         assertThat((double) p.getForce().get(0), closeTo(5.0, 0.1));
     }
 
-    @Test
-    public void testEmitterVelocityGeneration() {
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testBulkStepAppliesForcesAndIntegrates(String backendName) {
+        ParticleSystem system = new ParticleSystem(backend(backendName));
+        system.setGravityEnabled(1);
+        system.addParticle(1.0f, 1.0f, new Vector<>(Arrays.asList(2f, 0f)), new Vector<>(Arrays.asList(0f, 0f)), new Vector<>(Arrays.asList(0f, 0f)), 5f, 100, "red", false);
+
+        // One backend call computes gravity (0.1) and integrates with dt = 1
+        system.step();
+
+        Particle p = system.getParticles().get(0);
+        assertThat((double) p.getForce().get(1), closeTo(0.1, 0.0001));
+        assertThat((double) p.getPosition().get(0), closeTo(2.0, 0.0001));
+        assertThat((double) p.getPosition().get(1), closeTo(0.05, 0.0001));
+        assertThat((double) p.getVelocity().get(1), closeTo(0.1, 0.0001));
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testEmitterVelocityGeneration(String backendName) {
         // Test if Emitter generates the correct batch of particles
-        ParticleSystem system = new ParticleSystem();
+        ParticleSystem system = new ParticleSystem(backend(backendName));
         Vector<Float> pos = new Vector<>(Arrays.asList(0f, 0f));
         Emitter emitter = new Emitter(pos, 5.0f, 1.0f, 0.0f, 1.0f, system);
 
-        // Call Native Method
+        // Call the backend
         float[][] velocities = emitter.getVelocities();
 
         // Your C++ loop runs 10 times
@@ -96,4 +141,366 @@ public class ParticleIntegrationTest {
         // Speed is already double, no cast needed
         assertThat(speed, closeTo(5.0, 0.01));
     }
-}
\ No newline at end of file
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testSteadyStateSpawningDoesNotAllocate(String backendName) {
+        ParticleSystem system = new ParticleSystem(backend(backendName));
+        // Off screen, so every burst is culled again
+        Emitter emitter = new Emitter(new Vector<>(Arrays.asList(-50f, -50f)), 3f, 1f, 0f, 1f, system);
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        Runnable frame = () -> {
+            emitter.emitParticles();
+            while (system.getParticleStore().size() > 0) {
+                system.removeParticlesOutOfScreen(900, 800);
+            }
+        };
+        for (int i = 0; i < 1000; i++) {
+            frame.run();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            frame.run();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertThat(allocated, lessThan(1024L));
+        assertThat(system.getParticleStore().getHighWaterMark(), is(PhysicsBackend.PARTICLES_PER_EMIT));
+        assertThat(system.getParticleStore().getRecycledCount(), is(1999L * PhysicsBackend.PARTICLES_PER_EMIT));
+    }
+
+    @Test
+    public void testBackendsAgree() {
+        assumeTrue(NativeBackend.isAvailable(), "native library not built");
+        ParticleSystem nativeSystem = randomScene(PhysicsBackend.forName("native"), 1000);
+        ParticleSystem javaSystem = randomScene(PhysicsBackend.forName("java"), 1000);
+
+        for (int step = 0; step < 5; step++) {
+            nativeSystem.setForces();
+            javaSystem.setForces();
+            nativeSystem.getBackend().step(nativeSystem.getParticleStore(), null, 0, PhysicsBackend.STEP_INTEGRATE);
+            javaSystem.getBackend().step(javaSystem.getParticleStore(), null, 0, PhysicsBackend.STEP_INTEGRATE);
+        }
+
+        ParticleStore expected = nativeSystem.getParticleStore();
+        ParticleStore actual = javaSystem.getParticleStore();
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat((double) actual.getX().get(i), closeTo(expected.getX().get(i), 1e-2));
+            assertThat((double) actual.getY().get(i), closeTo(expected.getY().get(i), 1e-2));
+            assertThat((double) actual.getVelocityX().get(i), closeTo(expected.getVelocityX().get(i), 1e-3));
+            assertThat((double) actual.getVelocityY().get(i), closeTo(expected.getVelocityY().get(i), 1e-3));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testParallelStepMatchesSequential(String backendName) {
+        PhysicsBackend backend = backend(backendName);
+        // Large enough to be split across several chunks
+        ParticleSystem sequential = randomScene(backend, 5 * ParallelStep.CHUNK_SIZE + 17);
+        ParticleSystem parallel = randomScene(backend, 5 * ParallelStep.CHUNK_SIZE + 17);
+        sequential.setParallelism(1);
+        parallel.setParallelism(4);
+
+        for (int step = 0; step < 3; step++) {
+            sequential.setForces();
+            sequential.updateAll();
+            parallel.setForces();
+            parallel.updateAll();
+        }
+
+        ParticleStore expected = sequential.getParticleStore();
+        ParticleStore actual = parallel.getParticleStore();
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.getX().get(i), is(expected.getX().get(i)));
+            assertThat(actual.getY().get(i), is(expected.getY().get(i)));
+            assertThat(actual.getVelocityX().get(i), is(expected.getVelocityX().get(i)));
+            assertThat(actual.getVelocityY().get(i), is(expected.getVelocityY().get(i)));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testCutoffDropsDistantFields(String backendName) {
+        ParticleSystem system = new ParticleSystem(backend(backendName));
+        system.addParticle(1.0f, 1.0f, new Vector<>(Arrays.asList(0f, 0f)), new Vector<>(Arrays.asList(0f, 0f)), new Vector<>(Arrays.asList(0f, 0f)), 5f, 100, "red", false);
+        system.addFieldPoint(new Vector<>(Arrays.asList(20f, 0f)), 10.0f, "A");
+        system.addFieldPoint(new Vector<>(Arrays.asList(500f, 0f)), 10.0f, "A");
+        system.setFieldCutoff(100f);
+
+        system.setForces();
+
+        // Only the near attractor counts: 1 * 10 * 200 / 20^2
+        assertThat((double) system.getParticles().get(0).getForce().get(0), closeTo(5.0, 1e-4));
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testMovedFieldIsReindexed(String backendName) {
+        ParticleSystem system = new ParticleSystem(backend(backendName));
+        system.addParticle(1.0f, 1.0f, new Vector<>(Arrays.asList(0f, 0f)), new Vector<>(Arrays.asList(0f, 0f)), new Vector<>(Arrays.asList(0f, 0f)), 5f, 100, "red", false);
+        system.addFieldPoint(new Vector<>(Arrays.asList(500f, 0f)), 10.0f, "A");
+        system.getFieldPoints().get(0).setCutoff(50f);
+        system.setForces();
+        assertThat((double) system.getParticles().get(0).getForce().get(0), closeTo(0.0, 1e-6));
+
+        // Dragging the field next to the particle
+        system.getFieldPoints().get(0).getPosition().set(0, 20f);
+        system.invalidateFieldIndex();
+        system.setForces();
+        assertThat((double) system.getParticles().get(0).getForce().get(0), closeTo(5.0, 1e-4));
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void testFarFieldStaysCloseToExactForces(String backendName) {
+        PhysicsBackend backend = backend(backendName);
+        ParticleSystem exact = randomScene(backend, 500, 400);
+        ParticleSystem approximate = randomScene(backend, 500, 400);
+        exact.setGravityEnabled(0);
+        approximate.setGravityEnabled(0);
+        approximate.setFieldCutoff(60f);
+        approximate.setFarFieldEnabled(true);
+
+        exact.setForces();
+        approximate.setForces();
+
+        // Compare against the typical force so the error is not dominated by near-cancelling particles
+        ParticleStore expected = exact.getParticleStore();
+        ParticleStore actual = approximate.getParticleStore();
+        double error = 0;
+        double magnitude = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            double dx = actual.getForceX().get(i) - expected.getForceX().get(i);
+            double dy = actual.getForceY().get(i) - expected.getForceY().get(i);
+            error += Math.sqrt(dx * dx + dy * dy);
+            magnitude += Math.hypot(expected.getForceX().get(i), expected.getForceY().get(i));
+        }
+        assertThat(error / magnitude, lessThan(0.05));
+    }
+
+    @Test
+    public void testCullRemovesConsecutiveOffScreenParticles() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        float[] xs = { 10f, -1f, -2f, 20f, 901f, 902f, 903f, 30f };
+        for (float x : xs) {
+            system.addParticle(1f, 1f, new Vector<>(Arrays.asList(0f, 0f)), new Vector<>(Arrays.asList(x, 10f)), new Vector<>(Arrays.asList(0f, 0f)), 5f, 0, "red", false);
+        }
+
+        system.removeParticlesOutOfScreen(900, 800);
+
+        ParticleStore store = system.getParticleStore();
+        assertThat(store.size(), is(3));
+        assertThat(store.getX().get(0), is(10f));
+        assertThat(store.getX().get(1), is(20f));
+        assertThat(store.getX().get(2), is(30f));
+    }
+
+    @Test
+    public void testCullExpiresParticlesByLifespanAndSpeed() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        Vector<Float> position = new Vector<>(Arrays.asList(100f, 100f));
+        Vector<Float> moving = new Vector<>(Arrays.asList(3f, 4f));
+        Vector<Float> zero = new Vector<>(Arrays.asList(0f, 0f));
+        system.addParticle(1f, 1f, moving, position, zero, 5f, 3, "red", false);
+        system.addParticle(1f, 1f, moving, position, zero, 5f, 0, "red", false);
+        system.addParticle(1f, 1f, new Vector<>(Arrays.asList(0.5f, 0f)), position, zero, 5f, 0, "red", false);
+        system.setMinSpeed(1f);
+
+        // The slow particle goes on the first sweep and the short-lived one on its third
+        assertThat(system.cull(900, 800), is(1));
+        assertThat(system.cull(900, 800), is(0));
+        assertThat(system.cull(900, 800), is(1));
+        assertThat(system.getParticleStore().size(), is(1));
+        assertThat(system.getParticleStore().getLifespan()[0], is(0));
+        assertThat(system.getParticleStore().getAge()[0], is(3));
+    }
+
+    @Test
+    public void testParallelCullMatchesSequential() {
+        PhysicsBackend backend = PhysicsBackend.forName("java");
+        ParticleSystem sequential = randomScene(backend, 5 * ParallelStep.CHUNK_SIZE + 17, 0);
+        ParticleSystem parallel = randomScene(backend, 5 * ParallelStep.CHUNK_SIZE + 17, 0);
+        sequential.setParallelism(1);
+        parallel.setParallelism(4);
+
+        // Narrower than the scene, so roughly half of every chunk is removed
+        int removed = sequential.cull(450, 800);
+        assertThat(parallel.cull(450, 800), is(removed));
+
+        ParticleStore expected = sequential.getParticleStore();
+        ParticleStore actual = parallel.getParticleStore();
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.getX().get(i), is(expected.getX().get(i)));
+            assertThat(actual.getY().get(i), is(expected.getY().get(i)));
+            assertThat(actual.getMass().get(i), is(expected.getMass().get(i)));
+            assertThat(actual.getAge()[i], is(expected.getAge()[i]));
+        }
+    }
+
+    @Test
+    public void testRejectNewDropsSpawnsPastTheCap() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.setMaxParticles(25);
+        system.setEvictionPolicy(EvictionPolicy.REJECT_NEW);
+
+        spawnRow(system, 40);
+
+        assertThat(system.getParticleStore().size(), is(25));
+        assertThat(system.getParticleStore().getX().get(24), is(24f));
+        assertThat(system.getDroppedCount(), is(15L));
+        assertThat(system.getEvictedCount(), is(0L));
+    }
+
+    @Test
+    public void testOldestFirstReplacesOldestParticles() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.setMaxParticles(64);
+        spawnRow(system, 32);
+        system.cull(900, 800);
+        spawnRow(system, 32);
+        system.cull(900, 800);
+
+        // Only the first row is two frames old
+        spawnRow(system, 32);
+
+        ParticleStore store = system.getParticleStore();
+        assertThat(store.size(), is(64));
+        assertThat(system.getEvictedCount(), is(32L));
+        int[] ageCounts = new int[3];
+        for (int i = 0; i < store.size(); i++) {
+            ageCounts[store.getAge()[i]]++;
+        }
+        assertThat(ageCounts[0], is(32));
+        assertThat(ageCounts[1], is(32));
+        assertThat(ageCounts[2], is(0));
+    }
+
+    @Test
+    public void testLowestEnergyReplacesSlowestParticles() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.setMaxParticles(40);
+        system.setEvictionPolicy(EvictionPolicy.LOWEST_ENERGY);
+        spawnRow(system, 40);
+
+        // Faster than every live particle, so each one replaces the slowest left
+        for (int i = 0; i < 10; i++) {
+            system.addParticle(1f, 1f, new Vector<>(Arrays.asList(100f, 0f)), new Vector<>(Arrays.asList(1f, 1f)), new Vector<>(Arrays.asList(0f, 0f)), 5f, 0, "red", false);
+        }
+
+        ParticleStore store = system.getParticleStore();
+        assertThat(store.size(), is(40));
+        float slowest = Float.MAX_VALUE;
+        for (int i = 0; i < store.size(); i++) {
+            slowest = Math.min(slowest, store.getVelocityX().get(i));
+        }
+        assertThat(slowest, is(10f));
+    }
+
+    @Test
+    public void testRandomEvictionHoldsTheCap() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.setMaxParticles(50);
+        system.setEvictionPolicy(EvictionPolicy.RANDOM);
+
+        spawnRow(system, 500);
+
+        assertThat(system.getParticleStore().size(), is(50));
+        assertThat(system.getEvictedCount(), is(450L));
+    }
+
+    @Test
+    public void testCullingKeepsTheVictimBatch() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.setMaxParticles(1600);
+        int steps = 400;
+        for (int step = 0; step < steps; step++) {
+            // Ten particles that stay and five outside the bounds, which the cull removes
+            for (int i = 0; i < 10; i++) {
+                system.addParticle(1f, 1f, new Vector<>(Arrays.asList(0f, 0f)), new Vector<>(Arrays.asList(100f + i, 100f)), new Vector<>(Arrays.asList(0f, 0f)), 5f, 0, "red", false);
+            }
+            for (int i = 0; i < 5; i++) {
+                system.addParticle(1f, 1f, new Vector<>(Arrays.asList(0f, 0f)), new Vector<>(Arrays.asList(-10f, 100f)), new Vector<>(Arrays.asList(0f, 0f)), 5f, 0, "red", false);
+            }
+            assertThat(system.cull(900, 800), greaterThan(0));
+        }
+
+        // A batch serves 100 evictions, about ten steps; a re-scan after every cull would select once per step
+        assertThat(system.getEvictedCount(), greaterThan(2000L));
+        assertThat(system.getVictimSelectionCount(), lessThan(steps / 4L));
+        // The remapped batches still evict the oldest: the store holds about 160 steps of survivors
+        int oldest = 0;
+        ParticleStore store = system.getParticleStore();
+        for (int i = 0; i < store.size(); i++) {
+            oldest = Math.max(oldest, store.getAge()[i]);
+        }
+        assertThat(oldest, lessThanOrEqualTo(180));
+    }
+
+    @Test
+    public void testSeedMakesEvictionReproducible() {
+        ParticleStore[] stores = new ParticleStore[2];
+        for (int run = 0; run < 2; run++) {
+            ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+            system.setSeed(11);
+            system.setMaxParticles(50);
+            system.setEvictionPolicy(EvictionPolicy.RANDOM);
+            spawnRow(system, 500);
+            stores[run] = system.getParticleStore();
+        }
+        for (int i = 0; i < 50; i++) {
+            assertThat(stores[1].getX().get(i), is(stores[0].getX().get(i)));
+        }
+    }
+
+    @Test
+    public void testParticlesAddedThroughTheListAreCapped() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.setMaxParticles(5);
+        Vector<Float> zero = new Vector<>(Arrays.asList(0f, 0f));
+        for (int i = 0; i < 8; i++) {
+            Particle particle = new Particle(1f, 1f, zero, new Vector<>(Arrays.asList((float) i, 0f)), zero, 5f, 0, "red", false);
+            assertThat(system.getParticles().add(particle), is(true));
+        }
+        assertThat(system.getParticleStore().size(), is(5));
+        assertThat(system.getEvictedCount(), is(3L));
+
+        system.setEvictionPolicy(EvictionPolicy.REJECT_NEW);
+        Particle rejected = new Particle(1f, 1f, zero, zero, zero, 5f, 0, "red", false);
+        assertThrows(IllegalStateException.class, () -> system.getParticles().add(rejected));
+        assertThat(system.getParticleStore().size(), is(5));
+    }
+
+    // Spawns count particles along y = 10 with x position and x velocity equal to the index
+    private static void spawnRow(ParticleSystem system, int count) {
+        for (int i = 0; i < count; i++) {
+            system.addParticle(1f, 1f, new Vector<>(Arrays.asList((float) i, 0f)), new Vector<>(Arrays.asList((float) i, 10f)), new Vector<>(Arrays.asList(0f, 0f)), 5f, 0, "red", false);
+        }
+    }
+
+    // Same seeded scene of particles, attractors and repulsors for each backend
+    private static ParticleSystem randomScene(PhysicsBackend backend, int particles) {
+        return randomScene(backend, particles, 20);
+    }
+
+    private static ParticleSystem randomScene(PhysicsBackend backend, int particles, int fieldPoints) {
+        Random random = new Random(42);
+        ParticleSystem system = new ParticleSystem(backend);
+        system.setGravityEnabled(1);
+        for (int i = 0; i < fieldPoints; i++) {
+            Vector<Float> position = new Vector<>(Arrays.asList(random.nextFloat() * 900f, random.nextFloat() * 800f));
+            system.addFieldPoint(position, 5f + random.nextFloat() * 10f, i % 2 == 0 ? "A" : "B");
+        }
+        for (int i = 0; i < particles; i++) {
+            system.addParticle(1f + random.nextFloat(), 1f,
+                new Vector<>(Arrays.asList(random.nextFloat() * 4f - 2f, random.nextFloat() * 4f - 2f)),
+                new Vector<>(Arrays.asList(random.nextFloat() * 900f, random.nextFloat() * 800f)),
+                new Vector<>(Arrays.asList(0f, 0f)), 5f, 100, "red", false);
+        }
+        return system;
+    }
+}
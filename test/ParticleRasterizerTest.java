@@ -0,0 +1,124 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import org.junit.jupiter.api.Test;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.PhysicsBackend;
+import custom.Pack.Render.ParticleRasterizer;
+import custom.Pack.Simulation.FrameSnapshot;
+import custom.Pack.Simulation.SimulationLoop;
+
+public class ParticleRasterizerTest {
+
+    @Test
+    public void testParticleIsStampedAtItsPosition() {
+        FrameSnapshot snapshot = snapshot(new float[][] { { 10.4f, 20.7f, 0f, 0f } });
+        ParticleRasterizer rasterizer = new ParticleRasterizer(64, 64);
+
+        rasterizer.draw(snapshot, 1f, 3, false);
+
+        int[] pixels = rasterizer.getPixels();
+        int drawn = 0;
+        for (int i = 0; i < pixels.length; i++) {
+            if (pixels[i] != ParticleRasterizer.BACKGROUND) {
+                drawn++;
+            }
+        }
+        // A 3 pixel disc covers its whole 3x3 box, from the top left corner of the particle
+        assertThat(drawn, is(9));
+        assertThat(pixels[20 * 64 + 10], is(ParticleRasterizer.DEFAULT_COLOR));
+        assertThat(pixels[22 * 64 + 12], is(ParticleRasterizer.DEFAULT_COLOR));
+        assertThat(pixels[23 * 64 + 12], is(ParticleRasterizer.BACKGROUND));
+    }
+
+    @Test
+    public void testVelocityColorsRunFromSlowToFast() {
+        ParticleRasterizer rasterizer = new ParticleRasterizer(8, 8);
+
+        assertThat(rasterizer.speedColor(0f, 0f), is(0xFFADD8E6));
+        assertThat(rasterizer.speedColor(ParticleRasterizer.MAX_SPEED, 0f), is(0xFF00008B));
+        assertThat(rasterizer.speedColor(100f, 100f), is(0xFF00008B));
+    }
+
+    @Test
+    public void testParallelBandsMatchSequentialFrame() {
+        Random random = new Random(3);
+        float[][] particles = new float[40_000][];
+        for (int i = 0; i < particles.length; i++) {
+            // Some particles sit across the frame edges
+            particles[i] = new float[] { random.nextFloat() * 420f - 10f, random.nextFloat() * 320f - 10f, random.nextFloat() * 30f, 0f };
+        }
+        FrameSnapshot snapshot = snapshot(particles);
+        ParticleRasterizer sequential = new ParticleRasterizer(400, 300);
+        ParticleRasterizer parallel = new ParticleRasterizer(400, 300);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallel.setPool(pool);
+
+        sequential.draw(snapshot, 1f, 5, true);
+        parallel.draw(snapshot, 1f, 5, true);
+        pool.shutdown();
+
+        assertThat(Arrays.equals(parallel.getPixels(), sequential.getPixels()), is(true));
+    }
+
+    @Test
+    public void testTrailIsDrawnBehindTheParticle() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.setTrailLength(8);
+        Vector<Float> zero = new Vector<>(Arrays.asList(0f, 0f));
+        system.addParticle(1f, 1f, new Vector<>(Arrays.asList(4f, 0f)), new Vector<>(Arrays.asList(10f, 30f)), zero, 5f, 0, "red", true);
+        SimulationLoop loop = new SimulationLoop(system, 1000, 1000);
+        for (int i = 0; i < 10; i++) {
+            loop.step();
+        }
+        FrameSnapshot snapshot = loop.latestSnapshot();
+        ParticleRasterizer rasterizer = new ParticleRasterizer(128, 64);
+
+        rasterizer.draw(snapshot, 1f, 3, false);
+
+        assertThat(snapshot.getTrailCount(0), is(8));
+        assertThat(snapshot.getTrailX(0, 7) > snapshot.getTrailX(0, 0), is(true));
+        int oldest = (int) snapshot.getTrailY(0, 0) * 128 + (int) snapshot.getTrailX(0, 0);
+        assertThat(rasterizer.getPixels()[oldest] != ParticleRasterizer.BACKGROUND, is(true));
+    }
+
+    @Test
+    public void testSnapshotCopiesABoundedShareOfTheTrails() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.setTrailLength(64);
+        ParticleStore store = system.getParticleStore();
+        for (int i = 0; i < 20_000; i++) {
+            store.add(1f, 1f, 0f, 0f, i % 900, i % 800, 0f, 0f, 5f, 0, "red", true);
+        }
+        for (int step = 0; step < 64; step++) {
+            store.recordTrails(0, store.size());
+        }
+        FrameSnapshot snapshot = new SimulationLoop(system, 1000, 1000).latestSnapshot();
+
+        // 64 positions each, so the copy stops after MAX_TRAIL_POINTS / 64 particles
+        int kept = FrameSnapshot.MAX_TRAIL_POINTS / 64;
+        assertThat(snapshot.getTrailCount(kept - 1), is(64));
+        assertThat(snapshot.getTrailCount(kept), is(0));
+        assertThat(snapshot.getTrailX(kept - 1, 63), is(store.getX().get(kept - 1)));
+        long slab = store.getTrails().getMemoryBytes();
+        long copy = snapshot.getTrailMemoryBytes() - slab;
+        assertThat(copy >= (long) FrameSnapshot.MAX_TRAIL_POINTS * 2 * Float.BYTES, is(true));
+        assertThat(copy <= (long) FrameSnapshot.MAX_TRAIL_POINTS * 2 * Float.BYTES + 2L * Integer.BYTES * 20_000, is(true));
+    }
+
+    // Snapshot of particles given as x, y, vx, vy
+    private static FrameSnapshot snapshot(float[][] particles) {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        Vector<Float> zero = new Vector<>(Arrays.asList(0f, 0f));
+        for (float[] p : particles) {
+            system.addParticle(1f, 1f, new Vector<>(Arrays.asList(p[2], p[3])), new Vector<>(Arrays.asList(p[0], p[1])), zero, 5f, 0, "red", false);
+        }
+        return new SimulationLoop(system, 1000, 1000).latestSnapshot();
+    }
+}
@@ -0,0 +1,231 @@
+import java.util.Arrays;
+import java.util.Vector;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Particle.Particle;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Particle.TrailBuffer;
+
+public class ParticleStoreTest {
+
+    @Test
+    public void testStoreGrowsPastInitialCapacity() {
+        ParticleStore store = new ParticleStore(2);
+        for (int i = 0; i < 10; i++) {
+            store.add(1f, 1f, i, 0f, i, 2f * i, 0f, 0f, 5f, 100, "red", false);
+        }
+
+        assertThat(store.size(), is(10));
+        assertThat(store.capacity(), greaterThanOrEqualTo(10));
+        assertThat(store.getX().get(9), is(9f));
+        assertThat(store.getY().get(9), is(18f));
+    }
+
+    @Test
+    public void testRemoveKeepsOrder() {
+        ParticleStore store = new ParticleStore();
+        for (int i = 0; i < 4; i++) {
+            store.add(1f, 1f, 0f, 0f, i, 0f, 0f, 0f, 5f, 100, "red", false);
+        }
+
+        store.remove(1);
+
+        assertThat(store.size(), is(3));
+        assertThat(store.getX().get(0), is(0f));
+        assertThat(store.getX().get(1), is(2f));
+        assertThat(store.getX().get(2), is(3f));
+    }
+
+    @Test
+    public void testRemovedSlotsAreRecycled() {
+        ParticleStore store = new ParticleStore(16);
+        for (int i = 0; i < 10; i++) {
+            store.add(1f, 1f, 0f, 0f, i, 0f, 0f, 0f, 5f, 100, "red", false);
+        }
+        for (int i = 0; i < 4; i++) {
+            store.remove(0);
+        }
+        for (int i = 0; i < 6; i++) {
+            store.add(1f, 1f, 0f, 0f, i, 0f, 0f, 0f, 5f, 100, "red", false);
+        }
+
+        assertThat(store.size(), is(12));
+        assertThat(store.getHighWaterMark(), is(12));
+        assertThat(store.getReleasedCount(), is(4L));
+        assertThat(store.getRecycledCount(), is(4L));
+        assertThat(store.getOccupancy(), is(12 / 16.0));
+    }
+
+    @Test
+    public void testCompactKeepsOrderOfSurvivors() {
+        ParticleStore store = new ParticleStore();
+        for (int i = 0; i < 6; i++) {
+            store.add(1f, 1f, 0f, 0f, i, 0f, 0f, 0f, 5f, 100, "red", false);
+        }
+
+        int removed = store.compact(new boolean[] { false, true, false, false, true, true });
+
+        assertThat(removed, is(3));
+        assertThat(store.size(), is(3));
+        assertThat(store.getX().get(0), is(1f));
+        assertThat(store.getX().get(1), is(4f));
+        assertThat(store.getX().get(2), is(5f));
+        assertThat(store.getReleasedCount(), is(3L));
+    }
+
+    @Test
+    public void testIdsFollowParticlesAndAreNeverReused() {
+        ParticleStore store = new ParticleStore();
+        for (int i = 0; i < 5; i++) {
+            store.add(1f, 1f, 0f, 0f, i, 0f, 0f, 0f, 5f, 100, "red", false);
+        }
+        int[] ids = Arrays.copyOf(store.getId(), 5);
+
+        store.remove(0);
+        store.compact(new boolean[] { true, false, true, true });
+        int added = store.add(1f, 1f, 0f, 0f, 9f, 0f, 0f, 0f, 5f, 100, "red", false);
+
+        assertThat(store.getId()[0], is(ids[1]));
+        assertThat(store.getId()[1], is(ids[3]));
+        assertThat(store.getId()[2], is(ids[4]));
+        // Slots are recycled, ids are not
+        assertThat(store.getId()[added] > ids[4], is(true));
+    }
+
+    @Test
+    public void testParticleViewWritesThroughToStore() {
+        ParticleStore store = new ParticleStore();
+        store.add(2f, 1f, 3f, 4f, 10f, 20f, 0f, 0f, 5f, 100, "red", true);
+
+        Particle view = new Particle(store, 0);
+        view.setPosition(new float[] { 11f, 21f });
+
+        assertThat(store.getX().get(0), is(11f));
+        assertThat(view.getVelocity(), is(new Vector<>(Arrays.asList(3f, 4f))));
+        assertThat(view.getMass(), is(2f));
+        assertThat(view.hasTrail(), is(true));
+    }
+
+    @Test
+    public void testTrailKeepsTheLatestPositionsOldestFirst() {
+        ParticleStore store = new ParticleStore();
+        store.setTrailLength(3, TrailBuffer.DEFAULT_BUDGET_BYTES);
+        store.add(1f, 1f, 0f, 0f, 0f, 0f, 0f, 0f, 5f, 0, "red", true);
+        store.add(1f, 1f, 0f, 0f, 0f, 0f, 0f, 0f, 5f, 0, "red", false);
+        for (int step = 1; step <= 5; step++) {
+            store.getX().put(0, step);
+            store.recordTrails(0, store.size());
+        }
+
+        assertThat(trailX(store, 0), is(new float[] { 3f, 4f, 5f }));
+        assertThat(store.getTrails().getCount(1), is(0));
+    }
+
+    @Test
+    public void testTrailsMoveWithCompaction() {
+        ParticleStore store = new ParticleStore();
+        store.setTrailLength(4, TrailBuffer.DEFAULT_BUDGET_BYTES);
+        for (int i = 0; i < 4; i++) {
+            store.add(1f, 1f, 0f, 0f, 10f * i, 0f, 0f, 0f, 5f, 0, "red", true);
+        }
+        store.recordTrails(0, store.size());
+        for (int i = 0; i < 4; i++) {
+            store.getX().put(i, 10f * i + 1f);
+        }
+        store.recordTrails(0, store.size());
+
+        store.compact(new boolean[] { false, true, false, true });
+        store.remove(0);
+
+        assertThat(store.size(), is(1));
+        assertThat(trailX(store, 0), is(new float[] { 30f, 31f }));
+        // A particle written into a recycled slot starts without history
+        store.add(1f, 1f, 0f, 0f, 0f, 0f, 0f, 0f, 5f, 0, "red", true);
+        assertThat(store.getTrails().getCount(1), is(0));
+    }
+
+    @Test
+    public void testTrailMemoryStaysWithinBudget() {
+        ParticleStore store = new ParticleStore();
+        long budget = 1L << 20;
+        store.setTrailLength(64, budget);
+        for (int i = 0; i < 100_000; i++) {
+            store.add(1f, 1f, 0f, 0f, i, 0f, 0f, 0f, 5f, 0, "red", true);
+        }
+        store.recordTrails(0, store.size());
+
+        TrailBuffer trails = store.getTrails();
+        // 512 bytes of history per particle, so only the first 2048 particles have a trail
+        assertThat(trails.getSlots(), is(2048));
+        assertThat(trails.getCount(2047), is(1));
+        assertThat(trails.getCount(2048), is(0));
+        assertThat(trails.getMemoryBytes(), lessThanOrEqualTo(budget + 2L * 2048 * Integer.BYTES));
+    }
+
+    @Test
+    public void testTrailBudgetFitsOneBuffer() {
+        ParticleSystem system = new ParticleSystem();
+        system.setTrailBudget(TrailBuffer.MAX_BUDGET_BYTES);
+        assertThat(system.getParticleStore().getTrails().getBudgetBytes(), is(TrailBuffer.MAX_BUDGET_BYTES));
+        assertThrows(IllegalArgumentException.class, () -> system.setTrailBudget(TrailBuffer.MAX_BUDGET_BYTES + 1));
+        assertThrows(IllegalArgumentException.class, () -> system.setTrailBudget(4L << 30));
+        assertThrows(IllegalArgumentException.class, () -> system.setTrailBudget(-1));
+        assertThat(system.getParticleStore().getTrails().getBudgetBytes(), is(TrailBuffer.MAX_BUDGET_BYTES));
+    }
+
+    @Test
+    public void testStandaloneParticlesGoIntoAStoreOnlyWhenAdded() {
+        Vector<Float> zero = new Vector<>(Arrays.asList(0f, 0f));
+        Particle standalone = new Particle(2f, 1f, new Vector<>(Arrays.asList(3f, 4f)), new Vector<>(Arrays.asList(10f, 20f)), zero, 5f, 100, "red", true);
+        standalone.setLifetime(7);
+        assertThat(standalone.getStore(), is(nullValue()));
+
+        ParticleSystem system = new ParticleSystem();
+        system.getParticles().add(standalone);
+        ParticleStore store = system.getParticleStore();
+        assertThat(store.getX().get(0), is(10f));
+        assertThat(store.getVelocityY().get(0), is(4f));
+        assertThat(store.getAge()[0], is(7));
+
+        // Removing hands back a standalone copy that no longer follows the store
+        Particle removed = system.getParticles().remove(0);
+        assertThat(removed.getStore(), is(nullValue()));
+        assertThat(removed.getPosition(), is(new Vector<>(Arrays.asList(10f, 20f))));
+        assertThat(removed.getLifetime(), is(7f));
+        assertThat(removed.hasTrail(), is(true));
+        assertThat(store.size(), is(0));
+    }
+
+    @Test
+    public void testSettingTheSameTrailLengthKeepsHistory() {
+        ParticleSystem system = new ParticleSystem();
+        system.setTrailLength(4);
+        ParticleStore store = system.getParticleStore();
+        store.add(1f, 1f, 0f, 0f, 5f, 5f, 0f, 0f, 2f, 0, "red", true);
+        store.recordTrails(0, store.size());
+        store.recordTrails(0, store.size());
+
+        system.setTrailLength(4);
+        assertThat(store.getTrails().getCount(0), is(2));
+        system.setTrailLength(5);
+        assertThat(store.getTrails().getCount(0), is(0));
+    }
+
+    private static float[] trailX(ParticleStore store, int slot) {
+        TrailBuffer trails = store.getTrails();
+        float[] points = new float[trails.getCount(slot)];
+        for (int k = 0; k < points.length; k++) {
+            int ring = (trails.ringStart(slot) + k) % trails.getLength();
+            points[k] = trails.getPoints().get((slot * trails.getLength() + ring) * 2);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import org.junit.jupiter.api.Test;
+
+import custom.Pack.LatencyHistogram;
+import custom.Pack.ParticleSystem;
+import custom.Pack.ScenarioSuite;
+import custom.Pack.StressScene;
+import custom.Pack.Physics.PhysicsBackend;
+
+public class ScenarioSuiteTest {
+
+    @Test
+    public void testHistogramPercentilesAreWithinABucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertThat(histogram.getCount(), is(1000L));
+        assertThat(histogram.getMin(), is(1000L));
+        assertThat(histogram.getMax(), is(1_000_000L));
+        // Buckets are 1/16 of a power of two wide
+        assertThat((double) histogram.getPercentile(0.5), closeTo(500_000, 500_000 / 16.0));
+        assertThat((double) histogram.getPercentile(0.99), closeTo(990_000, 990_000 / 16.0));
+        assertThat(histogram.getPercentile(1.0), is(1_000_000L));
+    }
+
+    @Test
+    public void testStressSceneIsBuiltFromItsName() {
+        ParticleSystem system = StressScene.build(StressScene.name(3, 5, 2000), PhysicsBackend.forName("java"), 900, 800);
+
+        assertThat(system.getEmitters(), hasSize(3));
+        assertThat(system.getFieldPoints(), hasSize(5));
+        // Attractors and repulsors alternate, starting with an attractor
+        assertThat(system.getFieldPoints().stream().filter(fieldPoint -> "B".equals(fieldPoint.getType())).count(), is(2L));
+        assertThat(system.getFieldPoints().stream().filter(fieldPoint -> "A".equals(fieldPoint.getType())).count(), is(3L));
+        assertThat(system.getParticleStore().size(), is(2000));
+        assertThat(system.getMaxParticles(), is(2000));
+        assertThat(StressScene.isStressScene("stress-3x5"), is(false));
+    }
+
+    @Test
+    public void testRegressionsAgainstABaseline() {
+        ScenarioSuite suite = new ScenarioSuite(PhysicsBackend.forName("java"));
+        suite.setScenes(Arrays.asList(StressScene.name(1, 1, 100), "solar.txt"));
+        suite.setSteps(20);
+        suite.setWarmupSteps(0);
+        suite.run();
+
+        // A report read back as a baseline matches itself
+        Map<String, Double> baseline = ScenarioSuite.parseStepsPerSecond(suite.toJson(), "java");
+        assertThat(baseline.keySet(), contains("stress-1x1x100", "solar.txt"));
+        assertThat(suite.regressions(baseline, 10.0), hasSize(0));
+        assertThat(ScenarioSuite.parseStepsPerSecond(suite.toJson(), "native").isEmpty(), is(true));
+        assertThat(suite.toJson(), containsString("\"processors\": " + Runtime.getRuntime().availableProcessors()));
+
+        // Fail only the scene whose baseline is far above the measured rate
+        double solar = suite.getResults().get("solar.txt").getStepsPerSecond();
+        baseline.put("solar.txt", solar * 2);
+        List<String> regressions = suite.regressions(baseline, 10.0);
+        assertThat(regressions, hasSize(1));
+        assertThat(regressions.get(0), startsWith("solar.txt:"));
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+import java.util.Vector;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import org.junit.jupiter.api.Test;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Physics.PhysicsBackend;
+import custom.Pack.Simulation.Commands;
+import custom.Pack.Simulation.FrameSnapshot;
+import custom.Pack.Simulation.MpscQueue;
+import custom.Pack.Simulation.SimulationLoop;
+
+public class SimulationLoopTest {
+
+    @Test
+    public void testCommandsRunBeforeTheNextStep() {
+        SimulationLoop loop = new SimulationLoop(new ParticleSystem(PhysicsBackend.forName("java")), 900, 800);
+        loop.post(system -> system.addEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0f, 1f));
+
+        assertThat(loop.latestSnapshot().getEmitterCount(), is(0));
+        loop.step();
+
+        FrameSnapshot snapshot = loop.latestSnapshot();
+        assertThat(snapshot.getEmitterCount(), is(1));
+        assertThat(snapshot.getEmitterX(0), is(100f));
+        assertThat(snapshot.getParticleCount(), is(PhysicsBackend.PARTICLES_PER_EMIT));
+        assertThat(snapshot.getStepCount(), is(1L));
+    }
+
+    @Test
+    public void testSnapshotKeepsEmitterSettingsOfItsStep() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        SimulationLoop loop = new SimulationLoop(system, 900, 800);
+        loop.post(s -> s.addEmitter(new Vector<>(Arrays.asList(100f, 100f)), 3f, 1f, 0.5f, 1f));
+        loop.post(s -> s.getEmitters().get(0).setEmissionRate(5000f));
+        loop.step();
+
+        FrameSnapshot snapshot = loop.latestSnapshot();
+        system.getEmitters().get(0).setSpeed(7f);
+        assertThat(snapshot.getEmitterSpeed(0), is(3f));
+        assertThat(snapshot.getEmitterSpread(0), is(1f));
+        assertThat(snapshot.getEmitterAngle(0), is(0.5f));
+        assertThat(snapshot.getEmitterEmissionRate(0), is(5000f));
+    }
+
+    @Test
+    public void testSnapshotCarriesTheParticleCap() {
+        SimulationLoop loop = new SimulationLoop(new ParticleSystem(PhysicsBackend.forName("java")), 900, 800);
+        loop.post(Commands.setMaxParticles(150000));
+        loop.step();
+        assertThat(loop.latestSnapshot().getMaxParticles(), is(150000));
+    }
+
+    @Test
+    public void testQueueKeepsTheOrderOfEveryProducer() throws InterruptedException {
+        MpscQueue<int[]> queue = new MpscQueue<>();
+        int producers = 4;
+        int perProducer = 20_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.offer(new int[] { producer, i });
+                }
+            });
+            threads[p].start();
+        }
+
+        int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            int[] element = queue.poll();
+            if (element == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            assertThat(element[1], is(next[element[0]]));
+            next[element[0]]++;
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(queue.poll(), is(nullValue()));
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testFieldPointCommandsFromSeveralThreads() throws InterruptedException {
+        SimulationLoop loop = new SimulationLoop(new ParticleSystem(PhysicsBackend.forName("java")), 900, 800);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    loop.post(Commands.addFieldPoint(10f, 10f, 5f, "A"));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        loop.step();
+        FrameSnapshot snapshot = loop.latestSnapshot();
+        assertThat(snapshot.getFieldPointCount(), is(200));
+
+        loop.post(Commands.moveFieldPoint(snapshot.getFieldPoint(0), 300f, 400f));
+        loop.post(Commands.setFieldStrength(snapshot.getFieldPoint(0), 12f));
+        loop.post(Commands.removeFieldPoint(snapshot.getFieldPoint(1)));
+        loop.post(Commands.toggleGravity());
+        loop.step();
+
+        snapshot = loop.latestSnapshot();
+        assertThat(snapshot.getFieldPointCount(), is(199));
+        assertThat(snapshot.getFieldPointX(0), is(300f));
+        assertThat(snapshot.getFieldPoint(0).getFieldStrength(), is(12f));
+        assertThat(snapshot.getGravityEnabled(), is(1));
+    }
+
+    @Test
+    public void testSnapshotInterpolatesBetweenSteps() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        Vector<Float> zero = new Vector<>(Arrays.asList(0f, 0f));
+        system.addParticle(1f, 1f, new Vector<>(Arrays.asList(4f, 2f)), new Vector<>(Arrays.asList(100f, 100f)), zero, 5f, 0, "red", false);
+        SimulationLoop loop = new SimulationLoop(system, 900, 800);
+
+        loop.step();
+
+        FrameSnapshot snapshot = loop.latestSnapshot();
+        float endX = snapshot.getX(0, 1f);
+        float endY = snapshot.getY(0, 1f);
+        assertThat(endX, is(system.getParticleStore().getX().get(0)));
+        assertThat(snapshot.getX(0, 0f), is(100f));
+        assertThat(snapshot.getY(0, 0f), is(100f));
+        assertThat((double) snapshot.getX(0, 0.5f), closeTo((100.0 + endX) / 2, 1e-4));
+        assertThat((double) snapshot.getY(0, 0.5f), closeTo((100.0 + endY) / 2, 1e-4));
+    }
+
+    @Test
+    public void testRunsAtTheStepRateWhileTheReaderIsNeverBlocked() throws InterruptedException {
+        SimulationLoop loop = new SimulationLoop(new ParticleSystem(PhysicsBackend.forName("java")), 900, 800);
+        loop.setStepRate(200);
+        loop.start();
+        // A step that takes much longer than a frame
+        loop.post(system -> sleep(100));
+        Thread.sleep(20);
+
+        long start = System.nanoTime();
+        loop.latestSnapshot();
+        loop.post(system -> system.setGravityEnabled(1));
+        assertThat(System.nanoTime() - start, lessThan(10_000_000L));
+
+        Thread.sleep(480);
+        loop.stop();
+        // 500 ms at 200 steps per second, less the slow step and the catch-up it was not allowed
+        long steps = loop.latestSnapshot().getStepCount();
+        assertThat(steps, greaterThan(20L));
+        assertThat(steps, lessThanOrEqualTo(105L));
+        assertThat(loop.latestSnapshot().getGravityEnabled(), is(1));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import custom.Pack.Simulation.StepScheduler;
+
+public class StepSchedulerTest {
+
+    @Test
+    public void testEventsFireAtTheirStep() {
+        StepScheduler scheduler = new StepScheduler();
+        Random random = new Random(3);
+        int events = 5000;
+        long[] due = new long[events];
+        long[] fired = new long[events];
+        for (int i = 0; i < events; i++) {
+            // Spread over every wheel level
+            due[i] = 1 + (long) Math.pow(2, 20 * random.nextDouble());
+            int index = i;
+            scheduler.schedule(due[i], step -> fired[index] = step);
+        }
+        assertThat(scheduler.getPending(), is(events));
+
+        while (scheduler.getPending() > 0) {
+            scheduler.advance();
+        }
+        for (int i = 0; i < events; i++) {
+            assertThat(fired[i], is(due[i]));
+        }
+    }
+
+    @Test
+    public void testEventsPastTheWheelsWaitInOverflow() {
+        StepScheduler scheduler = new StepScheduler();
+        long far = (1L << 24) + 1000;
+        long[] fired = { -1 };
+        scheduler.schedule(far, step -> fired[0] = step);
+        for (long step = 1; step < far; step++) {
+            scheduler.advance();
+        }
+        assertThat(fired[0], is(-1L));
+        scheduler.advance();
+        assertThat(fired[0], is(far));
+    }
+
+    @Test
+    public void testSameStepKeepsSchedulingOrder() {
+        StepScheduler scheduler = new StepScheduler();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int index = i;
+            scheduler.schedule(200, step -> order.add(index));
+        }
+        for (int step = 0; step < 200; step++) {
+            scheduler.advance();
+        }
+        assertThat(order, contains(0, 1, 2, 3, 4));
+    }
+
+    @Test
+    public void testCancelledEventsDoNotFire() {
+        StepScheduler scheduler = new StepScheduler();
+        int[] fired = new int[1];
+        StepScheduler.ScheduledEvent cancelled = scheduler.scheduleIn(100, step -> fired[0]++);
+        StepScheduler.ScheduledEvent kept = scheduler.scheduleIn(100, step -> fired[0]++);
+        cancelled.cancel();
+        cancelled.cancel();
+        assertThat(scheduler.getPending(), is(1));
+        for (int step = 0; step < 100; step++) {
+            scheduler.advance();
+        }
+        assertThat(fired[0], is(1));
+        assertThat(kept.isDone(), is(true));
+        assertThat(scheduler.getPending(), is(0));
+
+        scheduler.scheduleIn(5, step -> fired[0]++);
+        scheduler.clear();
+        for (int step = 0; step < 10; step++) {
+            scheduler.advance();
+        }
+        assertThat(fired[0], is(1));
+    }
+
+    @Test
+    public void testEventsScheduledForNowRunNextStep() {
+        StepScheduler scheduler = new StepScheduler();
+        List<Long> fired = new ArrayList<>();
+        scheduler.schedule(3, step -> {
+            fired.add(step);
+            scheduler.schedule(step, fired::add);
+        });
+        for (int step = 0; step < 5; step++) {
+            scheduler.advance();
+        }
+        assertThat(fired, contains(3L, 4L));
+    }
+}
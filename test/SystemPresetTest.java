@@ -6,10 +6,20 @@ import java.nio.file.Path;
 import java.util.Vector;
 import java.util.Arrays;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
 
 import custom.Pack.ParticleSystem;
 import custom.Pack.SystemPreset;
+import custom.Pack.BinarySnapshot;
 import custom.Pack.Emitter.Emitter;
+import custom.Pack.Emitter.OscillatingEmitter;
+import custom.Pack.Emitter.PulseEmitter;
+import custom.Pack.Particle.EvictionPolicy;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.PairInteraction;
 
 public class SystemPresetTest {
 
@@ -43,4 +53,143 @@ public class SystemPresetTest {
         // Verify Settings
         assertThat(newSystem.getFriction(), is(0.5));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testOscillatingEmittersKeepTheirOscillation() {
+        ParticleSystem original = new ParticleSystem();
+        original.addOscillatingEmitter(new Vector<>(Arrays.asList(100f, 200f)), 4f, 1f, 0f, 1f, 30f, 0.01f);
+        OscillatingEmitter oscillating = (OscillatingEmitter) original.getEmitters().get(0);
+        oscillating.setAxis(OscillatingEmitter.Axis.X);
+        oscillating.setPhase(1.5f);
+        for (int i = 0; i < 10; i++) {
+            original.updateAll();
+        }
+
+        File file = tempDir.resolve("oscillating.txt").toFile();
+        new SystemPreset(original).savePreset(file.getAbsolutePath());
+        ParticleSystem loaded = new ParticleSystem();
+        new SystemPreset(loaded).loadPreset(file.getAbsolutePath());
+
+        assertThat(loaded.getEmitters().get(0), instanceOf(OscillatingEmitter.class));
+        OscillatingEmitter copy = (OscillatingEmitter) loaded.getEmitters().get(0);
+        assertThat(copy.getAmplitude(), is(30f));
+        assertThat(copy.getFrequency(), is(0.01f));
+        assertThat(copy.getAxis(), is(OscillatingEmitter.Axis.X));
+        assertThat(copy.getPhase(), is(1.5f));
+        assertThat(copy.getMeanPosition(), contains(100f, 200f));
+        assertThat((double) copy.getTheta(), closeTo(oscillating.getTheta(), 1e-5));
+        assertThat((double) copy.getX(), closeTo(oscillating.getX(), 1e-3));
+        assertThat(copy.getY(), is(200f));
+    }
+
+    @Test
+    public void testLoadsTenThousandFieldPointsQuickly() throws IOException {
+        StringBuilder preset = new StringBuilder("FieldPoints\n");
+        for (int i = 0; i < 10_000; i++) {
+            preset.append("[").append(i % 900).append(".0, ").append(i / 900).append(".0]/5.0/").append(i % 2 == 0 ? "A" : "R").append("\n");
+        }
+        preset.append("Emitters\nSettings\n");
+        File file = tempDir.resolve("fields.txt").toFile();
+        Files.writeString(file.toPath(), preset);
+
+        ParticleSystem system = new ParticleSystem();
+        // Generous bound for slow CI machines; the load itself takes a few milliseconds
+        assertTimeout(Duration.ofSeconds(2), () -> new SystemPreset(system).loadPreset(file.getAbsolutePath()));
+
+        assertThat(system.getFieldPoints(), hasSize(10_000));
+        assertThat(system.getFieldPoints().get(9_999).getType(), is("R"));
+    }
+
+    @Test
+    public void testSnapshotRestoresTheFullState() throws IOException {
+        ParticleSystem original = new ParticleSystem();
+        original.addFieldPoint(new Vector<>(Arrays.asList(10f, 20f)), 7f, "A");
+        original.getFieldPoints().get(0).setCutoff(50f);
+        original.addEmitter(new Vector<>(Arrays.asList(1f, 2f)), 3f, 0.5f, 1f, 2f);
+        original.addOscillatingEmitter(new Vector<>(Arrays.asList(100f, 200f)), 4f, 1f, 0f, 1f, 30f, 0.2f);
+        original.addPulseEmitter(new Vector<>(Arrays.asList(300f, 400f)), 5f, 1f, 0f, 1f, 2f);
+        OscillatingEmitter oscillating = (OscillatingEmitter) original.getEmitters().get(1);
+        oscillating.setAxis(OscillatingEmitter.Axis.X);
+        oscillating.setPhase(0.5f);
+        oscillating.setTheta(2f);
+        original.setFriction(0.25);
+        original.setMaxParticles(5000);
+        original.setEvictionPolicy(EvictionPolicy.LOWEST_ENERGY);
+        original.setPairInteraction(PairInteraction.GRAVITY);
+        original.setTrailLength(12);
+        ParticleStore store = original.getParticleStore();
+        for (int i = 0; i < 3000; i++) {
+            store.add(1f + i, 2f, 3f, -4f, i, 2f * i, 0.5f, 0.25f, 5f, i % 7, i % 3 == 0 ? "blue" : "red", i % 2 == 0);
+            store.getAge()[i] = i % 11;
+        }
+
+        File file = tempDir.resolve("state.snap").toFile();
+        new SystemPreset(original).saveSnapshot(file.getAbsolutePath());
+        assertThat(BinarySnapshot.isSnapshot(file.toPath()), is(true));
+
+        // Loaded through the same entry point as text presets
+        ParticleSystem loaded = new ParticleSystem();
+        new SystemPreset(loaded).loadPreset(file.getAbsolutePath());
+
+        assertThat(loaded.getFieldPoints(), hasSize(1));
+        assertThat(loaded.getFieldPoints().get(0).getCutoff(), is(50f));
+        assertThat(loaded.getFieldPoints().get(0).getType(), is("A"));
+        assertThat(loaded.getEmitters(), hasSize(3));
+        assertThat(loaded.getEmitters().get(1), instanceOf(OscillatingEmitter.class));
+        OscillatingEmitter loadedOscillating = (OscillatingEmitter) loaded.getEmitters().get(1);
+        assertThat(loadedOscillating.getAmplitude(), is(30f));
+        assertThat(loadedOscillating.getAxis(), is(OscillatingEmitter.Axis.X));
+        assertThat(loadedOscillating.getPhase(), is(0.5f));
+        assertThat(loadedOscillating.getTheta(), is(2f));
+        assertThat(loadedOscillating.getX(), is(oscillating.getX()));
+        assertThat(((PulseEmitter) loaded.getEmitters().get(2)).getPulseFrequency(), is(2f));
+        assertThat(loaded.getFriction(), is(0.25));
+        assertThat(loaded.getMaxParticles(), is(5000));
+        assertThat(loaded.getEvictionPolicy(), is(EvictionPolicy.LOWEST_ENERGY));
+        assertThat(loaded.getPairInteraction(), is(PairInteraction.GRAVITY));
+        assertThat(loaded.getTrailLength(), is(12));
+
+        ParticleStore copy = loaded.getParticleStore();
+        assertThat(copy.size(), is(3000));
+        for (int i = 0; i < 3000; i += 499) {
+            assertThat(copy.getMass().get(i), is(1f + i));
+            assertThat(copy.getX().get(i), is((float) i));
+            assertThat(copy.getY().get(i), is(2f * i));
+            assertThat(copy.getVelocityY().get(i), is(-4f));
+            assertThat(copy.getForceX().get(i), is(0.5f));
+            assertThat(copy.getLifespan()[i], is(i % 7));
+            assertThat(copy.getAge()[i], is(i % 11));
+            assertThat(copy.getColor()[i], is(i % 3 == 0 ? "blue" : "red"));
+            assertThat(copy.getTrail()[i], is(i % 2 == 0));
+        }
+    }
+
+    @Test
+    public void testSnapshotLoadsNoMoreParticlesThanTheCap() throws IOException {
+        ParticleSystem original = new ParticleSystem();
+        ParticleStore store = original.getParticleStore();
+        for (int i = 0; i < 3000; i++) {
+            store.add(1f + i, 2f, 3f, -4f, i, 2f * i, 0f, 0f, 5f, 0, "red", false);
+        }
+        // Lowered after the particles were added, so the snapshot holds more than its cap
+        original.setMaxParticles(1000);
+        File file = tempDir.resolve("capped.snap").toFile();
+        new SystemPreset(original).saveSnapshot(file.getAbsolutePath());
+
+        ParticleSystem loaded = new ParticleSystem();
+        new SystemPreset(loaded).loadPreset(file.getAbsolutePath());
+        ParticleStore copy = loaded.getParticleStore();
+        assertThat(copy.size(), is(1000));
+        assertThat(copy.getMass().get(999), is(1000f));
+        assertThat(copy.getY().get(999), is(1998f));
+    }
+
+    @Test
+    public void testTextPresetsAreNotMistakenForSnapshots() throws IOException {
+        File file = tempDir.resolve("text.txt").toFile();
+        new SystemPreset(new ParticleSystem()).savePreset(file.getAbsolutePath());
+
+        assertThat(BinarySnapshot.isSnapshot(file.toPath()), is(false));
+        assertThat(BinarySnapshot.isSnapshot(new File("jog.txt").toPath()), is(false));
+    }
+}
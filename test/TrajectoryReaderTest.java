@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import custom.Pack.ParticleSystem;
+import custom.Pack.Particle.ParticleStore;
+import custom.Pack.Physics.PhysicsBackend;
+import custom.Pack.Recording.ReplayPlayer;
+import custom.Pack.Recording.TrajectoryFrame;
+import custom.Pack.Recording.TrajectoryReader;
+import custom.Pack.Recording.TrajectoryRecorder;
+import custom.Pack.Simulation.FrameSnapshot;
+
+public class TrajectoryReaderTest {
+    private static final int WIDTH = 900;
+    private static final int HEIGHT = 800;
+    private static final int STEPS = 60;
+
+    @TempDir
+    Path tempDir;
+
+    // Positions and velocities of every step, kept while recording
+    private final List<float[][]> expected = new ArrayList<>();
+    private final List<int[]> expectedIds = new ArrayList<>();
+
+    // Records a run in which particles are born and culled, keeping what every frame should hold
+    private Path record() throws IOException {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.addEmitter(new Vector<>(Arrays.asList(880f, 400f)), 4f, 1f, 0f, 1f);
+        system.addFieldPoint(new Vector<>(Arrays.asList(450f, 400f)), 3f, "A");
+        Path file = tempDir.resolve("run.traj");
+        TrajectoryRecorder recorder = new TrajectoryRecorder(file, WIDTH, HEIGHT);
+        recorder.setKeyframeInterval(5);
+        recorder.setBackpressure(TrajectoryRecorder.Backpressure.BLOCK);
+        recorder.start();
+        for (int step = 1; step <= STEPS; step++) {
+            system.cull(WIDTH, HEIGHT);
+            system.step();
+            ParticleStore store = system.getParticleStore();
+            int n = store.size();
+            float[][] columns = new float[4][n];
+            store.getX().get(0, columns[0], 0, n);
+            store.getY().get(0, columns[1], 0, n);
+            store.getVelocityX().get(0, columns[2], 0, n);
+            store.getVelocityY().get(0, columns[3], 0, n);
+            expected.add(columns);
+            expectedIds.add(Arrays.copyOf(store.getId(), n));
+            recorder.record(store, step);
+        }
+        recorder.close();
+        return file;
+    }
+
+    private void assertFrame(TrajectoryFrame frame, int number) {
+        float[][] columns = expected.get(number);
+        int[] ids = expectedIds.get(number);
+        assertThat(frame.getStep(), is(number + 1L));
+        assertThat(frame.size(), is(ids.length));
+        for (int i = 0; i < ids.length; i++) {
+            assertThat(frame.getId(i), is(ids[i]));
+            // Particles that left the world in the last step are culled before the next one and recorded at its edge
+            assertThat((double) frame.getX(i), closeTo(Math.max(0f, Math.min(WIDTH, columns[0][i])), 0.01));
+            assertThat((double) frame.getY(i), closeTo(Math.max(0f, Math.min(HEIGHT, columns[1][i])), 0.01));
+            assertThat((double) frame.getVelocityX(i), closeTo(columns[2][i], 0.001));
+            assertThat((double) frame.getVelocityY(i), closeTo(columns[3][i], 0.001));
+        }
+    }
+
+    @Test
+    public void testEveryFrameDecodesInAnyOrder() throws IOException {
+        Path file = record();
+        try (TrajectoryReader reader = new TrajectoryReader(file)) {
+            assertThat(reader.getFrameCount(), is(STEPS));
+            assertThat(reader.getKeyframe(7), is(5));
+            assertThat(reader.frameAtStep(30), is(29));
+            TrajectoryFrame frame = new TrajectoryFrame();
+            for (int f = 0; f < STEPS; f++) {
+                reader.readFrame(f, frame);
+                assertFrame(frame, f);
+            }
+            for (int f : new int[] { 59, 3, 41, 40, 0, 22 }) {
+                reader.readFrame(f, frame);
+                assertFrame(frame, f);
+            }
+        }
+        // Particles were both born and culled during the run
+        assertThat(expectedIds.get(STEPS - 1)[0], greaterThan(expectedIds.get(0)[0]));
+    }
+
+    @Test
+    public void testUnclosedRecordingIsScanned() throws IOException {
+        Path file = record();
+        byte[] bytes = Files.readAllBytes(file);
+        // Drop the index and trailer and half of the last frame, as a crash would
+        int lastFrame;
+        try (TrajectoryReader reader = new TrajectoryReader(file)) {
+            lastFrame = reader.getFrameCount() - 1;
+        }
+        Path cut = tempDir.resolve("cut.traj");
+        Files.write(cut, Arrays.copyOf(bytes, bytes.length - 12 - 20 - STEPS * 20 - 30));
+        try (TrajectoryReader reader = new TrajectoryReader(cut)) {
+            assertThat(reader.getFrameCount(), is(lastFrame));
+            TrajectoryFrame frame = new TrajectoryFrame();
+            reader.readFrame(lastFrame - 1, frame);
+            assertFrame(frame, lastFrame - 1);
+        }
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        Path text = tempDir.resolve("preset.txt");
+        Files.write(text, new byte[128]);
+        assertThrows(IOException.class, () -> new TrajectoryReader(text));
+    }
+
+    @Test
+    public void testPlayerFollowsTheClockAndSeeks() throws IOException {
+        Path file = record();
+        FrameSnapshot snapshot = new FrameSnapshot();
+        // 10 recorded steps per second
+        try (ReplayPlayer player = new ReplayPlayer(new TrajectoryReader(file), 10.0, 4)) {
+            player.start();
+            player.update(snapshot, 0L);
+            assertThat(snapshot.getStepCount(), is(1L));
+            assertThat(snapshot.getParticleCount(), is(expectedIds.get(0).length));
+
+            player.setPaused(false);
+            player.update(snapshot, 1_000_000_000L);
+            player.update(snapshot, 2_000_000_000L);
+            assertThat(snapshot.getStepCount(), is(11L));
+            assertThat((double) snapshot.getX(0, 1f), closeTo(Math.max(0f, Math.min(WIDTH, expected.get(10)[0][0])), 0.01));
+
+            player.setPaused(true);
+            player.step(1);
+            player.update(snapshot, 5_000_000_000L);
+            assertThat(snapshot.getStepCount(), is(12L));
+
+            player.seek(45);
+            player.update(snapshot, 6_000_000_000L);
+            assertThat(snapshot.getStepCount(), is(46L));
+            assertThat((double) snapshot.getVelocityY(3), closeTo(expected.get(45)[3][3], 0.001));
+
+            // Backwards at double speed, then stops at the first frame
+            player.setSpeed(-2.0);
+            player.setPaused(false);
+            player.update(snapshot, 7_000_000_000L);
+            player.update(snapshot, 8_000_000_000L);
+            assertThat(snapshot.getStepCount(), is(26L));
+            player.update(snapshot, 20_000_000_000L);
+            assertThat(snapshot.getStepCount(), is(1L));
+            assertThat(player.isPaused(), is(true));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Vector;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import custom.Pack.HeadlessRunner;
+import custom.Pack.ParticleSystem;
+import custom.Pack.Physics.PhysicsBackend;
+import custom.Pack.Recording.TrajectoryRecorder;
+import custom.Pack.Simulation.SimulationLoop;
+
+public class TrajectoryRecorderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static ParticleSystem emitterSystem() {
+        ParticleSystem system = new ParticleSystem(PhysicsBackend.forName("java"));
+        system.addEmitter(new Vector<>(Arrays.asList(450f, 400f)), 3f, 1f, 0f, 1f);
+        system.addFieldPoint(new Vector<>(Arrays.asList(300f, 300f)), 2f, "A");
+        return system;
+    }
+
+    @Test
+    public void testRecordsEveryNthStepAndEndsWithAnIndex() throws IOException {
+        Path file = tempDir.resolve("run.traj");
+        TrajectoryRecorder recorder = new TrajectoryRecorder(file, 900, 800);
+        recorder.setFrameInterval(5);
+        recorder.setBackpressure(TrajectoryRecorder.Backpressure.BLOCK);
+        HeadlessRunner runner = new HeadlessRunner(emitterSystem());
+        runner.setSteps(200);
+        runner.setRecorder(recorder);
+
+        recorder.start();
+        runner.run();
+        recorder.close();
+
+        assertThat(recorder.getFramesWritten(), is(40L));
+        assertThat(recorder.getFramesDropped(), is(0L));
+        assertThat(recorder.getKeyframesWritten(), is(5L));
+        assertThat(recorder.getCompressionRatio(), greaterThan(1.5));
+        assertThat(recorder.getWriteBytesPerSecond(), greaterThan(0.0));
+        assertThat(recorder.toText(), containsString("40 frames"));
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(bytes.getInt(0), is(0x4A525450)); // "PTRJ"
+        assertThat((long) bytes.capacity(), is(64 + recorder.getBytesWritten()));
+        long index = bytes.getLong(bytes.capacity() - 12);
+        assertThat(bytes.getInt(bytes.capacity() - 4), is(0x4A525450));
+        assertThat(bytes.getInt((int) index), is(3));
+        assertThat(bytes.getInt((int) index + 16), is(40));
+        // The first frame is a keyframe of step 5
+        assertThat(bytes.getInt(64), is(1));
+        assertThat(bytes.getLong(72), is(5L));
+    }
+
+    @Test
+    public void testSimulationLoopPassesEveryStep() throws IOException {
+        TrajectoryRecorder recorder = new TrajectoryRecorder(tempDir.resolve("loop.traj"), 900, 800);
+        recorder.setBackpressure(TrajectoryRecorder.Backpressure.BLOCK);
+        SimulationLoop loop = new SimulationLoop(emitterSystem(), 900, 800);
+        recorder.start();
+        loop.setRecorder(recorder);
+
+        for (int i = 0; i < 12; i++) {
+            loop.step();
+        }
+        loop.setRecorder(null);
+        loop.step();
+        recorder.close();
+
+        assertThat(recorder.getFramesWritten(), is(12L));
+        // Closed recorders ignore further frames
+        assertThat(recorder.record(loop.getSystem().getParticleStore(), 14), is(false));
+    }
+
+    @Test
+    public void testRejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new TrajectoryRecorder(tempDir.resolve("x.traj"), 0, 800));
+        TrajectoryRecorder recorder = new TrajectoryRecorder(tempDir.resolve("x.traj"), 900, 800);
+        assertThrows(IllegalArgumentException.class, () -> recorder.setFrameInterval(0));
+        assertThrows(IllegalArgumentException.class, () -> recorder.setKeyframeInterval(0));
+        assertThrows(IllegalArgumentException.class, () -> recorder.setBufferedFrames(0));
+        assertThrows(IllegalArgumentException.class, () -> recorder.setVelocityRange(0f));
+    }
+}